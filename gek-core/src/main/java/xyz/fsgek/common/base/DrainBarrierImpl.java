@@ -0,0 +1,91 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+final class DrainBarrierImpl implements GekDrainBarrier {
+
+    private static final int SPINS = 64;
+    private static final int YIELDS = 16;
+
+    private final AtomicInteger count = new AtomicInteger();
+    private final Queue<Thread> waiters = new ConcurrentLinkedQueue<>();
+
+    @Override
+    public void enter() {
+        count.incrementAndGet();
+    }
+
+    @Override
+    public boolean tryEnter(int maxCount) {
+        if (count.incrementAndGet() > maxCount && maxCount > 0) {
+            //Other parties may exit between the increment and the rollback, then the rollback drops the count to 0 and
+            //must unpark the waiters
+            exit();
+            return false;
+        }
+        return true;
+    }
+
+    @Override
+    public void exit() {
+        if (count.decrementAndGet() == 0 && !waiters.isEmpty()) {
+            for (Thread waiter : waiters) {
+                LockSupport.unpark(waiter);
+            }
+        }
+    }
+
+    @Override
+    public int count() {
+        return count.get();
+    }
+
+    @Override
+    public void await() throws InterruptedException {
+        await(null);
+    }
+
+    @Override
+    public boolean await(@Nullable Duration timeout) throws InterruptedException {
+        if (Thread.interrupted()) {
+            throw new InterruptedException();
+        }
+        long deadline = timeout == null ? 0 : System.nanoTime() + timeout.toNanos();
+        for (int i = 0; i < SPINS + YIELDS; i++) {
+            if (count.get() <= 0) {
+                return true;
+            }
+            if (i >= SPINS) {
+                Thread.yield();
+            }
+        }
+        Thread current = Thread.currentThread();
+        //Waiter is added before checking the count, so the exit dropping the count to 0 will see it
+        waiters.add(current);
+        try {
+            while (count.get() > 0) {
+                if (timeout == null) {
+                    LockSupport.park(this);
+                } else {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        return false;
+                    }
+                    LockSupport.parkNanos(this, remaining);
+                }
+                if (Thread.interrupted()) {
+                    throw new InterruptedException();
+                }
+            }
+            return true;
+        } finally {
+            waiters.remove(current);
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.annotations.ThreadSafe;
+
+import java.time.Duration;
+
+/**
+ * Counter of in-flight tasks with a barrier which waits until all tasks are done, such as the drain of a server
+ * before closing. It is like a {@link java.util.concurrent.Phaser} whose parties are tasks: a task
+ * {@link #enter()}s before it is submitted and {@link #exit()}s after it is done, and {@link #await()} blocks until
+ * the count drops to 0.
+ * <p>
+ * The implementation from {@link GekThread#newDrainBarrier()} only updates an atomic counter on entering and exiting,
+ * and only the exit which drops the count to 0 unparks the waiting threads, if there are any. Waiting threads spin and
+ * yield for a short while before parking, so a drain which finishes soon does not pay for parking.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekDrainBarrier {
+
+    /**
+     * Enters a task, increments the count.
+     */
+    void enter();
+
+    /**
+     * Enters a task only if the count is less than given max count, returns whether the task is entered. Non-positive
+     * max count means no limit.
+     *
+     * @param maxCount given max count
+     * @return whether the task is entered
+     */
+    boolean tryEnter(int maxCount);
+
+    /**
+     * Exits a task, decrements the count. If the count drops to 0, threads waiting for the drain are unparked.
+     */
+    void exit();
+
+    /**
+     * Returns current count of in-flight tasks.
+     *
+     * @return current count of in-flight tasks
+     */
+    int count();
+
+    /**
+     * Blocks until the count drops to 0.
+     *
+     * @throws InterruptedException if current thread is interrupted while waiting
+     */
+    void await() throws InterruptedException;
+
+    /**
+     * Blocks until the count drops to 0 or given timeout elapses, returns whether the count drops to 0. Null timeout
+     * means waiting without timeout.
+     *
+     * @param timeout given timeout
+     * @return whether the count drops to 0
+     * @throws InterruptedException if current thread is interrupted while waiting
+     */
+    boolean await(@Nullable Duration timeout) throws InterruptedException;
+}
@@ -0,0 +1,74 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.ThreadSafe;
+
+import java.util.concurrent.Executor;
+
+/**
+ * Executor which runs tasks one at a time and in order of submission, on top of another (usually multi-threads)
+ * executor, such as the executor of a channel or a source of packets.
+ * <p>
+ * The implementation from {@link #newSerialExecutor(Executor)} has a lock-free task queue and a "scheduled" bit
+ * changed by CAS: submitting a task only submits a drain task to the underlying executor if no drain task has been
+ * submitted, and a drain task runs up to a batch of tasks then gives back the thread (and submits itself again if
+ * there are remaining tasks). So there is at most one drain task of a serial executor at a time, and tasks submitted
+ * to the underlying executor grow with the tasks submitted to the serial executor, not with the number of serial
+ * executors. Exceptions thrown by tasks are ignored, tasks should handle their exceptions.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekSerialExecutor extends Executor {
+
+    /**
+     * Default max number of tasks run by one drain task: 64.
+     */
+    int DEFAULT_BATCH_SIZE = 64;
+
+    /**
+     * Returns a new serial executor on given executor, with {@link #DEFAULT_BATCH_SIZE}.
+     *
+     * @param executor given executor
+     * @return a new serial executor
+     */
+    static GekSerialExecutor newSerialExecutor(Executor executor) {
+        return newSerialExecutor(executor, DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * Returns a new serial executor on given executor, with given max number of tasks run by one drain task.
+     *
+     * @param executor  given executor
+     * @param batchSize max number of tasks run by one drain task
+     * @return a new serial executor
+     */
+    static GekSerialExecutor newSerialExecutor(Executor executor, int batchSize) {
+        return new SerialExecutorImpl(executor, batchSize);
+    }
+
+    /**
+     * Submits given task. If the underlying executor rejects the drain task, the exception is thrown and the task is
+     * kept to be run in next drain.
+     *
+     * @param task given task
+     */
+    @Override
+    void execute(Runnable task);
+
+    /**
+     * Submits given task only if number of pending tasks is less than given max number, returns whether the task is
+     * submitted.
+     *
+     * @param task       given task
+     * @param maxPending given max number
+     * @return whether the task is submitted
+     */
+    boolean tryExecute(Runnable task, int maxPending);
+
+    /**
+     * Returns number of submitted tasks which are not started yet.
+     *
+     * @return number of submitted tasks which are not started yet
+     */
+    int pendingTasks();
+}
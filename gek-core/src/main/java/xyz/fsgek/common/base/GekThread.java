@@ -3,6 +3,8 @@ package xyz.fsgek.common.base;
 import xyz.fsgek.annotations.Nullable;
 
 import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
 
 /**
  * Utilities for thread.
@@ -52,6 +54,70 @@ public class GekThread {
         return thread;
     }
 
+    /**
+     * Returns whether virtual threads are supported by current JVM (Java 21+).
+     *
+     * @return whether virtual threads are supported by current JVM
+     */
+    public static boolean isVirtualThreadSupported() {
+        return VirtualThreads.isSupported();
+    }
+
+    /**
+     * Returns a new factory of virtual threads which are named as given prefix plus a counter,
+     * or null if virtual threads are not supported by current JVM.
+     *
+     * @param namePrefix given prefix of thread name
+     * @return a new factory of virtual threads or null
+     */
+    @Nullable
+    public static ThreadFactory newVirtualThreadFactory(String namePrefix) {
+        return VirtualThreads.newFactory(namePrefix);
+    }
+
+    /**
+     * Returns a new executor which starts a new virtual thread for each task, the threads are named as given prefix
+     * plus a counter. Returns null if virtual threads are not supported by current JVM.
+     *
+     * @param namePrefix given prefix of thread name
+     * @return a new executor of virtual threads or null
+     */
+    @Nullable
+    public static ExecutorService newVirtualThreadExecutor(String namePrefix) {
+        return VirtualThreads.newExecutor(namePrefix);
+    }
+
+    /**
+     * Returns a new waiter of a loop thread, with {@link GekWaiter#DEFAULT_SPINS} and
+     * {@link GekWaiter#DEFAULT_YIELDS}.
+     *
+     * @return a new waiter of a loop thread
+     */
+    public static GekWaiter newWaiter() {
+        return newWaiter(GekWaiter.DEFAULT_SPINS, GekWaiter.DEFAULT_YIELDS);
+    }
+
+    /**
+     * Returns a new waiter of a loop thread, with given number of spinning idle calls and given number of yielding
+     * idle calls before parking.
+     *
+     * @param spins  given number of spinning idle calls
+     * @param yields given number of yielding idle calls
+     * @return a new waiter of a loop thread
+     */
+    public static GekWaiter newWaiter(int spins, int yields) {
+        return new WaiterImpl(spins, yields);
+    }
+
+    /**
+     * Returns a new drain barrier of in-flight tasks.
+     *
+     * @return a new drain barrier of in-flight tasks
+     */
+    public static GekDrainBarrier newDrainBarrier() {
+        return new DrainBarrierImpl();
+    }
+
     /**
      * Sleeps current thread for specified milliseconds.
      *
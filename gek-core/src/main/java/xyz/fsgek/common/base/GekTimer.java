@@ -0,0 +1,103 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.annotations.ThreadSafe;
+
+import java.time.Duration;
+
+/**
+ * Timer to run tasks after specified delays, for a large number of short timeouts such as idle detection or request
+ * timeouts of network connections.
+ * <p>
+ * The implementation from {@link #newWheelTimer()} is a hashed wheel timer: a wheel of buckets is advanced by one
+ * thread in each tick, and a task is put into the bucket of its deadline. Scheduling and cancelling a task are both
+ * O(1), and expiration is approximate: a task runs in the tick after its deadline, so the precision is the tick
+ * duration. Tasks are run in the timer thread, so a task should be short or be passed to other executors.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekTimer {
+
+    /**
+     * Returns a new hashed wheel timer with 10 milliseconds tick and 512 buckets.
+     * The timer thread is a daemon thread which starts on first scheduling.
+     *
+     * @return a new hashed wheel timer
+     */
+    static GekTimer newWheelTimer() {
+        return newWheelTimer(Duration.ofMillis(10), 512, null);
+    }
+
+    /**
+     * Returns a new hashed wheel timer with given tick duration and bucket number (rounded up to power of 2).
+     * The timer thread is a daemon thread which starts on first scheduling.
+     *
+     * @param tick        tick duration
+     * @param wheelSize   bucket number
+     * @param threadName  name of timer thread, may be null to use default name
+     * @return a new hashed wheel timer
+     */
+    static GekTimer newWheelTimer(Duration tick, int wheelSize, @Nullable String threadName) {
+        return new WheelTimer(tick, wheelSize, threadName);
+    }
+
+    /**
+     * Schedules given task to run after given delay, returns the timeout of the task.
+     *
+     * @param delay given delay
+     * @param task  given task
+     * @return the timeout of the task
+     */
+    Timeout schedule(Duration delay, Runnable task);
+
+    /**
+     * Schedules given task to run after given delay in milliseconds, returns the timeout of the task.
+     *
+     * @param delayMillis given delay in milliseconds
+     * @param task        given task
+     * @return the timeout of the task
+     */
+    default Timeout schedule(long delayMillis, Runnable task) {
+        return schedule(Duration.ofMillis(delayMillis), task);
+    }
+
+    /**
+     * Returns number of tasks waiting to run.
+     *
+     * @return number of tasks waiting to run
+     */
+    long pendingTasks();
+
+    /**
+     * Stops this timer, tasks waiting to run are cancelled, and no task can be scheduled after stopping.
+     */
+    void stop();
+
+    /**
+     * Handle of a scheduled task.
+     */
+    interface Timeout {
+
+        /**
+         * Cancels the task, returns false if the task has been run or cancelled.
+         *
+         * @return whether the task is cancelled by this calling
+         */
+        boolean cancel();
+
+        /**
+         * Returns whether the task has been cancelled.
+         *
+         * @return whether the task has been cancelled
+         */
+        boolean isCancelled();
+
+        /**
+         * Returns whether the task has been expired (run or being run).
+         *
+         * @return whether the task has been expired
+         */
+        boolean isExpired();
+    }
+}
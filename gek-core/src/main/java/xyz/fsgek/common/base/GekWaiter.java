@@ -0,0 +1,52 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.ThreadSafe;
+
+/**
+ * Waiter of a loop thread which polls for work, such as a dispatcher loop, instead of sleeping a fixed time between
+ * polls. The loop calls {@link #reset()} after a poll found work and {@link #idle(long)} after a poll found nothing,
+ * and other threads call {@link #signal()} after producing an event of the loop.
+ * <p>
+ * The implementation from {@link GekThread#newWaiter(int, int)} waits adaptively: the first idle calls after work
+ * return at once (spinning, the loop polls again), the next idle calls yield the thread, and then each idle call parks
+ * the thread until it is signaled or the max park time elapses. So a busy loop responds in microseconds and an idle
+ * loop costs nearly no CPU. A signal sent when the loop is not parked is kept, then next idle call returns at once, so
+ * the event is never missed by a loop which polls after each idle call.
+ * <p>
+ * {@link #idle(long)} and {@link #reset()} should be called by only one thread (the loop thread).
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekWaiter {
+
+    /**
+     * Default number of spinning idle calls: 16.
+     */
+    int DEFAULT_SPINS = 16;
+
+    /**
+     * Default number of yielding idle calls after spinning: 16.
+     */
+    int DEFAULT_YIELDS = 16;
+
+    /**
+     * Waits after a poll of the loop found no work. Returns at once if signaled since last wait, otherwise spins,
+     * yields or parks by count of idle calls since last {@link #reset()}. If the thread is interrupted while parking,
+     * this method returns and the interrupt status is kept.
+     *
+     * @param maxParkNanos max nanoseconds to park
+     */
+    void idle(long maxParkNanos);
+
+    /**
+     * Resets count of idle calls after a poll of the loop found work, so next idle calls spin again.
+     */
+    void reset();
+
+    /**
+     * Signals the loop that an event has been produced, unparks the loop thread if it is parked in
+     * {@link #idle(long)}.
+     */
+    void signal();
+}
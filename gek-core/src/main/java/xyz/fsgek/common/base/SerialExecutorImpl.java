@@ -0,0 +1,80 @@
+package xyz.fsgek.common.base;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class SerialExecutorImpl implements GekSerialExecutor, Runnable {
+
+    private final Executor executor;
+    private final int batchSize;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pending = new AtomicInteger();
+    private final AtomicBoolean scheduled = new AtomicBoolean();
+
+    SerialExecutorImpl(Executor executor, int batchSize) {
+        GekCheck.checkArgument(batchSize > 0, "batchSize must > 0.");
+        this.executor = executor;
+        this.batchSize = batchSize;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        pending.incrementAndGet();
+        tasks.add(task);
+        schedule();
+    }
+
+    @Override
+    public boolean tryExecute(Runnable task, int maxPending) {
+        if (pending.incrementAndGet() > maxPending) {
+            pending.decrementAndGet();
+            return false;
+        }
+        tasks.add(task);
+        schedule();
+        return true;
+    }
+
+    @Override
+    public int pendingTasks() {
+        return pending.get();
+    }
+
+    @Override
+    public void run() {
+        for (int i = 0; i < batchSize; i++) {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                break;
+            }
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable ignored) {
+            }
+        }
+        scheduled.set(false);
+        //Tasks added after polling but before clearing the bit are not missed
+        if (!tasks.isEmpty()) {
+            try {
+                schedule();
+            } catch (Throwable ignored) {
+                //The executor has been shut down
+            }
+        }
+    }
+
+    private void schedule() {
+        if (scheduled.compareAndSet(false, true)) {
+            try {
+                executor.execute(this);
+            } catch (Throwable e) {
+                scheduled.set(false);
+                throw e;
+            }
+        }
+    }
+}
@@ -0,0 +1,25 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.Nullable;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadFactory;
+
+// Virtual threads are not supported before Java 21,
+// this class is replaced by the one in META-INF/versions/21 of the multi-release jar on Java 21+.
+final class VirtualThreads {
+
+    static boolean isSupported() {
+        return false;
+    }
+
+    @Nullable
+    static ThreadFactory newFactory(String namePrefix) {
+        return null;
+    }
+
+    @Nullable
+    static ExecutorService newExecutor(String namePrefix) {
+        return null;
+    }
+}
@@ -0,0 +1,65 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.Nullable;
+
+import java.util.concurrent.locks.LockSupport;
+
+final class WaiterImpl implements GekWaiter {
+
+    private final int spins;
+    private final int yields;
+    private volatile boolean signaled = false;
+    private volatile @Nullable Thread parked;
+
+    //Only accessed in loop thread
+    private int idleCount = 0;
+
+    WaiterImpl(int spins, int yields) {
+        GekCheck.checkArgument(spins >= 0, "spins must >= 0.");
+        GekCheck.checkArgument(yields >= 0, "yields must >= 0.");
+        this.spins = spins;
+        this.yields = yields;
+    }
+
+    @Override
+    public void idle(long maxParkNanos) {
+        if (signaled) {
+            signaled = false;
+            return;
+        }
+        if (idleCount < spins) {
+            idleCount++;
+            return;
+        }
+        if (idleCount - spins < yields) {
+            idleCount++;
+            Thread.yield();
+            return;
+        }
+        parked = Thread.currentThread();
+        //A signal after publishing the parked thread unparks it, and a signal before is seen by this check
+        if (!signaled) {
+            LockSupport.parkNanos(this, maxParkNanos);
+        }
+        parked = null;
+        signaled = false;
+    }
+
+    @Override
+    public void reset() {
+        idleCount = 0;
+    }
+
+    @Override
+    public void signal() {
+        //Kept signal has not been consumed, so the loop will poll again
+        if (signaled) {
+            return;
+        }
+        signaled = true;
+        Thread thread = parked;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package xyz.fsgek.common.base;
+
+import xyz.fsgek.annotations.Nullable;
+
+import java.time.Duration;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+final class WheelTimer implements GekTimer {
+
+    private static final AtomicInteger timerCounter = new AtomicInteger();
+
+    private static final int ST_INIT = 0;
+    private static final int ST_STARTED = 1;
+    private static final int ST_STOPPED = 2;
+
+    private final long tickNanos;
+    private final Bucket[] wheel;
+    private final int mask;
+    private final String threadName;
+    //New and cancelled timeouts are passed to the timer thread by these queues
+    private final Queue<TimeoutImpl> newTimeouts = new ConcurrentLinkedQueue<>();
+    private final Queue<TimeoutImpl> cancelledTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger state = new AtomicInteger(ST_INIT);
+    private final AtomicLong pending = new AtomicLong();
+    private volatile long startTime;
+    private @Nullable Thread thread;
+
+    //Only accessed in timer thread
+    private long tick = 0;
+
+    WheelTimer(Duration tick, int wheelSize, @Nullable String threadName) {
+        GekCheck.checkArgument(!tick.isNegative() && !tick.isZero(), "tick must > 0.");
+        GekCheck.checkArgument(wheelSize > 0 && wheelSize <= (1 << 30), "wheelSize must in (0, 2^30].");
+        this.tickNanos = Math.max(tick.toNanos(), TimeUnit.MILLISECONDS.toNanos(1));
+        int size = Integer.bitCount(wheelSize) == 1 ? wheelSize : Integer.highestOneBit(wheelSize) << 1;
+        this.wheel = new Bucket[size];
+        for (int i = 0; i < wheel.length; i++) {
+            wheel[i] = new Bucket();
+        }
+        this.mask = size - 1;
+        this.threadName = threadName != null ? threadName : "gek-wheel-timer-" + timerCounter.getAndIncrement();
+    }
+
+    @Override
+    public Timeout schedule(Duration delay, Runnable task) {
+        start();
+        long deadline = System.nanoTime() - startTime + Math.max(0, delay.toNanos());
+        TimeoutImpl timeout = new TimeoutImpl(task, deadline);
+        pending.incrementAndGet();
+        newTimeouts.add(timeout);
+        if (state.get() == ST_STOPPED && newTimeouts.remove(timeout)) {
+            pending.decrementAndGet();
+            throw new IllegalStateException("The timer has been stopped.");
+        }
+        return timeout;
+    }
+
+    @Override
+    public long pendingTasks() {
+        return pending.get();
+    }
+
+    @Override
+    public synchronized void stop() {
+        if (state.getAndSet(ST_STOPPED) == ST_STARTED && thread != null) {
+            LockSupport.unpark(thread);
+            if (Thread.currentThread() != thread) {
+                try {
+                    thread.join();
+                } catch (InterruptedException ignored) {
+                }
+            }
+        }
+        newTimeouts.clear();
+        cancelledTimeouts.clear();
+        pending.set(0);
+    }
+
+    private void start() {
+        int current = state.get();
+        if (current == ST_STARTED) {
+            return;
+        }
+        if (current == ST_STOPPED) {
+            throw new IllegalStateException("The timer has been stopped.");
+        }
+        synchronized (this) {
+            if (state.get() == ST_INIT) {
+                startTime = System.nanoTime();
+                //State must be set before the thread starts, or the loop of the thread may exit at once
+                state.set(ST_STARTED);
+                thread = GekThread.start(threadName, true, this::run);
+            }
+        }
+    }
+
+    private void run() {
+        while (state.get() == ST_STARTED) {
+            long deadline = tickNanos * (tick + 1);
+            long sleepNanos;
+            while ((sleepNanos = deadline - (System.nanoTime() - startTime)) > 0) {
+                if (state.get() != ST_STARTED) {
+                    return;
+                }
+                LockSupport.parkNanos(sleepNanos);
+            }
+            removeCancelled();
+            transferNew();
+            wheel[(int) (tick & mask)].expire(deadline);
+            tick++;
+        }
+    }
+
+    private void removeCancelled() {
+        while (true) {
+            TimeoutImpl timeout = cancelledTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.bucket != null) {
+                timeout.bucket.remove(timeout);
+            }
+        }
+    }
+
+    private void transferNew() {
+        //Limits the transferring in one tick
+        for (int i = 0; i < 100000; i++) {
+            TimeoutImpl timeout = newTimeouts.poll();
+            if (timeout == null) {
+                return;
+            }
+            if (timeout.state.get() != TimeoutImpl.ST_INIT) {
+                continue;
+            }
+            long ticks = timeout.deadline / tickNanos;
+            timeout.remainingRounds = (ticks - tick) / wheel.length;
+            //Expired tasks are put into current bucket
+            long targetTick = Math.max(ticks, tick);
+            wheel[(int) (targetTick & mask)].add(timeout);
+        }
+    }
+
+    private final class TimeoutImpl implements Timeout {
+
+        private static final int ST_INIT = 0;
+        private static final int ST_CANCELLED = 1;
+        private static final int ST_EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadline;
+        private final AtomicInteger state = new AtomicInteger(ST_INIT);
+
+        //Only accessed in timer thread
+        private long remainingRounds;
+        private @Nullable Bucket bucket;
+        private @Nullable TimeoutImpl prev;
+        private @Nullable TimeoutImpl next;
+
+        private TimeoutImpl(Runnable task, long deadline) {
+            this.task = task;
+            this.deadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!state.compareAndSet(ST_INIT, ST_CANCELLED)) {
+                return false;
+            }
+            pending.decrementAndGet();
+            //Removed from its bucket in the timer thread
+            cancelledTimeouts.add(this);
+            return true;
+        }
+
+        @Override
+        public boolean isCancelled() {
+            return state.get() == ST_CANCELLED;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state.get() == ST_EXPIRED;
+        }
+
+        private void expire() {
+            if (!state.compareAndSet(ST_INIT, ST_EXPIRED)) {
+                return;
+            }
+            pending.decrementAndGet();
+            try {
+                task.run();
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    // doubly-linked list of timeouts, only accessed in timer thread
+    private static final class Bucket {
+
+        private @Nullable TimeoutImpl head;
+        private @Nullable TimeoutImpl tail;
+
+        private void add(TimeoutImpl timeout) {
+            timeout.bucket = this;
+            if (head == null) {
+                head = tail = timeout;
+            } else {
+                tail.next = timeout;
+                timeout.prev = tail;
+                tail = timeout;
+            }
+        }
+
+        private void remove(TimeoutImpl timeout) {
+            TimeoutImpl next = timeout.next;
+            if (timeout.prev != null) {
+                timeout.prev.next = next;
+            }
+            if (timeout.next != null) {
+                timeout.next.prev = timeout.prev;
+            }
+            if (timeout == head) {
+                head = next;
+            }
+            if (timeout == tail) {
+                tail = timeout.prev;
+            }
+            timeout.prev = null;
+            timeout.next = null;
+            timeout.bucket = null;
+        }
+
+        private void expire(long deadline) {
+            TimeoutImpl timeout = head;
+            while (timeout != null) {
+                TimeoutImpl next = timeout.next;
+                if (timeout.remainingRounds <= 0 && timeout.deadline <= deadline) {
+                    remove(timeout);
+                    timeout.expire();
+                } else if (timeout.isCancelled()) {
+                    remove(timeout);
+                } else if (timeout.remainingRounds > 0) {
+                    timeout.remainingRounds--;
+                }
+                timeout = next;
+            }
+        }
+    }
+}
@@ -2,10 +2,13 @@ package xyz.fsgek.common.data;
 
 import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.common.base.GekCheck;
+import xyz.fsgek.common.io.GekIOException;
 
 import java.io.ByteArrayInputStream;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
 
 final class ArrayData implements GekData {
@@ -48,6 +51,40 @@ final class ArrayData implements GekData {
         return new ByteArrayInputStream(array, offset, length);
     }
 
+    @Override
+    public synchronized long write(OutputStream dest) {
+        try {
+            dest.write(array, offset, length);
+            return length;
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized long write(WritableByteChannel dest) {
+        ByteBuffer src = asBuffer();
+        try {
+            while (src.hasRemaining()) {
+                dest.write(src);
+            }
+            return length;
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public GekData slice(long offset, long length) {
+        GekCheck.checkRangeInBounds(offset, offset + length, 0, this.length);
+        return new ArrayData(array, this.offset + (int) offset, (int) length);
+    }
+
     @Override
     public boolean hasBackArray() {
         return true;
@@ -57,4 +94,8 @@ final class ArrayData implements GekData {
     public @Nullable byte[] backArray() {
         return array;
     }
+
+    ByteBuffer asBuffer() {
+        return ByteBuffer.wrap(array, offset, length);
+    }
 }
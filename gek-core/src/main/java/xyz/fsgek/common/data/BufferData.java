@@ -1,12 +1,15 @@
 package xyz.fsgek.common.data;
 
 import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekCheck;
 import xyz.fsgek.common.io.GekBuffer;
 import xyz.fsgek.common.io.GekIO;
-import xyz.fsgek.common.base.GekCheck;
+import xyz.fsgek.common.io.GekIOException;
 
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
 
 final class BufferData implements GekData {
 
@@ -50,6 +53,45 @@ final class BufferData implements GekData {
         return GekIO.toInputStream(buffer);
     }
 
+    @Override
+    public synchronized long write(OutputStream dest) {
+        if (!buffer.hasArray()) {
+            return Math.max(0, GekIO.readBytesTo(GekIO.toInputStream(buffer), dest));
+        }
+        int len = buffer.remaining();
+        try {
+            dest.write(buffer.array(), buffer.arrayOffset() + buffer.position(), len);
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+        buffer.position(buffer.position() + len);
+        return len;
+    }
+
+    @Override
+    public synchronized long write(WritableByteChannel dest) {
+        long len = buffer.remaining();
+        try {
+            while (buffer.hasRemaining()) {
+                dest.write(buffer);
+            }
+            return len;
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized long length() {
+        return buffer.remaining();
+    }
+
+    @Override
+    public synchronized GekData slice(long offset, long length) {
+        GekCheck.checkRangeInBounds(offset, offset + length, 0, buffer.remaining());
+        return new BufferData(GekBuffer.subView(buffer, buffer.position() + (int) offset, (int) length));
+    }
+
     @Override
     public boolean hasBackArray() {
         return false;
@@ -59,4 +101,8 @@ final class BufferData implements GekData {
     public @Nullable byte[] backArray() {
         return null;
     }
+
+    ByteBuffer buffer() {
+        return buffer;
+    }
 }
@@ -0,0 +1,147 @@
+package xyz.fsgek.common.data;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekCheck;
+import xyz.fsgek.common.io.GekIOException;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.SequenceInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+final class CompositeData implements GekData {
+
+    private final GekData[] parts;
+
+    CompositeData(GekData[] parts) {
+        this.parts = parts;
+    }
+
+    @Override
+    public synchronized byte[] toBytes() {
+        long length = length();
+        ByteArrayOutputStream out = length < 0 || length > Integer.MAX_VALUE ?
+            new ByteArrayOutputStream() : new ByteArrayOutputStream((int) length);
+        write(out);
+        return out.toByteArray();
+    }
+
+    @Override
+    public synchronized int write(byte[] dest, int offset, int length) {
+        GekCheck.checkRangeInBounds(offset, offset + length, 0, dest.length);
+        int count = 0;
+        for (GekData part : parts) {
+            if (count >= length) {
+                break;
+            }
+            int c = part.write(dest, offset + count, length - count);
+            if (c > 0) {
+                count += c;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized int write(ByteBuffer dest) {
+        int count = 0;
+        for (GekData part : parts) {
+            if (!dest.hasRemaining()) {
+                break;
+            }
+            int c = part.write(dest);
+            if (c > 0) {
+                count += c;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized InputStream toInputStream() {
+        List<InputStream> streams = new ArrayList<>(parts.length);
+        for (GekData part : parts) {
+            streams.add(part.toInputStream());
+        }
+        return new SequenceInputStream(Collections.enumeration(streams));
+    }
+
+    @Override
+    public synchronized long write(OutputStream dest) {
+        long count = 0;
+        for (GekData part : parts) {
+            long c = part.write(dest);
+            if (c > 0) {
+                count += c;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public synchronized long write(WritableByteChannel dest) {
+        if (!(dest instanceof GatheringByteChannel)) {
+            long count = 0;
+            for (GekData part : parts) {
+                count += part.write(dest);
+            }
+            return count;
+        }
+        GatheringByteChannel channel = (GatheringByteChannel) dest;
+        ByteBuffer[] buffers = new ByteBuffer[parts.length];
+        long remaining = 0;
+        for (int i = 0; i < parts.length; i++) {
+            buffers[i] = toBuffer(parts[i]);
+            remaining += buffers[i].remaining();
+        }
+        long count = 0;
+        try {
+            while (count < remaining) {
+                count += channel.write(buffers);
+            }
+            return count;
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    @Override
+    public synchronized long length() {
+        long length = 0;
+        for (GekData part : parts) {
+            long len = part.length();
+            if (len < 0) {
+                return -1;
+            }
+            length += len;
+        }
+        return length;
+    }
+
+    @Override
+    public boolean hasBackArray() {
+        return false;
+    }
+
+    @Override
+    public @Nullable byte[] backArray() {
+        return null;
+    }
+
+    private static ByteBuffer toBuffer(GekData data) {
+        if (data instanceof ArrayData) {
+            return ((ArrayData) data).asBuffer();
+        }
+        if (data instanceof BufferData) {
+            return ((BufferData) data).buffer();
+        }
+        byte[] bytes = data.toBytes();
+        return bytes == null ? ByteBuffer.allocate(0) : ByteBuffer.wrap(bytes);
+    }
+}
@@ -11,7 +11,11 @@ import xyz.fsgek.common.base.GekString;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.GatheringByteChannel;
+import java.nio.channels.WritableByteChannel;
 import java.nio.charset.Charset;
+import java.nio.file.Path;
 import java.util.function.Supplier;
 
 /**
@@ -91,6 +95,55 @@ public interface GekData {
         return new ArraySupplierData(supplier);
     }
 
+    /**
+     * Returns a spillable data of which data comes from given input stream, the temporary file will be created in
+     * default temporary-file directory.
+     * <p>
+     * This method is equivalent to {@link #spillable(InputStream, long, Path)}:
+     * <pre>
+     *     spillable(inputStream, memoryThreshold, null);
+     * </pre>
+     *
+     * @param inputStream     given input stream
+     * @param memoryThreshold max number of bytes kept in memory
+     * @return a spillable data of which data comes from given input stream
+     */
+    static GekSpillableData spillable(InputStream inputStream, long memoryThreshold) {
+        return spillable(inputStream, memoryThreshold, null);
+    }
+
+    /**
+     * Returns a spillable data of which data comes from given input stream.
+     * <p>
+     * This method reads all bytes of given input stream before returning (the stream will not be closed).
+     * The first {@code memoryThreshold} bytes are kept in memory, and the rest are written into a temporary file
+     * created in given temporary directory (or default temporary-file directory if it is null).
+     * The temporary file is only created if the stream is longer than the threshold,
+     * and it will be deleted by {@link GekSpillableData#close()}.
+     *
+     * @param inputStream     given input stream
+     * @param memoryThreshold max number of bytes kept in memory
+     * @param tempDir         given temporary directory, may be null
+     * @return a spillable data of which data comes from given input stream
+     */
+    static GekSpillableData spillable(InputStream inputStream, long memoryThreshold, @Nullable Path tempDir) {
+        return new SpillableData(inputStream, memoryThreshold, tempDir);
+    }
+
+    /**
+     * Returns a composite data which concatenates given data in order.
+     * <p>
+     * The returned data reads its parts in order for each method calling, and when it writes into a
+     * {@link GatheringByteChannel}, all parts are written by {@link GatheringByteChannel#write(ByteBuffer[])}
+     * (array and buffer parts are written without copying).
+     *
+     * @param data given data
+     * @return a composite data which concatenates given data in order
+     */
+    static GekData concat(GekData... data) {
+        return new CompositeData(data.clone());
+    }
+
     /**
      * Writes the data into a byte array and returns.
      *
@@ -154,6 +207,46 @@ public interface GekData {
         return GekIO.readBytesTo(toInputStream(), dest);
     }
 
+    /**
+     * Writes the data into dest channel, returns actual written count.
+     * This method blocks until all data is written.
+     *
+     * @param dest dest channel
+     * @return actual written count
+     */
+    default long write(WritableByteChannel dest) {
+        return write(Channels.newOutputStream(dest));
+    }
+
+    /**
+     * Returns length of this data in bytes, or -1 if the length is unknown before reading (such as data from a
+     * stream).
+     *
+     * @return length of this data in bytes, or -1 if the length is unknown
+     */
+    default long length() {
+        return -1;
+    }
+
+    /**
+     * Returns a slice of this data of specified length from specified offset.
+     * <p>
+     * For array and buffer data, the slice shares content with this data and no bytes are copied.
+     * For other data, this method reads all bytes of this data (by {@link #toBytes()}) and wraps the slice of them.
+     *
+     * @param offset specified offset
+     * @param length specified length
+     * @return a slice of this data
+     */
+    default GekData slice(long offset, long length) {
+        byte[] bytes = toBytes();
+        if (bytes == null) {
+            bytes = new byte[0];
+        }
+        GekCheck.checkRangeInBounds(offset, offset + length, 0, bytes.length);
+        return wrap(bytes, (int) offset, (int) length);
+    }
+
     /**
      * Returns string with specified charset of this data.
      *
@@ -0,0 +1,47 @@
+package xyz.fsgek.common.data;
+
+import xyz.fsgek.annotations.ThreadSafe;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.file.Path;
+
+/**
+ * {@link GekData} which holds all bytes read from a source stream, the first part of bytes are kept in memory
+ * and the rest are spilled into a temporary file. The data can be read repeatedly (such as calling
+ * {@link #toInputStream()} more than once) and randomly by {@link #read(long, byte[], int, int)},
+ * and the length is always known.
+ * <p>
+ * The temporary file will be deleted after calling {@link #close()}, and the data is not readable after closing.
+ *
+ * @author fredsuvn
+ * @see GekData#spillable(InputStream, long, Path)
+ */
+@ThreadSafe
+public interface GekSpillableData extends GekData, Closeable {
+
+    /**
+     * Reads bytes of specified length from specified position of this data into dest array from specified offset,
+     * returns actual read number, or -1 if the position reaches the end of data.
+     *
+     * @param position specified position of this data
+     * @param dest     dest array
+     * @param offset   specified offset of dest array
+     * @param length   specified length
+     * @return actual read number, or -1 if the position reaches the end of data
+     */
+    int read(long position, byte[] dest, int offset, int length);
+
+    /**
+     * Returns whether part of this data has been spilled into temporary file.
+     *
+     * @return whether part of this data has been spilled into temporary file
+     */
+    boolean isSpilled();
+
+    /**
+     * Releases memory and deletes temporary file of this data.
+     */
+    @Override
+    void close();
+}
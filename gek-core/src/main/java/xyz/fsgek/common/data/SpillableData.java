@@ -0,0 +1,342 @@
+package xyz.fsgek.common.data;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekCheck;
+import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.io.GekIOException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+final class SpillableData implements GekSpillableData {
+
+    private static final int CHUNK_SIZE = GekIO.IO_BUFFER_SIZE;
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final long memoryLength;
+    private final long fileLength;
+    private final @Nullable Path file;
+    private final @Nullable FileChannel channel;
+    private volatile boolean closed = false;
+
+    SpillableData(InputStream source, long memoryThreshold, @Nullable Path tempDir) {
+        GekCheck.checkArgument(memoryThreshold >= 0, "memoryThreshold must >= 0.");
+        Path file = null;
+        FileChannel channel = null;
+        try {
+            long memoryLength = 0;
+            boolean eof = false;
+            while (memoryLength < memoryThreshold) {
+                byte[] chunk = new byte[(int) Math.min(CHUNK_SIZE, memoryThreshold - memoryLength)];
+                int c = readFully(source, chunk);
+                if (c > 0) {
+                    // keeps length of each chunk same with its content
+                    chunks.add(c < chunk.length ? Arrays.copyOf(chunk, c) : chunk);
+                    memoryLength += c;
+                }
+                if (c < chunk.length) {
+                    eof = true;
+                    break;
+                }
+            }
+            this.memoryLength = memoryLength;
+            long fileLength = 0;
+            if (!eof) {
+                byte[] buffer = new byte[CHUNK_SIZE];
+                int c = readFully(source, buffer);
+                if (c > 0) {
+                    file = tempDir == null ?
+                        Files.createTempFile("gek-", ".spill") : Files.createTempFile(tempDir, "gek-", ".spill");
+                    channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+                    while (c > 0) {
+                        ByteBuffer src = ByteBuffer.wrap(buffer, 0, c);
+                        while (src.hasRemaining()) {
+                            channel.write(src);
+                        }
+                        fileLength += c;
+                        c = readFully(source, buffer);
+                    }
+                }
+            }
+            this.fileLength = fileLength;
+            this.file = file;
+            this.channel = channel;
+        } catch (Exception e) {
+            release(channel, file);
+            throw new GekIOException(e);
+        }
+    }
+
+    private static int readFully(InputStream source, byte[] dest) throws IOException {
+        int count = 0;
+        while (count < dest.length) {
+            int c = source.read(dest, count, dest.length - count);
+            if (c < 0) {
+                break;
+            }
+            count += c;
+        }
+        return count;
+    }
+
+    @Override
+    public int read(long position, byte[] dest, int offset, int length) {
+        GekCheck.checkRangeInBounds(offset, offset + length, 0, dest.length);
+        checkOpen();
+        long total = length();
+        if (position >= total) {
+            return -1;
+        }
+        int len = (int) Math.min(length, total - position);
+        int count = 0;
+        try {
+            while (count < len) {
+                long pos = position + count;
+                if (pos < memoryLength) {
+                    byte[] chunk = chunks.get((int) (pos / CHUNK_SIZE));
+                    int chunkOffset = (int) (pos % CHUNK_SIZE);
+                    int c = Math.min(len - count, chunk.length - chunkOffset);
+                    System.arraycopy(chunk, chunkOffset, dest, offset + count, c);
+                    count += c;
+                } else {
+                    int c = channel.read(ByteBuffer.wrap(dest, offset + count, len - count), pos - memoryLength);
+                    if (c < 0) {
+                        break;
+                    }
+                    count += c;
+                }
+            }
+            return count;
+        } catch (Exception e) {
+            throw readFailed(e);
+        }
+    }
+
+    @Override
+    public byte[] toBytes() {
+        long length = length();
+        if (length > Integer.MAX_VALUE) {
+            throw new GekIOException("Data is too large to be an array: " + length + ".");
+        }
+        byte[] bytes = new byte[(int) length];
+        read(0, bytes, 0, bytes.length);
+        return bytes;
+    }
+
+    @Override
+    public int write(byte[] dest, int offset, int length) {
+        return Math.max(0, read(0, dest, offset, length));
+    }
+
+    @Override
+    public int write(ByteBuffer dest) {
+        checkOpen();
+        int len = (int) Math.min(dest.remaining(), length());
+        if (dest.hasArray()) {
+            int c = write(dest.array(), dest.arrayOffset() + dest.position(), len);
+            dest.position(dest.position() + c);
+            return c;
+        }
+        int count = 0;
+        int oldLimit = dest.limit();
+        try {
+            for (byte[] chunk : chunks) {
+                if (count >= len) {
+                    return count;
+                }
+                int c = Math.min(len - count, chunk.length);
+                dest.put(chunk, 0, c);
+                count += c;
+            }
+            if (count >= len) {
+                return count;
+            }
+            dest.limit(dest.position() + len - count);
+            while (count < len) {
+                int c = channel.read(dest, count - memoryLength);
+                if (c < 0) {
+                    break;
+                }
+                count += c;
+            }
+            return count;
+        } catch (Exception e) {
+            throw readFailed(e);
+        } finally {
+            dest.limit(oldLimit);
+        }
+    }
+
+    @Override
+    public InputStream toInputStream() {
+        checkOpen();
+        return new SpillableInputStream();
+    }
+
+    @Override
+    public long write(OutputStream dest) {
+        checkOpen();
+        try {
+            for (byte[] chunk : chunks) {
+                dest.write(chunk);
+            }
+            if (channel != null) {
+                transferFile(Channels.newChannel(dest));
+            }
+            return length();
+        } catch (Exception e) {
+            throw readFailed(e);
+        }
+    }
+
+    @Override
+    public long write(WritableByteChannel dest) {
+        checkOpen();
+        try {
+            for (byte[] chunk : chunks) {
+                ByteBuffer src = ByteBuffer.wrap(chunk);
+                while (src.hasRemaining()) {
+                    dest.write(src);
+                }
+            }
+            if (channel != null) {
+                transferFile(dest);
+            }
+            return length();
+        } catch (Exception e) {
+            throw readFailed(e);
+        }
+    }
+
+    private void transferFile(WritableByteChannel dest) throws IOException {
+        long pos = 0;
+        while (pos < fileLength) {
+            pos += channel.transferTo(pos, fileLength - pos, dest);
+        }
+    }
+
+    @Override
+    public long length() {
+        return memoryLength + fileLength;
+    }
+
+    @Override
+    public boolean isSpilled() {
+        return file != null;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        chunks.clear();
+        release(channel, file);
+    }
+
+    private static void release(@Nullable FileChannel channel, @Nullable Path file) {
+        try {
+            if (channel != null) {
+                channel.close();
+            }
+            if (file != null) {
+                Files.deleteIfExists(file);
+            }
+        } catch (IOException e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    @Override
+    public boolean hasBackArray() {
+        return false;
+    }
+
+    @Override
+    public @Nullable byte[] backArray() {
+        return null;
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new GekIOException("The data has been closed.");
+        }
+    }
+
+    // reading is not locked against closing, so a failure of reading is reported as closed if the data has been
+    // closed concurrently (such as chunks have been cleared or the file has been closed)
+    private GekIOException readFailed(Exception cause) {
+        if (closed) {
+            return new GekIOException("The data has been closed.", cause);
+        }
+        return new GekIOException(cause);
+    }
+
+    private final class SpillableInputStream extends InputStream {
+
+        private long pos = 0;
+        private long mark = 0;
+
+        @Override
+        public synchronized int read() {
+            byte[] b = new byte[1];
+            int c = SpillableData.this.read(pos, b, 0, 1);
+            if (c <= 0) {
+                return -1;
+            }
+            pos++;
+            return b[0] & 0xff;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int c = SpillableData.this.read(pos, b, off, len);
+            if (c > 0) {
+                pos += c;
+            }
+            return c;
+        }
+
+        @Override
+        public synchronized long skip(long n) {
+            long c = Math.max(0, Math.min(n, length() - pos));
+            pos += c;
+            return c;
+        }
+
+        @Override
+        public synchronized int available() {
+            return (int) Math.min(Integer.MAX_VALUE, Math.max(0, length() - pos));
+        }
+
+        @Override
+        public boolean markSupported() {
+            return true;
+        }
+
+        @Override
+        public synchronized void mark(int readlimit) {
+            mark = pos;
+        }
+
+        @Override
+        public synchronized void reset() {
+            pos = mark;
+        }
+    }
+}
@@ -1,9 +1,16 @@
 package xyz.fsgek.common.data.protobuf;
 
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import xyz.fsgek.common.base.Gek;
 import xyz.fsgek.common.bean.GekBeanCopier;
 import xyz.fsgek.common.bean.GekBeanResolver;
 import xyz.fsgek.common.convert.GekConverter;
 
+import java.lang.reflect.Method;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
 /**
  * Utilities for <a href="https://github.com/protocolbuffers/protobuf">Protocol Buffers</a>.
  * This class depends on protobuf libs in the runtime.
@@ -16,6 +23,7 @@ public class GekProtobuf {
         .insertFirstMiddleHandler(ByteStringConvertHandler.INSTANCE)
         .withSuffixHandler(ProtobufBeanConvertHandler.INSTANCE);
     private static final GekBeanCopier COPIER = ProtobufBeanConvertHandler.INSTANCE.getCopier();
+    private static final Map<Class<?>, Parser<?>> PARSERS = new ConcurrentHashMap<>();
 
     /**
      * Returns bean resolver supports protobuf based on {@link GekBeanResolver#defaultResolver()}.
@@ -43,4 +51,24 @@ public class GekProtobuf {
     public static GekBeanCopier protobufBeanCopier() {
         return COPIER;
     }
+
+    /**
+     * Returns parser of given message type, the parser is cached for each type.
+     *
+     * @param messageType given message type
+     * @param <T>         message type
+     * @return parser of given message type
+     * @throws IllegalArgumentException if given type is not a generated message type
+     */
+    public static <T extends Message> Parser<T> getParser(Class<T> messageType) {
+        return Gek.as(PARSERS.computeIfAbsent(messageType, t -> {
+            try {
+                Method getDefaultInstance = t.getMethod("getDefaultInstance");
+                Message defaultInstance = (Message) getDefaultInstance.invoke(null);
+                return defaultInstance.getParserForType();
+            } catch (Exception e) {
+                throw new IllegalArgumentException("Not a generated message type: " + t.getName() + ".", e);
+            }
+        }));
+    }
 }
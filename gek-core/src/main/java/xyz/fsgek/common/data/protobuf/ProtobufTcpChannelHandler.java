@@ -0,0 +1,134 @@
+package xyz.fsgek.common.data.protobuf;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Message;
+import com.google.protobuf.Parser;
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.annotations.ThreadSafe;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.tcp.GekTcpChannel;
+import xyz.fsgek.common.net.tcp.GekTcpChannelHandler;
+import xyz.fsgek.common.net.tcp.handlers.LengthFieldTcpChannelHandler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Codec handler of <a href="https://github.com/protocolbuffers/protobuf">Protocol Buffers</a> messages over TCP.
+ * This handler depends on protobuf libs in the runtime.
+ * <p>
+ * As a decoder, this handler should be placed after a framing handler, such as {@link LengthFieldTcpChannelHandler}
+ * with {@link LengthFieldTcpChannelHandler#VARINT} length field, which is protobuf's length-delimited encoding. Each
+ * frame of passed {@link List}&lt;{@link ByteBuffer}&gt; is parsed by {@link CodedInputStream#newInstance(ByteBuffer)}
+ * without copying frame into a byte array if the frame is a direct buffer (protobuf copies readonly heap buffers), so
+ * the channel buffers should be direct for zero-copy parsing: set the buffer pool of the server or client to a direct
+ * pool, such as {@link GekBufferPool#newPool(boolean) GekBufferPool.newPool(true)}. The returned object of
+ * {@link #onMessage(GekTcpChannel, List)} is {@link List}&lt;T&gt; of parsed messages. Bytes fields of parsed messages
+ * are copied, so the messages are still valid after the frames are released.
+ * <p>
+ * As an encoder, {@link #send(GekTcpChannel, Message)} writes the length-delimited message (same as
+ * {@link Message#writeDelimitedTo(java.io.OutputStream)}) by {@link CodedOutputStream} into a buffer from the buffer
+ * pool, and passes the buffer to {@link GekTcpChannel#send(ByteBuffer, GekBufferPool)}: a NIO channel writes the
+ * buffer without copying and releases it into the pool after it has been written.
+ * <p>
+ * The parser of message type is cached by {@link GekProtobuf#getParser(Class)}.
+ * This handler is stateless and can be shared by channels.
+ *
+ * @param <T> message type
+ * @author fredsuvn
+ */
+@ThreadSafe
+public class ProtobufTcpChannelHandler<T extends Message> implements GekTcpChannelHandler<List<ByteBuffer>> {
+
+    private final Parser<T> parser;
+    private final GekBufferPool bufferPool;
+
+    /**
+     * Constructs with given message type and a direct buffer pool of {@link GekBufferPool#newPool(boolean)}, so the
+     * encoded buffers can be written to sockets without copying.
+     *
+     * @param messageType given message type
+     */
+    public ProtobufTcpChannelHandler(Class<T> messageType) {
+        this(messageType, GekBufferPool.newPool(true));
+    }
+
+    /**
+     * Constructs with given message type and buffer pool for encoding.
+     *
+     * @param messageType given message type
+     * @param bufferPool  buffer pool for encoding
+     */
+    public ProtobufTcpChannelHandler(Class<T> messageType, GekBufferPool bufferPool) {
+        this.parser = GekProtobuf.getParser(messageType);
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public @Nullable Object onMessage(GekTcpChannel channel, List<ByteBuffer> message) {
+        List<T> result = new ArrayList<>(message.size());
+        for (ByteBuffer frame : message) {
+            result.add(decode(frame));
+        }
+        return result;
+    }
+
+    /**
+     * Decodes given frame into a message. The frame is read to its limit.
+     *
+     * @param frame given frame
+     * @return decoded message
+     */
+    public T decode(ByteBuffer frame) {
+        try {
+            T result = parser.parseFrom(CodedInputStream.newInstance(frame));
+            frame.position(frame.limit());
+            return result;
+        } catch (InvalidProtocolBufferException e) {
+            throw new GekNetException(e);
+        }
+    }
+
+    /**
+     * Sends given message in length-delimited encoding.
+     *
+     * @param channel channel to send
+     * @param message given message
+     */
+    public void send(GekTcpChannel channel, Message message) {
+        channel.send(encode(message), bufferPool);
+    }
+
+    /**
+     * Sends given message in length-delimited encoding and flushes immediately.
+     *
+     * @param channel channel to send
+     * @param message given message
+     * @see #send(GekTcpChannel, Message)
+     */
+    public void sendAndFlush(GekTcpChannel channel, Message message) {
+        send(channel, message);
+        channel.flush();
+    }
+
+    private ByteBuffer encode(Message message) {
+        int size = message.getSerializedSize();
+        ByteBuffer buffer = bufferPool.allocate(CodedOutputStream.computeUInt32SizeNoTag(size) + size);
+        try {
+            CodedOutputStream output = CodedOutputStream.newInstance(buffer);
+            output.writeUInt32NoTag(size);
+            message.writeTo(output);
+            output.flush();
+        } catch (IOException e) {
+            bufferPool.release(buffer);
+            throw new GekNetException(e);
+        }
+        buffer.flip();
+        return buffer;
+    }
+}
@@ -0,0 +1,87 @@
+package xyz.fsgek.common.io;
+
+import xyz.fsgek.common.base.GekCheck;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class BufferPoolImpl implements GekBufferPool {
+
+    static final GekBufferPool UNPOOLED_HEAP = new BufferPoolImpl(false, 0, 0);
+    static final GekBufferPool UNPOOLED_DIRECT = new BufferPoolImpl(true, 0, 0);
+
+    private final boolean direct;
+    private final int maxPooledSize;
+    private final int maxBuffersPerSize;
+    private final SizeClass[] sizeClasses;
+
+    BufferPoolImpl(boolean direct, int maxPooledSize, int maxBuffersPerSize) {
+        GekCheck.checkArgument(maxPooledSize >= 0, "maxPooledSize must >= 0.");
+        GekCheck.checkArgument(maxBuffersPerSize >= 0, "maxBuffersPerSize must >= 0.");
+        this.direct = direct;
+        this.maxPooledSize = maxBuffersPerSize == 0 ? 0 : maxPooledSize;
+        this.maxBuffersPerSize = maxBuffersPerSize;
+        //Size class i holds buffers of capacity 2^i
+        this.sizeClasses = new SizeClass[this.maxPooledSize == 0 ? 0 : sizeClassIndex(this.maxPooledSize) + 1];
+        for (int i = 0; i < sizeClasses.length; i++) {
+            sizeClasses[i] = new SizeClass();
+        }
+    }
+
+    private static int sizeClassIndex(int capacity) {
+        return capacity <= 1 ? 0 : 32 - Integer.numberOfLeadingZeros(capacity - 1);
+    }
+
+    @Override
+    public boolean isDirect() {
+        return direct;
+    }
+
+    @Override
+    public ByteBuffer allocate(int capacity) {
+        GekCheck.checkArgument(capacity >= 0, "capacity must >= 0.");
+        if (capacity > maxPooledSize || sizeClasses.length == 0) {
+            return newBuffer(capacity);
+        }
+        int index = sizeClassIndex(capacity);
+        SizeClass sizeClass = sizeClasses[index];
+        ByteBuffer buffer = sizeClass.buffers.poll();
+        if (buffer == null) {
+            buffer = newBuffer(1 << index);
+        } else {
+            sizeClass.count.decrementAndGet();
+        }
+        buffer.limit(capacity);
+        return buffer;
+    }
+
+    @Override
+    public void release(ByteBuffer buffer) {
+        int capacity = buffer.capacity();
+        if (Integer.bitCount(capacity) != 1 || buffer.isDirect() != direct || buffer.isReadOnly()) {
+            return;
+        }
+        int index = sizeClassIndex(capacity);
+        if (index >= sizeClasses.length) {
+            return;
+        }
+        SizeClass sizeClass = sizeClasses[index];
+        if (sizeClass.count.incrementAndGet() > maxBuffersPerSize) {
+            sizeClass.count.decrementAndGet();
+            return;
+        }
+        buffer.clear();
+        sizeClass.buffers.add(buffer);
+    }
+
+    private ByteBuffer newBuffer(int capacity) {
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+
+    private static final class SizeClass {
+        private final Queue<ByteBuffer> buffers = new ConcurrentLinkedQueue<>();
+        private final AtomicInteger count = new AtomicInteger();
+    }
+}
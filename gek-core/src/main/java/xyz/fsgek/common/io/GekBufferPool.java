@@ -0,0 +1,85 @@
+package xyz.fsgek.common.io;
+
+import xyz.fsgek.annotations.ThreadSafe;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Pool of {@link ByteBuffer}, to reuse buffers (especially direct buffers which are expensive to allocate) instead of
+ * allocating new ones for each operation.
+ * <p>
+ * Buffers are pooled in size classes of power of 2: a buffer from {@link #allocate(int)} has a capacity of the
+ * smallest power of 2 not less than required capacity, its position is 0 and limit is the required capacity.
+ * A buffer should be passed to {@link #release(ByteBuffer)} after using, and should not be used after released.
+ * Buffers larger than max pooled size are allocated directly and dropped when released.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekBufferPool {
+
+    /**
+     * Default max pooled size of buffer: 4M.
+     */
+    int DEFAULT_MAX_POOLED_SIZE = 4 * 1024 * 1024;
+
+    /**
+     * Default max number of pooled buffers of each size class: 64.
+     */
+    int DEFAULT_MAX_BUFFERS_PER_SIZE = 64;
+
+    /**
+     * Returns a new pool with {@link #DEFAULT_MAX_POOLED_SIZE} and {@link #DEFAULT_MAX_BUFFERS_PER_SIZE}.
+     *
+     * @param direct whether the pool allocates direct buffers
+     * @return a new pool
+     */
+    static GekBufferPool newPool(boolean direct) {
+        return newPool(direct, DEFAULT_MAX_POOLED_SIZE, DEFAULT_MAX_BUFFERS_PER_SIZE);
+    }
+
+    /**
+     * Returns a new pool.
+     *
+     * @param direct            whether the pool allocates direct buffers
+     * @param maxPooledSize     max size of pooled buffer
+     * @param maxBuffersPerSize max number of pooled buffers of each size class
+     * @return a new pool
+     */
+    static GekBufferPool newPool(boolean direct, int maxPooledSize, int maxBuffersPerSize) {
+        return new BufferPoolImpl(direct, maxPooledSize, maxBuffersPerSize);
+    }
+
+    /**
+     * Returns a pool which never pools: each buffer is allocated with the required capacity, and released buffers are
+     * dropped.
+     *
+     * @param direct whether the pool allocates direct buffers
+     * @return a pool which never pools
+     */
+    static GekBufferPool unpooled(boolean direct) {
+        return direct ? BufferPoolImpl.UNPOOLED_DIRECT : BufferPoolImpl.UNPOOLED_HEAP;
+    }
+
+    /**
+     * Returns whether this pool allocates direct buffers.
+     *
+     * @return whether this pool allocates direct buffers
+     */
+    boolean isDirect();
+
+    /**
+     * Returns a buffer of which position is 0 and limit is required capacity.
+     *
+     * @param capacity required capacity
+     * @return a buffer of which position is 0 and limit is required capacity
+     */
+    ByteBuffer allocate(int capacity);
+
+    /**
+     * Releases given buffer into this pool.
+     *
+     * @param buffer given buffer
+     */
+    void release(ByteBuffer buffer);
+}
@@ -7,10 +7,17 @@ import xyz.fsgek.common.base.GekCheck;
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.MappedByteBuffer;
 import java.nio.channels.FileChannel;
 import java.nio.charset.Charset;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
 /**
  * Input/Output utilities.
@@ -24,6 +31,11 @@ public class GekIO {
      */
     public static final int IO_BUFFER_SIZE = 1024 * 8;
 
+    /**
+     * Default max size of each mapped region: 1024 * 1024 * 1024 = 1 GB.
+     */
+    public static final int MAPPED_REGION_SIZE = 1024 * 1024 * 1024;
+
     /**
      * Reads all bytes from given input stream.
      * Return null if no data read out and reach to the end of stream.
@@ -839,6 +851,150 @@ public class GekIO {
         }
     }
 
+    /**
+     * Maps all bytes of given file of path into memory as read-only regions,
+     * each region's size is at most {@link #MAPPED_REGION_SIZE}.
+     *
+     * @param path given file of path
+     * @return mapped regions
+     * @see GekMappedRegions
+     */
+    public static GekMappedRegions map(Path path) {
+        return map(path, 0, -1);
+    }
+
+    /**
+     * Maps given length bytes of given file of path from offset position into memory as read-only regions,
+     * the given length may be set to -1 to map to end of file.
+     * Each region's size is at most {@link #MAPPED_REGION_SIZE}.
+     *
+     * @param path   given file of path
+     * @param offset offset position
+     * @param length given length, maybe -1 to map to end of file
+     * @return mapped regions
+     * @see GekMappedRegions
+     */
+    public static GekMappedRegions map(Path path, long offset, long length) {
+        return map(path, offset, length, MAPPED_REGION_SIZE);
+    }
+
+    /**
+     * Maps given length bytes of given file of path from offset position into memory as read-only regions,
+     * the given length may be set to -1 to map to end of file.
+     * Each region's size is at most given region size.
+     * <p>
+     * The file is only opened during mapping, the returned regions are still valid after this method returns,
+     * and they will be unmapped when they are garbage-collected.
+     *
+     * @param path       given file of path
+     * @param offset     offset position
+     * @param length     given length, maybe -1 to map to end of file
+     * @param regionSize given region size, must &gt; 0
+     * @return mapped regions
+     * @see GekMappedRegions
+     */
+    public static GekMappedRegions map(Path path, long offset, long length, int regionSize) {
+        GekCheck.checkArgument(regionSize > 0, "regionSize must > 0.");
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            GekCheck.checkArgument(offset >= 0 && offset <= fileSize, "offset out of file bounds: " + offset);
+            long actualLength = length < 0 ? fileSize - offset : Math.min(length, fileSize - offset);
+            int count = (int) ((actualLength + regionSize - 1) / regionSize);
+            MappedByteBuffer[] regions = new MappedByteBuffer[count];
+            for (int i = 0; i < count; i++) {
+                long start = (long) i * regionSize;
+                long size = Math.min(regionSize, actualLength - start);
+                regions[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + start, size);
+            }
+            return new MappedRegionsImpl(regions, offset, actualLength, regionSize);
+        } catch (GekIOException | IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    /**
+     * Splits given file of path into records by given delimiter, and processes the records concurrently with given
+     * handler on {@link ForkJoinPool#commonPool()}. This method blocks until all records are processed.
+     *
+     * @param path        given file of path
+     * @param delimiter   given delimiter
+     * @param parallelism given parallelism, must &gt; 0
+     * @param handler     given handler, must be thread-safe if parallelism &gt; 1
+     * @see #parallelRecords(Path, byte, int, Executor, Consumer)
+     */
+    public static void parallelRecords(
+        Path path, byte delimiter, int parallelism, Consumer<? super ByteBuffer> handler) {
+        parallelRecords(path, delimiter, parallelism, ForkJoinPool.commonPool(), handler);
+    }
+
+    /**
+     * Splits given file of path into records by given delimiter, and processes the records concurrently with given
+     * handler on given executor. This method blocks until all records are processed.
+     * <p>
+     * The file is split into about given parallelism byte ranges (each range is at most
+     * {@link #MAPPED_REGION_SIZE}), start of each range is aligned to next record, then each range is mapped into
+     * memory and processed by one task of the executor. Records of one range are passed in order, but records of
+     * different ranges are passed concurrently.
+     * <p>
+     * Each record passed to the handler is a read-only slice of mapped memory, excluding the delimiter.
+     * The last record is passed even if it doesn't end with the delimiter.
+     * If the handler throws an exception, remaining tasks are cancelled and the exception will be thrown from this
+     * method (wrapped in {@link GekIOException} if it is a checked exception).
+     *
+     * @param path        given file of path
+     * @param delimiter   given delimiter
+     * @param parallelism given parallelism, must &gt; 0
+     * @param executor    given executor
+     * @param handler     given handler, must be thread-safe if parallelism &gt; 1
+     */
+    public static void parallelRecords(
+        Path path, byte delimiter, int parallelism, Executor executor, Consumer<? super ByteBuffer> handler) {
+        ParallelRecords.forEach(path, delimiter, parallelism, executor, handler);
+    }
+
+    /**
+     * Splits given file of path into records by given delimiter, and maps the records concurrently with given mapper
+     * on {@link ForkJoinPool#commonPool()}. The results are returned in order of records in the file.
+     * This method blocks until all records are processed.
+     *
+     * @param path        given file of path
+     * @param delimiter   given delimiter
+     * @param parallelism given parallelism, must &gt; 0
+     * @param mapper      given mapper, must be thread-safe if parallelism &gt; 1
+     * @param <T>         type of result
+     * @return results in order of records in the file
+     * @see #parallelMapRecords(Path, byte, int, Executor, Function)
+     */
+    public static <T> List<T> parallelMapRecords(
+        Path path, byte delimiter, int parallelism, Function<? super ByteBuffer, ? extends T> mapper) {
+        return parallelMapRecords(path, delimiter, parallelism, ForkJoinPool.commonPool(), mapper);
+    }
+
+    /**
+     * Splits given file of path into records by given delimiter, and maps the records concurrently with given mapper
+     * on given executor. The results are returned in order of records in the file.
+     * This method blocks until all records are processed.
+     * <p>
+     * This method splits and passes records in the same way as
+     * {@link #parallelRecords(Path, byte, int, Executor, Consumer)}.
+     *
+     * @param path        given file of path
+     * @param delimiter   given delimiter
+     * @param parallelism given parallelism, must &gt; 0
+     * @param executor    given executor
+     * @param mapper      given mapper, must be thread-safe if parallelism &gt; 1
+     * @param <T>         type of result
+     * @return results in order of records in the file
+     */
+    public static <T> List<T> parallelMapRecords(
+        Path path, byte delimiter, int parallelism, Executor executor,
+        Function<? super ByteBuffer, ? extends T> mapper
+    ) {
+        return ParallelRecords.map(path, delimiter, parallelism, executor, mapper);
+    }
+
     /**
      * Using {@link RandomAccessFile} to write  bytes into given file of path.
      *
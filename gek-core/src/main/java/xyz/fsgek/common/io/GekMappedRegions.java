@@ -0,0 +1,102 @@
+package xyz.fsgek.common.io;
+
+import xyz.fsgek.annotations.ThreadSafe;
+
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Represents a range of file which is mapped into memory by {@link FileChannel#map(FileChannel.MapMode, long, long)}.
+ * Because a mapped buffer is limited in {@link Integer#MAX_VALUE}, the range will be split into a list of read-only
+ * {@link MappedByteBuffer} regions, each region has a max size (1 GB by default), and the last region may be smaller.
+ * <p>
+ * All index arguments and returned index of this interface start from the start of mapped range, <b>not</b> the file.
+ * The data is paged in by the operating system lazily, so the heap is almost not used even for huge files.
+ * <p>
+ * Note methods of this interface never change position or limit of the regions,
+ * but the regions from {@link #getRegion(int)} and {@link #iterator()} are shared.
+ *
+ * @author fredsuvn
+ * @see GekIO#map(Path, long, long)
+ */
+@ThreadSafe
+public interface GekMappedRegions extends Iterable<MappedByteBuffer> {
+
+    /**
+     * Returns start offset of mapped range in the file.
+     *
+     * @return start offset of mapped range in the file
+     */
+    long offset();
+
+    /**
+     * Returns length of mapped range.
+     *
+     * @return length of mapped range
+     */
+    long length();
+
+    /**
+     * Returns max size of each region.
+     *
+     * @return max size of each region
+     */
+    int regionSize();
+
+    /**
+     * Returns number of regions.
+     *
+     * @return number of regions
+     */
+    int regionCount();
+
+    /**
+     * Returns region at given index.
+     *
+     * @param index given index
+     * @return region at given index
+     */
+    MappedByteBuffer getRegion(int index);
+
+    /**
+     * Returns byte at given index of mapped range.
+     *
+     * @param index given index
+     * @return byte at given index
+     */
+    byte get(long index);
+
+    /**
+     * Performs given action for each region in order, the long argument of action is start index of the region.
+     *
+     * @param action given action
+     */
+    void forEachRegion(ObjLongConsumer<? super MappedByteBuffer> action);
+
+    /**
+     * Returns index of first occurrence of given byte in mapped range, or -1 if not found.
+     *
+     * @param b given byte
+     * @return index of first occurrence of given byte, or -1 if not found
+     */
+    default long indexOf(byte b) {
+        return indexOf(b, 0);
+    }
+
+    /**
+     * Returns index of first occurrence of given byte in mapped range, searching starts at given from index.
+     * Returns -1 if not found.
+     *
+     * @param b         given byte
+     * @param fromIndex given from index
+     * @return index of first occurrence of given byte, or -1 if not found
+     */
+    long indexOf(byte b, long fromIndex);
+
+    /**
+     * Loads content of all regions into physical memory by {@link MappedByteBuffer#load()}.
+     */
+    void load();
+}
@@ -0,0 +1,186 @@
+package xyz.fsgek.common.io;
+
+import xyz.fsgek.common.base.GekChars;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+/**
+ * Cursor-style reader to read records separated by a delimiter byte from a source, such as lines of a text.
+ * <p>
+ * The reader refills one reusable buffer from its source, and current record is a view of that buffer.
+ * Calling {@link #advance()} moves the cursor to next record, after that the views of previous record are invalid.
+ * No object is created for each record unless {@link #recordString()} or {@link #recordString(Charset)} is called,
+ * or a record is larger than the buffer (the buffer will be enlarged to hold the record).
+ * <p>
+ * Typical usage:
+ * <pre>
+ *     try (GekRecordReader reader = GekRecordReader.lines(in)) {
+ *         while (reader.advance()) {
+ *             ByteBuffer record = reader.record();
+ *             ...
+ *         }
+ *     }
+ * </pre>
+ * This interface is not thread-safe.
+ *
+ * @author fredsuvn
+ */
+public interface GekRecordReader extends Closeable {
+
+    /**
+     * Returns a new record reader reading records separated by given delimiter from given input stream,
+     * with {@link GekIO#IO_BUFFER_SIZE} as initial buffer size.
+     *
+     * @param in        given input stream
+     * @param delimiter given delimiter
+     * @return a new record reader
+     */
+    static GekRecordReader from(InputStream in, byte delimiter) {
+        return from(in, delimiter, GekIO.IO_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a new record reader reading records separated by given delimiter from given input stream,
+     * with given initial buffer size.
+     *
+     * @param in         given input stream
+     * @param delimiter  given delimiter
+     * @param bufferSize given initial buffer size
+     * @return a new record reader
+     */
+    static GekRecordReader from(InputStream in, byte delimiter, int bufferSize) {
+        return new RecordReaderImpl(in, delimiter, false, bufferSize);
+    }
+
+    /**
+     * Returns a new record reader reading records separated by given delimiter from given channel,
+     * with {@link GekIO#IO_BUFFER_SIZE} as initial buffer size.
+     *
+     * @param channel   given channel
+     * @param delimiter given delimiter
+     * @return a new record reader
+     */
+    static GekRecordReader from(ReadableByteChannel channel, byte delimiter) {
+        return from(channel, delimiter, GekIO.IO_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a new record reader reading records separated by given delimiter from given channel,
+     * with given initial buffer size.
+     *
+     * @param channel    given channel
+     * @param delimiter  given delimiter
+     * @param bufferSize given initial buffer size
+     * @return a new record reader
+     */
+    static GekRecordReader from(ReadableByteChannel channel, byte delimiter, int bufferSize) {
+        return new RecordReaderImpl(channel, delimiter, false, bufferSize);
+    }
+
+    /**
+     * Returns a new record reader reading records separated by given delimiter from remaining content of given buffer.
+     * The records are views of given buffer, and the position and limit of given buffer will not be changed.
+     *
+     * @param buffer    given buffer
+     * @param delimiter given delimiter
+     * @return a new record reader
+     */
+    static GekRecordReader from(ByteBuffer buffer, byte delimiter) {
+        return new RecordReaderImpl(buffer, delimiter, false);
+    }
+
+    /**
+     * Returns a new record reader reading lines from given input stream.
+     * Lines are separated by {@code '\n'}, and a {@code '\r'} before the {@code '\n'} is excluded from the line.
+     *
+     * @param in given input stream
+     * @return a new record reader reading lines
+     */
+    static GekRecordReader lines(InputStream in) {
+        return new RecordReaderImpl(in, (byte) '\n', true, GekIO.IO_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a new record reader reading lines from given channel.
+     * Lines are separated by {@code '\n'}, and a {@code '\r'} before the {@code '\n'} is excluded from the line.
+     *
+     * @param channel given channel
+     * @return a new record reader reading lines
+     */
+    static GekRecordReader lines(ReadableByteChannel channel) {
+        return new RecordReaderImpl(channel, (byte) '\n', true, GekIO.IO_BUFFER_SIZE);
+    }
+
+    /**
+     * Returns a new record reader reading lines from remaining content of given buffer.
+     * Lines are separated by {@code '\n'}, and a {@code '\r'} before the {@code '\n'} is excluded from the line.
+     * The lines are views of given buffer, and the position and limit of given buffer will not be changed.
+     *
+     * @param buffer given buffer
+     * @return a new record reader reading lines
+     */
+    static GekRecordReader lines(ByteBuffer buffer) {
+        return new RecordReaderImpl(buffer, (byte) '\n', true);
+    }
+
+    /**
+     * Moves the cursor to next record, returns false if there is no more record.
+     * The last record is available even if it doesn't end with the delimiter.
+     *
+     * @return whether next record is available
+     */
+    boolean advance();
+
+    /**
+     * Returns a read-only view of current record, excluding the delimiter.
+     * The position and limit of returned buffer are set to bounds of current record in the underlying buffer
+     * (so the position may not be 0), and the returned buffer is reused between records.
+     * It is valid until next {@link #advance()}.
+     *
+     * @return a read-only view of current record
+     */
+    ByteBuffer record();
+
+    /**
+     * Returns length of current record in bytes.
+     *
+     * @return length of current record in bytes
+     */
+    int recordLength();
+
+    /**
+     * Returns a char sequence view of current record, each byte is mapped to one char as ISO-8859-1
+     * (which is same as ASCII for ASCII content). The returned char sequence is reused between records,
+     * and it is valid until next {@link #advance()}.
+     *
+     * @return a char sequence view of current record
+     */
+    CharSequence recordChars();
+
+    /**
+     * Decodes current record to string with {@link GekChars#defaultCharset()}.
+     *
+     * @return current record as string
+     */
+    default String recordString() {
+        return recordString(GekChars.defaultCharset());
+    }
+
+    /**
+     * Decodes current record to string with given charset.
+     *
+     * @param charset given charset
+     * @return current record as string
+     */
+    String recordString(Charset charset);
+
+    /**
+     * Closes this reader and its source.
+     */
+    @Override
+    void close();
+}
@@ -0,0 +1,100 @@
+package xyz.fsgek.common.io;
+
+import xyz.fsgek.common.base.GekCheck;
+
+import java.nio.MappedByteBuffer;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.function.ObjLongConsumer;
+
+final class MappedRegionsImpl implements GekMappedRegions {
+
+    private final MappedByteBuffer[] regions;
+    private final long offset;
+    private final long length;
+    private final int regionSize;
+
+    MappedRegionsImpl(MappedByteBuffer[] regions, long offset, long length, int regionSize) {
+        this.regions = regions;
+        this.offset = offset;
+        this.length = length;
+        this.regionSize = regionSize;
+    }
+
+    @Override
+    public long offset() {
+        return offset;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+
+    @Override
+    public int regionSize() {
+        return regionSize;
+    }
+
+    @Override
+    public int regionCount() {
+        return regions.length;
+    }
+
+    @Override
+    public MappedByteBuffer getRegion(int index) {
+        return regions[index];
+    }
+
+    @Override
+    public byte get(long index) {
+        GekCheck.checkInBounds(index, 0, length);
+        return regions[(int) (index / regionSize)].get((int) (index % regionSize));
+    }
+
+    @Override
+    public void forEachRegion(ObjLongConsumer<? super MappedByteBuffer> action) {
+        long start = 0;
+        for (MappedByteBuffer region : regions) {
+            action.accept(region, start);
+            start += region.capacity();
+        }
+    }
+
+    @Override
+    public long indexOf(byte b, long fromIndex) {
+        if (fromIndex < 0) {
+            fromIndex = 0;
+        }
+        if (fromIndex >= length) {
+            return -1;
+        }
+        int regionIndex = (int) (fromIndex / regionSize);
+        int i = (int) (fromIndex % regionSize);
+        long regionStart = (long) regionIndex * regionSize;
+        for (; regionIndex < regions.length; regionIndex++) {
+            MappedByteBuffer region = regions[regionIndex];
+            int limit = region.capacity();
+            for (; i < limit; i++) {
+                if (region.get(i) == b) {
+                    return regionStart + i;
+                }
+            }
+            regionStart += limit;
+            i = 0;
+        }
+        return -1;
+    }
+
+    @Override
+    public void load() {
+        for (MappedByteBuffer region : regions) {
+            region.load();
+        }
+    }
+
+    @Override
+    public Iterator<MappedByteBuffer> iterator() {
+        return Arrays.asList(regions).iterator();
+    }
+}
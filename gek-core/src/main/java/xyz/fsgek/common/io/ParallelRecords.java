@@ -0,0 +1,172 @@
+package xyz.fsgek.common.io;
+
+import xyz.fsgek.common.base.GekCheck;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+final class ParallelRecords {
+
+    private static final int ALIGN_BUFFER_SIZE = 1024;
+
+    static void forEach(
+        Path path, byte delimiter, int parallelism, Executor executor, Consumer<? super ByteBuffer> handler) {
+        process(path, delimiter, parallelism, executor, region -> {
+            forEachRecord(region, delimiter, handler);
+            return Collections.emptyList();
+        });
+    }
+
+    static <T> List<T> map(
+        Path path, byte delimiter, int parallelism, Executor executor,
+        Function<? super ByteBuffer, ? extends T> mapper
+    ) {
+        return process(path, delimiter, parallelism, executor, region -> {
+            List<T> result = new ArrayList<>();
+            forEachRecord(region, delimiter, record -> result.add(mapper.apply(record)));
+            return result;
+        });
+    }
+
+    private static <T> List<T> process(
+        Path path, byte delimiter, int parallelism, Executor executor, Function<MappedByteBuffer, List<T>> rangeTask) {
+        GekCheck.checkArgument(parallelism > 0, "parallelism must > 0.");
+        List<Future<Void>> futures = null;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long[] bounds = split(channel, delimiter, parallelism);
+            if (bounds.length == 2) {
+                return rangeTask.apply(mapRange(channel, bounds[0], bounds[1]));
+            }
+            int count = bounds.length - 1;
+            List<List<T>> lists = new ArrayList<>(Collections.nCopies(count, null));
+            CompletionService<Void> service = new ExecutorCompletionService<>(executor);
+            futures = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                int index = i;
+                MappedByteBuffer region = mapRange(channel, bounds[i], bounds[i + 1]);
+                futures.add(service.submit(() -> {
+                    lists.set(index, rangeTask.apply(region));
+                    return null;
+                }));
+            }
+            //Waits in order of completion so the first failure is found at once
+            for (int i = 0; i < count; i++) {
+                service.take().get();
+            }
+            futures = null;
+            List<T> result = null;
+            for (List<T> list : lists) {
+                if (list.isEmpty()) {
+                    continue;
+                }
+                if (result == null) {
+                    result = new ArrayList<>();
+                }
+                result.addAll(list);
+            }
+            return result == null ? Collections.emptyList() : result;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new GekIOException(cause);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new GekIOException(e);
+        } catch (GekIOException | IllegalArgumentException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        } finally {
+            //Remaining ranges are cancelled if any range failed
+            if (futures != null) {
+                for (Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    // range i is [bounds[i], bounds[i + 1]), each range except the first starts right after a delimiter
+    private static long[] split(FileChannel channel, byte delimiter, int parallelism) throws IOException {
+        long size = channel.size();
+        long chunkSize = Math.max(1, Math.min((size + parallelism - 1) / parallelism, GekIO.MAPPED_REGION_SIZE));
+        int count = (int) Math.max(1, (size + chunkSize - 1) / chunkSize);
+        long[] bounds = new long[count + 1];
+        ByteBuffer buffer = ByteBuffer.allocate(ALIGN_BUFFER_SIZE);
+        int n = 1;
+        for (int i = 1; i < count; i++) {
+            long aligned = alignToRecord(channel, buffer, delimiter, (long) i * chunkSize, size);
+            if (aligned <= bounds[n - 1] || aligned >= size) {
+                continue;
+            }
+            bounds[n++] = aligned;
+        }
+        bounds[n++] = size;
+        if (n == bounds.length) {
+            return bounds;
+        }
+        long[] result = new long[n];
+        System.arraycopy(bounds, 0, result, 0, n);
+        return result;
+    }
+
+    private static long alignToRecord(
+        FileChannel channel, ByteBuffer buffer, byte delimiter, long position, long size) throws IOException {
+        long pos = position - 1;
+        while (pos < size) {
+            buffer.clear();
+            int read = channel.read(buffer, pos);
+            if (read <= 0) {
+                break;
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == delimiter) {
+                    return pos + i + 1;
+                }
+            }
+            pos += read;
+        }
+        return size;
+    }
+
+    private static MappedByteBuffer mapRange(FileChannel channel, long start, long end) throws IOException {
+        long length = end - start;
+        if (length > Integer.MAX_VALUE) {
+            throw new GekIOException("Record is too large to map: [" + start + ", " + end + ").");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+    }
+
+    private static void forEachRecord(ByteBuffer region, byte delimiter, Consumer<? super ByteBuffer> handler) {
+        int start = 0;
+        int limit = region.limit();
+        for (int i = 0; i < limit; i++) {
+            if (region.get(i) == delimiter) {
+                handler.accept(GekBuffer.subView(region, start, i - start));
+                start = i + 1;
+            }
+        }
+        if (start < limit) {
+            handler.accept(GekBuffer.subView(region, start, limit - start));
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package xyz.fsgek.common.io;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekCheck;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.Charset;
+
+final class RecordReaderImpl implements GekRecordReader {
+
+    private final @Nullable InputStream in;
+    private final @Nullable ReadableByteChannel channel;
+    private final byte delimiter;
+    private final boolean stripCr;
+    private final CharSequence chars = new Chars();
+
+    private ByteBuffer buffer;
+    private ByteBuffer view;
+    // valid data is [0, end), current record is [start, recordEnd), next record starts at next
+    private int end;
+    private int start;
+    private int recordEnd;
+    private int next;
+    private boolean eof;
+    private boolean hasRecord;
+
+    RecordReaderImpl(InputStream in, byte delimiter, boolean stripCr, int bufferSize) {
+        this(in, null, delimiter, stripCr, bufferSize);
+    }
+
+    RecordReaderImpl(ReadableByteChannel channel, byte delimiter, boolean stripCr, int bufferSize) {
+        this(null, channel, delimiter, stripCr, bufferSize);
+    }
+
+    RecordReaderImpl(ByteBuffer buffer, byte delimiter, boolean stripCr) {
+        this.in = null;
+        this.channel = null;
+        this.delimiter = delimiter;
+        this.stripCr = stripCr;
+        this.buffer = buffer.slice();
+        this.view = this.buffer.asReadOnlyBuffer();
+        this.end = this.buffer.limit();
+        this.eof = true;
+    }
+
+    private RecordReaderImpl(
+        @Nullable InputStream in,
+        @Nullable ReadableByteChannel channel,
+        byte delimiter,
+        boolean stripCr,
+        int bufferSize
+    ) {
+        GekCheck.checkArgument(bufferSize > 0, "bufferSize must > 0.");
+        this.in = in;
+        this.channel = channel;
+        this.delimiter = delimiter;
+        this.stripCr = stripCr;
+        this.buffer = ByteBuffer.allocate(bufferSize);
+        this.view = buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public boolean advance() {
+        int from = next;
+        int scan = next;
+        while (true) {
+            for (int i = scan; i < end; i++) {
+                if (buffer.get(i) == delimiter) {
+                    setRecord(from, i, i + 1);
+                    return true;
+                }
+            }
+            if (eof) {
+                if (from < end) {
+                    setRecord(from, end, end);
+                    return true;
+                }
+                hasRecord = false;
+                next = end;
+                return false;
+            }
+            int scanned = end - from;
+            from = makeRoom(from);
+            scan = from + scanned;
+            fill();
+        }
+    }
+
+    private void setRecord(int start, int delimiterIndex, int next) {
+        this.start = start;
+        this.recordEnd = stripCr && delimiterIndex > start && next > delimiterIndex
+            && buffer.get(delimiterIndex - 1) == '\r' ? delimiterIndex - 1 : delimiterIndex;
+        this.next = next;
+        this.hasRecord = true;
+    }
+
+    // moves unconsumed data to head of buffer, or enlarges buffer if it is full; returns new start of the data
+    private int makeRoom(int from) {
+        int remaining = end - from;
+        if (from > 0) {
+            if (remaining > 0) {
+                buffer.limit(end);
+                buffer.position(from);
+                buffer.compact();
+                buffer.clear();
+            }
+        } else if (end == buffer.capacity()) {
+            ByteBuffer newBuffer = ByteBuffer.allocate(buffer.capacity() * 2);
+            buffer.limit(end);
+            buffer.position(0);
+            newBuffer.put(buffer);
+            newBuffer.clear();
+            buffer = newBuffer;
+            view = buffer.asReadOnlyBuffer();
+        }
+        end = remaining;
+        next = 0;
+        hasRecord = false;
+        return 0;
+    }
+
+    private void fill() {
+        try {
+            int read;
+            if (in != null) {
+                read = in.read(buffer.array(), end, buffer.capacity() - end);
+            } else {
+                buffer.position(end);
+                read = channel.read(buffer);
+                buffer.clear();
+            }
+            if (read < 0) {
+                eof = true;
+            } else {
+                end += read;
+            }
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    @Override
+    public ByteBuffer record() {
+        checkRecord();
+        view.limit(recordEnd);
+        view.position(start);
+        return view;
+    }
+
+    @Override
+    public int recordLength() {
+        checkRecord();
+        return recordEnd - start;
+    }
+
+    @Override
+    public CharSequence recordChars() {
+        checkRecord();
+        return chars;
+    }
+
+    @Override
+    public String recordString(Charset charset) {
+        checkRecord();
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), buffer.arrayOffset() + start, recordEnd - start, charset);
+        }
+        view.limit(recordEnd);
+        view.position(start);
+        return GekBuffer.getString(view, charset);
+    }
+
+    @Override
+    public void close() {
+        Closeable source = in != null ? in : channel;
+        if (source == null) {
+            return;
+        }
+        try {
+            source.close();
+        } catch (Exception e) {
+            throw new GekIOException(e);
+        }
+    }
+
+    private void checkRecord() {
+        if (!hasRecord) {
+            throw new IllegalStateException("No current record, call advance() first.");
+        }
+    }
+
+    private final class Chars implements CharSequence {
+
+        @Override
+        public int length() {
+            return recordEnd - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            GekCheck.checkInBounds(index, 0, length());
+            return (char) (buffer.get(start + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int startIndex, int endIndex) {
+            GekCheck.checkRangeInBounds(startIndex, endIndex, 0, length());
+            StringBuilder builder = new StringBuilder(endIndex - startIndex);
+            for (int i = startIndex; i < endIndex; i++) {
+                builder.append(charAt(i));
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            return subSequence(0, length()).toString();
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package xyz.fsgek.common.net;
+
+/**
+ * Idle state of a network channel, passed to idle callbacks.
+ *
+ * @author fredsuvn
+ */
+public enum GekIdleState {
+
+    /**
+     * No data has been read in the read idle time.
+     */
+    READ_IDLE,
+
+    /**
+     * No data has been written in the write idle time.
+     */
+    WRITE_IDLE,
+
+    /**
+     * Neither read nor write in the all idle time.
+     */
+    ALL_IDLE,
+}
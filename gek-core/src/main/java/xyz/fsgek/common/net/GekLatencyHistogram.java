@@ -0,0 +1,204 @@
+package xyz.fsgek.common.net;
+
+import xyz.fsgek.annotations.ThreadSafe;
+import xyz.fsgek.common.base.GekCheck;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free histogram of latencies in nanoseconds, for network metrics.
+ * <p>
+ * Latencies are counted in log-scaled buckets: bucket {@code i} (i &gt; 0) counts latencies in
+ * {@code [2^(i-1), 2^i)} nanoseconds, and bucket 0 counts latency 0. Recording is an atomic increment without lock
+ * and allocation, and percentiles from {@link Snapshot} are upper bounds of the buckets, so the relative error is
+ * less than 2x.
+ * <p>
+ * Buckets, sum and max are striped: each recording thread is mapped to one of the stripes by its thread id, so
+ * threads recording at the same time rarely contend on the same cache lines, and a snapshot adds up all stripes.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public final class GekLatencyHistogram {
+
+    private static final int BUCKET_COUNT = 64;
+    private static final int MAX_STRIPES = 64;
+    //Each stripe is buckets followed by sum and max
+    private static final int SUM_INDEX = BUCKET_COUNT;
+    private static final int MAX_INDEX = BUCKET_COUNT + 1;
+
+    private final AtomicLongArray[] stripes;
+    private final int mask;
+
+    /**
+     * Constructs with stripes of number of available processors (up to 64).
+     */
+    public GekLatencyHistogram() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Constructs with given number of stripes, which is rounded up to a power of 2 (up to 64). One stripe is enough if
+     * latencies are recorded by one thread at a time.
+     *
+     * @param stripes given number of stripes, must &gt; 0
+     */
+    public GekLatencyHistogram(int stripes) {
+        GekCheck.checkArgument(stripes > 0, "stripes must > 0.");
+        int size = Integer.bitCount(stripes) == 1 ? stripes : Integer.highestOneBit(stripes) << 1;
+        size = Math.min(MAX_STRIPES, size);
+        this.stripes = new AtomicLongArray[size];
+        for (int i = 0; i < size; i++) {
+            this.stripes[i] = new AtomicLongArray(BUCKET_COUNT + 2);
+        }
+        this.mask = size - 1;
+    }
+
+    /**
+     * Records a latency in nanoseconds, negative latency is recorded as 0.
+     *
+     * @param nanos latency in nanoseconds
+     */
+    public void record(long nanos) {
+        long value = Math.max(0, nanos);
+        AtomicLongArray stripe = stripes.length == 1 ? stripes[0] : stripes[stripeIndex()];
+        stripe.incrementAndGet(bucketIndex(value));
+        stripe.addAndGet(SUM_INDEX, value);
+        long current;
+        while (value > (current = stripe.get(MAX_INDEX))) {
+            if (stripe.compareAndSet(MAX_INDEX, current, value)) {
+                break;
+            }
+        }
+    }
+
+    /**
+     * Returns a snapshot of this histogram. The snapshot is not atomic if recording is in progress, but each
+     * counted value is consistent by itself.
+     *
+     * @return a snapshot of this histogram
+     */
+    public Snapshot snapshot() {
+        long[] counts = new long[BUCKET_COUNT];
+        long total = 0;
+        long sum = 0;
+        long max = 0;
+        for (AtomicLongArray stripe : stripes) {
+            for (int i = 0; i < counts.length; i++) {
+                long count = stripe.get(i);
+                counts[i] += count;
+                total += count;
+            }
+            sum += stripe.get(SUM_INDEX);
+            max = Math.max(max, stripe.get(MAX_INDEX));
+        }
+        return new Snapshot(counts, total, sum, max);
+    }
+
+    private int stripeIndex() {
+        long id = Thread.currentThread().getId();
+        //Spreads ids of threads created one by one (such as threads of a pool)
+        return (int) ((id * 0x9E3779B97F4A7C15L) >>> 58) & mask;
+    }
+
+    private static int bucketIndex(long nanos) {
+        return Math.min(BUCKET_COUNT - 1, 64 - Long.numberOfLeadingZeros(nanos));
+    }
+
+    /**
+     * Snapshot of {@link GekLatencyHistogram}.
+     */
+    public static final class Snapshot {
+
+        private final long[] buckets;
+        private final long count;
+        private final long sum;
+        private final long max;
+
+        private Snapshot(long[] buckets, long count, long sum, long max) {
+            this.buckets = buckets;
+            this.count = count;
+            this.sum = sum;
+            this.max = max;
+        }
+
+        /**
+         * Returns number of recorded latencies.
+         *
+         * @return number of recorded latencies
+         */
+        public long getCount() {
+            return count;
+        }
+
+        /**
+         * Returns sum of recorded latencies in nanoseconds.
+         *
+         * @return sum of recorded latencies in nanoseconds
+         */
+        public long getSum() {
+            return sum;
+        }
+
+        /**
+         * Returns max recorded latency in nanoseconds.
+         *
+         * @return max recorded latency in nanoseconds
+         */
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * Returns mean of recorded latencies in nanoseconds, or 0 if no latency recorded.
+         *
+         * @return mean of recorded latencies in nanoseconds
+         */
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * Returns latency in nanoseconds at given percentile (such as 0.99 for p99): the upper bound of the bucket
+         * containing the percentile, but not greater than {@link #getMax()}. Returns 0 if no latency recorded.
+         *
+         * @param percentile given percentile in [0, 1]
+         * @return latency in nanoseconds at given percentile
+         */
+        public long getPercentile(double percentile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(Math.min(1, Math.max(0, percentile)) * count);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen > 0) {
+                    long upper = i == 0 ? 0 : (i >= 63 ? Long.MAX_VALUE : (1L << i) - 1);
+                    return Math.min(upper, max);
+                }
+            }
+            return max;
+        }
+
+        /**
+         * Returns count of each bucket, bucket {@code i} (i &gt; 0) counts latencies in {@code [2^(i-1), 2^i)}
+         * nanoseconds, and bucket 0 counts latency 0.
+         *
+         * @return count of each bucket
+         */
+        public long[] getBuckets() {
+            return buckets.clone();
+        }
+
+        @Override
+        public String toString() {
+            return "count=" + count
+                + ", mean=" + (long) getMean()
+                + ", p50=" + getPercentile(0.5)
+                + ", p99=" + getPercentile(0.99)
+                + ", p999=" + getPercentile(0.999)
+                + ", max=" + max;
+        }
+    }
+}
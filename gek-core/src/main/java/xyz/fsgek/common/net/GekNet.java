@@ -1,9 +1,38 @@
 package xyz.fsgek.common.net;
 
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
+
+import java.lang.reflect.Field;
+import java.net.SocketOption;
+import java.net.StandardSocketOptions;
+
 /**
  * Network utilities.
  *
  * @author fredsuvn
  */
 public class GekNet {
+
+    private static final @Nullable SocketOption<Boolean> REUSE_PORT = reusePortOption0();
+
+    /**
+     * Returns {@code SO_REUSEPORT} socket option ({@code StandardSocketOptions.SO_REUSEPORT} since Java 9), or null
+     * if current JVM doesn't support it. Note the returned option may be still unsupported by some channels on current
+     * platform.
+     *
+     * @return {@code SO_REUSEPORT} socket option or null
+     */
+    public static @Nullable SocketOption<Boolean> reusePortOption() {
+        return REUSE_PORT;
+    }
+
+    private static @Nullable SocketOption<Boolean> reusePortOption0() {
+        try {
+            Field field = StandardSocketOptions.class.getField("SO_REUSEPORT");
+            return Gek.as(field.get(null));
+        } catch (Exception e) {
+            return null;
+        }
+    }
 }
@@ -0,0 +1,24 @@
+package xyz.fsgek.common.net;
+
+/**
+ * Type of overload of a network server, passed to overload callbacks when the server sheds load.
+ *
+ * @author fredsuvn
+ */
+public enum GekOverload {
+
+    /**
+     * Number of handler tasks submitted to the executor but not done has reached the max number.
+     */
+    IN_FLIGHT_TASKS,
+
+    /**
+     * Number of pending bytes has exceeded the max number.
+     */
+    PENDING_BYTES,
+
+    /**
+     * Number of open channels has reached the max connection number.
+     */
+    CONNECTIONS,
+}
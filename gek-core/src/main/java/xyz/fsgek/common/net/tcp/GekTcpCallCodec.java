@@ -0,0 +1,37 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.ThreadSafe;
+
+/**
+ * Codec of calls for {@link GekTcpClientPool}, which carries a correlation id (call id) in each request and response,
+ * so that responses can be matched to their requests on a shared connection in any order.
+ * <p>
+ * Requests are encoded by {@link #encode(GekTcpChannel, long, Object)}. Responses are decoded by channel handlers of the
+ * pool (such as a framing handler followed by a decoding handler), and the call id of each decoded response is got by
+ * {@link #getCallId(Object)}.
+ *
+ * @param <Q> request type
+ * @param <R> response type
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekTcpCallCodec<Q, R> {
+
+    /**
+     * Encodes given request with given call id and sends it to given channel, the channel will be flushed by the pool.
+     * This method may be called by multiple threads for the same channel.
+     *
+     * @param channel given channel
+     * @param callId  given call id
+     * @param request given request
+     */
+    void encode(GekTcpChannel channel, long callId, Q request);
+
+    /**
+     * Returns call id of given response, which should be the call id of its request.
+     *
+     * @param response given response
+     * @return call id of given response
+     */
+    long getCallId(R response);
+}
@@ -2,13 +2,24 @@ package xyz.fsgek.common.net.tcp;
 
 import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.annotations.ThreadSafe;
+import xyz.fsgek.common.base.GekCheck;
+import xyz.fsgek.common.base.GekTimer;
 import xyz.fsgek.common.data.GekData;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.net.GekNetException;
 
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
 import java.io.InputStream;
 import java.net.InetAddress;
 import java.net.Socket;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.time.Duration;
 
 /**
@@ -84,6 +95,10 @@ public interface GekTcpChannel {
 
     /**
      * Closes this channel, blocks current thread for buffered operations in given timeout.
+     * <p>
+     * For a NIO channel, buffered data is written by its event loop, so if this method is called in the event loop
+     * (such as in a handler without executor), it does not block: the channel is closed after buffered data has been
+     * written or given timeout elapses.
      *
      * @param timeout given timeout, maybe null to always wait
      */
@@ -128,6 +143,26 @@ public interface GekTcpChannel {
      */
     void send(ByteBuffer data);
 
+    /**
+     * Sends data of given buffer which is allocated from given pool, and passes ownership of the buffer to this
+     * channel: the buffer is released into the pool after its data has been written or dropped, so the caller must
+     * not use the buffer after calling this method. The written data may be buffered before the {@link #flush()} is
+     * called.
+     * <p>
+     * For a NIO channel without TLS, the buffer is queued as a pending write without copying. By default, the data is
+     * sent by {@link #send(ByteBuffer)} and then the buffer is released.
+     *
+     * @param data the data
+     * @param pool pool from which the buffer is allocated
+     */
+    default void send(ByteBuffer data, GekBufferPool pool) {
+        try {
+            send(data);
+        } finally {
+            pool.release(data);
+        }
+    }
+
     /**
      * Sends data to remote endpoint.
      * The written data may be buffered before the {@link #flush()} is called.
@@ -136,6 +171,81 @@ public interface GekTcpChannel {
      */
     void send(InputStream data);
 
+    /**
+     * Sends data of given buffers in order to remote endpoint, as a gathering write.
+     * The written data may be buffered before the {@link #flush()} is called.
+     * <p>
+     * For a NIO channel, each buffer is copied and queued as a separate pending write, and continuous pending writes
+     * are written by one gathering write of the socket channel; for a virtual thread channel, the buffers are written
+     * by gathering writes of the socket channel directly. By default, each buffer is sent in order.
+     *
+     * @param data the data
+     */
+    default void send(ByteBuffer[] data) {
+        for (ByteBuffer buffer : data) {
+            send(buffer);
+        }
+    }
+
+    /**
+     * Sends data of specified length from given offset of the file to remote endpoint.
+     * The written data may be buffered before the {@link #flush()} is called.
+     * <p>
+     * For NIO channel, the file will be transferred by {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * without copying the data through user space, and the file is opened until its data has been written.
+     * By default, the file is read and sent by {@link #sendFile(FileChannel, long, long)}.
+     *
+     * @param file   the file
+     * @param offset given offset
+     * @param length specified length
+     */
+    default void sendFile(Path file, long offset, long length) {
+        try (FileChannel fileChannel = FileChannel.open(file, StandardOpenOption.READ)) {
+            sendFile(fileChannel, offset, length);
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+    }
+
+    /**
+     * Sends data of specified length from given offset of the file channel to remote endpoint.
+     * The written data may be buffered before the {@link #flush()} is called,
+     * position of the file channel will not be changed.
+     * <p>
+     * For NIO channel, the file will be transferred by {@link FileChannel#transferTo(long, long, WritableByteChannel)}
+     * without copying the data through user space, the file channel should be kept open until the data has been
+     * written. By default, the data is read by {@link FileChannel#read(ByteBuffer, long)} and sent by
+     * {@link #send(ByteBuffer)}.
+     *
+     * @param file   the file channel
+     * @param offset given offset
+     * @param length specified length
+     */
+    default void sendFile(FileChannel file, long offset, long length) {
+        GekCheck.checkArgument(offset >= 0, "offset must >= 0.");
+        GekCheck.checkArgument(length >= 0, "length must >= 0.");
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(length, GekIO.IO_BUFFER_SIZE));
+        long position = offset;
+        long end = offset + length;
+        try {
+            while (position < end) {
+                buffer.clear();
+                if (end - position < buffer.capacity()) {
+                    buffer.limit((int) (end - position));
+                }
+                int count = file.read(buffer, position);
+                if (count < 0) {
+                    throw new GekNetException("End of file before the region has been sent: " + position + ".");
+                }
+                buffer.flip();
+                send(buffer);
+                position += count;
+            }
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+    }
+
     /**
      * Sends data to remote endpoint and flushes immediately.
      *
@@ -188,11 +298,77 @@ public interface GekTcpChannel {
         flush();
     }
 
+    /**
+     * Sends data of given buffers in order to remote endpoint and flushes immediately.
+     *
+     * @param data the data
+     * @see #send(ByteBuffer[])
+     */
+    default void sendAndFlush(ByteBuffer[] data) {
+        send(data);
+        flush();
+    }
+
     /**
      * Flushes buffered data to be written to remote endpoint.
      */
     void flush();
 
+    /**
+     * Returns whether this channel is writable: bytes pending to be written do not exceed the high water mark.
+     * Data can still be sent if this channel is unwritable, but producers should better wait for it to be writable
+     * again, rather than buffering without limit.
+     *
+     * @return whether this channel is writable
+     */
+    default boolean isWritable() {
+        return true;
+    }
+
+    /**
+     * Returns number of bytes pending to be written.
+     *
+     * @return number of bytes pending to be written
+     */
+    default long getPendingBytes() {
+        return 0;
+    }
+
+    /**
+     * Schedules given task to run after given delay, in the same thread as callbacks of this channel. The task will not
+     * be run if this channel has been closed before the delay elapses.
+     * <p>
+     * By default, this method is not supported and throws {@link GekNetException}.
+     *
+     * @param delay given delay
+     * @param task  given task
+     * @return the timeout of the task
+     */
+    default GekTimer.Timeout schedule(Duration delay, Runnable task) {
+        throw new GekNetException("Scheduling is not supported by this channel.");
+    }
+
+    /**
+     * Returns metrics of this channel, or null if metrics is not enabled.
+     *
+     * @return metrics of this channel or null
+     */
+    @Nullable
+    default GekTcpMetrics getMetrics() {
+        return null;
+    }
+
+    /**
+     * Returns TLS session of this channel, or null if this channel is not based on TLS. The session is valid after
+     * the handshake has finished, which is before the channel is opened.
+     *
+     * @return TLS session of this channel or null
+     */
+    @Nullable
+    default SSLSession getSslSession() {
+        return null;
+    }
+
     /**
      * Returns underlying object which implements {@link GekTcpChannel} interface, such as {@link Socket}.
      *
@@ -3,6 +3,7 @@ package xyz.fsgek.common.net.tcp;
 import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.common.net.tcp.handlers.DelimiterBasedTcpChannelHandler;
 import xyz.fsgek.common.net.tcp.handlers.LengthBasedTcpChannelHandler;
+import xyz.fsgek.common.net.tcp.handlers.LengthFieldTcpChannelHandler;
 
 import java.nio.ByteBuffer;
 
@@ -30,6 +31,7 @@ import java.nio.ByteBuffer;
  * @author fredsuvn
  * @see LengthBasedTcpChannelHandler
  * @see DelimiterBasedTcpChannelHandler
+ * @see LengthFieldTcpChannelHandler
  */
 public interface GekTcpChannelHandler<M> {
 
@@ -2,24 +2,35 @@ package xyz.fsgek.common.net.tcp;
 
 import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.annotations.ThreadSafe;
+import lombok.Getter;
 import xyz.fsgek.common.base.Gek;
+import xyz.fsgek.common.base.GekThread;
+import xyz.fsgek.common.base.GekTimer;
 import xyz.fsgek.common.collect.GekColl;
 import xyz.fsgek.common.data.GekData;
 import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
 import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.net.GekIdleState;
 import xyz.fsgek.common.net.GekNetException;
 import xyz.fsgek.common.net.GekServerStates;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
 import java.time.Duration;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.TimeUnit;
 import java.util.function.Consumer;
 import java.util.function.IntFunction;
@@ -44,7 +55,8 @@ public interface GekTcpClient extends GekTcpEndpoint {
 
     /**
      * Returns new builder of {@link GekTcpClient}.
-     * The returned builder is based on {@link Socket}.
+     * The returned builder is based on {@link Socket}, or based on {@link SocketChannel} and {@link Selector}
+     * if {@link Builder#group(GekTcpClientGroup)} is set.
      *
      * @return new builder
      */
@@ -79,7 +91,20 @@ public interface GekTcpClient extends GekTcpEndpoint {
      * @param address address of target endpoint
      * @param timeout wait timeout to connect, maybe null to infinite waiting
      */
-    void start(SocketAddress address, @Nullable Duration timeout);
+    default void start(SocketAddress address, @Nullable Duration timeout) {
+        start(address, timeout, true);
+    }
+
+    /**
+     * Starts this client. If given block is true, this method blocks until the client has been closed, and an
+     * exception will be thrown if failed to connect. Otherwise, this method returns immediately, and connection
+     * failure will be passed to {@link GekTcpClientHandler#onException(GekTcpChannel, Throwable, ByteBuffer)}.
+     *
+     * @param address address of target endpoint
+     * @param timeout wait timeout to connect, maybe null to infinite waiting
+     * @param block   whether blocks until the client has been closed
+     */
+    void start(SocketAddress address, @Nullable Duration timeout, boolean block);
 
     /**
      * Returns a new builder configured with this client.
@@ -89,8 +114,10 @@ public interface GekTcpClient extends GekTcpEndpoint {
     Builder toBuilder();
 
     /**
-     * Builder for {@link GekTcpClient}, based on {@link Socket}.
+     * Builder for {@link GekTcpClient}, based on {@link Socket},
+     * or based on {@link SocketChannel} and {@link Selector} if {@link #group(GekTcpClientGroup)} is set.
      */
+    @Getter
     class Builder {
 
         private static final byte[] EMPTY_ARRAY = new byte[0];
@@ -105,6 +132,17 @@ public interface GekTcpClient extends GekTcpEndpoint {
         private int channelBufferSize = GekIO.IO_BUFFER_SIZE;
         private @Nullable Consumer<Socket> socketConfig;
         private @Nullable Proxy proxy;
+        private @Nullable GekTcpClientGroup group;
+        private int writeHighWaterMark = 64 * 1024;
+        private int writeLowWaterMark = 32 * 1024;
+        private @Nullable GekBufferPool bufferPool;
+        private @Nullable Duration readIdle;
+        private @Nullable Duration writeIdle;
+        private @Nullable Duration allIdle;
+        private boolean metrics = false;
+        private @Nullable SSLContext sslContext;
+        private @Nullable Consumer<SSLEngine> sslEngineConfig;
+        private @Nullable Executor sslHandshakeExecutor;
 
         /**
          * Sets local port.
@@ -222,12 +260,178 @@ public interface GekTcpClient extends GekTcpEndpoint {
             return this;
         }
 
+        /**
+         * Sets client group. If the group is set, the client will be based on NIO and share I/O event loops of the
+         * group with other clients in the group, rather than using a thread to read for itself.
+         * Proxy is not supported by the client in group.
+         *
+         * @param group client group
+         * @return this builder
+         */
+        public Builder group(@Nullable GekTcpClientGroup group) {
+            this.group = group;
+            return this;
+        }
+
+        /**
+         * Sets high water mark of bytes pending to be written of channel in group, default is 64K.
+         * <p>
+         * Data sent by the channel is queued until flushed, and if the pending bytes exceed the high water mark,
+         * the channel becomes unwritable ({@link GekTcpChannel#isWritable()} returns false) and
+         * {@link GekTcpClientHandler#onWritabilityChanged(GekTcpChannel, boolean)} is called, it becomes writable again when the
+         * pending bytes drop below the {@link #writeLowWaterMark(int)}.
+         *
+         * @param writeHighWaterMark high water mark of bytes pending to be written
+         * @return this builder
+         */
+        public Builder writeHighWaterMark(int writeHighWaterMark) {
+            this.writeHighWaterMark = writeHighWaterMark;
+            return this;
+        }
+
+        /**
+         * Sets low water mark of bytes pending to be written of channel in group, default is 32K.
+         *
+         * @param writeLowWaterMark low water mark of bytes pending to be written
+         * @return this builder
+         * @see #writeHighWaterMark(int)
+         */
+        public Builder writeLowWaterMark(int writeLowWaterMark) {
+            this.writeLowWaterMark = writeLowWaterMark;
+            return this;
+        }
+
+        /**
+         * Sets buffer pool for NIO channels, default is an unpooled heap buffer pool, or a direct buffer pool
+         * ({@link GekBufferPool#newPool(boolean)}) shared by clients of the group if {@link #sslContext(SSLContext)} is
+         * set.
+         * <p>
+         * Each NIO channel has a cumulation buffer allocated from the pool, and released into the pool after the
+         * channel has been closed. Data is read into the cumulation buffer directly, the buffer is compacted in place
+         * only if the consumed data exceeds half of the buffer, and grows geometrically up to
+         * {@link #channelBufferSize(int)}, so there is no allocation in steady reading. For the NIO channel, the
+         * buffer passed to handlers and callbacks is a readonly view of the cumulation buffer: its position may be not
+         * 0, and its content is only valid in current callback.
+         *
+         * @param bufferPool buffer pool for NIO channels
+         * @return this builder
+         */
+        public Builder bufferPool(GekBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Sets read idle time of channel in group: if no data has been read in the time,
+         * {@link GekTcpClientHandler#onIdle(GekTcpChannel, GekIdleState)} is called with {@link GekIdleState#READ_IDLE}.
+         * Null or non-positive duration disables read idle detection, default is null.
+         * <p>
+         * Idle detection is based on a hashed wheel timer ({@link GekTimer#newWheelTimer()}) shared by channels,
+         * so its precision is about 10 milliseconds.
+         *
+         * @param readIdle read idle time
+         * @return this builder
+         */
+        public Builder readIdle(@Nullable Duration readIdle) {
+            this.readIdle = readIdle;
+            return this;
+        }
+
+        /**
+         * Sets write idle time of channel in group: if no data has been written in the time,
+         * {@link GekTcpClientHandler#onIdle(GekTcpChannel, GekIdleState)} is called with {@link GekIdleState#WRITE_IDLE}.
+         * Null or non-positive duration disables write idle detection, default is null.
+         *
+         * @param writeIdle write idle time
+         * @return this builder
+         * @see #readIdle(Duration)
+         */
+        public Builder writeIdle(@Nullable Duration writeIdle) {
+            this.writeIdle = writeIdle;
+            return this;
+        }
+
+        /**
+         * Sets all idle time of channel in group: if no data has been read or written in the time,
+         * {@link GekTcpClientHandler#onIdle(GekTcpChannel, GekIdleState)} is called with {@link GekIdleState#ALL_IDLE}.
+         * Null or non-positive duration disables all idle detection, default is null.
+         *
+         * @param allIdle all idle time
+         * @return this builder
+         * @see #readIdle(Duration)
+         */
+        public Builder allIdle(@Nullable Duration allIdle) {
+            this.allIdle = allIdle;
+            return this;
+        }
+
+        /**
+         * Sets whether metrics of the client and its channels is enabled, default is false.
+         * If it is true, metrics can be got by {@link GekTcpEndpoint#getMetrics()} and
+         * {@link GekTcpChannel#getMetrics()}.
+         *
+         * @param metrics whether metrics is enabled
+         * @return this builder
+         * @see GekTcpMetrics
+         */
+        public Builder metrics(boolean metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets SSL context to enable TLS for the channel, default is null (TLS is disabled).
+         * <p>
+         * TLS is based on {@link SSLEngine} and only supported by client in group. The engine is created with host and
+         * port of the connected address, so that a cached session of the SSL context can be resumed by the next
+         * connection to the same address. {@link GekTcpClientHandler#onOpen(GekTcpChannel)} is called after the
+         * handshake has finished, and the channel failed in the handshake is closed after
+         * {@link GekTcpClientHandler#onException(GekTcpChannel, Throwable, ByteBuffer)} is called.
+         *
+         * @param sslContext SSL context to enable TLS
+         * @return this builder
+         */
+        public Builder sslContext(@Nullable SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Sets config of {@link SSLEngine} of the TLS channel, such as enabled protocols and server name indication.
+         *
+         * @param sslEngineConfig config of {@link SSLEngine}
+         * @return this builder
+         * @see #sslContext(SSLContext)
+         */
+        public Builder sslEngineConfig(@Nullable Consumer<SSLEngine> sslEngineConfig) {
+            this.sslEngineConfig = sslEngineConfig;
+            return this;
+        }
+
+        /**
+         * Sets executor to run delegated tasks of the TLS handshake, default is null ({@link ForkJoinPool#commonPool()}).
+         *
+         * @param sslHandshakeExecutor executor to run delegated tasks of the TLS handshake
+         * @return this builder
+         * @see #sslContext(SSLContext)
+         */
+        public Builder sslHandshakeExecutor(@Nullable Executor sslHandshakeExecutor) {
+            this.sslHandshakeExecutor = sslHandshakeExecutor;
+            return this;
+        }
+
         /**
          * Builds the client.
          *
          * @return built client
          */
         public GekTcpClient build() {
+            if (group != null) {
+                return new NioTcpClient(this);
+            }
+            if (sslContext != null) {
+                throw new GekNetException("TLS is only supported by client in group.");
+            }
             return new SocketTcpClient(this);
         }
 
@@ -241,6 +445,7 @@ public interface GekTcpClient extends GekTcpEndpoint {
             private final int channelBufferSize;
             private final @Nullable Consumer<Socket> socketConfig;
             private final @Nullable Proxy proxy;
+            private final @Nullable GekTcpMetrics metrics;
 
             private final CountDownLatch latch = new CountDownLatch(1);
             private final GekServerStates state = new GekServerStates();
@@ -261,16 +466,22 @@ public interface GekTcpClient extends GekTcpEndpoint {
                     throw new GekNetException("Channel buffer size must > 0.");
                 }
                 this.proxy = builder.proxy;
+                this.metrics = builder.metrics ? new GekTcpMetrics(channelHandlers.size(), () -> 0) : null;
             }
 
             @Override
-            public void start(SocketAddress address, @Nullable Duration timeout) {
+            public void start(SocketAddress address, @Nullable Duration timeout, boolean block) {
                 synchronized (this) {
                     if (!state.isCreated()) {
                         throw new GekNetException("The client has been opened or closed.");
                     }
+                    connect(address, timeout == null ? 0 : (int) timeout.toMillis());
+                }
+                if (block) {
+                    start0();
+                } else {
+                    GekThread.start(this::start0);
                 }
-                start0(address, timeout == null ? 0 : (int) timeout.toMillis());
             }
 
             @Override
@@ -359,10 +570,16 @@ public interface GekTcpClient extends GekTcpEndpoint {
                     .addChannelHandlers(channelHandlers)
                     .bufferGenerator(bufferGenerator)
                     .channelBufferSize(channelBufferSize)
-                    .socketConfig(socketConfig);
+                    .socketConfig(socketConfig)
+                    .metrics(metrics != null);
             }
 
-            private void start0(SocketAddress address, int timeout) {
+            @Override
+            public @Nullable GekTcpMetrics getMetrics() {
+                return metrics;
+            }
+
+            private void connect(SocketAddress address, int timeout) {
                 this.socket = buildSocket();
                 try {
                     socket.connect(address, timeout);
@@ -370,7 +587,13 @@ public interface GekTcpClient extends GekTcpEndpoint {
                     throw new GekNetException(e);
                 }
                 state.open();
+            }
+
+            private void start0() {
                 ChannelImpl channel = new ChannelImpl();
+                if (metrics != null) {
+                    metrics.channelOpened();
+                }
                 clientHandler.onOpen(channel);
                 while (!socket.isClosed()) {
                     try {
@@ -387,6 +610,9 @@ public interface GekTcpClient extends GekTcpEndpoint {
                     compactBuffer(channel);
                     clientHandler.onException(channel, e, channel.buffer);
                 } finally {
+                    if (metrics != null) {
+                        metrics.channelClosed();
+                    }
                     latch.countDown();
                 }
             }
@@ -427,21 +653,29 @@ public interface GekTcpClient extends GekTcpEndpoint {
                 }
                 if (newBytes.length == 0) {
                     compactBuffer(channel);
-                    clientHandler.onLoop(channel, false, channel.buffer);
+                    onLoop(channel, false);
                     return;
                 }
-                compactBuffer(channel, newBytes);
-                Object message = channel.buffer;
-                for (GekTcpChannelHandler<?> channelHandler : channelHandlers) {
-                    GekTcpChannelHandler<Object> handler = Gek.as(channelHandler);
-                    Object result = handler.onMessage(channel, message);
-                    if (result == null) {
-                        break;
-                    }
-                    message = result;
+                if (channel.metrics != null) {
+                    channel.metrics.bytesRead(newBytes.length);
                 }
+                compactBuffer(channel, newBytes);
+                TcpUtils.handleMessage(channel, channelHandlers, channel.buffer, channel.metrics);
                 compactBuffer(channel);
-                clientHandler.onLoop(channel, true, channel.buffer);
+                onLoop(channel, true);
+            }
+
+            private void onLoop(ChannelImpl channel, boolean hasNewData) {
+                if (channel.metrics == null) {
+                    clientHandler.onLoop(channel, hasNewData, channel.buffer);
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    clientHandler.onLoop(channel, hasNewData, channel.buffer);
+                } finally {
+                    channel.metrics.loop(System.nanoTime() - start);
+                }
             }
 
             private void compactBuffer(ChannelImpl channel) {
@@ -456,6 +690,8 @@ public interface GekTcpClient extends GekTcpEndpoint {
 
                 private volatile ByteBuffer buffer = EMPTY_BUFFER;
                 private volatile @Nullable OutputStream out;
+                private final @Nullable GekTcpMetrics metrics =
+                    SocketTcpClient.this.metrics == null ? null : SocketTcpClient.this.metrics.newChannelMetrics();
 
                 @Override
                 public InetAddress getRemoteAddress() {
@@ -554,7 +790,8 @@ public interface GekTcpClient extends GekTcpEndpoint {
                 @Override
                 public synchronized void send(ByteBuffer data) {
                     if (data.hasArray()) {
-                        send(data.array(), data.arrayOffset(), data.remaining());
+                        send(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                        data.position(data.limit());
                     } else {
                         send(GekBuffer.getBytes(data));
                     }
@@ -574,6 +811,11 @@ public interface GekTcpClient extends GekTcpEndpoint {
                     }
                 }
 
+                @Override
+                public @Nullable GekTcpMetrics getMetrics() {
+                    return metrics;
+                }
+
                 @Override
                 public Object getSource() {
                     return socket;
@@ -582,7 +824,8 @@ public interface GekTcpClient extends GekTcpEndpoint {
                 private OutputStream getOutputStream() {
                     if (out == null) {
                         try {
-                            out = socket.getOutputStream();
+                            out = metrics == null ? socket.getOutputStream()
+                                : TcpUtils.metricsOutputStream(socket.getOutputStream(), metrics);
                         } catch (IOException e) {
                             throw new GekNetException(e);
                         }
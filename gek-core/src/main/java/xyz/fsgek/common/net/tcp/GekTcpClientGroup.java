@@ -0,0 +1,56 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.ThreadSafe;
+
+import java.nio.channels.Selector;
+
+/**
+ * Group of I/O event loops shared by {@link GekTcpClient}s based on NIO.
+ * Each loop is a {@link Selector} pinned to one thread, clients built with
+ * {@link GekTcpClient.Builder#group(GekTcpClientGroup)} are bound to loops of the group in round-robin,
+ * so that a large number of clients can be served by a few threads.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekTcpClientGroup {
+
+    /**
+     * Returns a new group with event loops of which count is number of available processors.
+     *
+     * @return a new group
+     */
+    static GekTcpClientGroup newGroup() {
+        return newGroup(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * Returns a new group with given count of event loops.
+     *
+     * @param eventLoopCount count of event loops
+     * @return a new group
+     */
+    static GekTcpClientGroup newGroup(int eventLoopCount) {
+        return new TcpClientGroupImpl(eventLoopCount);
+    }
+
+    /**
+     * Returns count of event loops of this group.
+     *
+     * @return count of event loops of this group
+     */
+    int getEventLoopCount();
+
+    /**
+     * Returns whether this group is closed.
+     *
+     * @return whether this group is closed
+     */
+    boolean isClosed();
+
+    /**
+     * Closes this group: event loops of this group will be stopped, and clients still running in this group will be
+     * closed immediately.
+     */
+    void close();
+}
@@ -1,5 +1,7 @@
 package xyz.fsgek.common.net.tcp;
 
+import xyz.fsgek.common.net.GekIdleState;
+
 import java.nio.ByteBuffer;
 
 /**
@@ -51,4 +53,28 @@ public interface GekTcpClientHandler {
      */
     default void onLoop(GekTcpChannel channel, boolean hasNewData, ByteBuffer buffer) {
     }
+
+    /**
+     * Callback when writability of the channel was changed: the channel becomes unwritable if bytes pending to be
+     * written exceed the high water mark, and becomes writable again if the pending bytes drop below the low water
+     * mark. Producers can stop sending data until the channel is writable again.
+     * <p>
+     * This method may be called in the thread which sends or flushes data of the channel.
+     *
+     * @param channel  the channel
+     * @param writable whether the channel is writable now
+     */
+    default void onWritabilityChanged(GekTcpChannel channel, boolean writable) {
+    }
+
+    /**
+     * Callback when the channel has been idle: no data has been read or written in the idle time set by builder.
+     * This method is called in the same thread as other callbacks of the channel, and called again each time the
+     * channel is idle for another idle time.
+     *
+     * @param channel the channel
+     * @param state   idle state
+     */
+    default void onIdle(GekTcpChannel channel, GekIdleState state) {
+    }
 }
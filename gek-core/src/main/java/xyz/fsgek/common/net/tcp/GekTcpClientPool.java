@@ -0,0 +1,259 @@
+package xyz.fsgek.common.net.tcp;
+
+import lombok.Getter;
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.annotations.ThreadSafe;
+import xyz.fsgek.common.collect.GekColl;
+import xyz.fsgek.common.net.GekNetException;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.time.Duration;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+/**
+ * Pool of multiplexed connections to one endpoint for request-response calls. Each connection is a
+ * {@link GekTcpClient} in a {@link GekTcpClientGroup}, and many calls can be in flight on one connection at the same
+ * time: each request carries a call id assigned by the pool and encoded by {@link GekTcpCallCodec}, and each response
+ * is matched to its call by the call id, so responses may arrive in any order.
+ * <p>
+ * {@link #call(Object)} returns a {@link CompletableFuture} completed with the response in the event loop thread of
+ * the connection, or completed exceptionally with a {@link TimeoutException} in the timer thread of the group if no
+ * response arrives in the call timeout, or with a {@link GekNetException} if the connection is closed or failed to
+ * send. Dependent stages of the future should be short or be run asynchronously. Pending calls of each connection are
+ * kept in a map of primitive call ids, and timeouts are scheduled on the hashed wheel timer of the group.
+ * <p>
+ * A closed connection is skipped and reconnected in background.
+ *
+ * @param <Q> request type
+ * @param <R> response type
+ * @author fredsuvn
+ */
+@ThreadSafe
+public interface GekTcpClientPool<Q, R> {
+
+    /**
+     * Returns new builder of {@link GekTcpClientPool}.
+     *
+     * @param <Q> request type
+     * @param <R> response type
+     * @return new builder
+     */
+    static <Q, R> Builder<Q, R> newBuilder() {
+        return new Builder<>();
+    }
+
+    /**
+     * Connects all connections of this pool to given address, and blocks until they have been opened. If any
+     * connection fails, opened connections are closed and a {@link GekNetException} is thrown.
+     *
+     * @param address address of target endpoint
+     */
+    void start(SocketAddress address);
+
+    /**
+     * Connects all connections of this pool to given host and port, and blocks until they have been opened.
+     *
+     * @param host host name of target endpoint
+     * @param port port of target endpoint
+     * @see #start(SocketAddress)
+     */
+    default void start(String host, int port) {
+        start(new InetSocketAddress(host, port));
+    }
+
+    /**
+     * Sends given request on a connection selected by {@link Builder#selection(Selection)}, returns the future of its
+     * response with the timeout of {@link Builder#callTimeout(Duration)}.
+     *
+     * @param request given request
+     * @return the future of the response
+     */
+    CompletableFuture<R> call(Q request);
+
+    /**
+     * Sends given request on a connection selected by {@link Builder#selection(Selection)}, returns the future of its
+     * response with given timeout.
+     *
+     * @param request given request
+     * @param timeout given timeout, null or non-positive means no timeout
+     * @return the future of the response
+     */
+    CompletableFuture<R> call(Q request, @Nullable Duration timeout);
+
+    /**
+     * Returns number of calls waiting for responses.
+     *
+     * @return number of calls waiting for responses
+     */
+    int getPendingCalls();
+
+    /**
+     * Returns number of opened connections.
+     *
+     * @return number of opened connections
+     */
+    int getOpenedConnections();
+
+    /**
+     * Returns whether this pool is closed.
+     *
+     * @return whether this pool is closed
+     */
+    boolean isClosed();
+
+    /**
+     * Closes all connections of this pool immediately, and pending calls are completed exceptionally.
+     */
+    void close();
+
+    /**
+     * Selection of the connection for a call.
+     */
+    enum Selection {
+
+        /**
+         * Selects opened connections in turn.
+         */
+        ROUND_ROBIN,
+
+        /**
+         * Selects the opened connection with the least pending calls, so a slow connection gets fewer calls.
+         */
+        LEAST_PENDING,
+    }
+
+    /**
+     * Builder for {@link GekTcpClientPool}.
+     *
+     * @param <Q> request type
+     * @param <R> response type
+     */
+    @Getter
+    class Builder<Q, R> {
+
+        private final List<GekTcpChannelHandler<?>> channelHandlers = new LinkedList<>();
+        private @Nullable GekTcpCallCodec<Q, R> codec;
+        private @Nullable GekTcpClientGroup group;
+        private int connections = 0;
+        private Selection selection = Selection.ROUND_ROBIN;
+        private @Nullable Duration callTimeout = Duration.ofSeconds(30);
+        private @Nullable Duration connectTimeout = Duration.ofSeconds(30);
+        private @Nullable Consumer<GekTcpClient.Builder> clientConfig;
+
+        /**
+         * Sets codec of calls, must be set.
+         *
+         * @param codec codec of calls
+         * @return this builder
+         */
+        public Builder<Q, R> codec(GekTcpCallCodec<Q, R> codec) {
+            this.codec = codec;
+            return this;
+        }
+
+        /**
+         * Adds channel handler to decode responses. The message returned by last channel handler should be a response
+         * or a {@link List} of responses.
+         *
+         * @param channelHandler channel handler
+         * @return this builder
+         */
+        public Builder<Q, R> addChannelHandler(GekTcpChannelHandler<?> channelHandler) {
+            this.channelHandlers.add(channelHandler);
+            return this;
+        }
+
+        /**
+         * Adds channel handlers to decode responses.
+         *
+         * @param channelHandlers channel handlers
+         * @return this builder
+         * @see #addChannelHandler(GekTcpChannelHandler)
+         */
+        public Builder<Q, R> addChannelHandlers(Iterable<GekTcpChannelHandler<?>> channelHandlers) {
+            GekColl.toCollection(this.channelHandlers, channelHandlers);
+            return this;
+        }
+
+        /**
+         * Sets client group of connections, must be set. Timeouts of calls are scheduled on the timer of the group.
+         *
+         * @param group client group
+         * @return this builder
+         */
+        public Builder<Q, R> group(GekTcpClientGroup group) {
+            this.group = group;
+            return this;
+        }
+
+        /**
+         * Sets number of connections, default is 0 (event loop count of the group).
+         *
+         * @param connections number of connections
+         * @return this builder
+         */
+        public Builder<Q, R> connections(int connections) {
+            this.connections = connections;
+            return this;
+        }
+
+        /**
+         * Sets selection of the connection for a call, default is {@link Selection#ROUND_ROBIN}.
+         *
+         * @param selection selection of the connection for a call
+         * @return this builder
+         */
+        public Builder<Q, R> selection(Selection selection) {
+            this.selection = selection;
+            return this;
+        }
+
+        /**
+         * Sets default timeout of calls, default is 30 seconds. Null or non-positive duration means no timeout.
+         *
+         * @param callTimeout default timeout of calls
+         * @return this builder
+         */
+        public Builder<Q, R> callTimeout(@Nullable Duration callTimeout) {
+            this.callTimeout = callTimeout;
+            return this;
+        }
+
+        /**
+         * Sets timeout of connecting, default is 30 seconds.
+         *
+         * @param connectTimeout timeout of connecting
+         * @return this builder
+         */
+        public Builder<Q, R> connectTimeout(@Nullable Duration connectTimeout) {
+            this.connectTimeout = connectTimeout;
+            return this;
+        }
+
+        /**
+         * Sets other config of connections, such as buffer pool and TLS. The group, client handler and channel handlers
+         * of connections are set by the pool after this config.
+         *
+         * @param clientConfig other config of connections
+         * @return this builder
+         */
+        public Builder<Q, R> clientConfig(@Nullable Consumer<GekTcpClient.Builder> clientConfig) {
+            this.clientConfig = clientConfig;
+            return this;
+        }
+
+        /**
+         * Builds the pool.
+         *
+         * @return built pool
+         */
+        public GekTcpClientPool<Q, R> build() {
+            return new TcpClientPoolImpl<>(this);
+        }
+    }
+}
@@ -38,6 +38,16 @@ public interface GekTcpEndpoint {
      */
     SocketAddress getSocketAddress();
 
+    /**
+     * Returns metrics of this endpoint, or null if metrics is not enabled.
+     *
+     * @return metrics of this endpoint or null
+     */
+    @Nullable
+    default GekTcpMetrics getMetrics() {
+        return null;
+    }
+
     /**
      * Returns underlying object which implements this interface, such as {@link ServerSocket} or {@link Socket}.
      *
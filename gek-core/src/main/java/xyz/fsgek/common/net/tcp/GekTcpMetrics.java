@@ -0,0 +1,264 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.annotations.ThreadSafe;
+import xyz.fsgek.common.net.GekLatencyHistogram;
+
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Metrics of TCP server, client or channel, enabled by {@link GekTcpServer.Builder#metrics(boolean)} or
+ * {@link GekTcpClient.Builder#metrics(boolean)}.
+ * <p>
+ * Counters are striped ({@link LongAdder}) and latencies are recorded in {@link GekLatencyHistogram}, so recording is
+ * lock-free and cheap for callbacks of channels. Metrics of a channel are also accumulated into metrics of its server
+ * or client. Comparing latencies of handlers with the read-to-handler latency and the queue size tells whether the
+ * endpoint is I/O-bound or handler-bound.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public final class GekTcpMetrics {
+
+    private final @Nullable GekTcpMetrics parent;
+    private final @Nullable LongSupplier queueSize;
+    private final LongAdder openedChannels = new LongAdder();
+    private final LongAdder closedChannels = new LongAdder();
+    private final LongAdder bytesRead = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder[] messages;
+    private final GekLatencyHistogram messageLatency;
+    private final GekLatencyHistogram loopLatency;
+    private final GekLatencyHistogram readToHandlerLatency;
+
+    GekTcpMetrics(int handlerCount, @Nullable LongSupplier queueSize) {
+        this(null, handlerCount, queueSize);
+    }
+
+    private GekTcpMetrics(@Nullable GekTcpMetrics parent, int handlerCount, @Nullable LongSupplier queueSize) {
+        this.parent = parent;
+        this.queueSize = queueSize;
+        this.messages = new LongAdder[handlerCount];
+        for (int i = 0; i < messages.length; i++) {
+            messages[i] = new LongAdder();
+        }
+        //A channel is handled by one thread at a time, so one stripe is enough for channel metrics
+        this.messageLatency = parent == null ? new GekLatencyHistogram() : new GekLatencyHistogram(1);
+        this.loopLatency = parent == null ? new GekLatencyHistogram() : new GekLatencyHistogram(1);
+        this.readToHandlerLatency = parent == null ? new GekLatencyHistogram() : new GekLatencyHistogram(1);
+    }
+
+    /**
+     * Returns a snapshot of current metrics.
+     *
+     * @return a snapshot of current metrics
+     */
+    public Snapshot snapshot() {
+        long[] messageCounts = new long[messages.length];
+        for (int i = 0; i < messages.length; i++) {
+            messageCounts[i] = messages[i].sum();
+        }
+        return new Snapshot(
+            openedChannels.sum(),
+            closedChannels.sum(),
+            bytesRead.sum(),
+            bytesWritten.sum(),
+            messageCounts,
+            queueSize == null ? -1 : queueSize.getAsLong(),
+            messageLatency.snapshot(),
+            loopLatency.snapshot(),
+            readToHandlerLatency.snapshot()
+        );
+    }
+
+    // metrics of a channel which are also accumulated into this
+    GekTcpMetrics newChannelMetrics() {
+        return new GekTcpMetrics(this, messages.length, queueSize);
+    }
+
+    void channelOpened() {
+        openedChannels.increment();
+    }
+
+    void channelClosed() {
+        closedChannels.increment();
+    }
+
+    void bytesRead(long bytes) {
+        bytesRead.add(bytes);
+        if (parent != null) {
+            parent.bytesRead(bytes);
+        }
+    }
+
+    void bytesWritten(long bytes) {
+        bytesWritten.add(bytes);
+        if (parent != null) {
+            parent.bytesWritten(bytes);
+        }
+    }
+
+    void message(int handlerIndex, long nanos) {
+        messages[handlerIndex].increment();
+        messageLatency.record(nanos);
+        if (parent != null) {
+            parent.message(handlerIndex, nanos);
+        }
+    }
+
+    void loop(long nanos) {
+        loopLatency.record(nanos);
+        if (parent != null) {
+            parent.loop(nanos);
+        }
+    }
+
+    void readToHandler(long nanos) {
+        readToHandlerLatency.record(nanos);
+        if (parent != null) {
+            parent.readToHandler(nanos);
+        }
+    }
+
+    /**
+     * Snapshot of {@link GekTcpMetrics}.
+     */
+    public static final class Snapshot {
+
+        private final long openedChannels;
+        private final long closedChannels;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long[] messages;
+        private final long queueSize;
+        private final GekLatencyHistogram.Snapshot messageLatency;
+        private final GekLatencyHistogram.Snapshot loopLatency;
+        private final GekLatencyHistogram.Snapshot readToHandlerLatency;
+
+        private Snapshot(
+            long openedChannels,
+            long closedChannels,
+            long bytesRead,
+            long bytesWritten,
+            long[] messages,
+            long queueSize,
+            GekLatencyHistogram.Snapshot messageLatency,
+            GekLatencyHistogram.Snapshot loopLatency,
+            GekLatencyHistogram.Snapshot readToHandlerLatency
+        ) {
+            this.openedChannels = openedChannels;
+            this.closedChannels = closedChannels;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.messages = messages;
+            this.queueSize = queueSize;
+            this.messageLatency = messageLatency;
+            this.loopLatency = loopLatency;
+            this.readToHandlerLatency = readToHandlerLatency;
+        }
+
+        /**
+         * Returns number of opened (accepted or connected) channels, always 0 for metrics of a channel.
+         *
+         * @return number of opened channels
+         */
+        public long getOpenedChannels() {
+            return openedChannels;
+        }
+
+        /**
+         * Returns number of closed channels, always 0 for metrics of a channel.
+         *
+         * @return number of closed channels
+         */
+        public long getClosedChannels() {
+            return closedChannels;
+        }
+
+        /**
+         * Returns number of active channels: opened but not closed.
+         *
+         * @return number of active channels
+         */
+        public long getActiveChannels() {
+            return openedChannels - closedChannels;
+        }
+
+        /**
+         * Returns number of bytes read.
+         *
+         * @return number of bytes read
+         */
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        /**
+         * Returns number of bytes written.
+         *
+         * @return number of bytes written
+         */
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        /**
+         * Returns number of messages passed to the channel handler at given index of the handler chain.
+         *
+         * @param handlerIndex given index of the handler chain
+         * @return number of messages passed to the channel handler
+         */
+        public long getMessages(int handlerIndex) {
+            return messages[handlerIndex];
+        }
+
+        /**
+         * Returns number of tasks waiting in the executor and event loops, or -1 if it is unknown.
+         *
+         * @return number of waiting tasks or -1
+         */
+        public long getQueueSize() {
+            return queueSize;
+        }
+
+        /**
+         * Returns latencies of {@link GekTcpChannelHandler#onMessage(GekTcpChannel, Object)}.
+         *
+         * @return latencies of handling messages
+         */
+        public GekLatencyHistogram.Snapshot getMessageLatency() {
+            return messageLatency;
+        }
+
+        /**
+         * Returns latencies of {@code onLoop} callbacks of server or client handler.
+         *
+         * @return latencies of {@code onLoop} callbacks
+         */
+        public GekLatencyHistogram.Snapshot getLoopLatency() {
+            return loopLatency;
+        }
+
+        /**
+         * Returns latencies from new data being readable to the handler chain being called.
+         *
+         * @return latencies from new data being readable to the handler chain being called
+         */
+        public GekLatencyHistogram.Snapshot getReadToHandlerLatency() {
+            return readToHandlerLatency;
+        }
+
+        @Override
+        public String toString() {
+            return "openedChannels=" + openedChannels
+                + ", closedChannels=" + closedChannels
+                + ", bytesRead=" + bytesRead
+                + ", bytesWritten=" + bytesWritten
+                + ", queueSize=" + queueSize
+                + ", messageLatency=[" + messageLatency
+                + "], loopLatency=[" + loopLatency
+                + "], readToHandlerLatency=[" + readToHandlerLatency + "]";
+        }
+    }
+}
@@ -1,28 +1,44 @@
 package xyz.fsgek.common.net.tcp;
 
+import lombok.Getter;
 import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.annotations.ThreadSafe;
 import xyz.fsgek.common.base.Gek;
+import xyz.fsgek.common.base.GekSerialExecutor;
 import xyz.fsgek.common.base.GekThread;
+import xyz.fsgek.common.base.GekTimer;
+import xyz.fsgek.common.base.GekWaiter;
 import xyz.fsgek.common.collect.GekColl;
 import xyz.fsgek.common.data.GekData;
 import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
 import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.net.GekIdleState;
 import xyz.fsgek.common.net.GekNetException;
 import xyz.fsgek.common.net.GekNetServerException;
+import xyz.fsgek.common.net.GekOverload;
 import xyz.fsgek.common.net.GekServerStates;
 
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
 import java.time.Duration;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 import java.util.function.IntFunction;
 
@@ -82,8 +98,10 @@ public interface GekTcpServer extends GekTcpEndpoint {
     Builder toBuilder();
 
     /**
-     * Builder for {@link GekTcpServer}, based on {@link ServerSocket}.
+     * Builder for {@link GekTcpServer}, based on {@link ServerSocket} by default,
+     * or based on {@link ServerSocketChannel} and {@link Selector} if {@link #nio(boolean)} is set to true.
      */
+    @Getter
     class Builder {
 
         private static final byte[] EMPTY_ARRAY = new byte[0];
@@ -99,6 +117,26 @@ public interface GekTcpServer extends GekTcpEndpoint {
         private @Nullable ExecutorService executor;
         private int channelBufferSize = GekIO.IO_BUFFER_SIZE;
         private @Nullable Consumer<ServerSocket> socketConfig;
+        private boolean nio = false;
+        private boolean virtualThreads = false;
+        private int eventLoopCount = Runtime.getRuntime().availableProcessors();
+        private boolean reusePort = false;
+        private boolean offloadToExecutor = false;
+        private int writeHighWaterMark = 64 * 1024;
+        private int writeLowWaterMark = 32 * 1024;
+        private @Nullable GekBufferPool bufferPool;
+        private @Nullable Duration readIdle;
+        private @Nullable Duration writeIdle;
+        private @Nullable Duration allIdle;
+        private boolean metrics = false;
+        private int maxInFlightTasks = 0;
+        private long maxPendingBytes = 0;
+        private boolean throttleAccept = false;
+        private @Nullable SSLContext sslContext;
+        private @Nullable Consumer<SSLEngine> sslEngineConfig;
+        private @Nullable Executor sslHandshakeExecutor;
+        private int sslSessionCacheSize = -1;
+        private @Nullable Duration sslSessionTimeout;
 
         /**
          * Sets server port, maybe 0 to get an available one from system.
@@ -195,6 +233,8 @@ public interface GekTcpServer extends GekTcpEndpoint {
 
         /**
          * Sets executor service, must be of multi-threads.
+         * <p>
+         * For NIO server, the executor is only used if {@link #offloadToExecutor(boolean)} is set to true.
          *
          * @param executor executor service
          * @return this builder
@@ -226,17 +266,351 @@ public interface GekTcpServer extends GekTcpEndpoint {
             return this;
         }
 
+        /**
+         * Sets whether the server is based on {@link ServerSocketChannel} and {@link Selector} (NIO).
+         * <p>
+         * A NIO server dispatches channels by readiness of the selector instead of polling each connection:
+         * {@link GekTcpServerHandler#onLoop(GekTcpChannel, boolean, ByteBuffer)} and handler chain are called only
+         * when new data has been read (or the channel buffer is full), and the {@link #socketConfig(Consumer)} is
+         * applied on {@link ServerSocketChannel#socket()}. For a NIO server, the source object of server is a
+         * {@link ServerSocketChannel} and source object of channel is a {@link SocketChannel}.
+         *
+         * @param nio whether the server is based on NIO
+         * @return this builder
+         */
+        public Builder nio(boolean nio) {
+            this.nio = nio;
+            return this;
+        }
+
+        /**
+         * Sets whether the server runs each channel in its own virtual thread, default is false.
+         * <p>
+         * Virtual threads require Java 21+, this option is applied if the server is built on Java 21+ (the
+         * multi-release jar contains the Java 21 implementation), otherwise the server falls back to a NIO server
+         * ({@link #nio(boolean)}). In virtual threads mode, each channel reads data into its cumulation buffer by
+         * blocking reading in its own virtual thread, and handlers and callbacks of the channel are called in that
+         * thread. Sending data of the channel writes data directly in caller thread, so there is no pending data and
+         * write water marks are not used. The {@link #executor(ExecutorService)} is not needed, and the
+         * {@link #channelBufferSize(int)} and {@link #bufferPool(GekBufferPool)} are applied as NIO server, but idle
+         * detection and {@link GekTcpChannel#schedule(Duration, Runnable)} are not supported. The source object of
+         * server is a {@link ServerSocketChannel} and source object of channel is a {@link SocketChannel}.
+         *
+         * @param virtualThreads whether the server runs each channel in its own virtual thread
+         * @return this builder
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Sets number of event loops for NIO server, default is number of available processors.
+         * <p>
+         * Each event loop has a selector pinned to one thread. Accepted channels are assigned to the event loops in
+         * round-robin, and each channel is served by its own loop for its whole life, so the callbacks of a channel are
+         * always in order. There is also a separated acceptor loop unless {@link #reusePort(boolean)} is set to true.
+         *
+         * @param eventLoopCount number of event loops
+         * @return this builder
+         */
+        public Builder eventLoopCount(int eventLoopCount) {
+            this.eventLoopCount = eventLoopCount;
+            return this;
+        }
+
+        /**
+         * Sets whether NIO server uses {@code SO_REUSEPORT} option, default is false.
+         * <p>
+         * If it is true, each event loop opens its own server socket channel on the same port and accepts channels for
+         * itself, and no separated acceptor loop. This option requires Java 9+ and the support of the platform
+         * (such as Linux), otherwise the server fails to start.
+         *
+         * @param reusePort whether NIO server uses {@code SO_REUSEPORT} option
+         * @return this builder
+         */
+        public Builder reusePort(boolean reusePort) {
+            this.reusePort = reusePort;
+            return this;
+        }
+
+        /**
+         * Sets whether NIO server offloads callbacks of channels to the {@link #executor(ExecutorService)},
+         * default is false.
+         * <p>
+         * By default, the callbacks are called in event loop of the channel, which has the least latency but a slow
+         * callback will delay other channels of the same loop. If it is true, callbacks are called in the executor,
+         * and callbacks of a channel are still called in one thread at a time and in order.
+         *
+         * @param offloadToExecutor whether NIO server offloads callbacks of channels to the executor
+         * @return this builder
+         */
+        public Builder offloadToExecutor(boolean offloadToExecutor) {
+            this.offloadToExecutor = offloadToExecutor;
+            return this;
+        }
+
+        /**
+         * Sets high water mark of bytes pending to be written of NIO channel, default is 64K.
+         * <p>
+         * Data sent by the channel is queued until flushed, and if the pending bytes exceed the high water mark,
+         * the channel becomes unwritable ({@link GekTcpChannel#isWritable()} returns false) and
+         * {@link GekTcpServerHandler#onWritabilityChanged(GekTcpChannel, boolean)} is called, it becomes writable again when the
+         * pending bytes drop below the {@link #writeLowWaterMark(int)}.
+         *
+         * @param writeHighWaterMark high water mark of bytes pending to be written
+         * @return this builder
+         */
+        public Builder writeHighWaterMark(int writeHighWaterMark) {
+            this.writeHighWaterMark = writeHighWaterMark;
+            return this;
+        }
+
+        /**
+         * Sets low water mark of bytes pending to be written of NIO channel, default is 32K.
+         *
+         * @param writeLowWaterMark low water mark of bytes pending to be written
+         * @return this builder
+         * @see #writeHighWaterMark(int)
+         */
+        public Builder writeLowWaterMark(int writeLowWaterMark) {
+            this.writeLowWaterMark = writeLowWaterMark;
+            return this;
+        }
+
+        /**
+         * Sets buffer pool for NIO channels, default is an unpooled heap buffer pool, or a direct buffer pool
+         * ({@link GekBufferPool#newPool(boolean)}) if {@link #sslContext(SSLContext)} is set.
+         * <p>
+         * Each NIO channel has a cumulation buffer allocated from the pool, and released into the pool after the
+         * channel has been closed. Data is read into the cumulation buffer directly, the buffer is compacted in place
+         * only if the consumed data exceeds half of the buffer, and grows geometrically up to
+         * {@link #channelBufferSize(int)}, so there is no allocation in steady reading. For the NIO channel, the
+         * buffer passed to handlers and callbacks is a readonly view of the cumulation buffer: its position may be not
+         * 0, and its content is only valid in current callback.
+         *
+         * @param bufferPool buffer pool for NIO channels
+         * @return this builder
+         */
+        public Builder bufferPool(GekBufferPool bufferPool) {
+            this.bufferPool = bufferPool;
+            return this;
+        }
+
+        /**
+         * Sets read idle time of NIO channel: if no data has been read in the time,
+         * {@link GekTcpServerHandler#onIdle(GekTcpChannel, GekIdleState)} is called with {@link GekIdleState#READ_IDLE}.
+         * Null or non-positive duration disables read idle detection, default is null.
+         * <p>
+         * Idle detection is based on a hashed wheel timer ({@link GekTimer#newWheelTimer()}) shared by channels,
+         * so its precision is about 10 milliseconds.
+         *
+         * @param readIdle read idle time
+         * @return this builder
+         */
+        public Builder readIdle(@Nullable Duration readIdle) {
+            this.readIdle = readIdle;
+            return this;
+        }
+
+        /**
+         * Sets write idle time of NIO channel: if no data has been written in the time,
+         * {@link GekTcpServerHandler#onIdle(GekTcpChannel, GekIdleState)} is called with {@link GekIdleState#WRITE_IDLE}.
+         * Null or non-positive duration disables write idle detection, default is null.
+         *
+         * @param writeIdle write idle time
+         * @return this builder
+         * @see #readIdle(Duration)
+         */
+        public Builder writeIdle(@Nullable Duration writeIdle) {
+            this.writeIdle = writeIdle;
+            return this;
+        }
+
+        /**
+         * Sets all idle time of NIO channel: if no data has been read or written in the time,
+         * {@link GekTcpServerHandler#onIdle(GekTcpChannel, GekIdleState)} is called with {@link GekIdleState#ALL_IDLE}.
+         * Null or non-positive duration disables all idle detection, default is null.
+         *
+         * @param allIdle all idle time
+         * @return this builder
+         * @see #readIdle(Duration)
+         */
+        public Builder allIdle(@Nullable Duration allIdle) {
+            this.allIdle = allIdle;
+            return this;
+        }
+
+        /**
+         * Sets whether metrics of the server and its channels is enabled, default is false.
+         * If it is true, metrics can be got by {@link GekTcpEndpoint#getMetrics()} and
+         * {@link GekTcpChannel#getMetrics()}.
+         *
+         * @param metrics whether metrics is enabled
+         * @return this builder
+         * @see GekTcpMetrics
+         */
+        public Builder metrics(boolean metrics) {
+            this.metrics = metrics;
+            return this;
+        }
+
+        /**
+         * Sets max number of handler tasks submitted to the {@link #executor(ExecutorService)} but not done, default is
+         * 0 (unlimited).
+         * <p>
+         * If the number is reached, the server stops submitting read tasks and pauses reading the channels which have
+         * new data, the remote endpoints are slowed by TCP flow control, and
+         * {@link GekTcpServerHandler#onOverload(GekTcpChannel, GekOverload)} is called with
+         * {@link GekOverload#IN_FLIGHT_TASKS}. Paused channels are resumed in order when the tasks are done. This
+         * option is applied if the channels are handled in the executor: the server is not NIO, or
+         * {@link #offloadToExecutor(boolean)} is set to true.
+         *
+         * @param maxInFlightTasks max number of handler tasks submitted to the executor but not done
+         * @return this builder
+         */
+        public Builder maxInFlightTasks(int maxInFlightTasks) {
+            this.maxInFlightTasks = maxInFlightTasks;
+            return this;
+        }
+
+        /**
+         * Sets max number of bytes pending to be written of each channel before reading of the channel is paused,
+         * default is 0 (unlimited).
+         * <p>
+         * If bytes sent by the channel but not written ({@link GekTcpChannel#getPendingBytes()}) exceed the number,
+         * reading of the channel is paused and
+         * {@link GekTcpServerHandler#onOverload(GekTcpChannel, GekOverload)} is called with
+         * {@link GekOverload#PENDING_BYTES}, reading is resumed when the pending bytes drop to the number. So a remote
+         * endpoint which keeps sending requests but does not read responses can not make the server buffer unlimited
+         * responses. This option is applied for NIO channels, which queue data to be written.
+         *
+         * @param maxPendingBytes max number of bytes pending to be written of each channel
+         * @return this builder
+         */
+        public Builder maxPendingBytes(long maxPendingBytes) {
+            this.maxPendingBytes = maxPendingBytes;
+            return this;
+        }
+
+        /**
+         * Sets whether the server throttles new connections if number of open channels has reached the
+         * {@link #maxConnection(int)}, default is false.
+         * <p>
+         * If it is true, a NIO server stops accepting (the {@link SelectionKey#OP_ACCEPT} is cleared) until an open
+         * channel is closed, so new connections wait in the backlog of the server socket and are accepted later, and
+         * {@link GekTcpServerHandler#onOverload(GekTcpChannel, GekOverload)} is called with
+         * {@link GekOverload#CONNECTIONS} and a null channel each time accepting is paused. Other servers close new
+         * connections right after accepted, and call the callback for each closed connection. Note the
+         * {@link #maxConnection(int)} is also the backlog of the server socket.
+         *
+         * @param throttleAccept whether the server throttles new connections beyond max connection number
+         * @return this builder
+         */
+        public Builder throttleAccept(boolean throttleAccept) {
+            this.throttleAccept = throttleAccept;
+            return this;
+        }
+
+        /**
+         * Sets SSL context to enable TLS for channels, default is null (TLS is disabled).
+         * <p>
+         * TLS is based on {@link SSLEngine} and only supported by NIO server, so the server is always built as a NIO
+         * server if the SSL context is set (even if {@link #virtualThreads(boolean)} is set to true). Network data and
+         * application data are kept in buffers from the {@link #bufferPool(GekBufferPool)}, and the handshake is driven
+         * in event loop of the channel, delegated tasks of the handshake (such as key exchange) are run in the
+         * {@link #sslHandshakeExecutor(Executor)}, so the loops are never blocked by the handshake.
+         * {@link GekTcpServerHandler#onOpen(GekTcpChannel)} is called after the handshake has finished, and a channel
+         * failed in the handshake is closed after
+         * {@link GekTcpServerHandler#onException(GekTcpChannel, Throwable, ByteBuffer)} is called. The handlers receive
+         * and send decrypted data, and the session of the channel can be got by {@link GekTcpChannel#getSslSession()}.
+         * <p>
+         * For TLS channels, write water marks and pending bytes count encrypted data, and files are read and encrypted
+         * in caller thread instead of being transferred to the socket directly.
+         *
+         * @param sslContext SSL context to enable TLS
+         * @return this builder
+         */
+        public Builder sslContext(@Nullable SSLContext sslContext) {
+            this.sslContext = sslContext;
+            return this;
+        }
+
+        /**
+         * Sets config of {@link SSLEngine} of each TLS channel, such as enabled protocols and client authentication.
+         *
+         * @param sslEngineConfig config of {@link SSLEngine}
+         * @return this builder
+         * @see #sslContext(SSLContext)
+         */
+        public Builder sslEngineConfig(@Nullable Consumer<SSLEngine> sslEngineConfig) {
+            this.sslEngineConfig = sslEngineConfig;
+            return this;
+        }
+
+        /**
+         * Sets executor to run delegated tasks of TLS handshakes, default is null: a fixed thread pool of
+         * {@link #eventLoopCount(int)} threads is created by the server and shutdown after the server is closed.
+         *
+         * @param sslHandshakeExecutor executor to run delegated tasks of TLS handshakes
+         * @return this builder
+         * @see #sslContext(SSLContext)
+         */
+        public Builder sslHandshakeExecutor(@Nullable Executor sslHandshakeExecutor) {
+            this.sslHandshakeExecutor = sslHandshakeExecutor;
+            return this;
+        }
+
+        /**
+         * Sets size of the server session cache of the {@link #sslContext(SSLContext)}, 0 means unlimited, default is
+         * -1 (the setting of the SSL context is not changed, the default cache of JDK keeps 20480 sessions).
+         * <p>
+         * Cached sessions can be resumed by reconnecting clients with an abbreviated handshake, which skips the key
+         * exchange and certificate validation. Note the setting is applied on the SSL context itself.
+         *
+         * @param sslSessionCacheSize size of the server session cache
+         * @return this builder
+         */
+        public Builder sslSessionCacheSize(int sslSessionCacheSize) {
+            this.sslSessionCacheSize = sslSessionCacheSize;
+            return this;
+        }
+
+        /**
+         * Sets timeout of cached sessions of the {@link #sslContext(SSLContext)}, default is null (the setting of the
+         * SSL context is not changed, the default timeout of JDK is 24 hours).
+         *
+         * @param sslSessionTimeout timeout of cached sessions
+         * @return this builder
+         * @see #sslSessionCacheSize(int)
+         */
+        public Builder sslSessionTimeout(@Nullable Duration sslSessionTimeout) {
+            this.sslSessionTimeout = sslSessionTimeout;
+            return this;
+        }
+
         /**
          * Builds the server.
          *
          * @return built server
          */
         public GekTcpServer build() {
+            if (virtualThreads && sslContext == null && GekThread.isVirtualThreadSupported()) {
+                return new VirtualThreadTcpServer(this);
+            }
+            if (nio || virtualThreads || sslContext != null) {
+                return new NioTcpServer(this);
+            }
             return new SocketTcpServer(this);
         }
 
         private static final class SocketTcpServer implements GekTcpServer {
 
+            //Arrival of data on a blocking socket can not be signaled, so the idle poller parks at most this long
+            private static final long MAX_POLL_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+            //Min interval of read loops without new data of a channel
+            private static final long IDLE_LOOP_NANOS = MAX_POLL_PARK_NANOS;
+
             private final int port;
             private final int maxConnection;
             private final InetAddress address;
@@ -246,10 +620,17 @@ public interface GekTcpServer extends GekTcpEndpoint {
             private final ExecutorService executor;
             private final int channelBufferSize;
             private final @Nullable Consumer<ServerSocket> socketConfig;
+            private final @Nullable GekTcpMetrics metrics;
+            private final int maxInFlightTasks;
+            private final long maxPendingBytes;
+            private final boolean throttleAccept;
 
             private final CountDownLatch latch = new CountDownLatch(1);
             private final GekServerStates state = new GekServerStates();
             private final Set<ChannelImpl> channels = ConcurrentHashMap.newKeySet();
+            private final AtomicInteger inFlightTasks = new AtomicInteger();
+            //Signaled on accepting, finishing a read task and closing
+            private final GekWaiter poller = GekThread.newWaiter();
             private @Nullable ServerSocket serverSocket;
             private volatile boolean outAcceptLoop = false;
 
@@ -272,6 +653,16 @@ public interface GekTcpServer extends GekTcpEndpoint {
                 if (channelBufferSize <= 0) {
                     throw new GekNetException("Channel buffer size must > 0.");
                 }
+                if (builder.metrics) {
+                    ExecutorService pool = executor;
+                    this.metrics = new GekTcpMetrics(channelHandlers.size(), pool instanceof ThreadPoolExecutor ?
+                        () -> ((ThreadPoolExecutor) pool).getQueue().size() : null);
+                } else {
+                    this.metrics = null;
+                }
+                this.maxInFlightTasks = builder.maxInFlightTasks;
+                this.maxPendingBytes = builder.maxPendingBytes;
+                this.throttleAccept = builder.throttleAccept;
             }
 
             @Override
@@ -377,7 +768,16 @@ public interface GekTcpServer extends GekTcpEndpoint {
                     .bufferGenerator(bufferGenerator)
                     .executor(executor)
                     .channelBufferSize(channelBufferSize)
-                    .socketConfig(socketConfig);
+                    .socketConfig(socketConfig)
+                    .metrics(metrics != null)
+                    .maxInFlightTasks(maxInFlightTasks)
+                    .maxPendingBytes(maxPendingBytes)
+                    .throttleAccept(throttleAccept);
+            }
+
+            @Override
+            public @Nullable GekTcpMetrics getMetrics() {
+                return metrics;
             }
 
             private void start0() {
@@ -393,6 +793,7 @@ public interface GekTcpServer extends GekTcpEndpoint {
                     return;
                 }
                 serverSocket.close();
+                poller.signal();
             }
 
             private ServerSocket buildServerSocket() {
@@ -420,68 +821,128 @@ public interface GekTcpServer extends GekTcpEndpoint {
                             ChannelImpl channel;
                             try {
                                 socket = serverSocket.accept();
+                            } catch (Throwable e) {
+                                executor.execute(() ->
+                                    serverHandler.onException(new GekNetServerException(serverSocket, e)));
+                                continue;
+                            }
+                            if (throttleAccept && channels.size() >= maxConnection) {
+                                TcpUtils.closeQuietly(socket);
+                                overload(null, GekOverload.CONNECTIONS);
+                                continue;
+                            }
+                            try {
                                 channel = new ChannelImpl(socket);
                             } catch (Throwable e) {
+                                TcpUtils.closeQuietly(socket);
                                 executor.execute(() ->
                                     serverHandler.onException(new GekNetServerException(serverSocket, e)));
                                 continue;
                             }
+                            //onOpen is the first task of the channel so it always runs before reading
+                            try {
+                                channel.serial.execute(() -> {
+                                    try {
+                                        serverHandler.onOpen(channel);
+                                    } catch (Throwable e) {
+                                        serverHandler.onException(channel, e, EMPTY_BUFFER);
+                                    }
+                                });
+                            } catch (Throwable e) {
+                                //The rejected task is kept by the serial executor and runs in next drain, before the
+                                //first read task of the channel
+                            }
                             channels.add(channel);
+                            poller.signal();
+                            if (metrics != null) {
+                                metrics.channelOpened();
+                            }
                         } catch (Throwable e) {
                             //Ensure the loop continue
                         }
                     }
                     outAcceptLoop = true;
+                    poller.signal();
                 });
                 executor.execute(() -> {
                     while (true) {
+                        boolean busy = false;
+                        long now = System.nanoTime();
                         Iterator<ChannelImpl> it = channels.iterator();
                         while (it.hasNext()) {
                             ChannelImpl channel = it.next();
                             if (channel.onClose) {
                                 it.remove();
+                                busy = true;
+                                continue;
                             }
-                            if (channel.lock) {
+                            //At most one read task of a channel is pending
+                            if (channel.reading) {
                                 continue;
                             }
-                            channel.lock = true;
-                            try {
-                                if (!channel.onOpen) {
-                                    executor.execute(() -> {
-                                        try {
-                                            serverHandler.onOpen(channel);
-                                        } catch (Throwable e) {
-                                            serverHandler.onException(channel, e, EMPTY_BUFFER);
-                                        } finally {
-                                            channel.onOpen = true;
-                                            channel.lock = false;
-                                        }
-                                    });
-                                } else {
-                                    executor.execute(() -> {
-                                        try {
-                                            doChannel(channel);
-                                        } catch (Throwable e) {
-                                            compactBuffer(channel);
-                                            serverHandler.onException(channel, e, channel.buffer);
-                                        } finally {
-                                            channel.lock = false;
-                                        }
-                                    });
+                            //Data is not read into a full buffer, so a full buffer is not readable and only idle loops
+                            //are called until the handler consumes the buffer, else the poller would spin
+                            boolean readable = channel.buffer.remaining() < channelBufferSize
+                                && channel.readableOrClosed();
+                            //Submits a read task when data arrives or the channel is closed, or an idle loop is due
+                            if (!readable && now - channel.lastLoop < IDLE_LOOP_NANOS) {
+                                continue;
+                            }
+                            //Data is left in the socket until the load drops, only called once for a pause
+                            if (maxInFlightTasks > 0 && inFlightTasks.get() >= maxInFlightTasks) {
+                                if (readable && !channel.paused) {
+                                    channel.paused = true;
+                                    overload(channel, GekOverload.IN_FLIGHT_TASKS);
                                 }
+                                continue;
+                            }
+                            channel.paused = false;
+                            channel.reading = true;
+                            channel.lastLoop = now;
+                            //Idle loops are not progress, the poller still parks between them
+                            busy |= readable;
+                            inFlightTasks.incrementAndGet();
+                            try {
+                                channel.serial.execute(channel.readTask);
                             } catch (Throwable e) {
-                                //Ensure the loop continue
+                                //The rejected task is kept by the serial executor and runs in next drain, where it
+                                //resets the reading flag and in-flight count, so it must not be submitted again
                             }
                         }
                         if (outAcceptLoop && serverSocket.isClosed() && channels.isEmpty()) {
                             latch.countDown();
                             break;
                         }
-                        GekThread.sleep(1);
+                        //Spins and yields for following data after work, then parks until signaled or timeout
+                        if (busy) {
+                            poller.reset();
+                        } else {
+                            poller.idle(MAX_POLL_PARK_NANOS);
+                        }
                     }
                 });
             }
 
+            private void readChannel(ChannelImpl channel) {
+                try {
+                    doChannel(channel);
+                } catch (Throwable e) {
+                    compactBuffer(channel);
+                    serverHandler.onException(channel, e, channel.buffer);
+                } finally {
+                    channel.reading = false;
+                    inFlightTasks.decrementAndGet();
+                    poller.signal();
+                }
+            }
+
+            private void overload(@Nullable ChannelImpl channel, GekOverload overload) {
+                try {
+                    serverHandler.onOverload(channel, overload);
+                } catch (Throwable ignored) {
+                }
+            }
+
             private void doChannel(ChannelImpl channel) {
                 if (channel.onClose) {
                     return;
@@ -498,26 +959,37 @@ public interface GekTcpServer extends GekTcpEndpoint {
                         serverHandler.onException(channel, e, channel.buffer);
                     } finally {
                         channel.onClose = true;
+                        if (metrics != null) {
+                            metrics.channelClosed();
+                        }
                     }
                     return;
                 }
                 if (newBytes.length == 0) {
                     compactBuffer(channel);
-                    serverHandler.onLoop(channel, false, channel.buffer);
+                    onLoop(channel, false);
                     return;
                 }
-                compactBuffer(channel, newBytes);
-                Object message = channel.buffer;
-                for (GekTcpChannelHandler<?> channelHandler : channelHandlers) {
-                    GekTcpChannelHandler<Object> handler = Gek.as(channelHandler);
-                    Object result = handler.onMessage(channel, message);
-                    if (result == null) {
-                        break;
-                    }
-                    message = result;
+                if (channel.metrics != null) {
+                    channel.metrics.bytesRead(newBytes.length);
                 }
+                compactBuffer(channel, newBytes);
+                TcpUtils.handleMessage(channel, channelHandlers, channel.buffer, channel.metrics);
                 compactBuffer(channel);
-                serverHandler.onLoop(channel, true, channel.buffer);
+                onLoop(channel, true);
+            }
+
+            private void onLoop(ChannelImpl channel, boolean hasNewData) {
+                if (channel.metrics == null) {
+                    serverHandler.onLoop(channel, hasNewData, channel.buffer);
+                    return;
+                }
+                long start = System.nanoTime();
+                try {
+                    serverHandler.onLoop(channel, hasNewData, channel.buffer);
+                } finally {
+                    channel.metrics.loop(System.nanoTime() - start);
+                }
             }
 
             private void compactBuffer(ChannelImpl channel) {
@@ -531,15 +1003,22 @@ public interface GekTcpServer extends GekTcpEndpoint {
             private final class ChannelImpl implements GekTcpChannel {
 
                 private final Socket socket;
-                private volatile boolean lock = false;
-                private volatile boolean onOpen = false;
+                private final GekSerialExecutor serial = GekSerialExecutor.newSerialExecutor(executor);
+                private final Runnable readTask = () -> readChannel(this);
+                private volatile boolean reading = false;
+                //Only accessed in the poller
+                private boolean paused = false;
+                private long lastLoop = System.nanoTime();
                 private volatile boolean onClose = false;
                 private volatile ByteBuffer buffer = EMPTY_BUFFER;
 
                 private volatile @Nullable OutputStream out;
+                private final @Nullable GekTcpMetrics metrics;
 
                 private ChannelImpl(Socket socket) {
                     this.socket = socket;
+                    this.metrics = SocketTcpServer.this.metrics == null ?
+                        null : SocketTcpServer.this.metrics.newChannelMetrics();
                 }
 
                 @Override
@@ -637,7 +1116,8 @@ public interface GekTcpServer extends GekTcpEndpoint {
                 @Override
                 public synchronized void send(ByteBuffer data) {
                     if (data.hasArray()) {
-                        send(data.array(), data.arrayOffset(), data.remaining());
+                        send(data.array(), data.arrayOffset() + data.position(), data.remaining());
+                        data.position(data.limit());
                     } else {
                         send(GekBuffer.getBytes(data));
                     }
@@ -657,6 +1137,11 @@ public interface GekTcpServer extends GekTcpEndpoint {
                     }
                 }
 
+                @Override
+                public @Nullable GekTcpMetrics getMetrics() {
+                    return metrics;
+                }
+
                 @Override
                 public Object getSource() {
                     return socket;
@@ -665,7 +1150,8 @@ public interface GekTcpServer extends GekTcpEndpoint {
                 private OutputStream getOutputStream() {
                     if (out == null) {
                         try {
-                            out = socket.getOutputStream();
+                            out = metrics == null ? socket.getOutputStream()
+                                : TcpUtils.metricsOutputStream(socket.getOutputStream(), metrics);
                         } catch (IOException e) {
                             throw new GekNetException(e);
                         }
@@ -673,6 +1159,17 @@ public interface GekTcpServer extends GekTcpEndpoint {
                     return out;
                 }
 
+                boolean readableOrClosed() {
+                    if (socket.isClosed()) {
+                        return true;
+                    }
+                    try {
+                        return socket.getInputStream().available() > 0;
+                    } catch (IOException e) {
+                        return true;
+                    }
+                }
+
                 @Nullable
                 byte[] availableOrClosed() {
                     InputStream in;
@@ -1,8 +1,12 @@
 package xyz.fsgek.common.net.tcp;
 
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.net.GekIdleState;
 import xyz.fsgek.common.net.GekNetServerException;
+import xyz.fsgek.common.net.GekOverload;
 
 import java.nio.ByteBuffer;
+import java.time.Duration;
 
 /**
  * TCP/IP network handler in server endpoint.
@@ -53,6 +57,11 @@ public interface GekTcpServerHandler {
      * {@link GekTcpChannelHandler#onMessage(GekTcpChannel, Object)} will be called for each handler.
      * <b>Only all onMessage method of handlers have been called</b>, then this method would be called.
      * <p>
+     * For the default (socket based) server, a channel without new data is also looped with {@code hasNewData} of
+     * false about each millisecond, so this method can be used for periodic work of the channel. For a NIO server,
+     * this method is only called when new data has been read or the channel buffer is full, use
+     * {@link GekTcpChannel#schedule(Duration, Runnable)} for periodic work instead.
+     * <p>
      * If an exception is thrown, {@link #onException(GekTcpChannel, Throwable, ByteBuffer)} will be called.
      *
      * @param channel    the channel
@@ -61,4 +70,45 @@ public interface GekTcpServerHandler {
      */
     default void onLoop(GekTcpChannel channel, boolean hasNewData, ByteBuffer buffer) {
     }
+
+    /**
+     * Callback when writability of the channel was changed: the channel becomes unwritable if bytes pending to be
+     * written exceed the high water mark, and becomes writable again if the pending bytes drop below the low water
+     * mark. Producers can stop sending data until the channel is writable again.
+     * <p>
+     * This method may be called in the thread which sends or flushes data of the channel.
+     *
+     * @param channel  the channel
+     * @param writable whether the channel is writable now
+     */
+    default void onWritabilityChanged(GekTcpChannel channel, boolean writable) {
+    }
+
+    /**
+     * Callback when the channel has been idle: no data has been read or written in the idle time set by builder.
+     * This method is called in the same thread as other callbacks of the channel, and called again each time the
+     * channel is idle for another idle time.
+     *
+     * @param channel the channel
+     * @param state   idle state
+     */
+    default void onIdle(GekTcpChannel channel, GekIdleState state) {
+    }
+
+    /**
+     * Callback when the server is overloaded and sheds load: reading of the channel is paused for
+     * {@link GekOverload#IN_FLIGHT_TASKS} or {@link GekOverload#PENDING_BYTES}, or new connections are throttled
+     * for {@link GekOverload#CONNECTIONS} (the channel is null).
+     * <p>
+     * This method is called in the server thread which detects the overload, may be concurrently with other callbacks
+     * of the channel, it should be fast and not block.
+     *
+     * @param channel  the channel of which reading is paused, or null for throttled connections
+     * @param overload type of the overload
+     * @see GekTcpServer.Builder#maxInFlightTasks(int)
+     * @see GekTcpServer.Builder#maxPendingBytes(long)
+     * @see GekTcpServer.Builder#throttleAccept(boolean)
+     */
+    default void onOverload(@Nullable GekTcpChannel channel, GekOverload overload) {
+    }
 }
@@ -0,0 +1,115 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekTimer;
+import xyz.fsgek.common.net.GekIdleState;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+// Idle detection of one channel: each enabled idle state has one timeout on the timer,
+// which checks last read/write time when expired and reschedules itself.
+final class IdleMonitor {
+
+    private final GekTimer timer;
+    private final long[] idleNanos;
+    private final Consumer<GekIdleState> idleHandler;
+    private final GekTimer.Timeout[] timeouts = new GekTimer.Timeout[GekIdleState.values().length];
+    private volatile long lastReadTime;
+    private volatile long lastWriteTime;
+    private volatile boolean stopped = false;
+
+    // returns null if no idle time is set
+    static @Nullable IdleMonitor create(
+        Supplier<GekTimer> timer,
+        @Nullable Duration readIdle,
+        @Nullable Duration writeIdle,
+        @Nullable Duration allIdle,
+        Consumer<GekIdleState> idleHandler
+    ) {
+        long[] idleNanos = {toNanos(readIdle), toNanos(writeIdle), toNanos(allIdle)};
+        if (idleNanos[0] == 0 && idleNanos[1] == 0 && idleNanos[2] == 0) {
+            return null;
+        }
+        return new IdleMonitor(timer.get(), idleNanos, idleHandler);
+    }
+
+    private static long toNanos(@Nullable Duration duration) {
+        return duration == null || duration.isNegative() ? 0 : duration.toNanos();
+    }
+
+    private IdleMonitor(GekTimer timer, long[] idleNanos, Consumer<GekIdleState> idleHandler) {
+        this.timer = timer;
+        this.idleNanos = idleNanos;
+        this.idleHandler = idleHandler;
+    }
+
+    void start() {
+        long now = System.nanoTime();
+        lastReadTime = now;
+        lastWriteTime = now;
+        for (GekIdleState state : GekIdleState.values()) {
+            if (idleNanos[state.ordinal()] > 0) {
+                schedule(state, idleNanos[state.ordinal()]);
+            }
+        }
+    }
+
+    void onRead() {
+        lastReadTime = System.nanoTime();
+    }
+
+    void onWrite() {
+        lastWriteTime = System.nanoTime();
+    }
+
+    void stop() {
+        stopped = true;
+        synchronized (timeouts) {
+            for (GekTimer.Timeout timeout : timeouts) {
+                if (timeout != null) {
+                    timeout.cancel();
+                }
+            }
+        }
+    }
+
+    private void schedule(GekIdleState state, long delayNanos) {
+        synchronized (timeouts) {
+            if (stopped) {
+                return;
+            }
+            try {
+                timeouts[state.ordinal()] = timer.schedule(Duration.ofNanos(delayNanos), () -> check(state));
+            } catch (IllegalStateException e) {
+                //The timer has been stopped with its owner
+                stopped = true;
+            }
+        }
+    }
+
+    private void check(GekIdleState state) {
+        if (stopped) {
+            return;
+        }
+        long last;
+        switch (state) {
+            case READ_IDLE:
+                last = lastReadTime;
+                break;
+            case WRITE_IDLE:
+                last = lastWriteTime;
+                break;
+            default:
+                last = Math.max(lastReadTime, lastWriteTime);
+        }
+        long threshold = idleNanos[state.ordinal()];
+        long next = threshold - (System.nanoTime() - last);
+        if (next <= 0) {
+            idleHandler.accept(state);
+            next = threshold;
+        }
+        schedule(state, next);
+    }
+}
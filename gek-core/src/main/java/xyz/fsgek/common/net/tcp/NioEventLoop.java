@@ -0,0 +1,210 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.net.GekNetException;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.util.Iterator;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+// One selector pinned to one thread: selected keys are passed to the KeyHandler attached on the key,
+// and tasks from other threads are run in the loop thread between selections.
+final class NioEventLoop {
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger pendingTasks = new AtomicInteger();
+    //Only accessed in loop thread
+    private final PriorityQueue<TimedTask> timedTasks = new PriorityQueue<>();
+    private final Consumer<Throwable> exceptionHandler;
+    private final @Nullable Runnable terminationHandler;
+    private final Thread thread;
+    private volatile boolean closed = false;
+
+    NioEventLoop(String name, Consumer<Throwable> exceptionHandler, @Nullable Runnable terminationHandler) {
+        try {
+            this.selector = Selector.open();
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+        this.exceptionHandler = exceptionHandler;
+        this.terminationHandler = terminationHandler;
+        this.thread = new Thread(this::loop, name);
+        thread.start();
+    }
+
+    Selector selector() {
+        return selector;
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    // number of tasks waiting in the task queue
+    int pendingTasks() {
+        return pendingTasks.get();
+    }
+
+    // runs given task in loop thread, directly if current thread is the loop thread
+    void execute(Runnable task) {
+        if (inLoop()) {
+            runTask(task);
+            return;
+        }
+        submit(task);
+    }
+
+    // adds given task into the task queue, the task will be run in next loop
+    void submit(Runnable task) {
+        pendingTasks.incrementAndGet();
+        tasks.add(task);
+        selector.wakeup();
+    }
+
+    // runs given task in loop thread after given delay, returned task can be cancelled before it runs
+    TimedTask schedule(long delayMillis, Runnable task) {
+        TimedTask timedTask = new TimedTask(System.currentTimeMillis() + delayMillis, task);
+        execute(() -> timedTasks.add(timedTask));
+        return timedTask;
+    }
+
+    // stops this loop after current selection, the selector will be closed then
+    void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    // closes the selector immediately
+    void closeNow() {
+        closed = true;
+        try {
+            selector.close();
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+    }
+
+    private void loop() {
+        try {
+            while (!closed) {
+                try {
+                    selector.select(selectTimeout());
+                    runTasks();
+                    runTimedTasks();
+                    Iterator<SelectionKey> it = selector.selectedKeys().iterator();
+                    while (it.hasNext()) {
+                        SelectionKey key = it.next();
+                        it.remove();
+                        if (!key.isValid()) {
+                            continue;
+                        }
+                        try {
+                            ((KeyHandler) key.attachment()).handle(key);
+                        } catch (CancelledKeyException e) {
+                            //Channel was closed
+                        }
+                    }
+                } catch (ClosedSelectorException e) {
+                    //Closed now
+                    return;
+                } catch (Throwable e) {
+                    exceptionHandler.accept(e);
+                }
+            }
+            runTasks();
+            try {
+                selector.close();
+            } catch (Throwable e) {
+                exceptionHandler.accept(e);
+            }
+        } finally {
+            if (terminationHandler != null) {
+                terminationHandler.run();
+            }
+        }
+    }
+
+    private void runTasks() {
+        while (true) {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                return;
+            }
+            pendingTasks.decrementAndGet();
+            runTask(task);
+        }
+    }
+
+    private long selectTimeout() {
+        TimedTask next = timedTasks.peek();
+        if (next == null) {
+            return 0;
+        }
+        return Math.max(1, next.deadline - System.currentTimeMillis());
+    }
+
+    private void runTimedTasks() {
+        long now = System.currentTimeMillis();
+        while (true) {
+            TimedTask next = timedTasks.peek();
+            if (next == null || next.deadline > now) {
+                return;
+            }
+            timedTasks.poll();
+            if (!next.cancelled) {
+                runTask(next.task);
+            }
+        }
+    }
+
+    private void runTask(Runnable task) {
+        try {
+            task.run();
+        } catch (CancelledKeyException e) {
+            //Channel was closed
+        } catch (Throwable e) {
+            exceptionHandler.accept(e);
+        }
+    }
+
+    // handler of selected key, should be attached on the key
+    interface KeyHandler {
+
+        void handle(SelectionKey key);
+    }
+
+    // task scheduled by schedule(long, Runnable)
+    static final class TimedTask implements Comparable<TimedTask> {
+
+        private final long deadline;
+        private final Runnable task;
+        private volatile boolean cancelled = false;
+
+        private TimedTask(long deadline, Runnable task) {
+            this.deadline = deadline;
+            this.task = task;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        @Override
+        public int compareTo(TimedTask o) {
+            return Long.compare(deadline, o.deadline);
+        }
+    }
+}
@@ -0,0 +1,1186 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekCheck;
+import xyz.fsgek.common.base.GekTimer;
+import xyz.fsgek.common.data.GekData;
+import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.net.GekIdleState;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekOverload;
+
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import javax.net.ssl.SSLSession;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+// Base channel of NIO server and client: the socket channel is registered on one event loop, and callbacks are called
+// in that loop, or in the executor (one thread at a time) if executor is not null.
+abstract class NioTcpChannel implements GekTcpChannel, NioEventLoop.KeyHandler {
+
+    private static final int MAX_GATHERING_BUFFERS = 64;
+    private static final int TLS_FILE_CHUNK_SIZE = 16 * 1024;
+    private static final long FULL_BUFFER_RETRY_MILLIS = 1;
+
+    final SocketChannel socketChannel;
+    final NioEventLoop loop;
+    private final List<GekTcpChannelHandler<?>> channelHandlers;
+    private final @Nullable Executor executor;
+    private final @Nullable TcpTls tls;
+    private final AtomicInteger wip = new AtomicInteger();
+    //Reads admitted by admitRead() but not released by readDone()
+    private final AtomicInteger admittedReads = new AtomicInteger();
+    //Tasks run in handler thread of this channel, such as scheduled tasks and idle callbacks
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final int writeHighWaterMark;
+    private final int writeLowWaterMark;
+    //Pending writes (ByteBuffer, PooledBuffer or FileRegion) and bytes are guarded by this
+    private final Queue<Object> pendingWrites = new ArrayDeque<>();
+    private final ByteBuffer[] gatheringBuffers = new ByteBuffer[MAX_GATHERING_BUFFERS];
+    private long pendingBytes = 0;
+    private boolean writeInterest = false;
+    private boolean readPaused = false;
+    //Set by close() in the loop, then the channel is closed after pending writes have been written
+    private boolean closeAfterFlush = false;
+    private volatile boolean writable = true;
+    volatile @Nullable SelectionKey key;
+    //Set by subclass before start() if idle detection or metrics is enabled
+    volatile @Nullable IdleMonitor idleMonitor;
+    volatile @Nullable GekTcpMetrics metrics;
+    //Max bytes pending to be written before reading is paused, 0 is unlimited; set by subclass before start()
+    volatile long maxPendingBytes = 0;
+    //Time when new data was readable, 0 if unknown
+    private volatile long readableTime = 0;
+    //Set while a retry of the loop is scheduled for the full cumulation buffer
+    private volatile boolean fullBufferRetry = false;
+    private volatile @Nullable InetSocketAddress remoteAddress;
+    private volatile @Nullable InetSocketAddress localAddress;
+
+    //Following fields are only accessed in handler task of this channel
+    private final TcpCumulation cumulation;
+    private boolean onOpen = false;
+    private boolean onClose = false;
+    //Reading is stopped while the cumulation buffer is full
+    private boolean bufferFull = false;
+    //Whether unwrapped TLS data is left after last reading
+    private boolean tlsBuffered = false;
+
+    //Only accessed in the loop
+    private boolean handshakeTaskRunning = false;
+
+    NioTcpChannel(
+        SocketChannel socketChannel,
+        NioEventLoop loop,
+        List<GekTcpChannelHandler<?>> channelHandlers,
+        GekBufferPool bufferPool,
+        int channelBufferSize,
+        int writeHighWaterMark,
+        int writeLowWaterMark,
+        @Nullable Executor executor,
+        @Nullable TcpTls tls
+    ) {
+        this.socketChannel = socketChannel;
+        this.loop = loop;
+        this.channelHandlers = channelHandlers;
+        this.cumulation = new TcpCumulation(bufferPool, channelBufferSize);
+        this.writeHighWaterMark = writeHighWaterMark;
+        this.writeLowWaterMark = writeLowWaterMark;
+        this.executor = executor;
+        this.tls = tls;
+    }
+
+    abstract void onOpen0();
+
+    abstract void onClose0(ByteBuffer buffer);
+
+    abstract void onException0(Throwable throwable, ByteBuffer buffer);
+
+    abstract void onLoop0(boolean hasNewData, ByteBuffer buffer);
+
+    abstract void onWritabilityChanged0(boolean writable);
+
+    abstract void onIdle0(GekIdleState state);
+
+    // timer for scheduled tasks and idle detection of this channel
+    abstract GekTimer timer();
+
+    // called after onClose0, in handler thread
+    abstract void onClosed();
+
+    // returns whether an offloaded read can be scheduled now, otherwise the subclass defers the read and calls
+    // scheduleRead() later; each admitted read is released by readDone()
+    boolean admitRead() {
+        return true;
+    }
+
+    void readDone() {
+    }
+
+    // called in the loop when reading of this channel is paused for the overload
+    void onOverload0(GekOverload overload) {
+    }
+
+    // schedules an admitted read in the executor
+    void scheduleRead() {
+        admittedReads.incrementAndGet();
+        schedule();
+    }
+
+    @Override
+    public InetAddress getRemoteAddress() {
+        return remoteAddress().getAddress();
+    }
+
+    @Override
+    public int getRemotePort() {
+        return remoteAddress().getPort();
+    }
+
+    @Override
+    public InetAddress getLocalAddress() {
+        return localAddress().getAddress();
+    }
+
+    @Override
+    public int getLocalPort() {
+        return localAddress().getPort();
+    }
+
+    @Override
+    public SocketAddress getRemoteSocketAddress() {
+        return remoteAddress();
+    }
+
+    @Override
+    public SocketAddress getLocalSocketAddress() {
+        return localAddress();
+    }
+
+    @Override
+    public boolean isOpened() {
+        return socketChannel.isConnected();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return !socketChannel.isOpen();
+    }
+
+    @Override
+    public void close(@Nullable Duration timeout) {
+        if (isClosed()) {
+            return;
+        }
+        if (loop.inLoop()) {
+            //Pending writes are only written by this loop, so it must not be blocked
+            closeLater(timeout);
+            return;
+        }
+        closeBlocking(timeout);
+    }
+
+    private void closeLater(@Nullable Duration timeout) {
+        synchronized (this) {
+            closeAfterFlush = true;
+        }
+        if (writePending()) {
+            return;
+        }
+        if (timeout != null) {
+            loop.schedule(timeout.toMillis(), this::closeNow);
+        }
+    }
+
+    private synchronized void closeBlocking(@Nullable Duration timeout) {
+        flush();
+        try {
+            long deadline = timeout == null ? 0 : System.currentTimeMillis() + timeout.toMillis();
+            while (!pendingWrites.isEmpty() && !isClosed()) {
+                if (timeout == null) {
+                    wait();
+                    continue;
+                }
+                long millis = deadline - System.currentTimeMillis();
+                if (millis <= 0) {
+                    break;
+                }
+                wait(millis);
+            }
+        } catch (InterruptedException e) {
+            //do nothing
+        }
+        closeNow();
+    }
+
+    @Override
+    public void closeNow() {
+        if (isClosed()) {
+            return;
+        }
+        if (tls != null) {
+            closeTls();
+        }
+        try {
+            socketChannel.close();
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+        //Callback onClose in next handler task
+        dispatch();
+    }
+
+    @Override
+    public void send(GekData data) {
+        send(data.toBuffer());
+    }
+
+    @Override
+    public void send(byte[] data) {
+        send(ByteBuffer.wrap(data));
+    }
+
+    @Override
+    public void send(byte[] data, int offset, int length) {
+        GekCheck.checkRangeInBounds(offset, offset + length, 0, data.length);
+        send(ByteBuffer.wrap(data, offset, length));
+    }
+
+    @Override
+    public void send(ByteBuffer data) {
+        if (!data.hasRemaining()) {
+            return;
+        }
+        if (tls != null) {
+            enqueueTls(data);
+            return;
+        }
+        //Data is copied so that the caller can reuse its buffer
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data);
+        copy.flip();
+        enqueue(copy, copy.remaining());
+    }
+
+    @Override
+    public void send(ByteBuffer data, GekBufferPool pool) {
+        if (tls != null || !data.hasRemaining()) {
+            //TLS data is wrapped into buffers of the channel
+            GekTcpChannel.super.send(data, pool);
+            return;
+        }
+        try {
+            enqueue(new PooledBuffer(data, pool), data.remaining());
+        } catch (RuntimeException e) {
+            pool.release(data);
+            throw e;
+        }
+    }
+
+    @Override
+    public void send(ByteBuffer[] data) {
+        if (tls != null) {
+            enqueueTls(data);
+            return;
+        }
+        long total = 0;
+        for (ByteBuffer buffer : data) {
+            total += buffer.remaining();
+        }
+        if (total == 0) {
+            return;
+        }
+        if (total > Integer.MAX_VALUE) {
+            throw new GekNetException("Data is too large to be sent at once: " + total + ".");
+        }
+        //Each buffer is copied into its own pending write, so they are written by one gathering write
+        ByteBuffer[] copies = new ByteBuffer[data.length];
+        int count = 0;
+        for (ByteBuffer buffer : data) {
+            if (!buffer.hasRemaining()) {
+                continue;
+            }
+            ByteBuffer copy = ByteBuffer.allocate(buffer.remaining());
+            copy.put(buffer);
+            copy.flip();
+            copies[count++] = copy;
+        }
+        enqueue(copies, count, total);
+    }
+
+    @Override
+    public void sendFile(Path file, long offset, long length) {
+        checkFileRange(offset, length);
+        if (length == 0) {
+            return;
+        }
+        FileChannel fileChannel;
+        try {
+            fileChannel = FileChannel.open(file, StandardOpenOption.READ);
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+        if (tls != null) {
+            try {
+                sendFileTls(fileChannel, offset, length);
+            } finally {
+                TcpUtils.closeQuietly(fileChannel);
+            }
+            return;
+        }
+        try {
+            enqueue(new FileRegion(fileChannel, offset, length, true), length);
+        } catch (RuntimeException e) {
+            TcpUtils.closeQuietly(fileChannel);
+            throw e;
+        }
+    }
+
+    @Override
+    public void sendFile(FileChannel file, long offset, long length) {
+        checkFileRange(offset, length);
+        if (length == 0) {
+            return;
+        }
+        if (tls != null) {
+            sendFileTls(file, offset, length);
+            return;
+        }
+        enqueue(new FileRegion(file, offset, length, false), length);
+    }
+
+    @Override
+    public void send(InputStream data) {
+        byte[] bytes = GekIO.readBytes(data);
+        if (bytes != null) {
+            send(bytes);
+        }
+    }
+
+    @Override
+    public void flush() {
+        writePending();
+    }
+
+    @Override
+    public boolean isWritable() {
+        return writable;
+    }
+
+    @Override
+    public synchronized long getPendingBytes() {
+        return pendingBytes;
+    }
+
+    @Override
+    public GekTimer.Timeout schedule(Duration delay, Runnable task) {
+        return timer().schedule(delay, () -> runInHandler(task));
+    }
+
+    @Override
+    public @Nullable GekTcpMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public SocketChannel getSource() {
+        return socketChannel;
+    }
+
+    @Override
+    public @Nullable SSLSession getSslSession() {
+        return tls == null ? null : tls.engine().getSession();
+    }
+
+    @Override
+    public void handle(SelectionKey key) {
+        if (key.isWritable()) {
+            writePending();
+        }
+        if (tls != null && !tls.isReady()) {
+            if (key.isValid() && key.isReadable()) {
+                handshake();
+            }
+            return;
+        }
+        if (key.isValid() && key.isReadable()) {
+            if (pauseRead(key)) {
+                return;
+            }
+            if (metrics != null) {
+                readableTime = System.nanoTime();
+            }
+            if (executor != null) {
+                //Stops reading until the handler task of this channel has been done
+                key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+                if (admitRead()) {
+                    scheduleRead();
+                }
+            } else {
+                process();
+            }
+        }
+    }
+
+    // starts callbacks of this channel after it has been connected and registered, called in the loop
+    void start() {
+        try {
+            remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
+            localAddress = (InetSocketAddress) socketChannel.getLocalAddress();
+        } catch (IOException e) {
+            TcpUtils.closeQuietly(socketChannel);
+        }
+        if (idleMonitor != null) {
+            idleMonitor.start();
+        }
+        if (tls != null) {
+            try {
+                tls.engine().beginHandshake();
+            } catch (Throwable e) {
+                handshakeFailed(e);
+                return;
+            }
+            handshake();
+            return;
+        }
+        startCallbacks();
+    }
+
+    // creates idle monitor of which callbacks are called in handler thread, returns null if no idle time is set
+    @Nullable
+    IdleMonitor newIdleMonitor(@Nullable Duration readIdle, @Nullable Duration writeIdle, @Nullable Duration allIdle) {
+        return IdleMonitor.create(this::timer, readIdle, writeIdle, allIdle, state -> runInHandler(() -> onIdle0(state)));
+    }
+
+    private void startCallbacks() {
+        if (executor != null) {
+            schedule();
+        } else {
+            process();
+        }
+    }
+
+    // drives the TLS handshake in the loop: delegated tasks (such as key exchange and certificate validation) are run
+    // in the handshake executor, and callbacks of this channel are started after the handshake has finished
+    private void handshake() {
+        if (handshakeTaskRunning || tls.isReady() || isClosed()) {
+            return;
+        }
+        try {
+            while (true) {
+                switch (tls.engine().getHandshakeStatus()) {
+                    case NEED_WRAP:
+                        synchronized (this) {
+                            tls.wrap(GekBuffer.emptyBuffer(), this::addPending);
+                        }
+                        writePending();
+                        break;
+                    case NEED_TASK:
+                        handshakeTaskRunning = true;
+                        setReadInterest(false);
+                        tls.handshakeExecutor().execute(() -> {
+                            tls.runDelegatedTasks();
+                            loop.execute(() -> {
+                                handshakeTaskRunning = false;
+                                handshake();
+                            });
+                        });
+                        return;
+                    case FINISHED:
+                    case NOT_HANDSHAKING:
+                        handshakeFinished();
+                        return;
+                    default:
+                        //NEED_UNWRAP, or NEED_UNWRAP_AGAIN since Java 9
+                        SSLEngineResult result = tls.unwrap();
+                        if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                            throw new SSLException("TLS was closed during the handshake.");
+                        }
+                        if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                            int readCount = tls.readNet(socketChannel);
+                            if (readCount < 0) {
+                                throw new SSLException("Connection was closed during the handshake.");
+                            }
+                            if (readCount == 0) {
+                                setReadInterest(true);
+                                return;
+                            }
+                        }
+                }
+            }
+        } catch (Throwable e) {
+            handshakeFailed(e);
+        }
+    }
+
+    private void handshakeFinished() throws SSLException {
+        if (tls.engine().isOutboundDone() || tls.engine().isInboundDone()) {
+            throw new SSLException("TLS was closed during the handshake.");
+        }
+        boolean changed;
+        synchronized (this) {
+            tls.ready(this::addPending);
+            changed = updateWritability();
+        }
+        if (changed) {
+            fireWritabilityChanged();
+        }
+        writePending();
+        //Reading is resumed after onOpen
+        setReadInterest(false);
+        startCallbacks();
+    }
+
+    private void handshakeFailed(Throwable cause) {
+        try {
+            onException0(cause, GekBuffer.emptyBuffer());
+        } catch (Throwable ignored) {
+        }
+        try {
+            closeNow();
+        } catch (Throwable ignored) {
+        }
+    }
+
+    // sends close_notify as possible before the socket is closed
+    private void closeTls() {
+        synchronized (this) {
+            try {
+                tls.closeOutbound(this::addPending);
+                writePending0();
+            } catch (Throwable ignored) {
+            }
+        }
+    }
+
+    // encrypts given data into pending writes, or keeps a copy of the data until the handshake has finished
+    private void enqueueTls(ByteBuffer... data) {
+        boolean changed;
+        synchronized (this) {
+            if (isClosed()) {
+                throw new GekNetException("The channel has been closed.");
+            }
+            try {
+                for (ByteBuffer buffer : data) {
+                    if (!buffer.hasRemaining()) {
+                        continue;
+                    }
+                    if (tls.isReady()) {
+                        tls.wrap(buffer, this::addPending);
+                    } else {
+                        tls.addPendingAppData(buffer);
+                    }
+                }
+            } catch (SSLException e) {
+                throw new GekNetException(e);
+            }
+            changed = updateWritability();
+        }
+        if (changed) {
+            fireWritabilityChanged();
+        }
+    }
+
+    // TLS can not transfer file to the socket directly, so file data is read and encrypted in caller thread
+    private void sendFileTls(FileChannel file, long offset, long length) {
+        ByteBuffer chunk = ByteBuffer.allocate((int) Math.min(length, TLS_FILE_CHUNK_SIZE));
+        long position = offset;
+        long end = offset + length;
+        try {
+            while (position < end) {
+                chunk.clear();
+                chunk.limit((int) Math.min(chunk.capacity(), end - position));
+                int count = file.read(chunk, position);
+                if (count < 0) {
+                    throw new IOException("End of file before the region has been transferred: " + position + ".");
+                }
+                position += count;
+                chunk.flip();
+                enqueueTls(chunk);
+            }
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+    }
+
+    // adds wrapped network data into pending writes, called in lock of this
+    private void addPending(ByteBuffer buffer) {
+        pendingWrites.add(buffer);
+        pendingBytes += buffer.remaining();
+    }
+
+    private void enqueue(Object data, long length) {
+        boolean changed;
+        synchronized (this) {
+            if (isClosed()) {
+                throw new GekNetException("The channel has been closed.");
+            }
+            pendingWrites.add(data);
+            pendingBytes += length;
+            changed = updateWritability();
+        }
+        if (changed) {
+            fireWritabilityChanged();
+        }
+    }
+
+    // adds first count buffers as continuous pending writes, so data of other senders is not interleaved
+    private void enqueue(ByteBuffer[] buffers, int count, long length) {
+        boolean changed;
+        synchronized (this) {
+            if (isClosed()) {
+                throw new GekNetException("The channel has been closed.");
+            }
+            for (int i = 0; i < count; i++) {
+                pendingWrites.add(buffers[i]);
+            }
+            pendingBytes += length;
+            changed = updateWritability();
+        }
+        if (changed) {
+            fireWritabilityChanged();
+        }
+    }
+
+    // writes pending data by gathering writes, returns whether all pending data has been written; if close() was
+    // called in the loop, the channel is closed after all pending data has been written
+    private boolean writePending() {
+        boolean flushed;
+        boolean changed;
+        boolean close;
+        synchronized (this) {
+            flushed = writePending0();
+            if (flushed == writeInterest) {
+                //If socket buffer is full, remaining data will be written when the channel is writable
+                writeInterest = !flushed;
+                setWriteInterest(writeInterest);
+            }
+            changed = updateWritability();
+            if (readPaused && pendingBytes <= maxPendingBytes) {
+                readPaused = false;
+                resumeRead();
+            }
+            close = flushed && closeAfterFlush;
+            notifyAll();
+        }
+        if (changed) {
+            fireWritabilityChanged();
+        }
+        if (close) {
+            closeNow();
+        }
+        return flushed;
+    }
+
+    private boolean writePending0() {
+        try {
+            while (!pendingWrites.isEmpty()) {
+                Object head = pendingWrites.peek();
+                long written;
+                if (head instanceof FileRegion) {
+                    FileRegion region = (FileRegion) head;
+                    written = region.transferTo(socketChannel);
+                    if (region.remaining == 0) {
+                        pendingWrites.poll();
+                        region.release();
+                    }
+                } else {
+                    //Gathers continuous buffers before next file region
+                    int count = 0;
+                    for (Object data : pendingWrites) {
+                        ByteBuffer buffer = bufferOf(data);
+                        if (buffer == null) {
+                            break;
+                        }
+                        gatheringBuffers[count++] = buffer;
+                        if (count == gatheringBuffers.length) {
+                            break;
+                        }
+                    }
+                    written = socketChannel.write(gatheringBuffers, 0, count);
+                    Arrays.fill(gatheringBuffers, 0, count, null);
+                    while (true) {
+                        Object data = pendingWrites.peek();
+                        ByteBuffer buffer = bufferOf(data);
+                        if (buffer == null || buffer.hasRemaining()) {
+                            break;
+                        }
+                        pendingWrites.poll();
+                        release(data);
+                    }
+                }
+                pendingBytes -= written;
+                if (written > 0) {
+                    if (idleMonitor != null) {
+                        idleMonitor.onWrite();
+                    }
+                    if (metrics != null) {
+                        metrics.bytesWritten(written);
+                    }
+                }
+                if (!pendingWrites.isEmpty() && written == 0) {
+                    return false;
+                }
+            }
+        } catch (IOException e) {
+            clearPendingWrites();
+            if (isClosed()) {
+                return true;
+            }
+            throw new GekNetException(e);
+        }
+        return true;
+    }
+
+    // returns buffer of given pending write, or null if it is not a buffer
+    @Nullable
+    private static ByteBuffer bufferOf(@Nullable Object data) {
+        if (data instanceof ByteBuffer) {
+            return (ByteBuffer) data;
+        }
+        if (data instanceof PooledBuffer) {
+            return ((PooledBuffer) data).buffer;
+        }
+        return null;
+    }
+
+    // releases given pending write which has been written or dropped, called in lock of this
+    private void release(Object data) {
+        if (data instanceof FileRegion) {
+            ((FileRegion) data).release();
+        } else if (data instanceof PooledBuffer) {
+            ((PooledBuffer) data).release();
+        } else if (tls != null) {
+            tls.release((ByteBuffer) data);
+        }
+    }
+
+    // called in lock of this
+    private void clearPendingWrites() {
+        for (Object data : pendingWrites) {
+            release(data);
+        }
+        pendingWrites.clear();
+        pendingBytes = 0;
+        if (tls != null) {
+            tls.clearPendingAppData();
+        }
+    }
+
+    // updates writability by pending bytes, returns whether the writability was changed; called in lock of this
+    private boolean updateWritability() {
+        if (writable && pendingBytes > writeHighWaterMark) {
+            writable = false;
+            return true;
+        }
+        if (!writable && pendingBytes < writeLowWaterMark) {
+            writable = true;
+            return true;
+        }
+        return false;
+    }
+
+    private void fireWritabilityChanged() {
+        try {
+            onWritabilityChanged0(writable);
+        } catch (Throwable e) {
+            onException0(e, GekBuffer.emptyBuffer());
+        }
+    }
+
+    private void setWriteInterest(boolean write) {
+        loop.execute(() -> {
+            SelectionKey k = key;
+            if (k == null || !k.isValid()) {
+                return;
+            }
+            int ops = k.interestOps();
+            k.interestOps(write ? ops | SelectionKey.OP_WRITE : ops & ~SelectionKey.OP_WRITE);
+        });
+    }
+
+    // pauses reading if bytes pending to be written exceed the max number, called in the loop
+    private boolean pauseRead(SelectionKey key) {
+        if (maxPendingBytes <= 0) {
+            return false;
+        }
+        boolean first;
+        synchronized (this) {
+            if (pendingBytes <= maxPendingBytes) {
+                return false;
+            }
+            first = !readPaused;
+            readPaused = true;
+        }
+        key.interestOps(key.interestOps() & ~SelectionKey.OP_READ);
+        if (first) {
+            try {
+                onOverload0(GekOverload.PENDING_BYTES);
+            } catch (Throwable ignored) {
+            }
+        }
+        return true;
+    }
+
+    private void resumeRead() {
+        loop.execute(() -> {
+            SelectionKey k = key;
+            if (k != null && k.isValid()) {
+                k.interestOps(k.interestOps() | SelectionKey.OP_READ);
+            }
+        });
+    }
+
+    // called in the loop
+    private void setReadInterest(boolean read) {
+        SelectionKey k = key;
+        if (k != null && k.isValid()) {
+            int ops = k.interestOps();
+            k.interestOps(read ? ops | SelectionKey.OP_READ : ops & ~SelectionKey.OP_READ);
+        }
+    }
+
+    // runs given task later in handler thread, the task is dropped if this channel has been closed
+    private void runInHandler(Runnable task) {
+        tasks.add(task);
+        dispatch();
+    }
+
+    // runs process() later in handler thread
+    private void dispatch() {
+        if (executor != null) {
+            schedule();
+        } else {
+            loop.submit(this::process);
+        }
+    }
+
+    private void schedule() {
+        if (wip.getAndIncrement() == 0) {
+            try {
+                executor.execute(this::runTask);
+            } catch (RejectedExecutionException e) {
+                wip.set(0);
+            }
+        }
+    }
+
+    // offloaded handler task: ensures handlers of this channel are called in one thread at a time
+    private void runTask() {
+        int missed = 1;
+        while (true) {
+            process();
+            for (int reads = admittedReads.getAndSet(0); reads > 0; reads--) {
+                readDone();
+            }
+            missed = wip.addAndGet(-missed);
+            if (missed == 0) {
+                return;
+            }
+        }
+    }
+
+    private void process() {
+        if (onClose) {
+            return;
+        }
+        if (!onOpen && tls != null && !tls.isReady()) {
+            //Callbacks are started after the TLS handshake has finished
+            if (isClosed()) {
+                doClose();
+            }
+            return;
+        }
+        if (!onOpen) {
+            onOpen = true;
+            try {
+                onOpen0();
+            } catch (Throwable e) {
+                onException0(e, GekBuffer.emptyBuffer());
+            }
+            if (!isClosed()) {
+                resumeRead();
+                if (tls != null && tls.hasNetData()) {
+                    //Data following the handshake has been read
+                    dispatch();
+                }
+            }
+        } else if (!isClosed()) {
+            read();
+            if (executor != null && !isClosed() && !bufferFull) {
+                resumeRead();
+            }
+        }
+        runTasks();
+        if (isClosed()) {
+            doClose();
+        }
+    }
+
+    private void runTasks() {
+        while (true) {
+            Runnable task = tasks.poll();
+            if (task == null) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (Throwable e) {
+                onException0(e, cumulation.view());
+            }
+        }
+    }
+
+    private void read() {
+        if (!cumulation.prepare()) {
+            //Cumulation buffer is full
+            try {
+                onLoop(false);
+            } catch (Throwable e) {
+                onException0(e, cumulation.view());
+            }
+            if (isClosed()) {
+                return;
+            }
+            if (!cumulation.prepare()) {
+                //Still full: the readable key would be selected again and again, so reading is stopped and the loop
+                //is retried later until the handler has consumed data
+                bufferFull = true;
+                loop.execute(() -> setReadInterest(false));
+                if (!fullBufferRetry) {
+                    fullBufferRetry = true;
+                    loop.schedule(FULL_BUFFER_RETRY_MILLIS, () -> {
+                        fullBufferRetry = false;
+                        dispatch();
+                    });
+                }
+                return;
+            }
+            resumeFullBuffer();
+            if (tlsBuffered) {
+                dispatch();
+            }
+            return;
+        }
+        resumeFullBuffer();
+        int readCount;
+        try {
+            readCount = tls == null ? socketChannel.read(cumulation.buffer()) : readTls(cumulation.buffer());
+        } catch (IOException e) {
+            readCount = -1;
+        }
+        if (readCount < 0) {
+            TcpUtils.closeQuietly(socketChannel);
+            return;
+        }
+        if (readCount == 0) {
+            return;
+        }
+        if (idleMonitor != null) {
+            idleMonitor.onRead();
+        }
+        GekTcpMetrics metrics = this.metrics;
+        if (metrics != null) {
+            metrics.bytesRead(readCount);
+            long readable = readableTime;
+            if (readable != 0) {
+                metrics.readToHandler(System.nanoTime() - readable);
+                readableTime = 0;
+            }
+        }
+        ByteBuffer message0 = cumulation.view();
+        try {
+            TcpUtils.handleMessage(this, channelHandlers, message0, metrics);
+            cumulation.consumed(message0);
+            onLoop(true);
+        } catch (Throwable e) {
+            cumulation.consumed(message0);
+            onException0(e, cumulation.view());
+        }
+        if (tlsBuffered && !isClosed()) {
+            //Unwrapped data is left for the full cumulation buffer, and the socket may be not readable again
+            dispatch();
+        }
+    }
+
+    // reads application data into given buffer through TLS, returns -1 if the connection or the TLS inbound is closed
+    private int readTls(ByteBuffer dst) throws IOException {
+        int count = tls.drainTo(dst);
+        boolean end = false;
+        while (dst.hasRemaining()) {
+            if (!tls.hasAppData()) {
+                SSLEngineResult result = tls.unwrap();
+                if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                    end = true;
+                    break;
+                }
+                //Post-handshake messages, such as key update of TLS 1.3
+                if (result.getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_TASK) {
+                    tls.runDelegatedTasks();
+                }
+                if (tls.engine().getHandshakeStatus() == SSLEngineResult.HandshakeStatus.NEED_WRAP) {
+                    synchronized (this) {
+                        tls.wrap(GekBuffer.emptyBuffer(), this::addPending);
+                    }
+                    writePending();
+                }
+                if (result.getStatus() == SSLEngineResult.Status.BUFFER_UNDERFLOW) {
+                    int readCount = tls.readNet(socketChannel);
+                    if (readCount < 0) {
+                        end = true;
+                        break;
+                    }
+                    if (readCount == 0) {
+                        break;
+                    }
+                    continue;
+                }
+            }
+            count += tls.drainTo(dst);
+        }
+        tlsBuffered = !dst.hasRemaining() && (tls.hasAppData() || tls.hasNetData());
+        return count == 0 && end ? -1 : count;
+    }
+
+    // resumes reading stopped by the full cumulation buffer
+    private void resumeFullBuffer() {
+        if (bufferFull) {
+            bufferFull = false;
+            resumeRead();
+        }
+    }
+
+    private void onLoop(boolean hasNewData) {
+        ByteBuffer remaining = cumulation.view();
+        GekTcpMetrics metrics = this.metrics;
+        if (metrics == null) {
+            onLoop0(hasNewData, remaining);
+        } else {
+            long start = System.nanoTime();
+            try {
+                onLoop0(hasNewData, remaining);
+            } finally {
+                metrics.loop(System.nanoTime() - start);
+            }
+        }
+        //Data may be consumed in onLoop
+        cumulation.consumed(remaining);
+    }
+
+    private void doClose() {
+        onClose = true;
+        tasks.clear();
+        if (idleMonitor != null) {
+            idleMonitor.stop();
+        }
+        synchronized (this) {
+            clearPendingWrites();
+            notifyAll();
+        }
+        ByteBuffer remaining = cumulation.view();
+        try {
+            //Channel failed in the TLS handshake has not been opened
+            if (onOpen) {
+                onClose0(remaining);
+            }
+        } catch (Throwable e) {
+            onException0(e, remaining);
+        } finally {
+            cumulation.release();
+            if (tls != null) {
+                loop.execute(tls::release);
+            }
+            onClosed();
+        }
+    }
+
+    private static void checkFileRange(long offset, long length) {
+        GekCheck.checkArgument(offset >= 0, "offset must >= 0.");
+        GekCheck.checkArgument(length >= 0, "length must >= 0.");
+    }
+
+    private InetSocketAddress remoteAddress() {
+        InetSocketAddress address = remoteAddress;
+        if (address == null) {
+            throw new GekNetException("Channel has not been connected.");
+        }
+        return address;
+    }
+
+    private InetSocketAddress localAddress() {
+        InetSocketAddress address = localAddress;
+        if (address == null) {
+            throw new GekNetException("Channel has not been connected.");
+        }
+        return address;
+    }
+
+    // buffer of which ownership has been passed to the channel, released into its pool after written or dropped
+    private static final class PooledBuffer {
+
+        private final ByteBuffer buffer;
+        private final GekBufferPool pool;
+
+        private PooledBuffer(ByteBuffer buffer, GekBufferPool pool) {
+            this.buffer = buffer;
+            this.pool = pool;
+        }
+
+        private void release() {
+            pool.release(buffer);
+        }
+    }
+
+    // region of file pending to be transferred
+    private static final class FileRegion {
+
+        private final FileChannel file;
+        private final boolean closeOnDone;
+        private long position;
+        private long remaining;
+
+        private FileRegion(FileChannel file, long position, long length, boolean closeOnDone) {
+            this.file = file;
+            this.position = position;
+            this.remaining = length;
+            this.closeOnDone = closeOnDone;
+        }
+
+        // transfers as many bytes as the socket accepts, returns number of transferred bytes
+        private long transferTo(SocketChannel target) throws IOException {
+            long count = file.transferTo(position, remaining, target);
+            if (count == 0 && position >= file.size()) {
+                throw new IOException("End of file before the region has been transferred: " + position + ".");
+            }
+            position += count;
+            remaining -= count;
+            return count;
+        }
+
+        private void release() {
+            if (closeOnDone) {
+                TcpUtils.closeQuietly(file);
+            }
+        }
+    }
+}
@@ -0,0 +1,396 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
+import xyz.fsgek.common.base.GekTimer;
+import xyz.fsgek.common.collect.GekColl;
+import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.net.GekIdleState;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekServerStates;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+final class NioTcpClient implements GekTcpClient {
+
+    private static final GekTcpClientHandler EMPTY_CLIENT_HANDLER = new GekTcpClientHandler() {
+    };
+
+    private final int port;
+    private final @Nullable InetAddress address;
+    private final GekTcpClientHandler clientHandler;
+    private final List<GekTcpChannelHandler<?>> channelHandlers;
+    private final IntFunction<ByteBuffer> bufferGenerator;
+    private final int channelBufferSize;
+    private final GekBufferPool bufferPool;
+    private final int writeHighWaterMark;
+    private final int writeLowWaterMark;
+    private final @Nullable Consumer<Socket> socketConfig;
+    private final TcpClientGroupImpl group;
+    private final @Nullable Duration readIdle;
+    private final @Nullable Duration writeIdle;
+    private final @Nullable Duration allIdle;
+    private final @Nullable GekTcpMetrics metrics;
+    private final @Nullable SSLContext sslContext;
+    private final @Nullable Consumer<SSLEngine> sslEngineConfig;
+    private final Executor sslHandshakeExecutor;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final GekServerStates state = new GekServerStates();
+    private @Nullable NioClientChannel channel;
+
+    NioTcpClient(Builder builder) {
+        this.port = builder.getPort();
+        this.address = builder.getAddress();
+        this.clientHandler = Gek.notNull(builder.getClientHandler(), EMPTY_CLIENT_HANDLER);
+        this.channelHandlers = GekColl.immutableList(builder.getChannelHandlers());
+        if (channelHandlers.isEmpty()) {
+            throw new GekNetException("Channel handlers are empty.");
+        }
+        this.socketConfig = builder.getSocketConfig();
+        this.bufferGenerator = Gek.notNull(builder.getBufferGenerator(), ByteBuffer::allocate);
+        this.channelBufferSize = builder.getChannelBufferSize();
+        if (channelBufferSize <= 0) {
+            throw new GekNetException("Channel buffer size must > 0.");
+        }
+        if (builder.getProxy() != null) {
+            throw new GekNetException("Proxy is not supported by client in group.");
+        }
+        this.group = (TcpClientGroupImpl) builder.getGroup();
+        this.bufferPool = Gek.notNull(builder.getBufferPool(),
+            builder.getSslContext() == null ? GekBufferPool.unpooled(false) : group.tlsBufferPool());
+        this.writeHighWaterMark = builder.getWriteHighWaterMark();
+        this.writeLowWaterMark = builder.getWriteLowWaterMark();
+        if (writeLowWaterMark < 0 || writeHighWaterMark < writeLowWaterMark) {
+            throw new GekNetException("Write water marks must satisfy: 0 <= low <= high.");
+        }
+        this.readIdle = builder.getReadIdle();
+        this.writeIdle = builder.getWriteIdle();
+        this.allIdle = builder.getAllIdle();
+        this.metrics = builder.isMetrics() ? new GekTcpMetrics(channelHandlers.size(), this::queueSize) : null;
+        this.sslContext = builder.getSslContext();
+        this.sslEngineConfig = builder.getSslEngineConfig();
+        this.sslHandshakeExecutor = Gek.notNull(builder.getSslHandshakeExecutor(), ForkJoinPool.commonPool());
+    }
+
+    @Override
+    public void start(SocketAddress address, @Nullable Duration timeout, boolean block) {
+        NioClientChannel channel;
+        synchronized (this) {
+            if (!state.isCreated()) {
+                throw new GekNetException("The client has been opened or closed.");
+            }
+            TcpTls tls = newTls(address);
+            channel = new NioClientChannel(openSocketChannel(), group.nextLoop(), block, tls);
+            this.channel = channel;
+            state.open();
+        }
+        channel.loop.execute(() -> channel.connect(address, timeout));
+        if (!block) {
+            return;
+        }
+        try {
+            latch.await();
+        } catch (InterruptedException ignored) {
+        }
+        Throwable connectFailure = channel.connectFailure;
+        if (connectFailure != null) {
+            throw new GekNetException(connectFailure);
+        }
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return getSource().socket().getLocalAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return getSource().socket().getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getSocketAddress() {
+        return getSource().socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public boolean isOpened() {
+        return state.isOpened();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return state.isClosed();
+    }
+
+    @Override
+    public synchronized void close(@Nullable Duration timeout) {
+        try {
+            close0();
+            if (timeout == null) {
+                latch.await();
+            } else {
+                latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            //do nothing
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public synchronized void closeNow() {
+        try {
+            close0();
+            latch.countDown();
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public @Nullable GekTcpMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public SocketChannel getSource() {
+        if (channel == null) {
+            throw new GekNetException("Client has not been initialized.");
+        }
+        return channel.socketChannel;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return GekTcpClient.newBuilder()
+            .port(port)
+            .address(address)
+            .clientHandler(clientHandler)
+            .addChannelHandlers(channelHandlers)
+            .bufferGenerator(bufferGenerator)
+            .channelBufferSize(channelBufferSize)
+            .bufferPool(bufferPool)
+            .socketConfig(socketConfig)
+            .group(group)
+            .writeHighWaterMark(writeHighWaterMark)
+            .writeLowWaterMark(writeLowWaterMark)
+            .readIdle(readIdle)
+            .writeIdle(writeIdle)
+            .allIdle(allIdle)
+            .metrics(metrics != null)
+            .sslContext(sslContext)
+            .sslEngineConfig(sslEngineConfig)
+            .sslHandshakeExecutor(sslHandshakeExecutor);
+    }
+
+    @Nullable
+    private TcpTls newTls(SocketAddress address) {
+        if (sslContext == null) {
+            return null;
+        }
+        if (!(address instanceof InetSocketAddress)) {
+            throw new GekNetException("TLS needs an InetSocketAddress: " + address + ".");
+        }
+        //The engine with peer host and port enables resumption of cached client session
+        return TcpTls.create(
+            sslContext, (InetSocketAddress) address, sslEngineConfig, bufferPool, sslHandshakeExecutor);
+    }
+
+    private SocketChannel openSocketChannel() {
+        SocketChannel socketChannel = null;
+        try {
+            socketChannel = SocketChannel.open();
+            socketChannel.configureBlocking(false);
+            if (address != null || port != 0) {
+                socketChannel.bind(new InetSocketAddress(address, port));
+            }
+            if (socketConfig != null) {
+                socketConfig.accept(socketChannel.socket());
+            }
+            return socketChannel;
+        } catch (Exception e) {
+            TcpUtils.closeQuietly(socketChannel);
+            throw new GekNetException(e);
+        }
+    }
+
+    // tasks waiting in the event loop of the channel
+    private long queueSize() {
+        NioClientChannel c = channel;
+        return c == null ? 0 : c.loop.pendingTasks();
+    }
+
+    private void close0() {
+        if (!state.isOpened() || channel == null) {
+            throw new GekNetException("The Client has not been opened.");
+        }
+        channel.closeNow();
+    }
+
+    private final class NioClientChannel extends NioTcpChannel {
+
+        private final boolean block;
+        private volatile @Nullable Throwable connectFailure;
+
+        //Following fields are only accessed in the loop
+        private boolean connected = false;
+        private boolean terminated = false;
+        private @Nullable NioEventLoop.TimedTask connectTimeout;
+
+        private NioClientChannel(
+            SocketChannel socketChannel, NioEventLoop loop, boolean block, @Nullable TcpTls tls) {
+            super(socketChannel, loop, channelHandlers, bufferPool, channelBufferSize,
+                writeHighWaterMark, writeLowWaterMark, null, tls);
+            this.block = block;
+            this.idleMonitor = newIdleMonitor(readIdle, writeIdle, allIdle);
+            if (NioTcpClient.this.metrics != null) {
+                this.metrics = NioTcpClient.this.metrics.newChannelMetrics();
+            }
+        }
+
+        @Override
+        public void closeNow() {
+            //Connection state is only changed in the loop
+            loop.execute(() -> {
+                if (connected) {
+                    NioClientChannel.super.closeNow();
+                } else {
+                    connectFailed(new GekNetException("The channel was closed before connected."));
+                }
+            });
+        }
+
+        @Override
+        public void handle(SelectionKey key) {
+            if (connected) {
+                super.handle(key);
+                return;
+            }
+            if (!key.isConnectable()) {
+                return;
+            }
+            try {
+                if (socketChannel.finishConnect()) {
+                    connected();
+                }
+            } catch (Throwable e) {
+                connectFailed(e);
+            }
+        }
+
+        // called in the loop
+        private void connect(SocketAddress remote, @Nullable Duration timeout) {
+            if (terminated) {
+                return;
+            }
+            try {
+                key = socketChannel.register(loop.selector(), SelectionKey.OP_CONNECT, this);
+                if (socketChannel.connect(remote)) {
+                    connected();
+                    return;
+                }
+                if (timeout != null) {
+                    connectTimeout = loop.schedule(timeout.toMillis(), () ->
+                        connectFailed(new SocketTimeoutException("Connect timed out: " + remote)));
+                }
+            } catch (Throwable e) {
+                connectFailed(e);
+            }
+        }
+
+        private void connected() {
+            connected = true;
+            if (connectTimeout != null) {
+                connectTimeout.cancel();
+            }
+            key.interestOps(0);
+            if (NioTcpClient.this.metrics != null) {
+                NioTcpClient.this.metrics.channelOpened();
+            }
+            start();
+        }
+
+        private void connectFailed(Throwable cause) {
+            if (connected || terminated) {
+                return;
+            }
+            terminated = true;
+            if (connectTimeout != null) {
+                connectTimeout.cancel();
+            }
+            TcpUtils.closeQuietly(socketChannel);
+            connectFailure = cause;
+            try {
+                if (!block) {
+                    clientHandler.onException(this, cause, GekBuffer.emptyBuffer());
+                }
+            } finally {
+                latch.countDown();
+            }
+        }
+
+        @Override
+        void onOpen0() {
+            clientHandler.onOpen(this);
+        }
+
+        @Override
+        void onClose0(ByteBuffer buffer) {
+            clientHandler.onClose(this, buffer);
+        }
+
+        @Override
+        void onException0(Throwable throwable, ByteBuffer buffer) {
+            clientHandler.onException(this, throwable, buffer);
+        }
+
+        @Override
+        void onLoop0(boolean hasNewData, ByteBuffer buffer) {
+            clientHandler.onLoop(this, hasNewData, buffer);
+        }
+
+        @Override
+        void onWritabilityChanged0(boolean writable) {
+            clientHandler.onWritabilityChanged(this, writable);
+        }
+
+        @Override
+        void onIdle0(GekIdleState state) {
+            clientHandler.onIdle(this, state);
+        }
+
+        @Override
+        GekTimer timer() {
+            return group.timer();
+        }
+
+        @Override
+        void onClosed() {
+            if (NioTcpClient.this.metrics != null) {
+                NioTcpClient.this.metrics.channelClosed();
+            }
+            latch.countDown();
+        }
+    }
+}
@@ -0,0 +1,628 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
+import xyz.fsgek.common.base.GekTimer;
+import xyz.fsgek.common.collect.GekColl;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.net.GekIdleState;
+import xyz.fsgek.common.net.GekNet;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekNetServerException;
+import xyz.fsgek.common.net.GekOverload;
+import xyz.fsgek.common.net.GekServerStates;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLSessionContext;
+import java.io.IOException;
+import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+final class NioTcpServer implements GekTcpServer {
+
+    private static final GekTcpServerHandler EMPTY_SERVER_HANDLER = new GekTcpServerHandler() {
+    };
+
+    private final int port;
+    private final int maxConnection;
+    private final @Nullable InetAddress address;
+    private final GekTcpServerHandler serverHandler;
+    private final List<GekTcpChannelHandler<?>> channelHandlers;
+    private final IntFunction<ByteBuffer> bufferGenerator;
+    private final @Nullable ExecutorService executor;
+    private final int channelBufferSize;
+    private final GekBufferPool bufferPool;
+    private final int writeHighWaterMark;
+    private final int writeLowWaterMark;
+    private final @Nullable Consumer<ServerSocket> socketConfig;
+    private final int eventLoopCount;
+    private final boolean reusePort;
+    private final boolean offload;
+    private final @Nullable Duration readIdle;
+    private final @Nullable Duration writeIdle;
+    private final @Nullable Duration allIdle;
+    private final @Nullable GekTcpMetrics metrics;
+    private final int maxInFlightTasks;
+    private final long maxPendingBytes;
+    private final boolean throttleAccept;
+    private final @Nullable SSLContext sslContext;
+    private final @Nullable Consumer<SSLEngine> sslEngineConfig;
+    private final int sslSessionCacheSize;
+    private final @Nullable Duration sslSessionTimeout;
+    private final boolean ownHandshakeExecutor;
+    private final @Nullable Executor sslHandshakeExecutor;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final GekServerStates state = new GekServerStates();
+    private final Set<NioChannel> channels = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean terminated = new AtomicBoolean(false);
+    private final AtomicInteger inFlightTasks = new AtomicInteger();
+    //Channels of which reads are deferred by max in-flight tasks, resumed in order
+    private final Queue<NioChannel> deferredReads = new ConcurrentLinkedQueue<>();
+    //Whether OP_ACCEPT has been cleared by throttle accept
+    private final AtomicBoolean acceptPaused = new AtomicBoolean(false);
+    private volatile boolean accepting = false;
+    private @Nullable ServerSocketChannel[] serverChannels;
+    private @Nullable NioEventLoop[] workers;
+    private @Nullable NioEventLoop acceptor;
+    private int nextWorker = 0;
+    private final Object timerLock = new Object();
+    private @Nullable GekTimer timer;
+
+    NioTcpServer(Builder builder) {
+        this.port = builder.getPort();
+        this.maxConnection = builder.getMaxConnection();
+        this.address = builder.getAddress();
+        this.serverHandler = Gek.notNull(builder.getServerHandler(), EMPTY_SERVER_HANDLER);
+        this.channelHandlers = GekColl.immutableList(builder.getChannelHandlers());
+        if (channelHandlers.isEmpty()) {
+            throw new GekNetException("Channel handlers are empty.");
+        }
+        this.offload = builder.isOffloadToExecutor();
+        this.executor = builder.getExecutor();
+        if (offload && executor == null) {
+            throw new GekNetException("Executor is null.");
+        }
+        this.socketConfig = builder.getSocketConfig();
+        this.bufferGenerator = Gek.notNull(builder.getBufferGenerator(), ByteBuffer::allocate);
+        this.channelBufferSize = builder.getChannelBufferSize();
+        //Each TLS wrap and unwrap takes a packet-sized buffer, they should be reused
+        this.bufferPool = Gek.notNull(builder.getBufferPool(),
+            builder.getSslContext() == null ? GekBufferPool.unpooled(false) : GekBufferPool.newPool(true));
+        if (channelBufferSize <= 0) {
+            throw new GekNetException("Channel buffer size must > 0.");
+        }
+        this.eventLoopCount = builder.getEventLoopCount();
+        if (eventLoopCount <= 0) {
+            throw new GekNetException("Event loop count must > 0.");
+        }
+        this.reusePort = builder.isReusePort();
+        this.writeHighWaterMark = builder.getWriteHighWaterMark();
+        this.writeLowWaterMark = builder.getWriteLowWaterMark();
+        if (writeLowWaterMark < 0 || writeHighWaterMark < writeLowWaterMark) {
+            throw new GekNetException("Write water marks must satisfy: 0 <= low <= high.");
+        }
+        this.readIdle = builder.getReadIdle();
+        this.writeIdle = builder.getWriteIdle();
+        this.allIdle = builder.getAllIdle();
+        this.metrics = builder.isMetrics() ? new GekTcpMetrics(channelHandlers.size(), this::queueSize) : null;
+        this.maxInFlightTasks = builder.getMaxInFlightTasks();
+        this.maxPendingBytes = builder.getMaxPendingBytes();
+        this.throttleAccept = builder.isThrottleAccept();
+        this.sslContext = builder.getSslContext();
+        this.sslEngineConfig = builder.getSslEngineConfig();
+        this.sslSessionCacheSize = builder.getSslSessionCacheSize();
+        this.sslSessionTimeout = builder.getSslSessionTimeout();
+        if (sslContext != null) {
+            SSLSessionContext sessionContext = sslContext.getServerSessionContext();
+            if (sslSessionCacheSize >= 0) {
+                sessionContext.setSessionCacheSize(sslSessionCacheSize);
+            }
+            if (sslSessionTimeout != null) {
+                sessionContext.setSessionTimeout((int) Math.min(sslSessionTimeout.getSeconds(), Integer.MAX_VALUE));
+            }
+        }
+        this.ownHandshakeExecutor = sslContext != null && builder.getSslHandshakeExecutor() == null;
+        this.sslHandshakeExecutor = ownHandshakeExecutor ?
+            Executors.newFixedThreadPool(eventLoopCount) : builder.getSslHandshakeExecutor();
+    }
+
+    @Override
+    public synchronized void start(boolean block) {
+        if (!state.isCreated()) {
+            throw new GekNetException("The server has been opened or closed.");
+        }
+        start0();
+        state.open();
+        if (block) {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return getSource().socket().getInetAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return getSource().socket().getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getSocketAddress() {
+        return getSource().socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public boolean isOpened() {
+        return state.isOpened();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return state.isClosed();
+    }
+
+    @Override
+    public synchronized void close(@Nullable Duration timeout) {
+        try {
+            close0();
+            checkTerminated();
+            if (timeout == null) {
+                latch.await();
+            } else {
+                latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (GekNetException e) {
+            throw e;
+        } catch (InterruptedException e) {
+            //do nothing
+        } catch (Exception e) {
+            throw new GekNetException(e);
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public synchronized void closeNow() {
+        try {
+            close0();
+            terminated.set(true);
+            for (NioChannel channel : channels) {
+                channel.socketChannel.close();
+            }
+            if (acceptor != null) {
+                acceptor.closeNow();
+            }
+            for (NioEventLoop worker : workers) {
+                worker.closeNow();
+            }
+            if (executor != null) {
+                executor.shutdown();
+            }
+            shutdownHandshakeExecutor();
+            stopTimer();
+            latch.countDown();
+        } catch (GekNetException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new GekNetException(e);
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public @Nullable GekTcpMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public ServerSocketChannel getSource() {
+        if (serverChannels == null) {
+            throw new GekNetException("Server has not been initialized.");
+        }
+        return serverChannels[0];
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return GekTcpServer.newBuilder()
+            .port(port)
+            .address(address)
+            .maxConnection(maxConnection)
+            .serverHandler(serverHandler)
+            .addChannelHandlers(channelHandlers)
+            .bufferGenerator(bufferGenerator)
+            .executor(executor)
+            .channelBufferSize(channelBufferSize)
+            .bufferPool(bufferPool)
+            .socketConfig(socketConfig)
+            .nio(true)
+            .eventLoopCount(eventLoopCount)
+            .reusePort(reusePort)
+            .offloadToExecutor(offload)
+            .writeHighWaterMark(writeHighWaterMark)
+            .writeLowWaterMark(writeLowWaterMark)
+            .readIdle(readIdle)
+            .writeIdle(writeIdle)
+            .allIdle(allIdle)
+            .metrics(metrics != null)
+            .maxInFlightTasks(maxInFlightTasks)
+            .maxPendingBytes(maxPendingBytes)
+            .throttleAccept(throttleAccept)
+            .sslContext(sslContext)
+            .sslEngineConfig(sslEngineConfig)
+            .sslHandshakeExecutor(ownHandshakeExecutor ? null : sslHandshakeExecutor)
+            .sslSessionCacheSize(sslSessionCacheSize)
+            .sslSessionTimeout(sslSessionTimeout);
+    }
+
+    private void start0() {
+        serverChannels = new ServerSocketChannel[reusePort ? eventLoopCount : 1];
+        try {
+            int bindPort = port;
+            for (int i = 0; i < serverChannels.length; i++) {
+                serverChannels[i] = openServerChannel(bindPort);
+                //Other acceptors share the port of the first one
+                bindPort = serverChannels[i].socket().getLocalPort();
+            }
+        } catch (Exception e) {
+            for (ServerSocketChannel serverChannel : serverChannels) {
+                TcpUtils.closeQuietly(serverChannel);
+            }
+            if (e instanceof GekNetException) {
+                throw (GekNetException) e;
+            }
+            throw new GekNetException(e);
+        }
+        String loopName = "gek-tcp-server-" + serverChannels[0].socket().getLocalPort();
+        workers = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new NioEventLoop(loopName + "-loop-" + i, this::onServerException, null);
+        }
+        accepting = true;
+        if (reusePort) {
+            for (int i = 0; i < workers.length; i++) {
+                registerAcceptor(serverChannels[i], workers[i], workers[i]);
+            }
+        } else {
+            acceptor = new NioEventLoop(loopName + "-acceptor", this::onServerException, null);
+            registerAcceptor(serverChannels[0], acceptor, null);
+        }
+    }
+
+    private ServerSocketChannel openServerChannel(int bindPort) throws IOException {
+        ServerSocketChannel serverChannel = ServerSocketChannel.open();
+        serverChannel.configureBlocking(false);
+        if (reusePort) {
+            @Nullable SocketOption<Boolean> option = GekNet.reusePortOption();
+            if (option == null) {
+                TcpUtils.closeQuietly(serverChannel);
+                throw new GekNetException("SO_REUSEPORT is not supported on current JVM.");
+            }
+            if (!serverChannel.supportedOptions().contains(option)) {
+                TcpUtils.closeQuietly(serverChannel);
+                throw new GekNetException("SO_REUSEPORT is not supported on current platform.");
+            }
+            serverChannel.setOption(option, true);
+        }
+        if (socketConfig != null) {
+            socketConfig.accept(serverChannel.socket());
+        }
+        serverChannel.bind(
+            address == null ? new InetSocketAddress(bindPort) : new InetSocketAddress(address, bindPort),
+            maxConnection
+        );
+        return serverChannel;
+    }
+
+    // registers accept operation of the server channel on given loop,
+    // accepted channels are bound to given worker, or to workers in round-robin if given worker is null
+    private void registerAcceptor(
+        ServerSocketChannel serverChannel, NioEventLoop loop, @Nullable NioEventLoop worker) {
+        NioEventLoop.KeyHandler handler = key -> accept(key, serverChannel, worker);
+        loop.submit(() -> {
+            try {
+                serverChannel.register(loop.selector(), SelectionKey.OP_ACCEPT, handler);
+            } catch (IOException e) {
+                throw new GekNetException(e);
+            }
+        });
+    }
+
+    private void accept(SelectionKey key, ServerSocketChannel serverChannel, @Nullable NioEventLoop worker) {
+        while (true) {
+            if (throttleAccept && channels.size() >= maxConnection) {
+                pauseAccept(key);
+                return;
+            }
+            SocketChannel socketChannel;
+            try {
+                socketChannel = serverChannel.accept();
+                if (socketChannel == null) {
+                    return;
+                }
+                socketChannel.configureBlocking(false);
+            } catch (Throwable e) {
+                onServerException(e);
+                return;
+            }
+            try {
+                NioEventLoop loop = worker != null ? worker : nextWorker();
+                NioChannel channel = new NioChannel(socketChannel, loop);
+                channels.add(channel);
+                if (terminated.get()) {
+                    channels.remove(channel);
+                    TcpUtils.closeQuietly(socketChannel);
+                    return;
+                }
+                loop.execute(channel::register);
+            } catch (Throwable e) {
+                TcpUtils.closeQuietly(socketChannel);
+                onServerException(e);
+            }
+        }
+    }
+
+    // stops accepting until a channel is closed, new connections wait in the backlog, called in the acceptor loop
+    private void pauseAccept(SelectionKey key) {
+        key.interestOps(0);
+        if (acceptPaused.compareAndSet(false, true)) {
+            overload(null, GekOverload.CONNECTIONS);
+        }
+        //A channel may have been closed before the flag was set
+        if (channels.size() < maxConnection) {
+            resumeAccept();
+        }
+    }
+
+    // restores OP_ACCEPT of all acceptors if accepting has been paused, called after a channel is removed
+    private void resumeAccept() {
+        if (!acceptPaused.compareAndSet(true, false)) {
+            return;
+        }
+        ServerSocketChannel[] serverChannels = this.serverChannels;
+        for (int i = 0; i < serverChannels.length; i++) {
+            ServerSocketChannel serverChannel = serverChannels[i];
+            NioEventLoop loop = reusePort ? workers[i] : acceptor;
+            loop.execute(() -> {
+                SelectionKey key = serverChannel.keyFor(loop.selector());
+                if (key != null && key.isValid()) {
+                    key.interestOps(SelectionKey.OP_ACCEPT);
+                }
+            });
+        }
+    }
+
+    private NioEventLoop nextWorker() {
+        //Only called in acceptor loop
+        NioEventLoop worker = workers[nextWorker];
+        nextWorker = (nextWorker + 1) % workers.length;
+        return worker;
+    }
+
+    private void close0() {
+        if (!state.isOpened() || serverChannels == null) {
+            throw new GekNetException("The server has not been opened.");
+        }
+        if (state.isClosed()) {
+            return;
+        }
+        accepting = false;
+        for (ServerSocketChannel serverChannel : serverChannels) {
+            TcpUtils.closeQuietly(serverChannel);
+        }
+    }
+
+    private void checkTerminated() {
+        if (accepting || !channels.isEmpty() || !terminated.compareAndSet(false, true)) {
+            return;
+        }
+        if (acceptor != null) {
+            acceptor.close();
+        }
+        for (NioEventLoop worker : workers) {
+            worker.close();
+        }
+        shutdownHandshakeExecutor();
+        stopTimer();
+        latch.countDown();
+    }
+
+    private void shutdownHandshakeExecutor() {
+        if (ownHandshakeExecutor) {
+            ((ExecutorService) sslHandshakeExecutor).shutdown();
+        }
+    }
+
+    // timer shared by channels of this server, created on first using
+    private GekTimer timer() {
+        synchronized (timerLock) {
+            if (timer == null) {
+                timer = GekTimer.newWheelTimer(
+                    Duration.ofMillis(10), 512, "gek-tcp-server-" + getSource().socket().getLocalPort() + "-timer");
+            }
+            return timer;
+        }
+    }
+
+    private void stopTimer() {
+        synchronized (timerLock) {
+            if (timer != null) {
+                timer.stop();
+            }
+        }
+    }
+
+    // tasks waiting in the executor and event loops
+    private long queueSize() {
+        long size = 0;
+        if (offload && executor instanceof ThreadPoolExecutor) {
+            size += ((ThreadPoolExecutor) executor).getQueue().size();
+        }
+        NioEventLoop[] loops = workers;
+        if (loops != null) {
+            for (NioEventLoop loop : loops) {
+                size += loop.pendingTasks();
+            }
+        }
+        return size;
+    }
+
+    // schedules deferred reads while the number of in-flight tasks is under the max number
+    private void resumeDeferredReads() {
+        while (!deferredReads.isEmpty()) {
+            if (inFlightTasks.incrementAndGet() > maxInFlightTasks) {
+                inFlightTasks.decrementAndGet();
+                return;
+            }
+            NioChannel channel = deferredReads.poll();
+            if (channel == null) {
+                inFlightTasks.decrementAndGet();
+                return;
+            }
+            channel.scheduleRead();
+        }
+    }
+
+    private void overload(@Nullable GekTcpChannel channel, GekOverload overload) {
+        try {
+            serverHandler.onOverload(channel, overload);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private void onServerException(Throwable e) {
+        try {
+            serverHandler.onException(new GekNetServerException(getSource(), e));
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private final class NioChannel extends NioTcpChannel {
+
+        private NioChannel(SocketChannel socketChannel, NioEventLoop loop) {
+            super(socketChannel, loop, channelHandlers, bufferPool, channelBufferSize,
+                writeHighWaterMark, writeLowWaterMark, offload ? executor : null,
+                sslContext == null ? null :
+                    TcpTls.create(sslContext, null, sslEngineConfig, bufferPool, sslHandshakeExecutor));
+            this.idleMonitor = newIdleMonitor(readIdle, writeIdle, allIdle);
+            if (NioTcpServer.this.metrics != null) {
+                this.metrics = NioTcpServer.this.metrics.newChannelMetrics();
+            }
+            this.maxPendingBytes = NioTcpServer.this.maxPendingBytes;
+        }
+
+        // called in the loop of this channel
+        private void register() {
+            try {
+                key = socketChannel.register(loop.selector(), 0, this);
+            } catch (Throwable e) {
+                TcpUtils.closeQuietly(socketChannel);
+                channels.remove(this);
+                onServerException(e);
+                if (throttleAccept) {
+                    resumeAccept();
+                }
+                checkTerminated();
+                return;
+            }
+            if (NioTcpServer.this.metrics != null) {
+                NioTcpServer.this.metrics.channelOpened();
+            }
+            start();
+        }
+
+        @Override
+        void onOpen0() {
+            serverHandler.onOpen(this);
+        }
+
+        @Override
+        void onClose0(ByteBuffer buffer) {
+            serverHandler.onClose(this, buffer);
+        }
+
+        @Override
+        void onException0(Throwable throwable, ByteBuffer buffer) {
+            serverHandler.onException(this, throwable, buffer);
+        }
+
+        @Override
+        void onLoop0(boolean hasNewData, ByteBuffer buffer) {
+            serverHandler.onLoop(this, hasNewData, buffer);
+        }
+
+        @Override
+        void onWritabilityChanged0(boolean writable) {
+            serverHandler.onWritabilityChanged(this, writable);
+        }
+
+        @Override
+        void onIdle0(GekIdleState state) {
+            serverHandler.onIdle(this, state);
+        }
+
+        @Override
+        GekTimer timer() {
+            return NioTcpServer.this.timer();
+        }
+
+        @Override
+        boolean admitRead() {
+            if (maxInFlightTasks <= 0 || inFlightTasks.incrementAndGet() <= maxInFlightTasks) {
+                return true;
+            }
+            inFlightTasks.decrementAndGet();
+            deferredReads.add(this);
+            overload(this, GekOverload.IN_FLIGHT_TASKS);
+            //Tasks may have been done before this channel was added
+            resumeDeferredReads();
+            return false;
+        }
+
+        @Override
+        void readDone() {
+            if (maxInFlightTasks > 0) {
+                inFlightTasks.decrementAndGet();
+                resumeDeferredReads();
+            }
+        }
+
+        @Override
+        void onOverload0(GekOverload overload) {
+            overload(this, overload);
+        }
+
+        @Override
+        void onClosed() {
+            if (NioTcpServer.this.metrics != null) {
+                NioTcpServer.this.metrics.channelClosed();
+            }
+            channels.remove(this);
+            if (throttleAccept) {
+                resumeAccept();
+            }
+            checkTerminated();
+        }
+    }
+}
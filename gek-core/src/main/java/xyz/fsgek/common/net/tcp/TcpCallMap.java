@@ -0,0 +1,123 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Open addressing map of long keys without boxing, for pending calls of a connection: linear probing with backward
+// shift deletion, so there is no tombstone. Not thread-safe, values must not be null.
+final class TcpCallMap<V> {
+
+    private static final long MIX = 0x9E3779B97F4A7C15L;
+
+    private long[] keys;
+    private Object[] values;
+    private int mask;
+    private int size = 0;
+
+    TcpCallMap(int initialCapacity) {
+        int capacity = 2;
+        while (capacity < initialCapacity * 2) {
+            capacity <<= 1;
+        }
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.mask = capacity - 1;
+    }
+
+    void put(long key, V value) {
+        if ((size + 1) * 2 > values.length) {
+            resize(values.length << 1);
+        }
+        int index = slot(key);
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                values[index] = value;
+                return;
+            }
+            index = (index + 1) & mask;
+        }
+        keys[index] = key;
+        values[index] = value;
+        size++;
+    }
+
+    @Nullable
+    V remove(long key) {
+        int index = slot(key);
+        while (values[index] != null) {
+            if (keys[index] == key) {
+                V value = Gek.as(values[index]);
+                delete(index);
+                size--;
+                return value;
+            }
+            index = (index + 1) & mask;
+        }
+        return null;
+    }
+
+    int size() {
+        return size;
+    }
+
+    // removes and returns all values
+    List<V> clear() {
+        List<V> result = new ArrayList<>(size);
+        for (int i = 0; i < values.length; i++) {
+            if (values[i] != null) {
+                result.add(Gek.as(values[i]));
+                values[i] = null;
+            }
+        }
+        size = 0;
+        return result;
+    }
+
+    private int slot(long key) {
+        long h = key * MIX;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+
+    // moves following entries of the probe sequence back into the emptied slot
+    private void delete(int index) {
+        values[index] = null;
+        int next = index;
+        while (true) {
+            next = (next + 1) & mask;
+            if (values[next] == null) {
+                return;
+            }
+            int home = slot(keys[next]);
+            //Entry stays if its home slot is cyclically in (index, next]
+            if (index <= next ? (index < home && home <= next) : (index < home || home <= next)) {
+                continue;
+            }
+            keys[index] = keys[next];
+            values[index] = values[next];
+            values[next] = null;
+            index = next;
+        }
+    }
+
+    private void resize(int capacity) {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        keys = new long[capacity];
+        values = new Object[capacity];
+        mask = capacity - 1;
+        for (int i = 0; i < oldValues.length; i++) {
+            if (oldValues[i] == null) {
+                continue;
+            }
+            int index = slot(oldKeys[i]);
+            while (values[index] != null) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = oldKeys[i];
+            values[index] = oldValues[i];
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekTimer;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.net.GekNetException;
+
+import java.nio.channels.SelectionKey;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+final class TcpClientGroupImpl implements GekTcpClientGroup {
+
+    private static final AtomicInteger groupCounter = new AtomicInteger();
+
+    private final String name;
+    private final NioEventLoop[] loops;
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile boolean closed = false;
+    private @Nullable GekTimer timer;
+    private @Nullable GekBufferPool tlsBufferPool;
+
+    TcpClientGroupImpl(int eventLoopCount) {
+        if (eventLoopCount <= 0) {
+            throw new GekNetException("Event loop count must > 0.");
+        }
+        this.name = "gek-tcp-client-group-" + groupCounter.getAndIncrement();
+        this.loops = new NioEventLoop[eventLoopCount];
+        for (int i = 0; i < loops.length; i++) {
+            //Exceptions of channels have been passed to their client handlers
+            loops[i] = new NioEventLoop(name + "-loop-" + i, e -> {
+            }, null);
+        }
+    }
+
+    @Override
+    public int getEventLoopCount() {
+        return loops.length;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return closed;
+    }
+
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        for (NioEventLoop loop : loops) {
+            loop.submit(() -> {
+                for (SelectionKey key : loop.selector().keys()) {
+                    Object attachment = key.attachment();
+                    if (attachment instanceof NioTcpChannel) {
+                        ((NioTcpChannel) attachment).closeNow();
+                    }
+                }
+            });
+            loop.close();
+        }
+        if (timer != null) {
+            timer.stop();
+        }
+    }
+
+    // timer shared by channels in this group, created on first using
+    synchronized GekTimer timer() {
+        if (closed) {
+            throw new GekNetException("The client group has been closed.");
+        }
+        if (timer == null) {
+            timer = GekTimer.newWheelTimer(Duration.ofMillis(10), 512, name + "-timer");
+        }
+        return timer;
+    }
+
+    // default buffer pool shared by TLS clients in this group, created on first using
+    synchronized GekBufferPool tlsBufferPool() {
+        if (tlsBufferPool == null) {
+            tlsBufferPool = GekBufferPool.newPool(true);
+        }
+        return tlsBufferPool;
+    }
+
+    NioEventLoop nextLoop() {
+        if (closed) {
+            throw new GekNetException("The client group has been closed.");
+        }
+        return loops[(next.getAndIncrement() & Integer.MAX_VALUE) % loops.length];
+    }
+}
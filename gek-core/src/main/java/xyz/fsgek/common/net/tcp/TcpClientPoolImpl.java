@@ -0,0 +1,377 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
+import xyz.fsgek.common.base.GekTimer;
+import xyz.fsgek.common.collect.GekColl;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekServerStates;
+
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+final class TcpClientPoolImpl<Q, R> implements GekTcpClientPool<Q, R> {
+
+    private static final Duration RECONNECT_DELAY = Duration.ofSeconds(1);
+
+    private final GekTcpCallCodec<Q, R> codec;
+    private final TcpClientGroupImpl group;
+    private final List<GekTcpChannelHandler<?>> channelHandlers;
+    private final Selection selection;
+    private final @Nullable Duration callTimeout;
+    private final @Nullable Duration connectTimeout;
+    private final @Nullable Consumer<GekTcpClient.Builder> clientConfig;
+    private final List<Connection> connections;
+    private final GekServerStates state = new GekServerStates();
+    private final AtomicInteger next = new AtomicInteger();
+    private volatile @Nullable SocketAddress address;
+    //Timer of the group, resolved once on start instead of locking the group for each call
+    private volatile @Nullable GekTimer timer;
+    //Whether closed connections should be reconnected, true after started and false after closed
+    private volatile boolean running = false;
+
+    TcpClientPoolImpl(Builder<Q, R> builder) {
+        if (builder.getCodec() == null) {
+            throw new GekNetException("Codec is null.");
+        }
+        if (builder.getGroup() == null) {
+            throw new GekNetException("Client group is null.");
+        }
+        this.codec = builder.getCodec();
+        this.group = (TcpClientGroupImpl) builder.getGroup();
+        this.channelHandlers = GekColl.immutableList(builder.getChannelHandlers());
+        if (channelHandlers.isEmpty()) {
+            throw new GekNetException("Channel handlers are empty.");
+        }
+        this.selection = Gek.notNull(builder.getSelection(), Selection.ROUND_ROBIN);
+        this.callTimeout = builder.getCallTimeout();
+        this.connectTimeout = builder.getConnectTimeout();
+        this.clientConfig = builder.getClientConfig();
+        int count = builder.getConnections() > 0 ? builder.getConnections() : group.getEventLoopCount();
+        this.connections = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            connections.add(new Connection());
+        }
+    }
+
+    @Override
+    public void start(SocketAddress address) {
+        synchronized (this) {
+            if (!state.isCreated()) {
+                throw new GekNetException("The pool has been opened or closed.");
+            }
+            this.address = address;
+            this.timer = group.timer();
+            state.open();
+            //Connections closed before all are opened are also reconnected
+            running = true;
+        }
+        for (Connection connection : connections) {
+            connection.connect();
+        }
+        Throwable failure = null;
+        for (Connection connection : connections) {
+            failure = connection.awaitOpened();
+            if (failure != null) {
+                break;
+            }
+        }
+        if (failure != null) {
+            close();
+            throw new GekNetException(failure);
+        }
+    }
+
+    @Override
+    public CompletableFuture<R> call(Q request) {
+        return call(request, callTimeout);
+    }
+
+    @Override
+    public CompletableFuture<R> call(Q request, @Nullable Duration timeout) {
+        CompletableFuture<R> future = new CompletableFuture<>();
+        Connection connection = select();
+        if (connection == null) {
+            future.completeExceptionally(new GekNetException("No opened connection."));
+            return future;
+        }
+        connection.call(request, timeout, future);
+        return future;
+    }
+
+    @Override
+    public int getPendingCalls() {
+        int pending = 0;
+        for (Connection connection : connections) {
+            pending += connection.pending;
+        }
+        return pending;
+    }
+
+    @Override
+    public int getOpenedConnections() {
+        int opened = 0;
+        for (Connection connection : connections) {
+            if (connection.channel != null) {
+                opened++;
+            }
+        }
+        return opened;
+    }
+
+    @Override
+    public boolean isClosed() {
+        return state.isClosed();
+    }
+
+    @Override
+    public void close() {
+        synchronized (this) {
+            if (state.isClosed()) {
+                return;
+            }
+            state.close();
+            running = false;
+        }
+        for (Connection connection : connections) {
+            connection.close();
+        }
+    }
+
+    @Nullable
+    private Connection select() {
+        int size = connections.size();
+        int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        Connection selected = null;
+        for (int i = 0; i < size; i++) {
+            Connection connection = connections.get((start + i) % size);
+            if (connection.channel == null) {
+                continue;
+            }
+            if (selection == Selection.ROUND_ROBIN) {
+                return connection;
+            }
+            if (selected == null || connection.pending < selected.pending) {
+                selected = connection;
+            }
+        }
+        return selected;
+    }
+
+    private final class Connection implements GekTcpClientHandler, GekTcpChannelHandler<Object> {
+
+        //Pending calls and next call id, guarded by this
+        private final TcpCallMap<Call<R>> calls = new TcpCallMap<>(16);
+        private long nextId = 0;
+
+        //Counted down when first opened or failed
+        private final CountDownLatch opened = new CountDownLatch(1);
+        private volatile @Nullable Throwable openFailure;
+        private volatile int pending = 0;
+        private volatile @Nullable GekTcpChannel channel;
+        private volatile @Nullable GekTcpClient client;
+
+        private void connect() {
+            if (isClosed()) {
+                return;
+            }
+            try {
+                GekTcpClient.Builder builder = GekTcpClient.newBuilder();
+                if (clientConfig != null) {
+                    clientConfig.accept(builder);
+                }
+                GekTcpClient newClient = builder
+                    .group(group)
+                    .clientHandler(this)
+                    .addChannelHandlers(channelHandlers)
+                    .addChannelHandler(this)
+                    .build();
+                client = newClient;
+                newClient.start(address, connectTimeout, false);
+            } catch (Throwable e) {
+                connectFailed(e);
+            }
+        }
+
+        // returns failure of first connecting, or null if opened
+        @Nullable
+        private Throwable awaitOpened() {
+            try {
+                if (connectTimeout == null) {
+                    opened.await();
+                } else if (!opened.await(connectTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                    //The TLS handshake may be not finished
+                    return new TimeoutException("Connection was not opened in connect timeout.");
+                }
+            } catch (InterruptedException e) {
+                return e;
+            }
+            return openFailure;
+        }
+
+        private void connectFailed(Throwable cause) {
+            if (opened.getCount() > 0) {
+                openFailure = cause;
+                opened.countDown();
+                return;
+            }
+            if (running) {
+                timer.schedule(RECONNECT_DELAY, this::connect);
+            }
+        }
+
+        private void call(Q request, @Nullable Duration timeout, CompletableFuture<R> future) {
+            GekTcpChannel ch = channel;
+            if (ch == null) {
+                future.completeExceptionally(new GekNetException("Connection has been closed."));
+                return;
+            }
+            Call<R> call = new Call<>(future);
+            long id;
+            synchronized (this) {
+                id = nextId++;
+                calls.put(id, call);
+                pending = calls.size();
+            }
+            try {
+                //Timeout is scheduled after the call is put, so it will not be missed
+                if (timeout != null && !timeout.isNegative() && !timeout.isZero()) {
+                    call.timeout = timer.schedule(timeout, () ->
+                        fail(id, new TimeoutException("Call timed out in " + timeout.toMillis() + "ms.")));
+                }
+                codec.encode(ch, id, request);
+                ch.flush();
+            } catch (Throwable e) {
+                fail(id, e instanceof GekNetException ? e : new GekNetException(e));
+            }
+        }
+
+        private void fail(long id, Throwable cause) {
+            Call<R> call;
+            synchronized (this) {
+                call = calls.remove(id);
+                pending = calls.size();
+            }
+            if (call != null) {
+                call.fail(cause);
+            }
+        }
+
+        private void failAll(Throwable cause) {
+            List<Call<R>> list;
+            synchronized (this) {
+                list = calls.clear();
+                pending = 0;
+            }
+            for (Call<R> call : list) {
+                call.fail(cause);
+            }
+        }
+
+        private void close() {
+            GekTcpClient c = client;
+            if (c != null && c.isOpened()) {
+                try {
+                    c.closeNow();
+                } catch (Exception ignored) {
+                }
+            }
+            failAll(new GekNetException("The pool has been closed."));
+        }
+
+        @Override
+        public void onOpen(GekTcpChannel channel) {
+            if (isClosed()) {
+                channel.closeNow();
+                return;
+            }
+            this.channel = channel;
+            opened.countDown();
+        }
+
+        @Override
+        public void onClose(GekTcpChannel channel, ByteBuffer buffer) {
+            if (this.channel != channel) {
+                return;
+            }
+            this.channel = null;
+            failAll(new GekNetException("Connection has been closed."));
+            if (running) {
+                timer.schedule(RECONNECT_DELAY, this::connect);
+            }
+        }
+
+        @Override
+        public void onException(GekTcpChannel channel, Throwable throwable, ByteBuffer buffer) {
+            if (this.channel != channel) {
+                //Failed to connect or in the TLS handshake
+                connectFailed(throwable);
+                return;
+            }
+            //Responses can not be correlated after a decoding error
+            channel.closeNow();
+        }
+
+        @Override
+        public @Nullable Object onMessage(GekTcpChannel channel, Object message) {
+            if (message instanceof List) {
+                List<R> responses = Gek.as(message);
+                for (R response : responses) {
+                    complete(response);
+                }
+            } else {
+                complete(Gek.as(message));
+            }
+            return null;
+        }
+
+        private void complete(R response) {
+            long id = codec.getCallId(response);
+            Call<R> call;
+            synchronized (this) {
+                call = calls.remove(id);
+                pending = calls.size();
+            }
+            //Response of timed out call is dropped
+            if (call != null) {
+                call.complete(response);
+            }
+        }
+    }
+
+    private static final class Call<R> {
+
+        private final CompletableFuture<R> future;
+        private volatile @Nullable GekTimer.Timeout timeout;
+
+        private Call(CompletableFuture<R> future) {
+            this.future = future;
+        }
+
+        private void complete(R response) {
+            cancelTimeout();
+            future.complete(response);
+        }
+
+        private void fail(Throwable cause) {
+            cancelTimeout();
+            future.completeExceptionally(cause);
+        }
+
+        private void cancelTimeout() {
+            GekTimer.Timeout t = timeout;
+            if (t != null) {
+                t.cancel();
+            }
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
+
+import java.nio.ByteBuffer;
+
+// Cumulation buffer of one channel, not thread-safe: data is read into the buffer directly, unread data is between
+// read index and position of the buffer, and the buffer is always in writing mode.
+final class TcpCumulation {
+
+    private static final int INITIAL_BUFFER_SIZE = 1024;
+
+    private final GekBufferPool bufferPool;
+    private final int maxSize;
+    private @Nullable ByteBuffer buffer;
+    private @Nullable ByteBuffer readOnlyView;
+    private int readIndex = 0;
+
+    TcpCumulation(GekBufferPool bufferPool, int maxSize) {
+        this.bufferPool = bufferPool;
+        this.maxSize = maxSize;
+    }
+
+    // makes room for next read, returns false if the buffer is full
+    boolean prepare() {
+        if (buffer == null) {
+            buffer = bufferPool.allocate(Math.min(INITIAL_BUFFER_SIZE, maxSize));
+            readOnlyView = buffer.asReadOnlyBuffer();
+            return true;
+        }
+        int readable = buffer.position() - readIndex;
+        if (readable == 0) {
+            //All data has been consumed, just rewinds
+            buffer.clear();
+            buffer.limit(capacity());
+            readIndex = 0;
+            return true;
+        }
+        if (readIndex > 0 && (readIndex >= capacity() >>> 1 || !buffer.hasRemaining())) {
+            //Read index passes the threshold, compacts in place
+            ByteBuffer src = view();
+            buffer.clear();
+            buffer.put(src);
+            buffer.limit(capacity());
+            readIndex = 0;
+        }
+        if (buffer.hasRemaining()) {
+            return true;
+        }
+        if (capacity() >= maxSize) {
+            return false;
+        }
+        //Grows geometrically up to max size
+        ByteBuffer newBuffer = bufferPool.allocate((int) Math.min((long) capacity() << 1, maxSize));
+        newBuffer.put(view());
+        bufferPool.release(buffer);
+        buffer = newBuffer;
+        readOnlyView = buffer.asReadOnlyBuffer();
+        readIndex = 0;
+        return true;
+    }
+
+    // buffer to read data into, valid after prepare() returned true
+    ByteBuffer buffer() {
+        return buffer;
+    }
+
+    // readonly view of unread data
+    ByteBuffer view() {
+        if (buffer == null) {
+            return GekBuffer.emptyBuffer();
+        }
+        readOnlyView.limit(buffer.position());
+        readOnlyView.position(readIndex);
+        return readOnlyView;
+    }
+
+    // marks data before position of given view as consumed
+    void consumed(ByteBuffer view) {
+        if (view == readOnlyView) {
+            readIndex = Math.max(readIndex, view.position());
+        }
+    }
+
+    void release() {
+        if (buffer != null) {
+            bufferPool.release(buffer);
+            buffer = null;
+            readOnlyView = null;
+            readIndex = 0;
+        }
+    }
+
+    // usable capacity of the buffer (buffer from pool may be larger than required)
+    private int capacity() {
+        return Math.min(buffer.capacity(), maxSize);
+    }
+}
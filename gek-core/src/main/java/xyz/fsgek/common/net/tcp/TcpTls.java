@@ -0,0 +1,232 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLEngineResult;
+import javax.net.ssl.SSLException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+// TLS state of one NIO channel based on SSLEngine: network data read from the socket is kept in netIn (writing mode,
+// unread data is between 0 and position), unwrapped application data is kept in appIn (reading mode) until moved into
+// the cumulation buffer, and wrapped network data is written into buffers of the pool. Reading and unwrapping are
+// called in the loop during the handshake and in handler thread after the handshake; wrapping is called in lock of the
+// channel.
+final class TcpTls {
+
+    private final SSLEngine engine;
+    private final GekBufferPool bufferPool;
+    private final Executor handshakeExecutor;
+    //Application data sent before the handshake has finished, guarded by lock of the channel
+    private final Queue<ByteBuffer> pendingAppData = new ArrayDeque<>();
+    private @Nullable ByteBuffer netIn;
+    private @Nullable ByteBuffer appIn;
+    private volatile boolean ready = false;
+
+    // creates TLS of server channel, or of client channel connecting to given remote address; the engine is created
+    // with host and port of the remote address so that the client session can be resumed by next connection
+    static TcpTls create(
+        SSLContext context,
+        @Nullable InetSocketAddress remote,
+        @Nullable Consumer<SSLEngine> engineConfig,
+        GekBufferPool bufferPool,
+        Executor handshakeExecutor
+    ) {
+        SSLEngine engine = remote == null ?
+            context.createSSLEngine() : context.createSSLEngine(remote.getHostString(), remote.getPort());
+        engine.setUseClientMode(remote != null);
+        if (engineConfig != null) {
+            engineConfig.accept(engine);
+        }
+        return new TcpTls(engine, bufferPool, handshakeExecutor);
+    }
+
+    private TcpTls(SSLEngine engine, GekBufferPool bufferPool, Executor handshakeExecutor) {
+        this.engine = engine;
+        this.bufferPool = bufferPool;
+        this.handshakeExecutor = handshakeExecutor;
+    }
+
+    SSLEngine engine() {
+        return engine;
+    }
+
+    Executor handshakeExecutor() {
+        return handshakeExecutor;
+    }
+
+    boolean isReady() {
+        return ready;
+    }
+
+    // marks the handshake has finished, and wraps application data sent before; called in lock of the channel
+    void ready(Consumer<ByteBuffer> out) throws SSLException {
+        ready = true;
+        while (!pendingAppData.isEmpty()) {
+            wrap(pendingAppData.poll(), out);
+        }
+    }
+
+    // keeps a copy of given data until the handshake has finished; called in lock of the channel
+    void addPendingAppData(ByteBuffer data) {
+        ByteBuffer copy = ByteBuffer.allocate(data.remaining());
+        copy.put(data);
+        copy.flip();
+        pendingAppData.add(copy);
+    }
+
+    // reads network data from the socket, returns read count or -1 if end of stream
+    int readNet(SocketChannel channel) throws IOException {
+        ByteBuffer in = netIn();
+        if (!in.hasRemaining()) {
+            //A record is larger than current buffer, such as after the packet size of session was enlarged
+            netIn = grow(in, engine.getSession().getPacketBufferSize());
+            in = netIn;
+        }
+        return channel.read(in);
+    }
+
+    // unwraps read network data into appIn, which should be drained
+    SSLEngineResult unwrap() throws SSLException {
+        ByteBuffer in = netIn();
+        if (appIn == null) {
+            appIn = bufferPool.allocate(engine.getSession().getApplicationBufferSize());
+            appIn.flip();
+        }
+        in.flip();
+        appIn.compact();
+        try {
+            SSLEngineResult result = engine.unwrap(in, appIn);
+            if (result.getStatus() == SSLEngineResult.Status.BUFFER_OVERFLOW) {
+                appIn = grow(appIn, engine.getSession().getApplicationBufferSize());
+                result = engine.unwrap(in, appIn);
+            }
+            return result;
+        } finally {
+            in.compact();
+            appIn.flip();
+        }
+    }
+
+    // moves unwrapped application data into given buffer, returns number of moved bytes
+    int drainTo(ByteBuffer dst) {
+        if (appIn == null || !appIn.hasRemaining()) {
+            return 0;
+        }
+        int count = Math.min(dst.remaining(), appIn.remaining());
+        int limit = appIn.limit();
+        appIn.limit(appIn.position() + count);
+        dst.put(appIn);
+        appIn.limit(limit);
+        return count;
+    }
+
+    boolean hasAppData() {
+        return appIn != null && appIn.hasRemaining();
+    }
+
+    boolean hasNetData() {
+        return netIn != null && netIn.position() > 0;
+    }
+
+    // wraps given data into network buffers from the pool, each non-empty buffer is passed to given consumer;
+    // called in lock of the channel
+    void wrap(ByteBuffer src, Consumer<ByteBuffer> out) throws SSLException {
+        do {
+            ByteBuffer dst = bufferPool.allocate(engine.getSession().getPacketBufferSize());
+            SSLEngineResult result;
+            try {
+                result = engine.wrap(src, dst);
+            } catch (SSLException e) {
+                bufferPool.release(dst);
+                throw e;
+            }
+            dst.flip();
+            if (dst.hasRemaining()) {
+                out.accept(dst);
+            } else {
+                bufferPool.release(dst);
+            }
+            if (result.getStatus() == SSLEngineResult.Status.CLOSED) {
+                if (src.hasRemaining()) {
+                    throw new SSLException("TLS outbound has been closed.");
+                }
+                return;
+            }
+            if (result.getStatus() != SSLEngineResult.Status.OK) {
+                throw new SSLException("Failed to wrap TLS data: " + result.getStatus() + ".");
+            }
+            if (result.bytesConsumed() == 0 && result.bytesProduced() == 0) {
+                //Such as renegotiation of TLS 1.2, which needs unwrapping before wrapping application data
+                throw new SSLException("Failed to wrap TLS data in handshake status: "
+                    + result.getHandshakeStatus() + ".");
+            }
+        } while (src.hasRemaining());
+    }
+
+    // closes outbound and wraps close_notify; called in lock of the channel
+    void closeOutbound(Consumer<ByteBuffer> out) throws SSLException {
+        engine.closeOutbound();
+        wrap(GekBuffer.emptyBuffer(), out);
+    }
+
+    // runs delegated tasks of the engine in current thread
+    void runDelegatedTasks() {
+        while (true) {
+            Runnable task = engine.getDelegatedTask();
+            if (task == null) {
+                return;
+            }
+            task.run();
+        }
+    }
+
+    // releases a wrapped network buffer after it has been written
+    void release(ByteBuffer buffer) {
+        bufferPool.release(buffer);
+    }
+
+    // releases read buffers, called after the channel has been closed
+    void release() {
+        if (netIn != null) {
+            bufferPool.release(netIn);
+            netIn = null;
+        }
+        if (appIn != null) {
+            bufferPool.release(appIn);
+            appIn = null;
+        }
+    }
+
+    // clears application data sent before the handshake; called in lock of the channel
+    void clearPendingAppData() {
+        pendingAppData.clear();
+    }
+
+    private ByteBuffer netIn() {
+        if (netIn == null) {
+            netIn = bufferPool.allocate(engine.getSession().getPacketBufferSize());
+        }
+        return netIn;
+    }
+
+    // returns a buffer of which capacity is at least given size plus data of given buffer, both are in writing mode
+    private ByteBuffer grow(ByteBuffer buffer, int size) {
+        buffer.flip();
+        ByteBuffer newBuffer = bufferPool.allocate(buffer.remaining() + size);
+        newBuffer.put(buffer);
+        bufferPool.release(buffer);
+        newBuffer.limit(newBuffer.capacity());
+        return newBuffer;
+    }
+}
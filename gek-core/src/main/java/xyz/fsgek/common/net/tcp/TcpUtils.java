@@ -1,9 +1,16 @@
 package xyz.fsgek.common.net.tcp;
 
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
 import xyz.fsgek.common.base.GekArray;
 import xyz.fsgek.common.io.GekBuffer;
 
+import java.io.Closeable;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.ByteBuffer;
+import java.util.List;
 import java.util.function.IntFunction;
 
 final class TcpUtils {
@@ -38,4 +45,59 @@ final class TcpUtils {
         newBuffer.flip();
         return newBuffer.asReadOnlyBuffer();
     }
+
+    // passes the message through the handler chain, and records metrics of each handler if metrics is not null
+    static void handleMessage(
+        GekTcpChannel channel,
+        List<GekTcpChannelHandler<?>> channelHandlers,
+        Object message,
+        @Nullable GekTcpMetrics metrics
+    ) {
+        for (int i = 0; i < channelHandlers.size(); i++) {
+            GekTcpChannelHandler<Object> handler = Gek.as(channelHandlers.get(i));
+            Object result;
+            if (metrics == null) {
+                result = handler.onMessage(channel, message);
+            } else {
+                long start = System.nanoTime();
+                try {
+                    result = handler.onMessage(channel, message);
+                } finally {
+                    metrics.message(i, System.nanoTime() - start);
+                }
+            }
+            if (result == null) {
+                return;
+            }
+            message = result;
+        }
+    }
+
+    // output stream which counts written bytes into given metrics
+    static OutputStream metricsOutputStream(OutputStream out, GekTcpMetrics metrics) {
+        return new FilterOutputStream(out) {
+
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                metrics.bytesWritten(1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len);
+                metrics.bytesWritten(len);
+            }
+        };
+    }
+
+    static void closeQuietly(@Nullable Closeable channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
 }
@@ -0,0 +1,557 @@
+package xyz.fsgek.common.net.tcp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
+import xyz.fsgek.common.base.GekCheck;
+import xyz.fsgek.common.base.GekThread;
+import xyz.fsgek.common.collect.GekColl;
+import xyz.fsgek.common.data.GekData;
+import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekNetServerException;
+import xyz.fsgek.common.net.GekOverload;
+import xyz.fsgek.common.net.GekServerStates;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+// Server of which each channel is served by its own virtual thread with blocking reading,
+// only built on Java 21+ (virtual threads are created by the multi-release part of GekThread).
+final class VirtualThreadTcpServer implements GekTcpServer {
+
+    private static final GekTcpServerHandler EMPTY_SERVER_HANDLER = new GekTcpServerHandler() {
+    };
+    //Park time of the channel thread when the channel buffer is full and not consumed by onLoop
+    private static final long FULL_BUFFER_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+
+    private final int port;
+    private final int maxConnection;
+    private final @Nullable InetAddress address;
+    private final GekTcpServerHandler serverHandler;
+    private final List<GekTcpChannelHandler<?>> channelHandlers;
+    private final IntFunction<ByteBuffer> bufferGenerator;
+    private final int channelBufferSize;
+    private final GekBufferPool bufferPool;
+    private final @Nullable Consumer<ServerSocket> socketConfig;
+    private final @Nullable GekTcpMetrics metrics;
+    private final boolean throttleAccept;
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final GekServerStates state = new GekServerStates();
+    private final Set<VirtualChannel> channels = ConcurrentHashMap.newKeySet();
+    private final AtomicBoolean terminated = new AtomicBoolean(false);
+    private volatile boolean accepting = false;
+    private @Nullable ServerSocketChannel serverChannel;
+    private @Nullable ExecutorService threads;
+
+    VirtualThreadTcpServer(Builder builder) {
+        this.port = builder.getPort();
+        this.maxConnection = builder.getMaxConnection();
+        this.address = builder.getAddress();
+        this.serverHandler = Gek.notNull(builder.getServerHandler(), EMPTY_SERVER_HANDLER);
+        this.channelHandlers = GekColl.immutableList(builder.getChannelHandlers());
+        if (channelHandlers.isEmpty()) {
+            throw new GekNetException("Channel handlers are empty.");
+        }
+        this.socketConfig = builder.getSocketConfig();
+        this.bufferGenerator = Gek.notNull(builder.getBufferGenerator(), ByteBuffer::allocate);
+        this.channelBufferSize = builder.getChannelBufferSize();
+        this.bufferPool = Gek.notNull(builder.getBufferPool(), GekBufferPool.unpooled(false));
+        if (channelBufferSize <= 0) {
+            throw new GekNetException("Channel buffer size must > 0.");
+        }
+        //No task queue: each channel reads and handles in its own thread
+        this.metrics = builder.isMetrics() ? new GekTcpMetrics(channelHandlers.size(), () -> 0) : null;
+        this.throttleAccept = builder.isThrottleAccept();
+    }
+
+    @Override
+    public synchronized void start(boolean block) {
+        if (!state.isCreated()) {
+            throw new GekNetException("The server has been opened or closed.");
+        }
+        start0();
+        state.open();
+        if (block) {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return getSource().socket().getInetAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return getSource().socket().getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getSocketAddress() {
+        return getSource().socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public boolean isOpened() {
+        return state.isOpened();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return state.isClosed();
+    }
+
+    @Override
+    public synchronized void close(@Nullable Duration timeout) {
+        try {
+            close0();
+            if (timeout == null) {
+                latch.await();
+            } else {
+                latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            //do nothing
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public synchronized void closeNow() {
+        try {
+            close0();
+            terminated.set(true);
+            for (VirtualChannel channel : channels) {
+                TcpUtils.closeQuietly(channel.socketChannel);
+            }
+            threads.shutdown();
+            latch.countDown();
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public @Nullable GekTcpMetrics getMetrics() {
+        return metrics;
+    }
+
+    @Override
+    public ServerSocketChannel getSource() {
+        if (serverChannel == null) {
+            throw new GekNetException("Server has not been initialized.");
+        }
+        return serverChannel;
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return GekTcpServer.newBuilder()
+            .port(port)
+            .address(address)
+            .maxConnection(maxConnection)
+            .serverHandler(serverHandler)
+            .addChannelHandlers(channelHandlers)
+            .bufferGenerator(bufferGenerator)
+            .channelBufferSize(channelBufferSize)
+            .bufferPool(bufferPool)
+            .socketConfig(socketConfig)
+            .virtualThreads(true)
+            .metrics(metrics != null)
+            .throttleAccept(throttleAccept);
+    }
+
+    private void start0() {
+        try {
+            serverChannel = ServerSocketChannel.open();
+            if (socketConfig != null) {
+                socketConfig.accept(serverChannel.socket());
+            }
+            serverChannel.bind(
+                address == null ? new InetSocketAddress(port) : new InetSocketAddress(address, port),
+                maxConnection
+            );
+        } catch (Exception e) {
+            TcpUtils.closeQuietly(serverChannel);
+            if (e instanceof GekNetException) {
+                throw (GekNetException) e;
+            }
+            throw new GekNetException(e);
+        }
+        threads = GekThread.newVirtualThreadExecutor(
+            "gek-tcp-server-" + serverChannel.socket().getLocalPort() + "-");
+        if (threads == null) {
+            TcpUtils.closeQuietly(serverChannel);
+            throw new GekNetException("Virtual threads are not supported on current JVM.");
+        }
+        accepting = true;
+        threads.execute(this::accept);
+    }
+
+    private void accept() {
+        while (serverChannel.isOpen()) {
+            SocketChannel socketChannel;
+            try {
+                socketChannel = serverChannel.accept();
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (Throwable e) {
+                onServerException(e);
+                continue;
+            }
+            if (throttleAccept && channels.size() >= maxConnection) {
+                TcpUtils.closeQuietly(socketChannel);
+                try {
+                    serverHandler.onOverload(null, GekOverload.CONNECTIONS);
+                } catch (Throwable ignored) {
+                }
+                continue;
+            }
+            try {
+                VirtualChannel channel = new VirtualChannel(socketChannel);
+                channels.add(channel);
+                if (terminated.get()) {
+                    channels.remove(channel);
+                    TcpUtils.closeQuietly(socketChannel);
+                    break;
+                }
+                if (metrics != null) {
+                    metrics.channelOpened();
+                }
+                threads.execute(channel::run);
+            } catch (Throwable e) {
+                TcpUtils.closeQuietly(socketChannel);
+                onServerException(e);
+            }
+        }
+        accepting = false;
+        checkTerminated();
+    }
+
+    private void close0() {
+        if (!state.isOpened() || serverChannel == null) {
+            throw new GekNetException("The server has not been opened.");
+        }
+        if (state.isClosed()) {
+            return;
+        }
+        TcpUtils.closeQuietly(serverChannel);
+    }
+
+    private void checkTerminated() {
+        if (accepting || !channels.isEmpty() || !terminated.compareAndSet(false, true)) {
+            return;
+        }
+        threads.shutdown();
+        latch.countDown();
+    }
+
+    private void onServerException(Throwable e) {
+        try {
+            serverHandler.onException(new GekNetServerException(getSource(), e));
+        } catch (Throwable ignored) {
+        }
+    }
+
+    private final class VirtualChannel implements GekTcpChannel {
+
+        private final SocketChannel socketChannel;
+        private final InetSocketAddress remoteAddress;
+        private final InetSocketAddress localAddress;
+        //Lock of ReentrantLock rather than synchronized, which pins the virtual thread on its carrier
+        private final ReentrantLock writeLock = new ReentrantLock();
+        //Only accessed in the thread of this channel
+        private final TcpCumulation cumulation = new TcpCumulation(bufferPool, channelBufferSize);
+        private final @Nullable GekTcpMetrics channelMetrics =
+            metrics == null ? null : metrics.newChannelMetrics();
+
+        private VirtualChannel(SocketChannel socketChannel) throws IOException {
+            this.socketChannel = socketChannel;
+            this.remoteAddress = (InetSocketAddress) socketChannel.getRemoteAddress();
+            this.localAddress = (InetSocketAddress) socketChannel.getLocalAddress();
+        }
+
+        @Override
+        public InetAddress getRemoteAddress() {
+            return remoteAddress.getAddress();
+        }
+
+        @Override
+        public int getRemotePort() {
+            return remoteAddress.getPort();
+        }
+
+        @Override
+        public InetAddress getLocalAddress() {
+            return localAddress.getAddress();
+        }
+
+        @Override
+        public int getLocalPort() {
+            return localAddress.getPort();
+        }
+
+        @Override
+        public SocketAddress getRemoteSocketAddress() {
+            return remoteAddress;
+        }
+
+        @Override
+        public SocketAddress getLocalSocketAddress() {
+            return localAddress;
+        }
+
+        @Override
+        public boolean isOpened() {
+            return socketChannel.isConnected();
+        }
+
+        @Override
+        public boolean isClosed() {
+            return !socketChannel.isOpen();
+        }
+
+        @Override
+        public void close(@Nullable Duration timeout) {
+            //Data has been written when sending returns
+            closeNow();
+        }
+
+        @Override
+        public void closeNow() {
+            if (isClosed()) {
+                return;
+            }
+            try {
+                //Blocking reading in the thread of this channel will be broken
+                socketChannel.close();
+            } catch (IOException e) {
+                throw new GekNetException(e);
+            }
+        }
+
+        @Override
+        public void send(GekData data) {
+            send(data.toBuffer());
+        }
+
+        @Override
+        public void send(byte[] data) {
+            send(ByteBuffer.wrap(data));
+        }
+
+        @Override
+        public void send(byte[] data, int offset, int length) {
+            GekCheck.checkRangeInBounds(offset, offset + length, 0, data.length);
+            send(ByteBuffer.wrap(data, offset, length));
+        }
+
+        @Override
+        public void send(ByteBuffer data) {
+            writeLock.lock();
+            try {
+                while (data.hasRemaining()) {
+                    int written = socketChannel.write(data);
+                    if (channelMetrics != null) {
+                        channelMetrics.bytesWritten(written);
+                    }
+                }
+            } catch (IOException e) {
+                throw new GekNetException(e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public void send(ByteBuffer[] data) {
+            writeLock.lock();
+            try {
+                int index = 0;
+                while (index < data.length) {
+                    long written = socketChannel.write(data, index, data.length - index);
+                    if (channelMetrics != null) {
+                        channelMetrics.bytesWritten(written);
+                    }
+                    while (index < data.length && !data[index].hasRemaining()) {
+                        index++;
+                    }
+                }
+            } catch (IOException e) {
+                throw new GekNetException(e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public void sendFile(FileChannel file, long offset, long length) {
+            GekCheck.checkArgument(offset >= 0, "offset must >= 0.");
+            GekCheck.checkArgument(length >= 0, "length must >= 0.");
+            writeLock.lock();
+            try {
+                long position = offset;
+                long end = offset + length;
+                while (position < end) {
+                    long count = file.transferTo(position, end - position, socketChannel);
+                    if (count == 0 && position >= file.size()) {
+                        throw new GekNetException("End of file before the region has been sent: " + position + ".");
+                    }
+                    position += count;
+                    if (channelMetrics != null) {
+                        channelMetrics.bytesWritten(count);
+                    }
+                }
+            } catch (IOException e) {
+                throw new GekNetException(e);
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        @Override
+        public void send(InputStream data) {
+            byte[] bytes = GekIO.readBytes(data);
+            if (bytes != null) {
+                send(bytes);
+            }
+        }
+
+        @Override
+        public void flush() {
+            //Data is written directly
+        }
+
+        @Override
+        public @Nullable GekTcpMetrics getMetrics() {
+            return channelMetrics;
+        }
+
+        @Override
+        public SocketChannel getSource() {
+            return socketChannel;
+        }
+
+        // runs in the virtual thread of this channel
+        private void run() {
+            try {
+                serverHandler.onOpen(this);
+            } catch (Throwable e) {
+                serverHandler.onException(this, e, GekBuffer.emptyBuffer());
+            }
+            try {
+                while (!isClosed()) {
+                    if (!read()) {
+                        break;
+                    }
+                }
+            } finally {
+                TcpUtils.closeQuietly(socketChannel);
+                ByteBuffer remaining = cumulation.view();
+                try {
+                    serverHandler.onClose(this, remaining);
+                } catch (Throwable e) {
+                    serverHandler.onException(this, e, remaining);
+                } finally {
+                    cumulation.release();
+                    if (metrics != null) {
+                        metrics.channelClosed();
+                    }
+                    channels.remove(this);
+                    checkTerminated();
+                }
+            }
+        }
+
+        // reads once by blocking, returns false if the channel has reached end of stream
+        private boolean read() {
+            if (!cumulation.prepare()) {
+                //Cumulation buffer is full
+                int full = cumulation.view().remaining();
+                try {
+                    onLoop(false);
+                } catch (Throwable e) {
+                    serverHandler.onException(this, e, cumulation.view());
+                }
+                //Only onLoop can consume the data now, parks instead of spinning until it does
+                if (cumulation.view().remaining() >= full) {
+                    LockSupport.parkNanos(FULL_BUFFER_PARK_NANOS);
+                }
+                return true;
+            }
+            int readCount;
+            try {
+                readCount = socketChannel.read(cumulation.buffer());
+            } catch (IOException e) {
+                readCount = -1;
+            }
+            if (readCount < 0) {
+                return false;
+            }
+            if (readCount == 0) {
+                return true;
+            }
+            long readable = System.nanoTime();
+            if (channelMetrics != null) {
+                channelMetrics.bytesRead(readCount);
+            }
+            ByteBuffer message0 = cumulation.view();
+            try {
+                if (channelMetrics != null) {
+                    channelMetrics.readToHandler(System.nanoTime() - readable);
+                }
+                TcpUtils.handleMessage(this, channelHandlers, message0, channelMetrics);
+                cumulation.consumed(message0);
+                onLoop(true);
+            } catch (Throwable e) {
+                cumulation.consumed(message0);
+                serverHandler.onException(this, e, cumulation.view());
+            }
+            return true;
+        }
+
+        private void onLoop(boolean hasNewData) {
+            ByteBuffer remaining = cumulation.view();
+            if (channelMetrics == null) {
+                serverHandler.onLoop(this, hasNewData, remaining);
+            } else {
+                long start = System.nanoTime();
+                try {
+                    serverHandler.onLoop(this, hasNewData, remaining);
+                } finally {
+                    channelMetrics.loop(System.nanoTime() - start);
+                }
+            }
+            //Data may be consumed in onLoop
+            cumulation.consumed(remaining);
+        }
+    }
+}
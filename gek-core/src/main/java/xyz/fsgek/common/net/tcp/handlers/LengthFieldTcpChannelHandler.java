@@ -0,0 +1,309 @@
+package xyz.fsgek.common.net.tcp.handlers;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.annotations.ThreadSafe;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.tcp.GekTcpChannel;
+import xyz.fsgek.common.net.tcp.GekTcpChannelHandler;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Length field based handler implementation, to split passed byte buffer into frames of which length is specified
+ * by a length field:
+ * <pre>
+ *     frame -&gt; [prefix of lengthOffset bytes][length field][content of (length + lengthAdjustment) bytes]
+ * </pre>
+ * The length field may be 1, 2, 3, 4 or 8 bytes in big-endian or little-endian, or a varint ({@link #VARINT}) as
+ * protobuf's length-delimited encoding. The returned object of {@link #onMessage(GekTcpChannel, ByteBuffer)} is
+ * {@link List}&lt;{@link ByteBuffer}&gt; of complete frames (or null if there is no complete frame), each frame is
+ * the content if {@link Builder#stripHeader(boolean)} is true (default), otherwise the whole frame.
+ * <p>
+ * Different from {@link LengthBasedTcpChannelHandler}, returned buffers are readonly slices of the passed buffer
+ * without copying, so <b>they are only valid in current calling chain</b>: the buffer of channel may be compacted or
+ * reused after the chain, they should be copied if they are needed later.
+ * <p>
+ * This handler is also the matching encoder: {@link #send(GekTcpChannel, ByteBuffer)} passes the length field and
+ * given data as separate buffers to {@link GekTcpChannel#send(ByteBuffer[])}, so they are not concatenated into one
+ * frame buffer: a NIO channel queues them as separate pending writes (each is still copied by the channel, as other
+ * sending methods) and writes them by one gathering write. This handler is stateless and can be shared by channels.
+ *
+ * @author fredsuvn
+ */
+@ThreadSafe
+public class LengthFieldTcpChannelHandler implements GekTcpChannelHandler<ByteBuffer> {
+
+    /**
+     * Length size of varint length field: base 128 varint of at most 5 bytes, as protobuf's length-delimited encoding.
+     */
+    public static final int VARINT = 0;
+
+    /**
+     * Returns a new builder.
+     *
+     * @return a new builder
+     */
+    public static Builder newBuilder() {
+        return new Builder();
+    }
+
+    private final int lengthOffset;
+    private final int lengthSize;
+    private final boolean bigEndian;
+    private final int lengthAdjustment;
+    private final int maxFrameSize;
+    private final boolean stripHeader;
+
+    private LengthFieldTcpChannelHandler(Builder builder) {
+        if (builder.lengthOffset < 0) {
+            throw new IllegalArgumentException("lengthOffset must >= 0.");
+        }
+        if (builder.lengthSize != VARINT && (builder.lengthSize < 1 || builder.lengthSize > 4)
+            && builder.lengthSize != 8) {
+            throw new IllegalArgumentException("lengthSize must in (VARINT, 1, 2, 3, 4, 8).");
+        }
+        if (builder.maxFrameSize < 0) {
+            throw new IllegalArgumentException("maxFrameSize must >= 0.");
+        }
+        this.lengthOffset = builder.lengthOffset;
+        this.lengthSize = builder.lengthSize;
+        this.bigEndian = builder.byteOrder == ByteOrder.BIG_ENDIAN;
+        this.lengthAdjustment = builder.lengthAdjustment;
+        this.maxFrameSize = builder.maxFrameSize;
+        this.stripHeader = builder.stripHeader;
+    }
+
+    @Override
+    public @Nullable Object onMessage(GekTcpChannel channel, ByteBuffer message) {
+        List<ByteBuffer> result = null;
+        while (true) {
+            ByteBuffer frame = nextFrame(message);
+            if (frame == null) {
+                break;
+            }
+            if (result == null) {
+                result = new ArrayList<>();
+            }
+            result.add(frame);
+        }
+        return result;
+    }
+
+    /**
+     * Sends given data as a frame: if the length offset is greater than 0, first length offset bytes of the data are
+     * the prefix, and the length field of remaining data is inserted after the prefix. The data is read to its limit.
+     *
+     * @param channel channel to send
+     * @param data    given data
+     */
+    public void send(GekTcpChannel channel, ByteBuffer data) {
+        channel.send(encode(data));
+    }
+
+    /**
+     * Sends given data as a frame and flushes immediately.
+     *
+     * @param channel channel to send
+     * @param data    given data
+     * @see #send(GekTcpChannel, ByteBuffer)
+     */
+    public void sendAndFlush(GekTcpChannel channel, ByteBuffer data) {
+        channel.sendAndFlush(encode(data));
+    }
+
+    // returns next readonly frame slice and moves position to the end of frame, or null if the frame is incomplete
+    @Nullable
+    private ByteBuffer nextFrame(ByteBuffer message) {
+        int start = message.position();
+        int limit = message.limit();
+        int lengthIndex = start + lengthOffset;
+        long length = 0;
+        int headerEnd;
+        if (lengthSize == VARINT) {
+            int index = lengthIndex;
+            int shift = 0;
+            while (true) {
+                if (index >= limit) {
+                    return null;
+                }
+                byte b = message.get(index++);
+                length |= (long) (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+                shift += 7;
+                if (shift >= 35) {
+                    throw new GekNetException("Malformed varint length field.");
+                }
+            }
+            headerEnd = index;
+        } else {
+            headerEnd = lengthIndex + lengthSize;
+            if (headerEnd > limit) {
+                return null;
+            }
+            for (int i = 0; i < lengthSize; i++) {
+                long b = message.get(lengthIndex + i) & 0xffL;
+                length = bigEndian ? (length << 8) | b : length | (b << (i * 8));
+            }
+        }
+        long contentLength = length + lengthAdjustment;
+        if (length < 0 || contentLength > maxFrameSize) {
+            throw new GekNetException("Frame length exceeds max frame size: " + maxFrameSize + ".");
+        }
+        if (contentLength < 0) {
+            throw new GekNetException("Negative frame length: " + contentLength + ".");
+        }
+        if (headerEnd + contentLength > limit) {
+            return null;
+        }
+        int end = headerEnd + (int) contentLength;
+        message.position(stripHeader ? headerEnd : start);
+        message.limit(end);
+        ByteBuffer frame = message.slice();
+        message.limit(limit);
+        message.position(end);
+        return frame.isReadOnly() ? frame : frame.asReadOnlyBuffer();
+    }
+
+    private ByteBuffer[] encode(ByteBuffer data) {
+        if (data.remaining() < lengthOffset) {
+            throw new GekNetException("Data is shorter than length offset: " + data.remaining() + ".");
+        }
+        long length = data.remaining() - lengthOffset - lengthAdjustment;
+        if (length < 0) {
+            throw new GekNetException("Negative length field: " + length + ".");
+        }
+        ByteBuffer header = encodeLength(length);
+        if (lengthOffset == 0) {
+            return new ByteBuffer[]{header, data};
+        }
+        ByteBuffer prefix = data.duplicate();
+        int contentStart = data.position() + lengthOffset;
+        prefix.limit(contentStart);
+        data.position(contentStart);
+        return new ByteBuffer[]{prefix, header, data};
+    }
+
+    private ByteBuffer encodeLength(long length) {
+        if (lengthSize == VARINT) {
+            if (length > Integer.MAX_VALUE) {
+                throw new GekNetException("Length is too large for varint length field: " + length + ".");
+            }
+            byte[] bytes = new byte[5];
+            int size = 0;
+            long value = length;
+            while (value >= 0x80) {
+                bytes[size++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+            return ByteBuffer.wrap(bytes, 0, size);
+        }
+        if (lengthSize < 8 && length >= 1L << (lengthSize * 8)) {
+            throw new GekNetException("Length is too large for " + lengthSize + " bytes length field: " + length + ".");
+        }
+        byte[] bytes = new byte[lengthSize];
+        for (int i = 0; i < lengthSize; i++) {
+            int shift = bigEndian ? (lengthSize - 1 - i) * 8 : i * 8;
+            bytes[i] = (byte) (length >>> shift);
+        }
+        return ByteBuffer.wrap(bytes);
+    }
+
+    /**
+     * Builder for {@link LengthFieldTcpChannelHandler}.
+     */
+    public static class Builder {
+
+        private int lengthOffset = 0;
+        private int lengthSize = 4;
+        private ByteOrder byteOrder = ByteOrder.BIG_ENDIAN;
+        private int lengthAdjustment = 0;
+        private int maxFrameSize = 16 * 1024 * 1024;
+        private boolean stripHeader = true;
+
+        /**
+         * Sets offset of the length field from start of the frame, default is 0.
+         *
+         * @param lengthOffset offset of the length field
+         * @return this builder
+         */
+        public Builder lengthOffset(int lengthOffset) {
+            this.lengthOffset = lengthOffset;
+            return this;
+        }
+
+        /**
+         * Sets size of the length field, must in ({@link LengthFieldTcpChannelHandler#VARINT}, 1, 2, 3, 4, 8), default
+         * is 4.
+         *
+         * @param lengthSize size of the length field
+         * @return this builder
+         */
+        public Builder lengthSize(int lengthSize) {
+            this.lengthSize = lengthSize;
+            return this;
+        }
+
+        /**
+         * Sets byte order of fixed size length field, default is {@link ByteOrder#BIG_ENDIAN}.
+         *
+         * @param byteOrder byte order of fixed size length field
+         * @return this builder
+         */
+        public Builder byteOrder(ByteOrder byteOrder) {
+            this.byteOrder = byteOrder;
+            return this;
+        }
+
+        /**
+         * Sets adjustment added to value of the length field to get length of content after the length field,
+         * default is 0. For example, if the length field counts itself, the adjustment is negative size of the field.
+         *
+         * @param lengthAdjustment adjustment added to value of the length field
+         * @return this builder
+         */
+        public Builder lengthAdjustment(int lengthAdjustment) {
+            this.lengthAdjustment = lengthAdjustment;
+            return this;
+        }
+
+        /**
+         * Sets max length of content after the length field, default is 16M. A frame exceeding the max length causes
+         * a {@link GekNetException}, and the channel usually should be closed. Note a frame can not be split if it is
+         * larger than the buffer size of channel.
+         *
+         * @param maxFrameSize max length of content after the length field
+         * @return this builder
+         */
+        public Builder maxFrameSize(int maxFrameSize) {
+            this.maxFrameSize = maxFrameSize;
+            return this;
+        }
+
+        /**
+         * Sets whether returned frames only contain content after the length field, default is true. If it is false,
+         * returned frames contain the prefix and the length field.
+         *
+         * @param stripHeader whether returned frames only contain content after the length field
+         * @return this builder
+         */
+        public Builder stripHeader(boolean stripHeader) {
+            this.stripHeader = stripHeader;
+            return this;
+        }
+
+        /**
+         * Builds the handler.
+         *
+         * @return built handler
+         */
+        public LengthFieldTcpChannelHandler build() {
+            return new LengthFieldTcpChannelHandler(this);
+        }
+    }
+}
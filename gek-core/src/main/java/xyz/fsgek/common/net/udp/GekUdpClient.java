@@ -2,12 +2,13 @@ package xyz.fsgek.common.net.udp;
 
 import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.annotations.ThreadSafe;
-import xyz.fsgek.common.io.GekBuffer;
 import xyz.fsgek.common.net.GekNetException;
 
-import java.io.IOException;
 import java.net.*;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collection;
+import java.util.List;
 import java.util.function.Consumer;
 
 /**
@@ -35,6 +36,30 @@ public interface GekUdpClient {
      */
     void send(GekUdpPacket packet);
 
+    /**
+     * Sends data packets in order.
+     *
+     * @param packets the data packets
+     */
+    default void send(List<GekUdpPacket> packets) {
+        for (GekUdpPacket packet : packets) {
+            send(packet);
+        }
+    }
+
+    /**
+     * Sends remaining content of given payload to each of given targets, the position of given payload is not
+     * changed. This method is used to fan out one payload to many targets, the payload is not copied for each target.
+     *
+     * @param payload given payload
+     * @param targets given targets
+     */
+    default void sendAll(ByteBuffer payload, Collection<InetSocketAddress> targets) {
+        for (InetSocketAddress target : targets) {
+            send(GekUdpPacket.wrap(payload, target));
+        }
+    }
+
     /**
      * Returns bound address of this client.
      *
@@ -71,7 +96,7 @@ public interface GekUdpClient {
     Builder toBuilder();
 
     /**
-     * Builder for {@link GekUdpClient}, based on {@link DatagramSocket}.
+     * Builder for {@link GekUdpClient}, based on {@link DatagramSocket} of a {@link DatagramChannel}.
      */
     class Builder {
 
@@ -141,31 +166,30 @@ public interface GekUdpClient {
             private final int port;
             private final InetAddress address;
             private final @Nullable Consumer<DatagramSocket> socketConfig;
+            private final DatagramChannel channel;
             private final DatagramSocket socket;
 
             private SocketUdpClient(Builder builder) {
                 this.port = builder.port;
                 this.address = builder.address;
                 this.socketConfig = builder.socketConfig;
-                this.socket = buildSocket();
+                this.channel = UdpUtils.openChannel(port, address, socketConfig);
+                this.socket = channel.socket();
             }
 
             @Override
-            public synchronized void send(GekUdpPacket packet) {
-                ByteBuffer buffer = packet.getData();
-                DatagramPacket datagramPacket;
-                if (buffer.hasArray()) {
-                    datagramPacket = new DatagramPacket(buffer.array(), buffer.arrayOffset(), buffer.remaining());
-                } else {
-                    byte[] bytes = GekBuffer.getBytes(buffer);
-                    datagramPacket = new DatagramPacket(bytes, bytes.length);
-                }
-                datagramPacket.setSocketAddress(packet.getHeader().getInetSocketAddress());
-                try {
-                    socket.send(datagramPacket);
-                } catch (IOException e) {
-                    throw new GekNetException(e);
-                }
+            public void send(GekUdpPacket packet) {
+                UdpUtils.send(channel, packet);
+            }
+
+            @Override
+            public void send(List<GekUdpPacket> packets) {
+                UdpUtils.send(channel, packets);
+            }
+
+            @Override
+            public void sendAll(ByteBuffer payload, Collection<InetSocketAddress> targets) {
+                UdpUtils.sendAll(channel, payload, targets);
             }
 
             @Override
@@ -198,23 +222,6 @@ public interface GekUdpClient {
                     .address(address)
                     .socketConfig(socketConfig);
             }
-
-            private DatagramSocket buildSocket() {
-                try {
-                    DatagramSocket socket;
-                    if (address != null) {
-                        socket = new DatagramSocket(port, address);
-                    } else {
-                        socket = new DatagramSocket(port);
-                    }
-                    if (socketConfig != null) {
-                        socketConfig.accept(socket);
-                    }
-                    return socket;
-                } catch (Exception e) {
-                    throw new GekNetException(e);
-                }
-            }
         }
     }
 }
@@ -0,0 +1,23 @@
+package xyz.fsgek.common.net.udp;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Policy of UDP server when the ordered lane of a packet is full, see {@link GekUdpServer.Builder#orderedLanes(int)}.
+ *
+ * @author fredsuvn
+ */
+public enum GekUdpLanePolicy {
+
+    /**
+     * Drops the packet silently.
+     */
+    DROP,
+
+    /**
+     * Drops the packet and calls
+     * {@link GekUdpServerHandler#onException(GekUdpHeader, GekUdpClient, Throwable, ByteBuffer)} with a
+     * {@link xyz.fsgek.common.net.GekNetException}.
+     */
+    REJECT,
+}
@@ -63,6 +63,32 @@ public interface GekUdpPacket {
         };
     }
 
+    /**
+     * Returns UDP packet of given buffer and address without copying.
+     * The content of returned packet is shared with remaining content of given buffer (the position of given buffer
+     * is not changed), so the content should not be modified until the packet has been sent.
+     *
+     * @param buffer  given buffer
+     * @param address given address
+     * @return UDP packet
+     */
+    static GekUdpPacket wrap(ByteBuffer buffer, InetSocketAddress address) {
+        ByteBuffer data = buffer.slice();
+        GekUdpHeader header = GekUdpHeader.of(address);
+        return new GekUdpPacket() {
+
+            @Override
+            public GekUdpHeader getHeader() {
+                return header;
+            }
+
+            @Override
+            public ByteBuffer getData() {
+                return data.asReadOnlyBuffer();
+            }
+        };
+    }
+
     /**
      * Returns header info of this datagram packet.
      *
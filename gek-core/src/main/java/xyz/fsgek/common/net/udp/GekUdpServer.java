@@ -1,28 +1,33 @@
 package xyz.fsgek.common.net.udp;
 
+import lombok.Getter;
 import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.annotations.ThreadSafe;
 import xyz.fsgek.common.base.Gek;
 import xyz.fsgek.common.base.GekThread;
 import xyz.fsgek.common.collect.GekColl;
 import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
 import xyz.fsgek.common.io.GekIO;
 import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekOverload;
 import xyz.fsgek.common.net.GekServerStates;
 
-import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
 import java.net.InetAddress;
+import java.net.InetSocketAddress;
 import java.net.SocketAddress;
 import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
 import java.time.Duration;
+import java.util.Collection;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Consumer;
 
 /**
@@ -142,8 +147,10 @@ public interface GekUdpServer extends GekUdpClient {
     Builder toBuilder();
 
     /**
-     * Builder for {@link GekUdpServer}, based on {@link DatagramSocket}.
+     * Builder for {@link GekUdpServer}, based on {@link DatagramSocket} of a {@link DatagramChannel} by default,
+     * or based on {@link DatagramChannel} if {@link #nio(boolean)} is set to true.
      */
+    @Getter
     class Builder extends GekUdpClient.Builder {
 
         private static final byte[] EMPTY_ARRAY = new byte[0];
@@ -154,6 +161,15 @@ public interface GekUdpServer extends GekUdpClient {
         private @Nullable GekUdpServerHandler serverHandler;
         private @Nullable ExecutorService executor;
         private int packetBufferSize = GekIO.IO_BUFFER_SIZE;
+        private boolean virtualThreads = false;
+        private boolean nio = false;
+        private int receiverCount = Runtime.getRuntime().availableProcessors();
+        private int bufferPoolSize = 256;
+        private int orderedLanes = 0;
+        private int laneCapacity = 1024;
+        private GekUdpLanePolicy lanePolicy = GekUdpLanePolicy.DROP;
+        private int maxInFlightTasks = 0;
+        private long maxPendingBytes = 0;
 
         /**
          * Sets local port, maybe 0 to get an available one from system.
@@ -254,12 +270,156 @@ public interface GekUdpServer extends GekUdpClient {
             return this;
         }
 
+        /**
+         * Sets whether the server receives packets and runs handlers of each packet in virtual threads, default is
+         * false.
+         * <p>
+         * If it is true and the {@link #executor(ExecutorService)} is not set, the server uses its own executor which
+         * starts a virtual thread for each task on Java 21+ (the multi-release jar contains the Java 21
+         * implementation), or falls back to a cached thread pool on lower versions.
+         *
+         * @param virtualThreads whether the server runs handlers in virtual threads
+         * @return this builder
+         */
+        public Builder virtualThreads(boolean virtualThreads) {
+            this.virtualThreads = virtualThreads;
+            return this;
+        }
+
+        /**
+         * Sets whether the server is based on NIO ({@link DatagramChannel}), default is false.
+         * <p>
+         * A NIO server receives packets in {@link #receiverCount(int)} receiver threads. Each receiver receives
+         * packets into direct buffers from a pool of {@link #bufferPoolSize(int)} buffers of
+         * {@link #packetBufferSize(int)}, calls the packet handler chain in its own thread, and releases the buffer
+         * into the pool after the chain completes, so packet handlers must not keep the passed buffer after
+         * returning, they should copy the data if it is needed later. The {@link #executor(ExecutorService)},
+         * {@link #maxInFlightTasks(int)} and {@link #maxPendingBytes(long)} are only used by
+         * {@link #orderedLanes(int)}, and {@link #build()} throws {@link GekNetException} if any of them is set without
+         * ordered lanes. The {@link #virtualThreads(boolean)} is not used, and the {@link #socketConfig(Consumer)} is
+         * applied on {@link DatagramChannel#socket()}. For a NIO server, the source object is a
+         * {@link DatagramChannel}.
+         *
+         * @param nio whether the server is based on NIO
+         * @return this builder
+         */
+        public Builder nio(boolean nio) {
+            this.nio = nio;
+            return this;
+        }
+
+        /**
+         * Sets number of receiver threads for NIO server, default is number of available processors.
+         * <p>
+         * If it is greater than 1 and the {@code SO_REUSEPORT} option is supported (Java 9+ on platforms such as
+         * Linux), each receiver opens its own channel on the same port, and the kernel distributes packets to the
+         * channels by source address. Otherwise, receivers share one channel.
+         *
+         * @param receiverCount number of receiver threads
+         * @return this builder
+         */
+        public Builder receiverCount(int receiverCount) {
+            this.receiverCount = receiverCount;
+            return this;
+        }
+
+        /**
+         * Sets max number of pooled packet buffers for NIO server, default is 256.
+         *
+         * @param bufferPoolSize max number of pooled packet buffers
+         * @return this builder
+         */
+        public Builder bufferPoolSize(int bufferPoolSize) {
+            this.bufferPoolSize = bufferPoolSize;
+            return this;
+        }
+
+        /**
+         * Sets number of ordered lanes to dispatch packets, default is 0 (disabled).
+         * <p>
+         * By default, each packet is handled by an independent task of the {@link #executor(ExecutorService)} (or in
+         * a receiver thread for NIO server), so packets from one source may be handled concurrently and out of order.
+         * If the number of ordered lanes is greater than 0, a packet is dispatched to one of the lanes by hash of its
+         * source address: each lane has a lock-free queue of packets and is drained by at most one task of the
+         * executor at a time, so packets from one source are handled in order without locks, and packets from
+         * different sources are still spread across the lanes. If the executor is not set for NIO server, the server
+         * uses its own fixed thread pool of which thread number is the number of lanes.
+         *
+         * @param orderedLanes number of ordered lanes
+         * @return this builder
+         */
+        public Builder orderedLanes(int orderedLanes) {
+            this.orderedLanes = orderedLanes;
+            return this;
+        }
+
+        /**
+         * Sets max number of packets waiting in each ordered lane, default is 1024.
+         * The {@link #lanePolicy(GekUdpLanePolicy)} is applied for packets beyond the capacity.
+         *
+         * @param laneCapacity max number of packets waiting in each ordered lane
+         * @return this builder
+         */
+        public Builder laneCapacity(int laneCapacity) {
+            this.laneCapacity = laneCapacity;
+            return this;
+        }
+
+        /**
+         * Sets policy for packets of which ordered lane is full, default is {@link GekUdpLanePolicy#DROP}.
+         *
+         * @param lanePolicy policy for packets of which ordered lane is full
+         * @return this builder
+         */
+        public Builder lanePolicy(GekUdpLanePolicy lanePolicy) {
+            this.lanePolicy = lanePolicy;
+            return this;
+        }
+
+        /**
+         * Sets max number of packet tasks submitted to the {@link #executor(ExecutorService)} but not done, default is
+         * 0 (unlimited).
+         * <p>
+         * If the number is reached, new packets are dropped and
+         * {@link GekUdpServerHandler#onOverload(GekUdpHeader, GekOverload)} is called with
+         * {@link GekOverload#IN_FLIGHT_TASKS}. For NIO server, this option requires {@link #orderedLanes(int)}, of
+         * which lanes dispatch packets to the executor.
+         *
+         * @param maxInFlightTasks max number of packet tasks submitted to the executor but not done
+         * @return this builder
+         */
+        public Builder maxInFlightTasks(int maxInFlightTasks) {
+            this.maxInFlightTasks = maxInFlightTasks;
+            return this;
+        }
+
+        /**
+         * Sets max number of bytes of packets submitted to the {@link #executor(ExecutorService)} but not handled,
+         * default is 0 (unlimited).
+         * <p>
+         * If the number is exceeded, new packets are dropped and
+         * {@link GekUdpServerHandler#onOverload(GekUdpHeader, GekOverload)} is called with
+         * {@link GekOverload#PENDING_BYTES}. There is no channel for UDP, so the number is for the whole server. For
+         * NIO server, this option requires {@link #orderedLanes(int)}, of which lanes dispatch packets to the
+         * executor.
+         *
+         * @param maxPendingBytes max number of bytes of packets submitted to the executor but not handled
+         * @return this builder
+         */
+        public Builder maxPendingBytes(long maxPendingBytes) {
+            this.maxPendingBytes = maxPendingBytes;
+            return this;
+        }
+
         /**
          * Builds the server.
          *
          * @return built server
          */
         public GekUdpServer build() {
+            if (nio) {
+                return new NioUdpServer(this);
+            }
             return new SocketUdpServer(this);
         }
 
@@ -272,10 +432,19 @@ public interface GekUdpServer extends GekUdpClient {
             private final ExecutorService executor;
             private final int packetBufferSize;
             private final @Nullable Consumer<DatagramSocket> socketConfig;
+            private final boolean virtualThreads;
+            private final boolean ownExecutor;
+            private final int orderedLanes;
+            private final int laneCapacity;
+            private final GekUdpLanePolicy lanePolicy;
+            private final @Nullable UdpLanes lanes;
+            private final int maxInFlightTasks;
+            private final long maxPendingBytes;
+            private final UdpAdmission admission;
 
             private final CountDownLatch latch = new CountDownLatch(1);
-            private final AtomicInteger packetCounter = new AtomicInteger();
             private final GekServerStates state = new GekServerStates();
+            private @Nullable DatagramChannel serverChannel;
             private @Nullable DatagramSocket serverSocket;
 
             private SocketUdpServer(GekUdpServer.Builder builder) {
@@ -286,7 +455,14 @@ public interface GekUdpServer extends GekUdpClient {
                 if (packetHandlers.isEmpty()) {
                     throw new GekNetException("Packet handlers are empty.");
                 }
-                this.executor = builder.executor;
+                this.virtualThreads = builder.virtualThreads;
+                this.ownExecutor = virtualThreads && builder.executor == null;
+                if (ownExecutor) {
+                    ExecutorService virtualExecutor = GekThread.newVirtualThreadExecutor("gek-udp-server-");
+                    this.executor = virtualExecutor != null ? virtualExecutor : Executors.newCachedThreadPool();
+                } else {
+                    this.executor = builder.executor;
+                }
                 if (executor == null) {
                     throw new GekNetException("Executor is null.");
                 }
@@ -295,6 +471,13 @@ public interface GekUdpServer extends GekUdpClient {
                 if (packetBufferSize <= 0) {
                     throw new GekNetException("Packet buffer size must > 0.");
                 }
+                this.orderedLanes = builder.orderedLanes;
+                this.laneCapacity = builder.laneCapacity;
+                this.lanePolicy = builder.lanePolicy;
+                this.lanes = UdpUtils.newLanes(orderedLanes, laneCapacity, executor);
+                this.maxInFlightTasks = builder.maxInFlightTasks;
+                this.maxPendingBytes = builder.maxPendingBytes;
+                this.admission = new UdpAdmission(maxInFlightTasks, maxPendingBytes);
             }
 
             @Override
@@ -313,21 +496,18 @@ public interface GekUdpServer extends GekUdpClient {
             }
 
             @Override
-            public synchronized void send(GekUdpPacket packet) {
-                ByteBuffer buffer = packet.getData();
-                DatagramPacket datagramPacket;
-                if (buffer.hasArray()) {
-                    datagramPacket = new DatagramPacket(buffer.array(), buffer.arrayOffset(), buffer.remaining());
-                } else {
-                    byte[] bytes = GekBuffer.getBytes(buffer);
-                    datagramPacket = new DatagramPacket(bytes, bytes.length);
-                }
-                datagramPacket.setSocketAddress(packet.getHeader().getInetSocketAddress());
-                try {
-                    serverSocket.send(datagramPacket);
-                } catch (IOException e) {
-                    throw new GekNetException(e);
-                }
+            public void send(GekUdpPacket packet) {
+                UdpUtils.send(getChannel(), packet);
+            }
+
+            @Override
+            public void send(List<GekUdpPacket> packets) {
+                UdpUtils.send(getChannel(), packets);
+            }
+
+            @Override
+            public void sendAll(ByteBuffer payload, Collection<InetSocketAddress> targets) {
+                UdpUtils.sendAll(getChannel(), payload, targets);
             }
 
             @Override
@@ -414,16 +594,30 @@ public interface GekUdpServer extends GekUdpClient {
                     .address(address)
                     .serverHandler(serverHandler)
                     .addPacketHandlers(packetHandlers)
-                    .executor(executor)
+                    .executor(ownExecutor ? null : executor)
                     .packetBufferSize(packetBufferSize)
-                    .socketConfig(socketConfig);
+                    .socketConfig(socketConfig)
+                    .virtualThreads(virtualThreads)
+                    .orderedLanes(orderedLanes)
+                    .laneCapacity(laneCapacity)
+                    .lanePolicy(lanePolicy)
+                    .maxInFlightTasks(maxInFlightTasks)
+                    .maxPendingBytes(maxPendingBytes);
             }
 
             private void start0() {
-                serverSocket = buildServerSocket();
+                serverChannel = UdpUtils.openChannel(port, address, socketConfig);
+                serverSocket = serverChannel.socket();
                 loopServerSocket();
             }
 
+            private DatagramChannel getChannel() {
+                if (serverChannel == null) {
+                    throw new GekNetException("Server has not been initialized.");
+                }
+                return serverChannel;
+            }
+
             private void close0() {
                 if (!state.isOpened() || serverSocket == null) {
                     throw new GekNetException("The server has not been opened.");
@@ -434,23 +628,6 @@ public interface GekUdpServer extends GekUdpClient {
                 serverSocket.close();
             }
 
-            private DatagramSocket buildServerSocket() {
-                try {
-                    DatagramSocket server;
-                    if (address != null) {
-                        server = new DatagramSocket(port, address);
-                    } else {
-                        server = new DatagramSocket(port);
-                    }
-                    if (socketConfig != null) {
-                        socketConfig.accept(server);
-                    }
-                    return server;
-                } catch (Exception e) {
-                    throw new GekNetException(e);
-                }
-            }
-
             private void loopServerSocket() {
                 executor.execute(() -> {
                     byte[] data = new byte[packetBufferSize];
@@ -459,23 +636,40 @@ public interface GekUdpServer extends GekUdpClient {
                         try {
                             serverSocket.receive(packet);
                             GekUdpPacket udpPacket = GekUdpPacket.from(packet);
+                            GekUdpHeader header = udpPacket.getHeader();
                             ByteBuffer buffer = udpPacket.getData().asReadOnlyBuffer();
-                            packetCounter.incrementAndGet();
-                            executor.execute(() -> {
+                            int bytes = buffer.remaining();
+                            GekOverload overload = admission.acquire(bytes);
+                            if (overload != null) {
+                                UdpUtils.overload(serverHandler, header, overload);
+                                continue;
+                            }
+                            Runnable task = () -> {
                                 try {
-                                    doPacket(udpPacket.getHeader(), buffer);
+                                    doPacket(header, buffer);
                                 } catch (Throwable e) {
-                                    serverHandler.onException(udpPacket.getHeader(), this, e, compactBuffer(buffer));
+                                    serverHandler.onException(header, this, e, compactBuffer(buffer));
                                 } finally {
-                                    packetCounter.decrementAndGet();
+                                    admission.release(bytes);
                                 }
-                            });
+                            };
+                            if (lanes == null) {
+                                executor.execute(task);
+                            } else if (!lanes.dispatch(header.getInetSocketAddress(), task)) {
+                                admission.release(bytes);
+                                UdpUtils.laneFull(lanePolicy, serverHandler, header, this, buffer);
+                            }
                         } catch (Throwable e) {
                             //Ensure the loop continue
                         }
                     }
-                    while (packetCounter.get() > 0) {
-                        GekThread.sleep(1);
+                    try {
+                        admission.awaitDrained();
+                    } catch (InterruptedException ignored) {
+                        //Interrupted by shutting down the executor now
+                    }
+                    if (ownExecutor) {
+                        executor.shutdown();
                     }
                     latch.countDown();
                 });
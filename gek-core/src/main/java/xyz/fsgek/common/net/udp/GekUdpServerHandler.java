@@ -1,6 +1,7 @@
 package xyz.fsgek.common.net.udp;
 
 import xyz.fsgek.common.net.GekNetServerException;
+import xyz.fsgek.common.net.GekOverload;
 
 import java.nio.ByteBuffer;
 
@@ -29,4 +30,17 @@ public interface GekUdpServerHandler {
      */
     default void onException(GekUdpHeader header, GekUdpClient client, Throwable throwable, ByteBuffer buffer) {
     }
+
+    /**
+     * Callback when the server is overloaded and the packet is dropped.
+     * <p>
+     * This method is called in the receiving thread of the server, it should be fast and not block.
+     *
+     * @param header   header of the dropped packet
+     * @param overload type of the overload
+     * @see GekUdpServer.Builder#maxInFlightTasks(int)
+     * @see GekUdpServer.Builder#maxPendingBytes(long)
+     */
+    default void onOverload(GekUdpHeader header, GekOverload overload) {
+    }
 }
@@ -0,0 +1,336 @@
+package xyz.fsgek.common.net.udp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
+import xyz.fsgek.common.base.GekThread;
+import xyz.fsgek.common.collect.GekColl;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.net.GekNet;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekNetServerException;
+import xyz.fsgek.common.net.GekOverload;
+import xyz.fsgek.common.net.GekServerStates;
+
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.net.SocketOption;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.DatagramChannel;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+final class NioUdpServer implements GekUdpServer {
+
+    private static final GekUdpServerHandler EMPTY_SERVER_HANDLER = new GekUdpServerHandler() {
+    };
+    private static final AtomicInteger serverCounter = new AtomicInteger();
+
+    private final int port;
+    private final @Nullable InetAddress address;
+    private final GekUdpServerHandler serverHandler;
+    private final List<GekUdpPacketHandler<?>> packetHandlers;
+    private final int packetBufferSize;
+    private final @Nullable Consumer<DatagramSocket> socketConfig;
+    private final int receiverCount;
+    private final int bufferPoolSize;
+    private final GekBufferPool bufferPool;
+    private final @Nullable ExecutorService executor;
+    private final boolean ownExecutor;
+    private final int orderedLanes;
+    private final int laneCapacity;
+    private final GekUdpLanePolicy lanePolicy;
+    private final @Nullable UdpLanes lanes;
+    private final int maxInFlightTasks;
+    private final long maxPendingBytes;
+    private final UdpAdmission admission;
+    private final String threadName = "gek-udp-receiver-" + serverCounter.getAndIncrement() + "-";
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final AtomicInteger runningReceivers = new AtomicInteger();
+    private final GekServerStates state = new GekServerStates();
+    private DatagramChannel[] channels;
+
+    NioUdpServer(Builder builder) {
+        this.port = builder.port;
+        this.address = builder.address;
+        this.socketConfig = builder.socketConfig;
+        this.serverHandler = Gek.notNull(builder.getServerHandler(), EMPTY_SERVER_HANDLER);
+        this.packetHandlers = GekColl.immutableList(builder.getPacketHandlers());
+        if (packetHandlers.isEmpty()) {
+            throw new GekNetException("Packet handlers are empty.");
+        }
+        this.packetBufferSize = builder.getPacketBufferSize();
+        if (packetBufferSize <= 0) {
+            throw new GekNetException("Packet buffer size must > 0.");
+        }
+        this.receiverCount = builder.getReceiverCount();
+        if (receiverCount <= 0) {
+            throw new GekNetException("Receiver count must > 0.");
+        }
+        this.bufferPoolSize = builder.getBufferPoolSize();
+        if (bufferPoolSize < 0) {
+            throw new GekNetException("Buffer pool size must >= 0.");
+        }
+        this.bufferPool = GekBufferPool.newPool(true, packetBufferSize, bufferPoolSize);
+        this.orderedLanes = builder.getOrderedLanes();
+        this.laneCapacity = builder.getLaneCapacity();
+        this.lanePolicy = builder.getLanePolicy();
+        this.maxInFlightTasks = builder.getMaxInFlightTasks();
+        this.maxPendingBytes = builder.getMaxPendingBytes();
+        if (orderedLanes == 0 && (builder.getExecutor() != null || maxInFlightTasks > 0 || maxPendingBytes > 0)) {
+            throw new GekNetException(
+                "Executor, max in-flight tasks and max pending bytes of NIO server require ordered lanes.");
+        }
+        this.ownExecutor = orderedLanes > 0 && builder.getExecutor() == null;
+        this.executor = ownExecutor ? Executors.newFixedThreadPool(orderedLanes) : builder.getExecutor();
+        this.lanes = executor == null ? null : UdpUtils.newLanes(orderedLanes, laneCapacity, executor);
+        this.admission = new UdpAdmission(maxInFlightTasks, maxPendingBytes);
+    }
+
+    @Override
+    public synchronized void start(boolean block) {
+        if (!state.isCreated()) {
+            throw new GekNetException("The server has been opened or closed.");
+        }
+        channels = openChannels();
+        runningReceivers.set(receiverCount);
+        for (int i = 0; i < receiverCount; i++) {
+            DatagramChannel channel = channels[i % channels.length];
+            GekThread.start(threadName + i, () -> receive(channel));
+        }
+        state.open();
+        if (block) {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {
+            }
+        }
+    }
+
+    @Override
+    public void send(GekUdpPacket packet) {
+        UdpUtils.send(getSource(), packet);
+    }
+
+    @Override
+    public void send(List<GekUdpPacket> packets) {
+        UdpUtils.send(getSource(), packets);
+    }
+
+    @Override
+    public void sendAll(ByteBuffer payload, Collection<InetSocketAddress> targets) {
+        UdpUtils.sendAll(getSource(), payload, targets);
+    }
+
+    @Override
+    public InetAddress getAddress() {
+        return getSource().socket().getLocalAddress();
+    }
+
+    @Override
+    public int getPort() {
+        return getSource().socket().getLocalPort();
+    }
+
+    @Override
+    public SocketAddress getSocketAddress() {
+        return getSource().socket().getLocalSocketAddress();
+    }
+
+    @Override
+    public boolean isOpened() {
+        return state.isOpened();
+    }
+
+    @Override
+    public boolean isClosed() {
+        return state.isClosed();
+    }
+
+    @Override
+    public synchronized void close(@Nullable Duration timeout) {
+        try {
+            close0();
+            if (timeout == null) {
+                latch.await();
+            } else {
+                latch.await(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            //do nothing
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public synchronized void closeNow() {
+        try {
+            close0();
+            latch.countDown();
+        } finally {
+            state.close();
+        }
+    }
+
+    @Override
+    public DatagramChannel getSource() {
+        if (channels == null) {
+            throw new GekNetException("Server has not been initialized.");
+        }
+        return channels[0];
+    }
+
+    @Override
+    public Builder toBuilder() {
+        return GekUdpServer.newBuilder()
+            .port(port)
+            .address(address)
+            .serverHandler(serverHandler)
+            .addPacketHandlers(packetHandlers)
+            .packetBufferSize(packetBufferSize)
+            .socketConfig(socketConfig)
+            .nio(true)
+            .receiverCount(receiverCount)
+            .bufferPoolSize(bufferPoolSize)
+            .executor(ownExecutor ? null : executor)
+            .orderedLanes(orderedLanes)
+            .laneCapacity(laneCapacity)
+            .lanePolicy(lanePolicy)
+            .maxInFlightTasks(maxInFlightTasks)
+            .maxPendingBytes(maxPendingBytes);
+    }
+
+    private DatagramChannel[] openChannels() {
+        @Nullable SocketOption<Boolean> reusePort = receiverCount > 1 ? GekNet.reusePortOption() : null;
+        DatagramChannel[] result = new DatagramChannel[reusePort == null ? 1 : receiverCount];
+        try {
+            int bindPort = port;
+            for (int i = 0; i < result.length; i++) {
+                DatagramChannel channel = DatagramChannel.open();
+                result[i] = channel;
+                if (reusePort != null && !channel.supportedOptions().contains(reusePort)) {
+                    //Receivers share one channel if the platform does not support SO_REUSEPORT
+                    reusePort = null;
+                    result = new DatagramChannel[]{channel};
+                }
+                if (reusePort != null) {
+                    channel.setOption(reusePort, true);
+                }
+                if (socketConfig != null) {
+                    socketConfig.accept(channel.socket());
+                }
+                channel.bind(address == null ? new InetSocketAddress(bindPort) : new InetSocketAddress(address, bindPort));
+                //Other receivers share the port of the first one
+                bindPort = channel.socket().getLocalPort();
+            }
+            return result;
+        } catch (Exception e) {
+            closeAll(result);
+            throw new GekNetException(e);
+        }
+    }
+
+    private void receive(DatagramChannel channel) {
+        try {
+            while (channel.isOpen()) {
+                ByteBuffer buffer = bufferPool.allocate(packetBufferSize);
+                SocketAddress source;
+                try {
+                    source = channel.receive(buffer);
+                } catch (ClosedChannelException e) {
+                    bufferPool.release(buffer);
+                    break;
+                } catch (Throwable e) {
+                    bufferPool.release(buffer);
+                    if (channel.isOpen()) {
+                        serverHandler.onException(new GekNetServerException(this, e));
+                    }
+                    continue;
+                }
+                buffer.flip();
+                GekUdpHeader header = GekUdpHeader.of((InetSocketAddress) source);
+                if (lanes == null) {
+                    handle(header, buffer);
+                    continue;
+                }
+                int bytes = buffer.remaining();
+                GekOverload overload = admission.acquire(bytes);
+                if (overload != null) {
+                    bufferPool.release(buffer);
+                    UdpUtils.overload(serverHandler, header, overload);
+                } else if (!lanes.dispatch(header.getInetSocketAddress(), () -> {
+                    try {
+                        handle(header, buffer);
+                    } finally {
+                        admission.release(bytes);
+                    }
+                })) {
+                    admission.release(bytes);
+                    try {
+                        UdpUtils.laneFull(lanePolicy, serverHandler, header, this, buffer.asReadOnlyBuffer());
+                    } finally {
+                        bufferPool.release(buffer);
+                    }
+                }
+            }
+        } finally {
+            if (runningReceivers.decrementAndGet() == 0) {
+                if (ownExecutor) {
+                    executor.shutdown();
+                }
+                latch.countDown();
+            }
+        }
+    }
+
+    private void handle(GekUdpHeader header, ByteBuffer buffer) {
+        ByteBuffer data = buffer.asReadOnlyBuffer();
+        try {
+            doPacket(header, data);
+        } catch (Throwable e) {
+            serverHandler.onException(header, this, e, data.slice());
+        } finally {
+            //Packet handlers must not keep the buffer after the chain completes
+            bufferPool.release(buffer);
+        }
+    }
+
+    private void doPacket(GekUdpHeader header, ByteBuffer buffer) {
+        Object packet = buffer;
+        for (GekUdpPacketHandler<?> packetHandler : packetHandlers) {
+            GekUdpPacketHandler<Object> handler = Gek.as(packetHandler);
+            Object result = handler.onPacket(header, this, packet);
+            if (result == null) {
+                break;
+            }
+            packet = result;
+        }
+    }
+
+    private void close0() {
+        if (!state.isOpened() || channels == null) {
+            throw new GekNetException("The server has not been opened.");
+        }
+        if (state.isClosed()) {
+            return;
+        }
+        closeAll(channels);
+    }
+
+    private static void closeAll(DatagramChannel[] channels) {
+        for (DatagramChannel channel : channels) {
+            UdpUtils.closeQuietly(channel);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+package xyz.fsgek.common.net.udp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.GekDrainBarrier;
+import xyz.fsgek.common.base.GekThread;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekOverload;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+// Counts packet tasks submitted to the executor but not done, and bytes of their packets.
+final class UdpAdmission {
+
+    private final int maxInFlightTasks;
+    private final long maxPendingBytes;
+    private final GekDrainBarrier inFlightTasks = GekThread.newDrainBarrier();
+    private final AtomicLong pendingBytes = new AtomicLong();
+
+    UdpAdmission(int maxInFlightTasks, long maxPendingBytes) {
+        if (maxInFlightTasks < 0) {
+            throw new GekNetException("Max in-flight tasks must >= 0.");
+        }
+        if (maxPendingBytes < 0) {
+            throw new GekNetException("Max pending bytes must >= 0.");
+        }
+        this.maxInFlightTasks = maxInFlightTasks;
+        this.maxPendingBytes = maxPendingBytes;
+    }
+
+    // returns null if the packet is admitted, otherwise the overload for which the packet should be dropped
+    @Nullable
+    GekOverload acquire(int bytes) {
+        if (!inFlightTasks.tryEnter(maxInFlightTasks)) {
+            return GekOverload.IN_FLIGHT_TASKS;
+        }
+        long pending = pendingBytes.addAndGet(bytes);
+        if (maxPendingBytes > 0 && pending > maxPendingBytes) {
+            pendingBytes.addAndGet(-bytes);
+            inFlightTasks.exit();
+            return GekOverload.PENDING_BYTES;
+        }
+        return null;
+    }
+
+    void release(int bytes) {
+        pendingBytes.addAndGet(-bytes);
+        inFlightTasks.exit();
+    }
+
+    // blocks until all admitted tasks are released
+    void awaitDrained() throws InterruptedException {
+        inFlightTasks.await();
+    }
+}
@@ -0,0 +1,28 @@
+package xyz.fsgek.common.net.udp;
+
+import xyz.fsgek.common.base.GekSerialExecutor;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+final class UdpLanes {
+
+    private final GekSerialExecutor[] lanes;
+    private final int capacity;
+
+    UdpLanes(int laneCount, int capacity, Executor executor) {
+        this.lanes = new GekSerialExecutor[laneCount];
+        for (int i = 0; i < lanes.length; i++) {
+            lanes[i] = GekSerialExecutor.newSerialExecutor(executor);
+        }
+        this.capacity = capacity;
+    }
+
+    // returns false if the lane of the source is full
+    boolean dispatch(InetSocketAddress source, Runnable task) {
+        int hash = source.hashCode();
+        hash ^= hash >>> 16;
+        GekSerialExecutor lane = lanes[(hash & Integer.MAX_VALUE) % lanes.length];
+        return lane.tryExecute(task, capacity);
+    }
+}
@@ -0,0 +1,110 @@
+package xyz.fsgek.common.net.udp;
+
+import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.net.GekNetException;
+import xyz.fsgek.common.net.GekOverload;
+
+import java.io.IOException;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+
+final class UdpUtils {
+
+    // opens a blocking channel of which socket adaptor is the source object of socket based client and server
+    static DatagramChannel openChannel(int port, @Nullable InetAddress address, @Nullable Consumer<DatagramSocket> socketConfig) {
+        DatagramChannel channel = null;
+        try {
+            channel = DatagramChannel.open();
+            if (socketConfig != null) {
+                socketConfig.accept(channel.socket());
+            }
+            channel.bind(address == null ? new InetSocketAddress(port) : new InetSocketAddress(address, port));
+            return channel;
+        } catch (Exception e) {
+            closeQuietly(channel);
+            throw new GekNetException(e);
+        }
+    }
+
+    // DatagramChannel.send() is thread-safe and does not copy heap or direct buffers into arrays
+    static void send(DatagramChannel channel, GekUdpPacket packet) {
+        try {
+            channel.send(packet.getData(), packet.getHeader().getInetSocketAddress());
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+    }
+
+    static void send(DatagramChannel channel, List<GekUdpPacket> packets) {
+        try {
+            for (GekUdpPacket packet : packets) {
+                channel.send(packet.getData(), packet.getHeader().getInetSocketAddress());
+            }
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+    }
+
+    static void sendAll(DatagramChannel channel, ByteBuffer payload, Collection<InetSocketAddress> targets) {
+        //One read-only view is rewound for each target
+        ByteBuffer data = payload.asReadOnlyBuffer();
+        int position = data.position();
+        try {
+            for (InetSocketAddress target : targets) {
+                data.position(position);
+                channel.send(data, target);
+            }
+        } catch (IOException e) {
+            throw new GekNetException(e);
+        }
+    }
+
+    static @Nullable UdpLanes newLanes(int laneCount, int capacity, Executor executor) {
+        if (laneCount < 0) {
+            throw new GekNetException("Number of ordered lanes must >= 0.");
+        }
+        if (laneCount == 0) {
+            return null;
+        }
+        if (capacity <= 0) {
+            throw new GekNetException("Lane capacity must > 0.");
+        }
+        return new UdpLanes(laneCount, capacity, executor);
+    }
+
+    static void laneFull(
+        GekUdpLanePolicy policy,
+        GekUdpServerHandler serverHandler,
+        GekUdpHeader header,
+        GekUdpClient client,
+        ByteBuffer buffer
+    ) {
+        if (policy == GekUdpLanePolicy.REJECT) {
+            serverHandler.onException(header, client, new GekNetException("Ordered lane is full."), buffer);
+        }
+    }
+
+    static void overload(GekUdpServerHandler serverHandler, GekUdpHeader header, GekOverload overload) {
+        try {
+            serverHandler.onOverload(header, overload);
+        } catch (Throwable ignored) {
+        }
+    }
+
+    static void closeQuietly(@Nullable DatagramChannel channel) {
+        if (channel == null) {
+            return;
+        }
+        try {
+            channel.close();
+        } catch (Exception ignored) {
+        }
+    }
+}
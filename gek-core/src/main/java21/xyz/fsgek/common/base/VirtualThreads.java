@@ -0,0 +1,21 @@
+package xyz.fsgek.common.base;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+// Java 21 version in multi-release jar
+final class VirtualThreads {
+
+    static boolean isSupported() {
+        return true;
+    }
+
+    static ThreadFactory newFactory(String namePrefix) {
+        return Thread.ofVirtual().name(namePrefix, 0).factory();
+    }
+
+    static ExecutorService newExecutor(String namePrefix) {
+        return Executors.newThreadPerTaskExecutor(newFactory(namePrefix));
+    }
+}
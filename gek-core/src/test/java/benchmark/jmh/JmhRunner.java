@@ -1,5 +1,6 @@
 package benchmark.jmh;
 
+import org.openjdk.jmh.profile.GCProfiler;
 import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
 import org.openjdk.jmh.runner.options.Options;
@@ -19,6 +20,8 @@ public class JmhRunner {
         }
         Options options = new OptionsBuilder()
             .include("benchmark.jmh.*Jmh")
+            //Reports allocation per operation (gc.alloc.rate.norm)
+            .addProfiler(GCProfiler.class)
             .resultFormat(ResultFormatType.TEXT)
             .result(resultFile.getAbsolutePath())
             .build();
@@ -0,0 +1,277 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.fsgek.common.net.tcp.*;
+import xyz.fsgek.common.net.tcp.handlers.DelimiterBasedTcpChannelHandler;
+import xyz.fsgek.common.net.tcp.handlers.LengthBasedTcpChannelHandler;
+
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Loopback TCP benchmark: {@link GekTcpServer} in each mode ({@code socket} is the default socket-based server,
+ * {@code virtual} falls back to NIO before Java 21) answers echo, length-framed or delimiter-framed requests from N
+ * {@link GekTcpClient} connections in a client group. Each operation is one request-response round trip on the next
+ * connection, {@link #throughput(Caller)} reports round trips per second, {@link #latency(Caller)} reports p50, p99 and
+ * p999 of round trips, and allocation per message comes from the GC profiler of {@link JmhRunner}.
+ */
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(4)
+@State(value = Scope.Benchmark)
+public class TcpJmh {
+
+    private static final byte DELIMITER = '\n';
+    private static final long RESPONSE_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    @Param({"socket", "nio", "virtual"})
+    public String mode;
+
+    @Param({"echo", "length", "delimiter"})
+    public String workload;
+
+    @Param({"1", "100", "10000"})
+    public int connections;
+
+    @Param({"64"})
+    public int messageSize;
+
+    private byte[] request;
+    private ExecutorService executor;
+    private GekTcpServer server;
+    private GekTcpClientGroup group;
+    private GekTcpClient[] clients;
+    private Connection[] conns;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        request = buildRequest();
+        executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+        GekTcpServer.Builder builder = GekTcpServer.newBuilder()
+            .address(InetAddress.getLoopbackAddress())
+            .maxConnection(Math.max(50, connections))
+            .executor(executor);
+        switch (mode) {
+            case "nio":
+                builder.nio(true);
+                break;
+            case "virtual":
+                builder.virtualThreads(true);
+                break;
+        }
+        addServerHandlers(builder);
+        server = builder.build();
+        server.start(false);
+        group = GekTcpClientGroup.newGroup();
+        clients = new GekTcpClient[connections];
+        conns = new Connection[connections];
+        CountDownLatch opened = new CountDownLatch(connections);
+        InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        for (int i = 0; i < connections; i++) {
+            Connection conn = new Connection();
+            conns[i] = conn;
+            clients[i] = buildClient(conn, opened);
+            clients[i].start(address, Duration.ofSeconds(30), false);
+        }
+        if (!opened.await(5, TimeUnit.MINUTES)) {
+            throw new IllegalStateException("Failed to open " + connections + " connections.");
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        for (GekTcpClient client : clients) {
+            client.closeNow();
+        }
+        group.close();
+        server.closeNow();
+        executor.shutdown();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void throughput(Caller caller) {
+        roundTrip(caller);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency(Caller caller) {
+        roundTrip(caller);
+    }
+
+    private void roundTrip(Caller caller) {
+        Connection conn = conns[(next.getAndIncrement() & Integer.MAX_VALUE) % conns.length];
+        caller.done = false;
+        //Responses of a connection are in order of requests
+        synchronized (conn) {
+            conn.callers.add(caller);
+            conn.channel.sendAndFlush(request);
+        }
+        caller.await();
+    }
+
+    private byte[] buildRequest() {
+        byte[] bytes = new byte[messageSize];
+        Arrays.fill(bytes, (byte) 'a');
+        switch (workload) {
+            case "length":
+                ByteBuffer.wrap(bytes).putInt(messageSize);
+                break;
+            case "delimiter":
+                bytes[messageSize - 1] = DELIMITER;
+                break;
+        }
+        return bytes;
+    }
+
+    private void addServerHandlers(GekTcpServer.Builder builder) {
+        switch (workload) {
+            case "echo":
+                builder.addChannelHandler(new GekTcpChannelHandler<ByteBuffer>() {
+                    @Override
+                    public Object onMessage(GekTcpChannel channel, ByteBuffer message) {
+                        channel.sendAndFlush(message);
+                        message.position(message.limit());
+                        return null;
+                    }
+                });
+                break;
+            case "length":
+                builder.addChannelHandler(new LengthBasedTcpChannelHandler(0, 4));
+                builder.addChannelHandler(new GekTcpChannelHandler<List<ByteBuffer>>() {
+                    @Override
+                    public Object onMessage(GekTcpChannel channel, List<ByteBuffer> message) {
+                        for (ByteBuffer frame : message) {
+                            channel.send(frame);
+                        }
+                        channel.flush();
+                        return null;
+                    }
+                });
+                break;
+            case "delimiter":
+                byte[] delimiter = {DELIMITER};
+                builder.addChannelHandler(new DelimiterBasedTcpChannelHandler(DELIMITER));
+                builder.addChannelHandler(new GekTcpChannelHandler<List<ByteBuffer>>() {
+                    @Override
+                    public Object onMessage(GekTcpChannel channel, List<ByteBuffer> message) {
+                        for (ByteBuffer frame : message) {
+                            channel.send(frame);
+                            channel.send(delimiter);
+                        }
+                        channel.flush();
+                        return null;
+                    }
+                });
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown workload: " + workload);
+        }
+    }
+
+    private GekTcpClient buildClient(Connection conn, CountDownLatch opened) {
+        GekTcpClient.Builder builder = GekTcpClient.newBuilder()
+            .group(group)
+            .clientHandler(new GekTcpClientHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    conn.channel = channel;
+                    opened.countDown();
+                }
+            });
+        switch (workload) {
+            case "echo":
+                builder.addChannelHandler(new GekTcpChannelHandler<ByteBuffer>() {
+                    @Override
+                    public Object onMessage(GekTcpChannel channel, ByteBuffer message) {
+                        conn.received += message.remaining();
+                        message.position(message.limit());
+                        while (conn.received >= messageSize) {
+                            conn.received -= messageSize;
+                            conn.respond();
+                        }
+                        return null;
+                    }
+                });
+                break;
+            case "length":
+                builder.addChannelHandler(new LengthBasedTcpChannelHandler(0, 4));
+                builder.addChannelHandler(frameResponder(conn));
+                break;
+            case "delimiter":
+                builder.addChannelHandler(new DelimiterBasedTcpChannelHandler(DELIMITER));
+                builder.addChannelHandler(frameResponder(conn));
+                break;
+        }
+        return builder.build();
+    }
+
+    private GekTcpChannelHandler<List<ByteBuffer>> frameResponder(Connection conn) {
+        return (channel, message) -> {
+            for (int i = 0; i < message.size(); i++) {
+                conn.respond();
+            }
+            return null;
+        };
+    }
+
+    @State(value = Scope.Thread)
+    public static class Caller {
+
+        private Thread thread;
+        private volatile boolean done;
+
+        @Setup(Level.Trial)
+        public void init() {
+            thread = Thread.currentThread();
+        }
+
+        private void await() {
+            long deadline = System.nanoTime() + RESPONSE_TIMEOUT_NANOS;
+            while (!done) {
+                if (System.nanoTime() - deadline > 0) {
+                    throw new IllegalStateException("Response timed out.");
+                }
+                LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(1));
+            }
+        }
+
+        private void complete() {
+            done = true;
+            LockSupport.unpark(thread);
+        }
+    }
+
+    private static final class Connection {
+
+        //Callers waiting for responses, guarded by this
+        private final ArrayDeque<Caller> callers = new ArrayDeque<>();
+        private volatile GekTcpChannel channel;
+
+        //Only accessed in the loop of the channel
+        private int received;
+
+        private void respond() {
+            Caller caller;
+            synchronized (this) {
+                caller = callers.poll();
+            }
+            if (caller != null) {
+                caller.complete();
+            }
+        }
+    }
+}
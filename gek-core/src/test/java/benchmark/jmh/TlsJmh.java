@@ -0,0 +1,188 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import test.TestUtil;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.net.tcp.*;
+
+import javax.net.ssl.SSLContext;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Loopback TLS benchmark: a NIO {@link GekTcpServer} echoes data to {@link GekTcpClient}s in a client group, with TLS
+ * ({@code tls}) or without TLS ({@code plain}) as the baseline. {@link #handshake()} reports connections per second,
+ * each operation connects a new client and waits for its handshake, and if {@code resume} is true the session cached
+ * by the client is resumed with an abbreviated handshake, otherwise the session is invalidated after the handshake.
+ * {@link #bulk(Bulk)} reports round trips of {@code messageSize} bytes per second on a long-lived connection of each
+ * thread, so the bulk throughput is {@code messageSize} times the score.
+ */
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(4)
+@State(value = Scope.Benchmark)
+public class TlsJmh {
+
+    private static final long RESPONSE_TIMEOUT_SECONDS = 10;
+
+    @Param({"plain", "tls"})
+    public String security;
+
+    @Param({"TLSv1.2", "TLSv1.3"})
+    public String protocol;
+
+    @Param({"false", "true"})
+    public boolean resume;
+
+    @Param({"65536"})
+    public int messageSize;
+
+    private SSLContext sslContext;
+    private GekTcpServer server;
+    private GekTcpClientGroup group;
+    private InetSocketAddress address;
+
+    @Setup(Level.Trial)
+    public void start() throws Exception {
+        sslContext = "tls".equals(security) ? TestUtil.newSslContext() : null;
+        server = GekTcpServer.newBuilder()
+            .address(InetAddress.getLoopbackAddress())
+            .maxConnection(10000)
+            .nio(true)
+            .bufferPool(GekBufferPool.newPool(true))
+            .sslContext(sslContext)
+            .sslEngineConfig(engine -> engine.setEnabledProtocols(new String[]{protocol}))
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    setTcpNoDelay(((SocketChannel) channel.getSource()).socket());
+                }
+            })
+            .addChannelHandler(new GekTcpChannelHandler<ByteBuffer>() {
+                @Override
+                public Object onMessage(GekTcpChannel channel, ByteBuffer message) {
+                    channel.sendAndFlush(message);
+                    return null;
+                }
+            })
+            .build();
+        server.start(false);
+        group = GekTcpClientGroup.newGroup();
+        address = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        group.close();
+        server.closeNow();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void handshake() throws Exception {
+        CountDownLatch opened = new CountDownLatch(1);
+        GekTcpClient client = newClient(new GekTcpClientHandler() {
+            @Override
+            public void onOpen(GekTcpChannel channel) {
+                if (!resume && channel.getSslSession() != null) {
+                    channel.getSslSession().invalidate();
+                }
+                opened.countDown();
+            }
+        }, (channel, message) -> {
+            message.position(message.limit());
+            return null;
+        });
+        client.start(address, Duration.ofSeconds(RESPONSE_TIMEOUT_SECONDS), false);
+        try {
+            if (!opened.await(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Handshake timed out.");
+            }
+        } finally {
+            client.closeNow();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void bulk(Bulk bulk) throws Exception {
+        bulk.channel.sendAndFlush(bulk.data);
+        if (!bulk.echoed.tryAcquire(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new IllegalStateException("Response timed out.");
+        }
+    }
+
+    private GekTcpClient newClient(GekTcpClientHandler clientHandler, GekTcpChannelHandler<ByteBuffer> channelHandler) {
+        return GekTcpClient.newBuilder()
+            .group(group)
+            .bufferPool(GekBufferPool.newPool(true))
+            .socketConfig(TlsJmh::setTcpNoDelay)
+            .sslContext(sslContext)
+            .sslEngineConfig(engine -> engine.setEnabledProtocols(new String[]{protocol}))
+            .clientHandler(clientHandler)
+            .addChannelHandler(channelHandler)
+            .build();
+    }
+
+    //Echoes of multiple segments are delayed by Nagle's algorithm and delayed ACK without TCP_NODELAY
+    private static void setTcpNoDelay(Socket socket) {
+        try {
+            socket.setTcpNoDelay(true);
+        } catch (SocketException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @State(value = Scope.Thread)
+    public static class Bulk {
+
+        private final Semaphore echoed = new Semaphore(0);
+        private byte[] data;
+        private GekTcpClient client;
+        private volatile GekTcpChannel channel;
+
+        //Only accessed in the loop of the channel
+        private int received;
+
+        @Setup(Level.Trial)
+        public void open(TlsJmh bench) throws Exception {
+            data = new byte[bench.messageSize];
+            CountDownLatch opened = new CountDownLatch(1);
+            client = bench.newClient(new GekTcpClientHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    Bulk.this.channel = channel;
+                    opened.countDown();
+                }
+            }, (channel, message) -> {
+                received += message.remaining();
+                message.position(message.limit());
+                while (received >= data.length) {
+                    received -= data.length;
+                    echoed.release();
+                }
+                return null;
+            });
+            client.start(bench.address, Duration.ofSeconds(RESPONSE_TIMEOUT_SECONDS), false);
+            if (!opened.await(RESPONSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("Failed to open connection.");
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void close() {
+            client.closeNow();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package benchmark.jmh;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.fsgek.common.net.udp.*;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loopback UDP benchmark: {@link GekUdpServer} in each mode ({@code pool} is the default server with a thread pool,
+ * {@code nio} receives in receiver threads, {@code virtual} falls back to a cached thread pool before Java 21) echoes
+ * datagrams from N {@link GekUdpClient}. Datagrams are framed by themselves, so there is only the echo workload. Each
+ * operation is one request-response round trip on the next client, {@link #throughput(Caller)} reports round trips
+ * per second, {@link #latency(Caller)} reports p50, p99 and p999 of round trips, and allocation per message comes from
+ * the GC profiler of {@link JmhRunner}. Lost datagrams are reported as the {@code lost} secondary result by
+ * {@link Caller}.
+ */
+@Warmup(iterations = 3, time = 5)
+@Measurement(iterations = 3, time = 5)
+@Fork(1)
+@Threads(4)
+@State(value = Scope.Benchmark)
+public class UdpJmh {
+
+    @Param({"pool", "nio", "virtual"})
+    public String mode;
+
+    @Param({"1", "100", "10000"})
+    public int connections;
+
+    @Param({"64"})
+    public int messageSize;
+
+    private byte[] request;
+    private ExecutorService executor;
+    private GekUdpServer server;
+    private InetSocketAddress serverAddress;
+    private GekUdpClient[] clients;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void start() {
+        request = new byte[messageSize];
+        GekUdpServer.Builder builder = GekUdpServer.newBuilder()
+            .address(InetAddress.getLoopbackAddress())
+            .addPacketHandler(new GekUdpPacketHandler<ByteBuffer>() {
+                @Override
+                public Object onPacket(GekUdpHeader header, GekUdpClient client, ByteBuffer packet) {
+                    client.send(GekUdpPacket.wrap(packet, header.getInetSocketAddress()));
+                    return null;
+                }
+            });
+        if ("nio".equals(mode)) {
+            builder.nio(true);
+        } else if ("virtual".equals(mode)) {
+            builder.virtualThreads(true);
+        } else {
+            executor = Executors.newFixedThreadPool(Math.max(4, Runtime.getRuntime().availableProcessors() * 2));
+            builder.executor(executor);
+        }
+        server = builder.build();
+        server.start(false);
+        serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+        clients = new GekUdpClient[connections];
+        GekUdpClient.Builder clientBuilder = GekUdpClient.newBuilder()
+            .address(InetAddress.getLoopbackAddress())
+            .socketConfig(socket -> {
+                try {
+                    socket.setSoTimeout(1000);
+                } catch (IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            });
+        for (int i = 0; i < connections; i++) {
+            clients[i] = clientBuilder.build();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void stop() {
+        for (GekUdpClient client : clients) {
+            ((DatagramSocket) client.getSource()).close();
+        }
+        server.closeNow();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public void throughput(Caller caller) throws IOException {
+        roundTrip(caller);
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public void latency(Caller caller) throws IOException {
+        roundTrip(caller);
+    }
+
+    private void roundTrip(Caller caller) throws IOException {
+        GekUdpClient client = clients[(next.getAndIncrement() & Integer.MAX_VALUE) % clients.length];
+        DatagramSocket socket = (DatagramSocket) client.getSource();
+        //A client socket is used by one caller at a time so that the caller receives its own response
+        synchronized (client) {
+            client.send(GekUdpPacket.wrap(ByteBuffer.wrap(request), serverAddress));
+            try {
+                socket.receive(caller.response);
+            } catch (SocketTimeoutException e) {
+                caller.lost++;
+            }
+        }
+    }
+
+    @State(value = Scope.Thread)
+    @AuxCounters(AuxCounters.Type.EVENTS)
+    public static class Caller {
+
+        //Public fields are reported as secondary results
+        public long lost;
+        private DatagramPacket response;
+
+        @Setup(Level.Trial)
+        public void init(UdpJmh jmh) {
+            response = new DatagramPacket(new byte[jmh.messageSize], jmh.messageSize);
+        }
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            lost = 0;
+        }
+    }
+}
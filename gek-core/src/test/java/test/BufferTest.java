@@ -5,6 +5,7 @@ import org.testng.annotations.Test;
 import xyz.fsgek.common.base.GekBytesBuilder;
 import xyz.fsgek.common.base.GekString;
 import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
 
 import java.nio.ByteBuffer;
 import java.util.Arrays;
@@ -128,4 +129,37 @@ public class BufferTest {
         );
         Assert.assertEquals(buffer.position(), 5);
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testBufferPool() {
+        GekBufferPool pool = GekBufferPool.newPool(true, 1024, 2);
+        Assert.assertTrue(pool.isDirect());
+        ByteBuffer b1 = pool.allocate(100);
+        Assert.assertTrue(b1.isDirect());
+        Assert.assertEquals(b1.capacity(), 128);
+        Assert.assertEquals(b1.position(), 0);
+        Assert.assertEquals(b1.limit(), 100);
+        b1.put((byte) 1);
+        pool.release(b1);
+        ByteBuffer b2 = pool.allocate(128);
+        Assert.assertSame(b2, b1);
+        Assert.assertEquals(b2.position(), 0);
+        Assert.assertEquals(b2.limit(), 128);
+        ByteBuffer b3 = pool.allocate(2000);
+        Assert.assertEquals(b3.capacity(), 2000);
+        pool.release(b3);
+        Assert.assertNotSame(pool.allocate(2000), b3);
+        pool.release(ByteBuffer.allocate(128));
+        Assert.assertTrue(pool.allocate(128).isDirect());
+        GekBufferPool unpooled = GekBufferPool.unpooled(false);
+        ByteBuffer b4 = unpooled.allocate(100);
+        Assert.assertFalse(b4.isDirect());
+        Assert.assertEquals(b4.capacity(), 100);
+        unpooled.release(b4);
+        Assert.assertNotSame(unpooled.allocate(100), b4);
+        //Empty buffers
+        Assert.assertEquals(unpooled.allocate(0).capacity(), 0);
+        Assert.assertEquals(GekBufferPool.newPool(false, 1024, 0).allocate(0).capacity(), 0);
+        Assert.assertEquals(pool.allocate(0).limit(), 0);
+    }
+}
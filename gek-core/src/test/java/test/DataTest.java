@@ -4,12 +4,24 @@ import org.testng.Assert;
 import org.testng.annotations.Test;
 import xyz.fsgek.common.base.GekChars;
 import xyz.fsgek.common.data.GekData;
+import xyz.fsgek.common.data.GekSpillableData;
+import xyz.fsgek.common.io.GekBuffer;
 import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.io.GekIOException;
 
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.function.Supplier;
 
 public class DataTest {
@@ -23,6 +35,7 @@ public class DataTest {
         testWriteBuffer(supplier.get(), bytes);
         testInputStream(supplier.get(), bytes);
         testOutputStream(supplier.get(), bytes);
+        testChannel(supplier.get(), bytes);
     }
 
     private static void testArray(GekData data, byte[] bytes) {
@@ -58,6 +71,13 @@ public class DataTest {
         Assert.assertEquals(size, bytes.length);
     }
 
+    private static void testChannel(GekData data, byte[] bytes) {
+        ByteArrayOutputStream dest = new ByteArrayOutputStream();
+        long size = data.write(Channels.newChannel(dest));
+        Assert.assertEquals(dest.toByteArray(), bytes);
+        Assert.assertEquals(size, bytes.length);
+    }
+
     @Test
     public void testData() {
         byte[] bytes = DATA.getBytes(GekChars.defaultCharset());
@@ -66,6 +86,103 @@ public class DataTest {
         testData(bytes, () -> GekData.wrap(ByteBuffer.wrap(bytes)));
         testData(bytes, () -> GekData.from(new ByteArrayInputStream(bytes)));
         testData(bytes, () -> GekData.from(() -> Arrays.copyOf(bytes, bytes.length)));
+        testData(bytes, () -> GekData.concat(
+            GekData.wrap(bytes, 0, 10),
+            GekData.wrap(ByteBuffer.wrap(bytes, 10, 100)),
+            GekData.from(new ByteArrayInputStream(bytes, 110, bytes.length - 110))
+        ));
+    }
+
+    @Test
+    public void testSliceAndConcat() throws IOException {
+        byte[] bytes = DATA.getBytes(GekChars.defaultCharset());
+        GekData fromBytes = GekData.wrap(bytes);
+        Assert.assertEquals(fromBytes.length(), bytes.length);
+        Assert.assertEquals(fromBytes.slice(10, 20).toBytes(), Arrays.copyOfRange(bytes, 10, 30));
+        Assert.assertEquals(fromBytes.slice(10, 20).slice(5, 5).toBytes(), Arrays.copyOfRange(bytes, 15, 20));
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.position(8);
+        GekData fromBuffer = GekData.wrap(buffer);
+        Assert.assertEquals(fromBuffer.length(), bytes.length - 8);
+        Assert.assertEquals(fromBuffer.slice(10, 20).toBytes(), Arrays.copyOfRange(bytes, 18, 38));
+        Assert.assertEquals(buffer.position(), 8);
+        Assert.assertEquals(GekData.from(new ByteArrayInputStream(bytes)).length(), -1);
+        Assert.assertEquals(
+            GekData.from(new ByteArrayInputStream(bytes)).slice(10, 20).toBytes(), Arrays.copyOfRange(bytes, 10, 30));
+        ByteBuffer direct = ByteBuffer.allocateDirect(100);
+        direct.put(bytes, 100, 100);
+        direct.flip();
+        GekData concat = GekData.concat(
+            GekData.wrap(bytes, 0, 100), GekData.wrap(direct), GekData.wrap(bytes, 200, bytes.length - 200));
+        Assert.assertEquals(concat.length(), bytes.length);
+        File file = new File("DataTest-testSliceAndConcat.txt");
+        try (FileChannel channel = FileChannel.open(file.toPath(),
+            StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            Assert.assertEquals(concat.write(channel), bytes.length);
+        }
+        Assert.assertEquals(Files.readAllBytes(file.toPath()), bytes);
+        Assert.assertEquals(direct.remaining(), 0);
+        file.delete();
+        Assert.assertEquals(GekData.concat(
+            GekData.from(new ByteArrayInputStream(bytes, 0, 10)), GekData.wrap(bytes, 10, 10)).length(), -1);
+    }
+
+    @Test
+    public void testSpillable() throws IOException {
+        byte[] bytes = DATA.getBytes(GekChars.defaultCharset());
+        Path tempDir = Files.createTempDirectory("DataTest");
+        GekSpillableData memory = GekData.spillable(new ByteArrayInputStream(bytes), bytes.length, tempDir);
+        Assert.assertFalse(memory.isSpilled());
+        testData(bytes, () -> memory);
+        memory.close();
+        GekSpillableData spilled = GekData.spillable(new ByteArrayInputStream(bytes), 100, tempDir);
+        Assert.assertTrue(spilled.isSpilled());
+        Assert.assertEquals(spilled.length(), bytes.length);
+        testData(bytes, () -> spilled);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        Assert.assertEquals(spilled.write(direct), bytes.length);
+        direct.flip();
+        Assert.assertEquals(GekBuffer.getBytes(direct), bytes);
+        byte[] dest = new byte[50];
+        Assert.assertEquals(spilled.read(80, dest, 0, 50), 50);
+        Assert.assertEquals(dest, Arrays.copyOfRange(bytes, 80, 130));
+        Assert.assertEquals(spilled.read(bytes.length - 10, dest, 0, 50), 10);
+        Assert.assertEquals(spilled.read(bytes.length, dest, 0, 50), -1);
+        Assert.assertEquals(tempDir.toFile().list().length, 1);
+        spilled.close();
+        Assert.assertEquals(tempDir.toFile().list().length, 0);
+        Assert.assertThrows(GekIOException.class, spilled::toInputStream);
+        Files.delete(tempDir);
+    }
+
+    @Test
+    public void testSpillableClose() throws Exception {
+        byte[] bytes = new byte[1024 * 1024];
+        for (int i = 0; i < 20; i++) {
+            GekSpillableData data = GekData.spillable(new ByteArrayInputStream(bytes), bytes.length / 2, null);
+            AtomicReference<Throwable> failure = new AtomicReference<>();
+            CountDownLatch reading = new CountDownLatch(1);
+            Thread reader = new Thread(() -> {
+                byte[] dest = new byte[8 * 1024];
+                try {
+                    while (true) {
+                        for (long pos = 0; pos < bytes.length; pos += dest.length) {
+                            data.read(pos, dest, 0, dest.length);
+                            reading.countDown();
+                        }
+                    }
+                } catch (Throwable e) {
+                    failure.set(e);
+                }
+            });
+            reader.start();
+            reading.await();
+            data.close();
+            reader.join();
+            //Reading racing with closing fails as closed
+            Assert.assertEquals(failure.get().getClass(), GekIOException.class);
+            Assert.assertEquals(failure.get().getMessage(), "The data has been closed.");
+        }
     }
 
     @Test
@@ -7,8 +7,17 @@ import xyz.fsgek.common.io.GekIO;
 
 import java.io.IOException;
 import java.net.URL;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class GekTest {
 
@@ -118,6 +127,171 @@ public class GekTest {
         Assert.assertFalse(thread.isAlive());
     }
 
+    @Test
+    public void testTimer() throws InterruptedException {
+        GekTimer timer = GekTimer.newWheelTimer(Duration.ofMillis(5), 8, "timer-test");
+        CountDownLatch latch = new CountDownLatch(2);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        long start = System.nanoTime();
+        //Delay longer than a round of the wheel
+        timer.schedule(100, () -> {
+            order.add(2);
+            latch.countDown();
+        });
+        timer.schedule(20, () -> {
+            order.add(1);
+            latch.countDown();
+        });
+        GekTimer.Timeout cancelled = timer.schedule(30, () -> order.add(3));
+        Assert.assertTrue(cancelled.cancel());
+        Assert.assertFalse(cancelled.cancel());
+        Assert.assertTrue(cancelled.isCancelled());
+        latch.await();
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(100));
+        Thread.sleep(50);
+        Assert.assertEquals(order, Arrays.asList(1, 2));
+        Assert.assertEquals(timer.pendingTasks(), 0);
+        timer.stop();
+        Assert.expectThrows(IllegalStateException.class, () -> timer.schedule(1, () -> {
+        }));
+    }
+
+    @Test
+    public void testWaiter() throws InterruptedException {
+        GekWaiter waiter = GekThread.newWaiter(2, 2);
+        //Spins and yields
+        long start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            waiter.idle(TimeUnit.SECONDS.toNanos(10));
+        }
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        //Parks until timeout
+        start = System.nanoTime();
+        waiter.idle(TimeUnit.MILLISECONDS.toNanos(50));
+        Assert.assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(50));
+        //Kept signal
+        waiter.signal();
+        start = System.nanoTime();
+        waiter.idle(TimeUnit.SECONDS.toNanos(10));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+        //Unparks
+        Thread loop = Thread.currentThread();
+        Thread signaler = GekThread.start(() -> {
+            while (loop.getState() != Thread.State.TIMED_WAITING) {
+                Thread.yield();
+            }
+            waiter.signal();
+        });
+        start = System.nanoTime();
+        waiter.idle(TimeUnit.SECONDS.toNanos(10));
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        signaler.join();
+        //Spins again after reset
+        waiter.reset();
+        start = System.nanoTime();
+        for (int i = 0; i < 4; i++) {
+            waiter.idle(TimeUnit.SECONDS.toNanos(10));
+        }
+        Assert.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+    @Test
+    public void testDrainBarrier() throws InterruptedException {
+        GekDrainBarrier barrier = GekThread.newDrainBarrier();
+        Assert.assertTrue(barrier.await(Duration.ZERO));
+        Assert.assertTrue(barrier.tryEnter(2));
+        Assert.assertTrue(barrier.tryEnter(2));
+        Assert.assertFalse(barrier.tryEnter(2));
+        Assert.assertEquals(barrier.count(), 2);
+        Assert.assertFalse(barrier.await(Duration.ofMillis(50)));
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        int count = 1000;
+        AtomicInteger done = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            barrier.enter();
+            pool.execute(() -> {
+                done.incrementAndGet();
+                barrier.exit();
+            });
+        }
+        pool.execute(() -> {
+            GekThread.sleep(50);
+            barrier.exit();
+            barrier.exit();
+        });
+        barrier.await();
+        Assert.assertEquals(done.get(), count);
+        Assert.assertEquals(barrier.count(), 0);
+        //The last exit may happen between increment and rollback of a rejected tryEnter
+        for (int i = 0; i < 100; i++) {
+            GekDrainBarrier racing = GekThread.newDrainBarrier();
+            racing.enter();
+            CountDownLatch started = new CountDownLatch(1);
+            pool.execute(() -> {
+                started.countDown();
+                while (!racing.tryEnter(1)) {
+                }
+                racing.exit();
+            });
+            started.await();
+            pool.execute(racing::exit);
+            Assert.assertTrue(racing.await(Duration.ofSeconds(5)));
+        }
+        Thread.currentThread().interrupt();
+        Assert.expectThrows(InterruptedException.class, barrier::await);
+        pool.shutdown();
+    }
+
+    @Test
+    public void testSerialExecutor() throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        GekSerialExecutor serial = GekSerialExecutor.newSerialExecutor(pool, 4);
+        int count = 10000;
+        CountDownLatch latch = new CountDownLatch(count);
+        List<Integer> order = new CopyOnWriteArrayList<>();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        for (int i = 0; i < count; i++) {
+            int n = i;
+            serial.execute(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                order.add(n);
+                running.decrementAndGet();
+                latch.countDown();
+                if (n % 100 == 0) {
+                    throw new IllegalStateException();
+                }
+            });
+        }
+        latch.await();
+        Assert.assertEquals(maxRunning.get(), 1);
+        for (int i = 0; i < count; i++) {
+            Assert.assertEquals((int) order.get(i), i);
+        }
+        Assert.assertEquals(serial.pendingTasks(), 0);
+
+        //Bounded submitting
+        CountDownLatch block = new CountDownLatch(1);
+        GekSerialExecutor bounded = GekSerialExecutor.newSerialExecutor(pool);
+        Assert.assertTrue(bounded.tryExecute(() -> {
+            try {
+                block.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+        }, 1));
+        Thread.sleep(50);
+        Assert.assertTrue(bounded.tryExecute(() -> {
+        }, 1));
+        Assert.assertFalse(bounded.tryExecute(() -> {
+        }, 1));
+        Assert.assertEquals(bounded.pendingTasks(), 1);
+        block.countDown();
+        pool.shutdown();
+        Assert.assertTrue(pool.awaitTermination(1, TimeUnit.SECONDS));
+        Assert.assertEquals(bounded.pendingTasks(), 0);
+    }
+
     @Test
     public void testSystem() {
         GekLogger.defaultLogger().info(GekSystem.getJavaVersion());
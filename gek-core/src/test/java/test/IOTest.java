@@ -3,14 +3,21 @@ package test;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import xyz.fsgek.common.base.GekChars;
+import xyz.fsgek.common.io.GekBuffer;
 import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.io.GekMappedRegions;
+import xyz.fsgek.common.io.GekRecordReader;
 
 import java.io.*;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
-import java.util.Arrays;
-import java.util.Random;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.BiFunction;
 
 public class IOTest {
@@ -318,6 +325,124 @@ public class IOTest {
         file.delete();
     }
 
+    @Test
+    public void testMapFile() throws IOException {
+        String data = DATA;
+        byte[] bytes = data.getBytes(GekChars.defaultCharset());
+        File file = FileTest.createFile("IOTest-testMapFile.txt", data);
+        GekMappedRegions regions = GekIO.map(file.toPath(), 5, -1, 64);
+        Assert.assertEquals(regions.offset(), 5);
+        Assert.assertEquals(regions.length(), bytes.length - 5);
+        Assert.assertEquals(regions.regionCount(), (bytes.length - 5 + 63) / 64);
+        for (int i = 0; i < regions.length(); i++) {
+            Assert.assertEquals(regions.get(i), bytes[i + 5]);
+        }
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        regions.forEachRegion((region, start) -> {
+            Assert.assertEquals(start, out.size());
+            out.write(GekBuffer.getBytes(region.duplicate()), 0, region.capacity());
+        });
+        Assert.assertEquals(out.toByteArray(), Arrays.copyOfRange(bytes, 5, bytes.length));
+        byte last = bytes[bytes.length - 1];
+        int lastIndex = -1;
+        for (int i = 70; i < bytes.length; i++) {
+            if (bytes[i] == last) {
+                lastIndex = i;
+                break;
+            }
+        }
+        Assert.assertEquals(regions.indexOf(last, 65), lastIndex - 5);
+        Assert.assertEquals(regions.indexOf(last, regions.length()), -1);
+        GekMappedRegions part = GekIO.map(file.toPath(), 10, 100);
+        Assert.assertEquals(part.regionCount(), 1);
+        Assert.assertEquals(GekBuffer.getBytes(part.getRegion(0)), Arrays.copyOfRange(bytes, 10, 110));
+        Assert.assertEquals(GekIO.map(file.toPath(), bytes.length, -1).regionCount(), 0);
+        file.delete();
+    }
+
+    @Test
+    public void testParallelRecords() throws IOException {
+        StringBuilder builder = new StringBuilder();
+        List<String> lines = new ArrayList<>();
+        Random random = new Random();
+        for (int i = 0; i < 1000; i++) {
+            String line = i + ":" + DATA.substring(0, random.nextInt(64));
+            lines.add(line);
+            builder.append(line).append('\n');
+        }
+        lines.add("last");
+        builder.append("last");
+        File file = FileTest.createFile("IOTest-testParallelRecords.txt", builder.toString());
+        Set<String> set = ConcurrentHashMap.newKeySet();
+        GekIO.parallelRecords(file.toPath(), (byte) '\n', 8, record ->
+            set.add(GekBuffer.getString(record, GekChars.defaultCharset())));
+        Assert.assertEquals(set, new HashSet<>(lines));
+        List<String> mapped = GekIO.parallelMapRecords(file.toPath(), (byte) '\n', 8, record ->
+            GekBuffer.getString(record, GekChars.defaultCharset()));
+        Assert.assertEquals(mapped, lines);
+        Assert.assertEquals(GekIO.parallelMapRecords(file.toPath(), (byte) '\n', 1, record ->
+            GekBuffer.getString(record, GekChars.defaultCharset())), lines);
+        //Failure of one range cancels the others and Errors are not wrapped
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        AtomicInteger handled = new AtomicInteger();
+        Assert.expectThrows(AssertionError.class, () -> GekIO.parallelRecords(file.toPath(), (byte) '\n', 8, pool,
+            record -> {
+                if (handled.incrementAndGet() == 1) {
+                    throw new AssertionError();
+                }
+            }));
+        Assert.assertTrue(handled.get() < lines.size() / 2);
+        pool.shutdown();
+        file.delete();
+    }
+
+    @Test
+    public void testRecordReader() {
+        StringBuilder builder = new StringBuilder();
+        List<String> records = new ArrayList<>();
+        Random random = new Random();
+        for (int i = 0; i < 100; i++) {
+            String record = i + DATA.substring(0, random.nextInt(32));
+            records.add(record);
+            builder.append(record).append(i % 2 == 0 ? "\r\n" : "\n");
+        }
+        records.add("");
+        builder.append("\n");
+        records.add("last");
+        builder.append("last");
+        byte[] bytes = builder.toString().getBytes(GekChars.defaultCharset());
+        List<String> result = new ArrayList<>();
+        try (GekRecordReader reader = GekRecordReader.lines(new ByteArrayInputStream(bytes))) {
+            while (reader.advance()) {
+                result.add(reader.recordString());
+            }
+        }
+        Assert.assertEquals(result, records);
+        result.clear();
+        GekRecordReader reader = GekRecordReader.from(
+            Channels.newChannel(new ByteArrayInputStream(bytes)), (byte) '\n', 4);
+        while (reader.advance()) {
+            ByteBuffer record = reader.record();
+            Assert.assertTrue(record.isReadOnly());
+            Assert.assertEquals(reader.recordLength(), record.remaining());
+            result.add(GekBuffer.getString(record).replace("\r", ""));
+        }
+        Assert.assertEquals(result, records);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+        reader = GekRecordReader.lines(direct);
+        for (String record : records) {
+            Assert.assertTrue(reader.advance());
+            Assert.assertEquals(reader.recordChars().toString(), record);
+            Assert.assertEquals(reader.recordChars().length(), record.length());
+        }
+        Assert.assertFalse(reader.advance());
+        Assert.assertEquals(direct.position(), 0);
+        Assert.assertEquals(direct.limit(), bytes.length);
+        Assert.assertThrows(IllegalStateException.class, reader::record);
+    }
+
     @Test
     public void testWriteFile() throws IOException {
         File file = FileTest.createFile("IOTest-testWriteFile.txt");
@@ -3,6 +3,7 @@ package test;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import xyz.fsgek.annotations.Nullable;
+import xyz.fsgek.common.base.Gek;
 import xyz.fsgek.common.base.GekChars;
 import xyz.fsgek.common.base.GekLogger;
 import xyz.fsgek.common.base.GekString;
@@ -10,9 +11,13 @@ import xyz.fsgek.common.base.GekThread;
 import xyz.fsgek.common.collect.GekColl;
 import xyz.fsgek.common.data.GekData;
 import xyz.fsgek.common.io.GekBuffer;
+import xyz.fsgek.common.io.GekBufferPool;
 import xyz.fsgek.common.io.GekIO;
+import xyz.fsgek.common.net.GekIdleState;
+import xyz.fsgek.common.net.GekLatencyHistogram;
 import xyz.fsgek.common.net.GekNetException;
 import xyz.fsgek.common.net.GekNetServerException;
+import xyz.fsgek.common.net.GekOverload;
 import xyz.fsgek.common.net.http.GekHttp;
 import xyz.fsgek.common.net.http.GekHttpHeaders;
 import xyz.fsgek.common.net.http.GekHttpResponse;
@@ -20,24 +25,50 @@ import xyz.fsgek.common.net.tcp.*;
 import xyz.fsgek.common.net.udp.*;
 import xyz.fsgek.common.net.tcp.handlers.DelimiterBasedTcpChannelHandler;
 import xyz.fsgek.common.net.tcp.handlers.LengthBasedTcpChannelHandler;
+import xyz.fsgek.common.net.tcp.handlers.LengthFieldTcpChannelHandler;
 
+import javax.net.SocketFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLSession;
 import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.InputStream;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
 import java.net.InetSocketAddress;
+import java.net.Socket;
 import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SocketChannel;
 import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class NetTest {
 
+    //Set by the Java 21 test task, which puts the Java 21 classes of the multi-release jar ahead of main classes
+    private static final boolean VIRTUAL_THREADS_EXPECTED = Boolean.getBoolean("gek.test.virtualThreads");
+
     @Test
     public void testTcp() {
         testTcpLengthBased(6, 5, 10);
@@ -48,11 +79,1327 @@ public class NetTest {
         testTcpDelimiterBased(22, 8, 50);
     }
 
+    @Test
+    public void testNioTcp() {
+        testTcpLengthBased(6, 5, 10, b -> b.nio(true));
+        testTcpLengthBased(1024, 8, 20, b -> b.nio(true).eventLoopCount(1));
+        testTcpLengthBased(22, 8, 50, b -> b.nio(true).eventLoopCount(2).offloadToExecutor(true));
+        testTcpLengthBased(22, 8, 50, b -> b.nio(true).eventLoopCount(4).reusePort(true));
+        testTcpDelimiterBased(6, 5, 10, b -> b.nio(true));
+        testTcpDelimiterBased(1024, 8, 20, b -> b.nio(true).eventLoopCount(1).offloadToExecutor(true));
+        testTcpDelimiterBased(22, 8, 50, b -> b.nio(true).eventLoopCount(4).reusePort(true));
+        GekBufferPool pool = GekBufferPool.newPool(true);
+        testTcpLengthBased(6, 5, 10, b -> b.nio(true).bufferPool(pool));
+        testTcpDelimiterBased(22, 8, 50, b -> b.nio(true).eventLoopCount(2).bufferPool(pool));
+        testTcpDelimiterBased(3000, 8, 20, b -> b.nio(true).offloadToExecutor(true).bufferPool(pool));
+    }
+
+    @Test
+    public void testNioTcpClient() {
+        GekTcpClientGroup group = GekTcpClientGroup.newGroup(2);
+        testTcpLengthBased(6, 5, 10, b -> {
+        }, b -> b.group(group));
+        testTcpLengthBased(22, 8, 50, b -> b.nio(true), b -> b.group(group));
+        testTcpDelimiterBased(6, 5, 10, b -> {
+        }, b -> b.group(group));
+        testTcpDelimiterBased(1024, 8, 20, b -> b.nio(true).eventLoopCount(2), b -> b.group(group));
+        group.close();
+        Assert.assertTrue(group.isClosed());
+    }
+
+    @Test
+    public void testVirtualThreadTcp() {
+        if (VIRTUAL_THREADS_EXPECTED) {
+            Assert.assertTrue(GekThread.isVirtualThreadSupported());
+        }
+        GekTcpServer server = GekTcpServer.newBuilder().virtualThreads(true).addChannelHandler((c, m) -> null).build();
+        //Falls back to NIO server before Java 21
+        Assert.assertEquals(server.getClass().getSimpleName(),
+            GekThread.isVirtualThreadSupported() ? "VirtualThreadTcpServer" : "NioTcpServer");
+        testTcpLengthBased(6, 5, 10, b -> b.virtualThreads(true));
+        testTcpLengthBased(1024, 8, 20, b -> b.virtualThreads(true).bufferPool(GekBufferPool.newPool(true)));
+        testTcpDelimiterBased(22, 8, 50, b -> b.virtualThreads(true));
+        testTcpDelimiterBased(3000, 8, 20, b -> b.virtualThreads(true));
+    }
+
+    @Test
+    public void testNioTcpWriteQueue() throws Exception {
+        int count = 100;
+        int size = 1024;
+        List<Boolean> changes = new CopyOnWriteArrayList<>();
+        CountDownLatch writable = new CountDownLatch(1);
+        AtomicLong pending = new AtomicLong();
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .eventLoopCount(1)
+            .writeHighWaterMark(16 * 1024)
+            .writeLowWaterMark(8 * 1024)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    for (int i = 0; i < count; i++) {
+                        byte[] bytes = new byte[size];
+                        Arrays.fill(bytes, (byte) i);
+                        channel.send(bytes);
+                    }
+                    pending.set(channel.isWritable() ? -1 : channel.getPendingBytes());
+                    channel.flush();
+                }
+
+                @Override
+                public void onWritabilityChanged(GekTcpChannel channel, boolean w) {
+                    changes.add(w);
+                    if (w) {
+                        writable.countDown();
+                    }
+                }
+            })
+            .addChannelHandler((c, m) -> null)
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            byte[] bytes = GekIO.readBytes(socket.getInputStream(), count * size);
+            Assert.assertEquals(bytes.length, count * size);
+            for (int i = 0; i < count; i++) {
+                Assert.assertEquals(bytes[i * size], (byte) i);
+                Assert.assertEquals(bytes[i * size + size - 1], (byte) i);
+            }
+            writable.await();
+        }
+        server.close();
+        Assert.assertEquals(pending.get(), count * size);
+        Assert.assertEquals(changes, Arrays.asList(false, true));
+    }
+
+    @Test
+    public void testTcpIdleLoop() throws Exception {
+        CountDownLatch loops = new CountDownLatch(10);
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .executor(Executors.newFixedThreadPool(4))
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onLoop(GekTcpChannel channel, boolean hasNewData, ByteBuffer buffer) {
+                    if (!hasNewData) {
+                        loops.countDown();
+                    }
+                    if (loops.getCount() == 0) {
+                        channel.closeNow();
+                    }
+                }
+            })
+            .addChannelHandler((c, m) -> null)
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            //Socket server loops idle channels
+            Assert.assertTrue(loops.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(socket.getInputStream().read(), -1);
+        }
+        server.close();
+    }
+
+    @Test
+    public void testTcpFullBuffer() throws Exception {
+        AtomicInteger loops = new AtomicInteger();
+        AtomicReference<GekTcpChannel> fullChannel = new AtomicReference<>();
+        CountDownLatch full = new CountDownLatch(1);
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .executor(Executors.newFixedThreadPool(4))
+            .channelBufferSize(16)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onLoop(GekTcpChannel channel, boolean hasNewData, ByteBuffer buffer) {
+                    if (buffer.remaining() == 16) {
+                        loops.incrementAndGet();
+                        fullChannel.set(channel);
+                        full.countDown();
+                    }
+                }
+            })
+            //Data is never consumed
+            .addChannelHandler((c, m) -> null)
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(new byte[1024]);
+            Assert.assertTrue(full.await(5, TimeUnit.SECONDS));
+            loops.set(0);
+            GekThread.sleep(500);
+            //A full buffer is looped as idle instead of being read again and again
+            Assert.assertTrue(loops.get() < 1000, "loops: " + loops.get());
+            fullChannel.get().closeNow();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testNioTcpFullBuffer() throws Exception {
+        testNioTcpFullBuffer(false);
+        testNioTcpFullBuffer(true);
+    }
+
+    private void testNioTcpFullBuffer(boolean offload) throws Exception {
+        AtomicInteger loops = new AtomicInteger();
+        AtomicInteger consumed = new AtomicInteger();
+        AtomicBoolean release = new AtomicBoolean(false);
+        CountDownLatch full = new CountDownLatch(1);
+        CountDownLatch done = new CountDownLatch(1);
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .eventLoopCount(1)
+            .executor(Executors.newFixedThreadPool(2))
+            .offloadToExecutor(offload)
+            .channelBufferSize(16)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onLoop(GekTcpChannel channel, boolean hasNewData, ByteBuffer buffer) {
+                    if (!release.get()) {
+                        //Data is held back until released
+                        if (buffer.remaining() == 16) {
+                            loops.incrementAndGet();
+                            full.countDown();
+                        }
+                        return;
+                    }
+                    if (consumed.addAndGet(buffer.remaining()) == 1024) {
+                        channel.closeNow();
+                        done.countDown();
+                    }
+                    buffer.position(buffer.limit());
+                }
+            })
+            .addChannelHandler((c, m) -> null)
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(new byte[1024]);
+            Assert.assertTrue(full.await(5, TimeUnit.SECONDS));
+            loops.set(0);
+            GekThread.sleep(500);
+            //Reading of the full buffer is stopped instead of spinning on the readable key
+            Assert.assertTrue(loops.get() < 1000, "loops: " + loops.get());
+            release.set(true);
+            //Reading is resumed after data has been consumed
+            Assert.assertTrue(done.await(5, TimeUnit.SECONDS), "consumed: " + consumed.get());
+        }
+        server.close();
+    }
+
+    @Test
+    public void testNioTcpIdle() throws Exception {
+        List<GekIdleState> states = new CopyOnWriteArrayList<>();
+        CountDownLatch idle = new CountDownLatch(1);
+        CountDownLatch scheduled = new CountDownLatch(1);
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .eventLoopCount(1)
+            .readIdle(Duration.ofMillis(100))
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channel.schedule(Duration.ofMillis(50), () -> {
+                        channel.sendAndFlush(new byte[]{1});
+                        scheduled.countDown();
+                    });
+                }
+
+                @Override
+                public void onIdle(GekTcpChannel channel, GekIdleState state) {
+                    states.add(state);
+                    channel.closeNow();
+                    idle.countDown();
+                }
+            })
+            .addChannelHandler((c, m) -> null)
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            Assert.assertEquals(socket.getInputStream().read(), 1);
+            scheduled.await();
+            idle.await();
+            //Closed by idle callback
+            Assert.assertEquals(socket.getInputStream().read(), -1);
+        }
+        server.close();
+        Assert.assertEquals(states, Arrays.asList(GekIdleState.READ_IDLE));
+    }
+
+    @Test
+    public void testNioTcpCloseInLoop() throws Exception {
+        int size = 4 * 1024 * 1024;
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .eventLoopCount(1)
+            .addChannelHandler(new GekTcpChannelHandler<ByteBuffer>() {
+                @Override
+                public Object onMessage(GekTcpChannel channel, ByteBuffer message) {
+                    message.position(message.limit());
+                    byte[] bytes = new byte[size];
+                    Arrays.fill(bytes, (byte) 7);
+                    channel.send(bytes);
+                    //Larger than the socket buffer, so it must not block the loop
+                    channel.close();
+                    return null;
+                }
+            })
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress("localhost", server.getPort()));
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(1);
+            socket.getOutputStream().flush();
+            byte[] bytes = GekIO.readBytes(socket.getInputStream());
+            Assert.assertEquals(bytes.length, size);
+            Assert.assertEquals(bytes[size - 1], (byte) 7);
+        }
+        //The loop still works
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(10000);
+            socket.getOutputStream().write(1);
+            socket.getOutputStream().flush();
+            Assert.assertEquals(GekIO.readBytes(socket.getInputStream()).length, size);
+        }
+        server.close();
+    }
+
+    @Test
+    public void testNioTcpSendPooled() throws Exception {
+        GekBufferPool pool = GekBufferPool.newPool(true);
+        AtomicInteger released = new AtomicInteger();
+        GekBufferPool countingPool = new GekBufferPool() {
+            @Override
+            public boolean isDirect() {
+                return pool.isDirect();
+            }
+
+            @Override
+            public ByteBuffer allocate(int capacity) {
+                return pool.allocate(capacity);
+            }
+
+            @Override
+            public void release(ByteBuffer buffer) {
+                released.incrementAndGet();
+                pool.release(buffer);
+            }
+        };
+        int size = 1024 * 1024;
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .eventLoopCount(1)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    ByteBuffer buffer = countingPool.allocate(size);
+                    while (buffer.hasRemaining()) {
+                        buffer.put((byte) 7);
+                    }
+                    buffer.flip();
+                    //Ownership is passed to the channel, and the buffer is released after written
+                    channel.send(buffer, countingPool);
+                    channel.close();
+                }
+            })
+            .addChannelHandler((c, m) -> null)
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(10000);
+            byte[] bytes = GekIO.readBytes(socket.getInputStream());
+            Assert.assertEquals(bytes.length, size);
+            Assert.assertEquals(bytes[size - 1], (byte) 7);
+        }
+        server.close();
+        Assert.assertEquals(released.get(), 1);
+    }
+
+    @Test
+    public void testTcpMetrics() throws Exception {
+        testTcpMetrics(b -> b.executor(Executors.newFixedThreadPool(4)));
+        testTcpMetrics(b -> b.nio(true).eventLoopCount(1));
+        testTcpMetrics(b -> b.nio(true).executor(Executors.newFixedThreadPool(2)).offloadToExecutor(true));
+        testTcpMetrics(b -> b.virtualThreads(true));
+    }
+
+    private void testTcpMetrics(Consumer<GekTcpServer.Builder> serverConfig) throws Exception {
+        int size = 1000;
+        List<GekTcpChannel> channels = new CopyOnWriteArrayList<>();
+        CountDownLatch closed = new CountDownLatch(1);
+        GekTcpServer.Builder builder = GekTcpServer.newBuilder()
+            .metrics(true)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channels.add(channel);
+                }
+
+                @Override
+                public void onClose(GekTcpChannel channel, ByteBuffer buffer) {
+                    closed.countDown();
+                }
+            })
+            .addChannelHandler((GekTcpChannelHandler<ByteBuffer>) (c, m) -> {
+                //Echo
+                c.sendAndFlush(m);
+                return m;
+            })
+            .addChannelHandler((c, m) -> null);
+        serverConfig.accept(builder);
+        GekTcpServer server = builder.build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(new byte[size]);
+            byte[] echo = GekIO.readBytes(socket.getInputStream(), size);
+            Assert.assertEquals(echo.length, size);
+            channels.get(0).closeNow();
+            closed.await();
+        }
+        server.close();
+        GekTcpMetrics.Snapshot snapshot = server.getMetrics().snapshot();
+        Assert.assertEquals(snapshot.getOpenedChannels(), 1);
+        Assert.assertEquals(snapshot.getClosedChannels(), 1);
+        Assert.assertEquals(snapshot.getActiveChannels(), 0);
+        Assert.assertEquals(snapshot.getBytesRead(), size);
+        Assert.assertEquals(snapshot.getBytesWritten(), size);
+        Assert.assertTrue(snapshot.getMessages(0) > 0);
+        Assert.assertEquals(snapshot.getMessages(0), snapshot.getMessages(1));
+        Assert.assertEquals(snapshot.getMessageLatency().getCount(), snapshot.getMessages(0) * 2);
+        Assert.assertTrue(snapshot.getLoopLatency().getCount() > 0);
+        GekTcpMetrics.Snapshot channelSnapshot = channels.get(0).getMetrics().snapshot();
+        Assert.assertEquals(channelSnapshot.getBytesRead(), size);
+        Assert.assertEquals(channelSnapshot.getBytesWritten(), size);
+        Assert.assertEquals(channelSnapshot.getMessages(0), snapshot.getMessages(0));
+        GekLogger.defaultLogger().info("TCP metrics: ", snapshot);
+    }
+
+    @Test
+    public void testLatencyHistogram() throws Exception {
+        GekLatencyHistogram histogram = new GekLatencyHistogram();
+        Assert.assertEquals(histogram.snapshot().getPercentile(0.99), 0);
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i);
+        }
+        histogram.record(-1);
+        GekLatencyHistogram.Snapshot snapshot = histogram.snapshot();
+        Assert.assertEquals(snapshot.getCount(), 1001);
+        Assert.assertEquals(snapshot.getSum(), 500500);
+        Assert.assertEquals(snapshot.getMax(), 1000);
+        //p50 (rank 501) is in bucket [256, 512)
+        Assert.assertEquals(snapshot.getPercentile(0.5), 511);
+        Assert.assertEquals(snapshot.getPercentile(0.999), 1000);
+        Assert.assertEquals(snapshot.getPercentile(0), 0);
+        Assert.assertEquals(snapshot.getBuckets()[0], 1);
+
+        //Recording from threads mapped to different stripes
+        GekLatencyHistogram striped = new GekLatencyHistogram(8);
+        Thread[] threads = new Thread[8];
+        for (int i = 0; i < threads.length; i++) {
+            long value = i + 1;
+            threads[i] = new Thread(() -> {
+                for (int j = 0; j < 1000; j++) {
+                    striped.record(value);
+                }
+            });
+            threads[i].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        GekLatencyHistogram.Snapshot stripedSnapshot = striped.snapshot();
+        Assert.assertEquals(stripedSnapshot.getCount(), 8000);
+        Assert.assertEquals(stripedSnapshot.getSum(), 36000);
+        Assert.assertEquals(stripedSnapshot.getMax(), 8);
+        Assert.assertEquals(new GekLatencyHistogram(3).snapshot().getCount(), 0);
+        Assert.expectThrows(IllegalArgumentException.class, () -> new GekLatencyHistogram(0));
+    }
+
+    @Test
+    public void testTcpSendFile() throws Exception {
+        byte[] content = new byte[300 * 1024];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i % 127);
+        }
+        Path file = Files.createTempFile("gek-test-", ".tmp");
+        Files.write(file, content);
+        try {
+            testTcpSendFile(file, content, b -> {
+            });
+            testTcpSendFile(file, content, b -> b.nio(true).eventLoopCount(1));
+            testTcpSendFile(file, content, b -> b.nio(true).writeHighWaterMark(1024).writeLowWaterMark(512));
+            //Files are read and encrypted for TLS
+            SSLContext sslContext = TestUtil.newSslContext();
+            testTcpSendFile(file, content, b -> b.sslContext(sslContext), sslContext.getSocketFactory());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    private void testTcpSendFile(Path file, byte[] content, Consumer<GekTcpServer.Builder> serverConfig) throws Exception {
+        testTcpSendFile(file, content, serverConfig, SocketFactory.getDefault());
+    }
+
+    private void testTcpSendFile(
+        Path file, byte[] content, Consumer<GekTcpServer.Builder> serverConfig, SocketFactory socketFactory
+    ) throws Exception {
+        int offset = 1000;
+        int length = content.length - 2000;
+        FileChannel fileChannel = FileChannel.open(file);
+        GekTcpServer.Builder serverBuilder = GekTcpServer.newBuilder();
+        serverConfig.accept(serverBuilder);
+        GekTcpServer server = serverBuilder
+            .executor(Executors.newFixedThreadPool(4))
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channel.send("head".getBytes(StandardCharsets.UTF_8));
+                    channel.sendFile(file, offset, length);
+                    channel.sendFile(fileChannel, 0, 10);
+                    channel.sendAndFlush("tail".getBytes(StandardCharsets.UTF_8));
+                }
+            })
+            .addChannelHandler((c, m) -> null)
+            .build();
+        server.start(false);
+        try (Socket socket = socketFactory.createSocket("localhost", server.getPort())) {
+            int total = 4 + length + 10 + 4;
+            byte[] bytes = GekIO.readBytes(socket.getInputStream(), total);
+            Assert.assertEquals(bytes.length, total);
+            Assert.assertEquals(new String(bytes, 0, 4, StandardCharsets.UTF_8), "head");
+            Assert.assertEquals(
+                Arrays.copyOfRange(bytes, 4, 4 + length), Arrays.copyOfRange(content, offset, offset + length));
+            Assert.assertEquals(Arrays.copyOfRange(bytes, 4 + length, 14 + length), Arrays.copyOf(content, 10));
+            Assert.assertEquals(new String(bytes, total - 4, 4, StandardCharsets.UTF_8), "tail");
+        }
+        server.closeNow();
+        fileChannel.close();
+    }
+
     @Test
     public void testUdp() {
         testUdp0(60, 5, 10);
         testUdp0(1024, 8, 20);
         testUdp0(22, 8, 50);
+        testUdp0(1024, 0, 20, true);
+    }
+
+    @Test
+    public void testNioUdp() throws Exception {
+        int clientCount = 8;
+        int packetCount = 50;
+        Map<String, AtomicInteger> data = new ConcurrentHashMap<>();
+        CountDownLatch received = new CountDownLatch(clientCount * packetCount);
+        AtomicInteger heapPackets = new AtomicInteger();
+        GekUdpServer server = GekUdpServer.newBuilder()
+            .nio(true)
+            .receiverCount(4)
+            .bufferPoolSize(8)
+            .packetBufferSize(64)
+            .addPacketHandler(new GekUdpPacketHandler<ByteBuffer>() {
+                @Override
+                public @Nullable Object onPacket(GekUdpHeader header, GekUdpClient client, ByteBuffer buffer) {
+                    if (!buffer.isDirect() || !buffer.isReadOnly()) {
+                        heapPackets.incrementAndGet();
+                    }
+                    String str = GekBuffer.getString(buffer);
+                    TestUtil.count(str, data);
+                    if (str.equals("ping")) {
+                        client.send(GekUdpPacket.of(
+                            ByteBuffer.wrap("pong".getBytes(StandardCharsets.UTF_8)), header.getInetSocketAddress()));
+                    }
+                    received.countDown();
+                    return null;
+                }
+            })
+            .build();
+        server.start(false);
+        Assert.assertTrue(server.getSource() instanceof DatagramChannel);
+        InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+        List<GekUdpClient> clients = new LinkedList<>();
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(GekUdpClient.newBuilder().build());
+        }
+        for (int i = 0; i < packetCount; i++) {
+            for (GekUdpClient client : clients) {
+                client.send(GekUdpPacket.of(ByteBuffer.wrap("nio-udp".getBytes(StandardCharsets.UTF_8)), address));
+            }
+            if (i % 10 == 0) {
+                GekThread.sleep(5);
+            }
+        }
+        Assert.assertTrue(received.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(data.get("nio-udp").get(), clientCount * packetCount);
+        Assert.assertEquals(heapPackets.get(), 0);
+
+        //echo
+        GekUdpClient client = clients.get(0);
+        DatagramSocket socket = (DatagramSocket) client.getSource();
+        socket.setSoTimeout(5000);
+        client.send(GekUdpPacket.of(ByteBuffer.wrap("ping".getBytes(StandardCharsets.UTF_8)), address));
+        DatagramPacket pong = new DatagramPacket(new byte[16], 16);
+        socket.receive(pong);
+        Assert.assertEquals(new String(pong.getData(), 0, pong.getLength(), StandardCharsets.UTF_8), "pong");
+        for (GekUdpClient c : clients) {
+            ((DatagramSocket) c.getSource()).close();
+        }
+        server.close();
+        Assert.assertTrue(server.isClosed());
+    }
+
+    @Test
+    public void testUdpBatchSend() throws Exception {
+        byte[] bytes = "0123456789".getBytes(StandardCharsets.UTF_8);
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length);
+        direct.put(bytes);
+        direct.flip();
+        direct.position(2);
+        GekUdpPacket wrapped = GekUdpPacket.wrap(direct, new InetSocketAddress("localhost", 1));
+        Assert.assertEquals(direct.position(), 2);
+        direct.put(2, (byte) 'x');
+        //Content is shared
+        Assert.assertEquals(GekBuffer.getString(wrapped.getData()), "x3456789");
+        Assert.assertTrue(wrapped.getData().isReadOnly());
+        direct.put(2, (byte) '2');
+
+        int serverCount = 3;
+        Map<String, AtomicInteger> data = new ConcurrentHashMap<>();
+        List<String> ordered = new CopyOnWriteArrayList<>();
+        CountDownLatch latch = new CountDownLatch(serverCount * 4);
+        List<GekUdpServer> servers = new LinkedList<>();
+        List<InetSocketAddress> targets = new LinkedList<>();
+        for (int i = 0; i < serverCount; i++) {
+            int index = i;
+            GekUdpServer.Builder builder = GekUdpServer.newBuilder()
+                .addPacketHandler(new GekUdpPacketHandler<ByteBuffer>() {
+                    @Override
+                    public @Nullable Object onPacket(GekUdpHeader header, GekUdpClient client, ByteBuffer buffer) {
+                        String str = GekBuffer.getString(buffer);
+                        TestUtil.count(index + ":" + str, data);
+                        if (index == 0 && str.length() == 1) {
+                            ordered.add(str);
+                        }
+                        latch.countDown();
+                        return null;
+                    }
+                });
+            if (i == 0) {
+                //Receives in one thread to keep the order
+                builder.nio(true).receiverCount(1);
+            } else {
+                builder.executor(Executors.newFixedThreadPool(4));
+            }
+            GekUdpServer server = builder.build();
+            server.start(false);
+            servers.add(server);
+            targets.add(new InetSocketAddress("localhost", server.getPort()));
+        }
+        GekUdpClient client = GekUdpClient.newBuilder().build();
+        client.sendAll(direct, targets);
+        Assert.assertEquals(direct.position(), 2);
+        servers.get(1).sendAll(ByteBuffer.wrap(bytes), targets);
+        List<GekUdpPacket> packets = new LinkedList<>();
+        for (String str : Arrays.asList("a", "b")) {
+            for (InetSocketAddress target : targets) {
+                packets.add(GekUdpPacket.wrap(ByteBuffer.wrap(str.getBytes(StandardCharsets.UTF_8)), target));
+            }
+        }
+        servers.get(0).send(packets);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < serverCount; i++) {
+            Assert.assertEquals(data.get(i + ":23456789").get(), 1);
+            Assert.assertEquals(data.get(i + ":0123456789").get(), 1);
+            Assert.assertEquals(data.get(i + ":a").get(), 1);
+            Assert.assertEquals(data.get(i + ":b").get(), 1);
+        }
+        Assert.assertEquals(ordered, Arrays.asList("a", "b"));
+        ((DatagramSocket) client.getSource()).close();
+        for (GekUdpServer server : servers) {
+            server.close();
+        }
+    }
+
+    @Test
+    public void testUdpOrderedLanes() throws Exception {
+        testUdpOrderedLanes0(b -> b.executor(Executors.newFixedThreadPool(8)));
+        testUdpOrderedLanes0(b -> b.nio(true).receiverCount(2));
+        testUdpLaneOverflow(b -> b.executor(Executors.newFixedThreadPool(4)));
+        testUdpLaneOverflow(b -> b.nio(true).receiverCount(1));
+    }
+
+    private void testUdpOrderedLanes0(Consumer<GekUdpServer.Builder> config) throws Exception {
+        int clientCount = 4;
+        int packetCount = 200;
+        Map<InetSocketAddress, Integer> lastSeqs = new ConcurrentHashMap<>();
+        Map<InetSocketAddress, AtomicInteger> running = new ConcurrentHashMap<>();
+        AtomicInteger disorders = new AtomicInteger();
+        AtomicInteger received = new AtomicInteger();
+        GekUdpServer.Builder builder = GekUdpServer.newBuilder()
+            .orderedLanes(3)
+            .addPacketHandler(new GekUdpPacketHandler<ByteBuffer>() {
+                @Override
+                public @Nullable Object onPacket(GekUdpHeader header, GekUdpClient client, ByteBuffer buffer) {
+                    InetSocketAddress source = header.getInetSocketAddress();
+                    AtomicInteger r = running.computeIfAbsent(source, k -> new AtomicInteger());
+                    if (r.incrementAndGet() > 1) {
+                        disorders.incrementAndGet();
+                    }
+                    int seq = buffer.getInt();
+                    Integer last = lastSeqs.put(source, seq);
+                    if (last != null && last >= seq) {
+                        disorders.incrementAndGet();
+                    }
+                    GekThread.sleep(seq % 10 == 0 ? 1 : 0);
+                    r.decrementAndGet();
+                    received.incrementAndGet();
+                    return null;
+                }
+            });
+        config.accept(builder);
+        GekUdpServer server = builder.build();
+        server.start(false);
+        InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+        List<GekUdpClient> clients = new LinkedList<>();
+        for (int i = 0; i < clientCount; i++) {
+            clients.add(GekUdpClient.newBuilder().build());
+        }
+        ByteBuffer seqBuffer = ByteBuffer.allocate(4);
+        for (int i = 0; i < packetCount; i++) {
+            for (GekUdpClient client : clients) {
+                seqBuffer.putInt(0, i);
+                client.send(GekUdpPacket.wrap(seqBuffer, address));
+            }
+            if (i % 20 == 0) {
+                GekThread.sleep(2);
+            }
+        }
+        long deadline = System.currentTimeMillis() + 10000;
+        while (received.get() < clientCount * packetCount && System.currentTimeMillis() < deadline) {
+            GekThread.sleep(10);
+        }
+        Assert.assertEquals(disorders.get(), 0);
+        Assert.assertEquals(lastSeqs.size(), clientCount);
+        Assert.assertTrue(received.get() > 0);
+        for (GekUdpClient c : clients) {
+            ((DatagramSocket) c.getSource()).close();
+        }
+        server.close();
+    }
+
+    private void testUdpLaneOverflow(Consumer<GekUdpServer.Builder> config) throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch rejected = new CountDownLatch(3);
+        AtomicInteger handled = new AtomicInteger();
+        GekUdpServer.Builder builder = GekUdpServer.newBuilder()
+            .orderedLanes(1)
+            .laneCapacity(1)
+            .lanePolicy(GekUdpLanePolicy.REJECT)
+            .serverHandler(new GekUdpServerHandler() {
+                @Override
+                public void onException(GekUdpHeader header, GekUdpClient client, Throwable throwable, ByteBuffer buffer) {
+                    if (throwable instanceof GekNetException) {
+                        rejected.countDown();
+                    }
+                }
+            })
+            .addPacketHandler(new GekUdpPacketHandler<ByteBuffer>() {
+                @Override
+                public @Nullable Object onPacket(GekUdpHeader header, GekUdpClient client, ByteBuffer buffer) {
+                    handled.incrementAndGet();
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    return null;
+                }
+            });
+        config.accept(builder);
+        GekUdpServer server = builder.build();
+        server.start(false);
+        InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+        GekUdpClient client = GekUdpClient.newBuilder().build();
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{1});
+        client.send(GekUdpPacket.wrap(data, address));
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        //One waits in the lane, others are rejected
+        for (int i = 0; i < 4; i++) {
+            client.send(GekUdpPacket.wrap(data, address));
+        }
+        Assert.assertTrue(rejected.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        long deadline = System.currentTimeMillis() + 5000;
+        while (handled.get() < 2 && System.currentTimeMillis() < deadline) {
+            GekThread.sleep(10);
+        }
+        Assert.assertEquals(handled.get(), 2);
+        ((DatagramSocket) client.getSource()).close();
+        server.close();
+    }
+
+    @Test
+    public void testTcpOverload() throws Exception {
+        testTcpInFlightTasks(b -> b.executor(Executors.newFixedThreadPool(4)));
+        testTcpInFlightTasks(b -> b.nio(true).executor(Executors.newFixedThreadPool(2)).offloadToExecutor(true));
+        testTcpPendingBytes();
+        testTcpThrottleAccept(b -> b.executor(Executors.newFixedThreadPool(4)), false);
+        testTcpThrottleAccept(b -> b.nio(true).eventLoopCount(1), true);
+    }
+
+    private void testTcpInFlightTasks(Consumer<GekTcpServer.Builder> serverConfig) throws Exception {
+        List<GekTcpChannel> channels = new CopyOnWriteArrayList<>();
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch overloaded = new CountDownLatch(1);
+        CountDownLatch handled = new CountDownLatch(2);
+        GekTcpServer.Builder builder = GekTcpServer.newBuilder()
+            .maxInFlightTasks(1)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channels.add(channel);
+                }
+
+                @Override
+                public void onOverload(@Nullable GekTcpChannel channel, GekOverload overload) {
+                    if (channel != null && overload == GekOverload.IN_FLIGHT_TASKS) {
+                        overloaded.countDown();
+                    }
+                }
+            })
+            .addChannelHandler((GekTcpChannelHandler<ByteBuffer>) (c, m) -> {
+                m.position(m.limit());
+                blocked.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException ignored) {
+                }
+                handled.countDown();
+                return null;
+            });
+        serverConfig.accept(builder);
+        GekTcpServer server = builder.build();
+        server.start(false);
+        try (Socket socket1 = new Socket("localhost", server.getPort());
+             Socket socket2 = new Socket("localhost", server.getPort())) {
+            socket1.getOutputStream().write(1);
+            Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+            //Reading of the second channel is paused until the first task is done
+            socket2.getOutputStream().write(2);
+            Assert.assertTrue(overloaded.await(5, TimeUnit.SECONDS));
+            Assert.assertEquals(handled.getCount(), 2);
+            release.countDown();
+            Assert.assertTrue(handled.await(5, TimeUnit.SECONDS));
+            for (GekTcpChannel channel : channels) {
+                channel.closeNow();
+            }
+        }
+        server.close();
+    }
+
+    private void testTcpPendingBytes() throws Exception {
+        int responseSize = 1024 * 1024;
+        List<GekTcpChannel> channels = new CopyOnWriteArrayList<>();
+        CountDownLatch overloaded = new CountDownLatch(1);
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .eventLoopCount(1)
+            .maxPendingBytes(1024)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channels.add(channel);
+                    try {
+                        ((SocketChannel) channel.getSource()).socket().setSendBufferSize(4096);
+                    } catch (Exception e) {
+                        throw new GekNetException(e);
+                    }
+                }
+
+                @Override
+                public void onOverload(@Nullable GekTcpChannel channel, GekOverload overload) {
+                    if (channel != null && overload == GekOverload.PENDING_BYTES) {
+                        overloaded.countDown();
+                    }
+                }
+            })
+            .addChannelHandler((GekTcpChannelHandler<ByteBuffer>) (c, m) -> {
+                while (m.hasRemaining()) {
+                    m.get();
+                    c.send(new byte[responseSize]);
+                }
+                c.flush();
+                return null;
+            })
+            .build();
+        server.start(false);
+        try (Socket socket = new Socket()) {
+            socket.setReceiveBufferSize(4096);
+            socket.connect(new InetSocketAddress("localhost", server.getPort()));
+            socket.getOutputStream().write(1);
+            GekThread.sleep(100);
+            //Response of the first request is still pending, the client does not read
+            socket.getOutputStream().write(2);
+            Assert.assertTrue(overloaded.await(5, TimeUnit.SECONDS));
+            //Reading is resumed after responses have been read
+            byte[] responses = GekIO.readBytes(socket.getInputStream(), responseSize * 2);
+            Assert.assertEquals(responses.length, responseSize * 2);
+            channels.get(0).closeNow();
+        }
+        server.close();
+    }
+
+    private void testTcpThrottleAccept(
+        Consumer<GekTcpServer.Builder> serverConfig, boolean pausing) throws Exception {
+        List<GekTcpChannel> channels = new CopyOnWriteArrayList<>();
+        CountDownLatch opened = new CountDownLatch(1);
+        CountDownLatch secondOpened = new CountDownLatch(2);
+        CountDownLatch overloaded = new CountDownLatch(1);
+        GekTcpServer.Builder builder = GekTcpServer.newBuilder()
+            .maxConnection(1)
+            .throttleAccept(true)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channels.add(channel);
+                    opened.countDown();
+                    secondOpened.countDown();
+                }
+
+                @Override
+                public void onOverload(@Nullable GekTcpChannel channel, GekOverload overload) {
+                    if (channel == null && overload == GekOverload.CONNECTIONS) {
+                        overloaded.countDown();
+                    }
+                }
+            })
+            .addChannelHandler((c, m) -> null);
+        serverConfig.accept(builder);
+        GekTcpServer server = builder.build();
+        server.start(false);
+        try (Socket socket1 = new Socket("localhost", server.getPort())) {
+            Assert.assertTrue(opened.await(5, TimeUnit.SECONDS));
+            try (Socket socket2 = new Socket("localhost", server.getPort())) {
+                Assert.assertTrue(overloaded.await(5, TimeUnit.SECONDS));
+                if (pausing) {
+                    //Second connection waits in the backlog and is accepted after the first one is closed
+                    GekThread.sleep(100);
+                    Assert.assertEquals(channels.size(), 1);
+                    channels.get(0).closeNow();
+                    Assert.assertTrue(secondOpened.await(5, TimeUnit.SECONDS));
+                    channels.get(1).closeNow();
+                    socket2.setSoTimeout(5000);
+                    Assert.assertEquals(socket2.getInputStream().read(), -1);
+                } else {
+                    socket2.setSoTimeout(5000);
+                    Assert.assertEquals(socket2.getInputStream().read(), -1);
+                }
+            }
+            if (!pausing) {
+                Assert.assertEquals(channels.size(), 1);
+                channels.get(0).closeNow();
+            }
+        }
+        server.close();
+    }
+
+    @Test
+    public void testTcpLengthField() throws Exception {
+        //Varint length of 300 is 0xac 0x02, last frame is incomplete
+        LengthFieldTcpChannelHandler varint = LengthFieldTcpChannelHandler.newBuilder()
+            .lengthSize(LengthFieldTcpChannelHandler.VARINT)
+            .build();
+        ByteBuffer buffer = ByteBuffer.allocate(512);
+        buffer.put((byte) 0xac);
+        buffer.put((byte) 0x02);
+        buffer.put(new byte[300]);
+        buffer.put((byte) 0);
+        buffer.put((byte) 3);
+        buffer.put(new byte[]{1, 2});
+        buffer.flip();
+        List<ByteBuffer> frames = Gek.as(varint.onMessage(null, buffer));
+        Assert.assertEquals(frames.size(), 2);
+        Assert.assertEquals(frames.get(0).remaining(), 300);
+        Assert.assertTrue(frames.get(0).isReadOnly());
+        Assert.assertEquals(frames.get(1).remaining(), 0);
+        Assert.assertEquals(buffer.position(), 303);
+        Assert.assertNull(varint.onMessage(null, buffer));
+        Assert.assertEquals(buffer.position(), 303);
+
+        //Little-endian 8 bytes length counting itself, with a prefix
+        LengthFieldTcpChannelHandler longLength = LengthFieldTcpChannelHandler.newBuilder()
+            .lengthOffset(1)
+            .lengthSize(8)
+            .byteOrder(ByteOrder.LITTLE_ENDIAN)
+            .lengthAdjustment(-8)
+            .stripHeader(false)
+            .build();
+        ByteBuffer longBuffer = ByteBuffer.allocate(64).order(ByteOrder.LITTLE_ENDIAN);
+        longBuffer.put((byte) 7);
+        longBuffer.putLong(8 + 3);
+        longBuffer.put(new byte[]{1, 2, 3});
+        longBuffer.flip();
+        frames = Gek.as(longLength.onMessage(null, longBuffer));
+        Assert.assertEquals(frames.size(), 1);
+        Assert.assertEquals(frames.get(0).remaining(), 12);
+        Assert.assertEquals(frames.get(0).get(0), (byte) 7);
+        Assert.assertEquals(frames.get(0).get(11), (byte) 3);
+
+        LengthFieldTcpChannelHandler limited = LengthFieldTcpChannelHandler.newBuilder().maxFrameSize(2).build();
+        Assert.expectThrows(GekNetException.class, () ->
+            limited.onMessage(null, ByteBuffer.wrap(new byte[]{0, 0, 0, 3, 1, 2, 3})));
+
+        //Echo by the encoder
+        byte[] request = {5, 'h', 'e', 'l', 'l', 'o', 0, 2, 'o', 'k'};
+        testTcpLengthField(varint, b -> b.nio(true).eventLoopCount(1), request, request);
+        testTcpLengthField(varint, b -> b.virtualThreads(true), request, request);
+        //Content is echoed with its first byte as the prefix
+        testTcpLengthField(
+            LengthFieldTcpChannelHandler.newBuilder().lengthOffset(1).lengthSize(2).byteOrder(ByteOrder.LITTLE_ENDIAN)
+                .build(),
+            b -> b.executor(Executors.newFixedThreadPool(4)),
+            new byte[]{9, 3, 0, 'a', 'b', 'c', 8, 1, 0, 'd'},
+            new byte[]{'a', 2, 0, 'b', 'c', 'd', 0, 0}
+        );
+    }
+
+    private void testTcpLengthField(
+        LengthFieldTcpChannelHandler handler, Consumer<GekTcpServer.Builder> serverConfig, byte[] request, byte[] echo
+    ) throws Exception {
+        List<GekTcpChannel> channels = new CopyOnWriteArrayList<>();
+        GekTcpServer.Builder builder = GekTcpServer.newBuilder()
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channels.add(channel);
+                }
+            })
+            .addChannelHandler(handler)
+            .addChannelHandler(new GekTcpChannelHandler<List<ByteBuffer>>() {
+                @Override
+                public @Nullable Object onMessage(GekTcpChannel channel, List<ByteBuffer> message) {
+                    for (ByteBuffer frame : message) {
+                        handler.send(channel, frame);
+                    }
+                    channel.flush();
+                    return null;
+                }
+            });
+        serverConfig.accept(builder);
+        GekTcpServer server = builder.build();
+        server.start(false);
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            //Split in two writes to test incomplete frames
+            socket.getOutputStream().write(request, 0, 2);
+            socket.getOutputStream().flush();
+            GekThread.sleep(50);
+            socket.getOutputStream().write(request, 2, request.length - 2);
+            Assert.assertEquals(GekIO.readBytes(socket.getInputStream(), echo.length), echo);
+            channels.get(0).closeNow();
+        }
+        server.close();
+    }
+
+    @Test
+    public void testTcpTls() throws Exception {
+        SSLContext sslContext = TestUtil.newSslContext();
+        GekTcpClientGroup group = GekTcpClientGroup.newGroup(2);
+        testTcpLengthBased(22, 8, 20, b -> b.sslContext(sslContext),
+            b -> b.group(group).sslContext(sslContext));
+        testTcpDelimiterBased(1024, 8, 20, b -> b.eventLoopCount(2).sslContext(sslContext),
+            b -> b.group(group).sslContext(sslContext));
+
+        //Echo server
+        AtomicInteger serverExceptions = new AtomicInteger();
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .eventLoopCount(2)
+            .bufferPool(GekBufferPool.newPool(true))
+            .sslContext(sslContext)
+            .sslSessionCacheSize(100)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onException(GekTcpChannel channel, Throwable throwable, ByteBuffer buffer) {
+                    serverExceptions.incrementAndGet();
+                }
+            })
+            .addChannelHandler(new GekTcpChannelHandler<ByteBuffer>() {
+                @Override
+                public @Nullable Object onMessage(GekTcpChannel channel, ByteBuffer message) {
+                    channel.sendAndFlush(message);
+                    return null;
+                }
+            })
+            .build();
+        server.start(false);
+
+        //Data larger than a TLS record
+        byte[] large = TestUtil.buildRandomBytes(100 * 1024);
+        byte[] sessionId = testTcpTlsEcho(server, group, sslContext, large);
+        //Resumes the session of TLS 1.2, of which session id is kept
+        Assert.assertEquals(testTcpTlsEcho(server, group, sslContext, "hello".getBytes()), sessionId);
+
+        //Plain data fails in the handshake, an alert record (content type 21) is sent before closing
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write("GET / HTTP/1.1\r\n\r\n".getBytes());
+            byte[] alert = GekIO.readBytes(socket.getInputStream());
+            Assert.assertEquals(alert[0], (byte) 21);
+        }
+        Assert.assertEquals(serverExceptions.get(), 1);
+        Assert.expectThrows(GekNetException.class, () -> GekTcpClient.newBuilder()
+            .addChannelHandler(new LengthBasedTcpChannelHandler(3))
+            .sslContext(sslContext)
+            .build());
+        server.close();
+        group.close();
+    }
+
+    private byte[] testTcpTlsEcho(
+        GekTcpServer server, GekTcpClientGroup group, SSLContext sslContext, byte[] data
+    ) throws Exception {
+        ByteArrayOutputStream received = new ByteArrayOutputStream();
+        CountDownLatch latch = new CountDownLatch(1);
+        List<GekTcpChannel> channels = new CopyOnWriteArrayList<>();
+        GekTcpClient client = GekTcpClient.newBuilder()
+            .group(group)
+            .sslContext(sslContext)
+            .sslEngineConfig(engine -> engine.setEnabledProtocols(new String[]{"TLSv1.2"}))
+            .clientHandler(new GekTcpClientHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    channels.add(channel);
+                    channel.sendAndFlush(ByteBuffer.wrap(data));
+                }
+            })
+            .addChannelHandler(new GekTcpChannelHandler<ByteBuffer>() {
+                @Override
+                public @Nullable Object onMessage(GekTcpChannel channel, ByteBuffer message) {
+                    byte[] bytes = GekBuffer.getBytes(message);
+                    received.write(bytes, 0, bytes.length);
+                    if (received.size() >= data.length) {
+                        latch.countDown();
+                    }
+                    return null;
+                }
+            })
+            .build();
+        client.start(new InetSocketAddress("localhost", server.getPort()), Duration.ofSeconds(5), false);
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertEquals(received.toByteArray(), data);
+        SSLSession session = channels.get(0).getSslSession();
+        Assert.assertNotNull(session);
+        Assert.assertEquals(session.getProtocol(), "TLSv1.2");
+        client.closeNow();
+        return session.getId();
+    }
+
+    @Test
+    public void testTcpClientPool() throws Exception {
+        //Frame: [call id of 8 bytes][payload]
+        LengthFieldTcpChannelHandler framing = LengthFieldTcpChannelHandler.newBuilder().build();
+        List<GekTcpChannel> serverChannels = new CopyOnWriteArrayList<>();
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .serverHandler(new GekTcpServerHandler() {
+                @Override
+                public void onOpen(GekTcpChannel channel) {
+                    serverChannels.add(channel);
+                }
+
+                @Override
+                public void onClose(GekTcpChannel channel, ByteBuffer buffer) {
+                    serverChannels.remove(channel);
+                }
+            })
+            .addChannelHandler(framing)
+            .addChannelHandler(new GekTcpChannelHandler<List<ByteBuffer>>() {
+                @Override
+                public @Nullable Object onMessage(GekTcpChannel channel, List<ByteBuffer> message) {
+                    for (ByteBuffer frame : message) {
+                        ByteBuffer response = ByteBuffer.wrap(GekBuffer.getBytes(frame));
+                        String payload = new String(response.array(), 8, response.remaining() - 8);
+                        if ("drop".equals(payload)) {
+                            continue;
+                        }
+                        if ("slow".equals(payload)) {
+                            channel.schedule(Duration.ofMillis(300), () -> framing.sendAndFlush(channel, response));
+                            continue;
+                        }
+                        framing.send(channel, response);
+                    }
+                    channel.flush();
+                    return null;
+                }
+            })
+            .build();
+        server.start(false);
+        GekTcpCallCodec<String, ByteBuffer> codec = new GekTcpCallCodec<String, ByteBuffer>() {
+            @Override
+            public void encode(GekTcpChannel channel, long callId, String request) {
+                byte[] payload = request.getBytes(StandardCharsets.UTF_8);
+                ByteBuffer buffer = ByteBuffer.allocate(8 + payload.length);
+                buffer.putLong(callId);
+                buffer.put(payload);
+                buffer.flip();
+                framing.send(channel, buffer);
+            }
+
+            @Override
+            public long getCallId(ByteBuffer response) {
+                return response.getLong(0);
+            }
+        };
+        GekTcpClientGroup group = GekTcpClientGroup.newGroup(2);
+        GekTcpClientPool.Builder<String, ByteBuffer> builder = GekTcpClientPool.<String, ByteBuffer>newBuilder()
+            .codec(codec)
+            .group(group)
+            .addChannelHandler(framing)
+            //Frames are only valid in the calling chain
+            .addChannelHandler(new GekTcpChannelHandler<List<ByteBuffer>>() {
+                @Override
+                public @Nullable Object onMessage(GekTcpChannel channel, List<ByteBuffer> message) {
+                    List<ByteBuffer> responses = new LinkedList<>();
+                    for (ByteBuffer frame : message) {
+                        responses.add(ByteBuffer.wrap(GekBuffer.getBytes(frame)));
+                    }
+                    return responses;
+                }
+            });
+
+        //Concurrent calls on 3 connections
+        GekTcpClientPool<String, ByteBuffer> pool = builder.connections(3).build();
+        pool.start("localhost", server.getPort());
+        Assert.assertEquals(pool.getOpenedConnections(), 3);
+        List<CompletableFuture<ByteBuffer>> futures = new CopyOnWriteArrayList<>();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int start = t * 250;
+            threads[t] = new Thread(() -> {
+                for (int i = start; i < start + 250; i++) {
+                    futures.add(pool.call("m" + i));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.SECONDS);
+        Map<String, AtomicInteger> responses = new ConcurrentHashMap<>();
+        for (CompletableFuture<ByteBuffer> future : futures) {
+            ByteBuffer response = future.join();
+            TestUtil.count(new String(response.array(), 8, response.remaining() - 8), responses);
+        }
+        Assert.assertEquals(responses.size(), 1000);
+        for (int i = 0; i < 1000; i++) {
+            Assert.assertEquals(responses.get("m" + i).get(), 1);
+        }
+        Assert.assertEquals(pool.getPendingCalls(), 0);
+
+        //Timeout and closed connections
+        CompletableFuture<ByteBuffer> dropped = pool.call("drop", Duration.ofMillis(100));
+        ExecutionException timeout = Assert.expectThrows(ExecutionException.class, () -> dropped.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(timeout.getCause() instanceof TimeoutException);
+        CompletableFuture<ByteBuffer> pending = pool.call("drop");
+        Assert.assertEquals(pool.getPendingCalls(), 1);
+        for (GekTcpChannel channel : serverChannels) {
+            channel.closeNow();
+        }
+        ExecutionException closed = Assert.expectThrows(ExecutionException.class, () -> pending.get(5, TimeUnit.SECONDS));
+        Assert.assertTrue(closed.getCause() instanceof GekNetException);
+        //Reconnected in background
+        long deadline = System.currentTimeMillis() + 5000;
+        while (pool.getOpenedConnections() < 3 && System.currentTimeMillis() < deadline) {
+            GekThread.sleep(10);
+        }
+        Assert.assertEquals(pool.getOpenedConnections(), 3);
+        Assert.assertEquals(new String(pool.call("again").get(5, TimeUnit.SECONDS).array(), 8, 5), "again");
+        CompletableFuture<ByteBuffer> unfinished = pool.call("drop");
+        pool.close();
+        Assert.assertTrue(pool.isClosed());
+        Assert.expectThrows(ExecutionException.class, () -> unfinished.get(5, TimeUnit.SECONDS));
+        Assert.expectThrows(ExecutionException.class, () -> pool.call("closed").get(5, TimeUnit.SECONDS));
+
+        //Out of order responses on one connection
+        GekTcpClientPool<String, ByteBuffer> single = builder.connections(1)
+            .selection(GekTcpClientPool.Selection.LEAST_PENDING)
+            .build();
+        single.start("localhost", server.getPort());
+        CompletableFuture<ByteBuffer> slow = single.call("slow");
+        CompletableFuture<ByteBuffer> fast = single.call("fast");
+        Assert.assertEquals(new String(fast.get(5, TimeUnit.SECONDS).array(), 8, 4), "fast");
+        Assert.assertFalse(slow.isDone());
+        Assert.assertEquals(new String(slow.get(5, TimeUnit.SECONDS).array(), 8, 4), "slow");
+        single.close();
+
+        group.close();
+        server.close();
+    }
+
+    @Test
+    public void testUdpOverload() throws Exception {
+        testUdpOverload(b -> b.executor(Executors.newFixedThreadPool(4)).maxInFlightTasks(1),
+            GekOverload.IN_FLIGHT_TASKS);
+        testUdpOverload(b -> b.nio(true).receiverCount(1).orderedLanes(2).maxPendingBytes(1),
+            GekOverload.PENDING_BYTES);
+        //Options for executor of NIO server require ordered lanes
+        GekUdpServer.Builder builder = GekUdpServer.newBuilder()
+            .nio(true)
+            .maxInFlightTasks(1)
+            .addPacketHandler(new GekUdpPacketHandler<ByteBuffer>() {
+                @Override
+                public @Nullable Object onPacket(GekUdpHeader header, GekUdpClient client, ByteBuffer buffer) {
+                    return null;
+                }
+            });
+        Assert.expectThrows(GekNetException.class, builder::build);
+    }
+
+    private void testUdpOverload(Consumer<GekUdpServer.Builder> config, GekOverload expected) throws Exception {
+        CountDownLatch blocked = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        CountDownLatch overloaded = new CountDownLatch(3);
+        AtomicInteger handled = new AtomicInteger();
+        GekUdpServer.Builder builder = GekUdpServer.newBuilder()
+            .serverHandler(new GekUdpServerHandler() {
+                @Override
+                public void onOverload(GekUdpHeader header, GekOverload overload) {
+                    if (overload == expected) {
+                        overloaded.countDown();
+                    }
+                }
+            })
+            .addPacketHandler(new GekUdpPacketHandler<ByteBuffer>() {
+                @Override
+                public @Nullable Object onPacket(GekUdpHeader header, GekUdpClient client, ByteBuffer buffer) {
+                    handled.incrementAndGet();
+                    blocked.countDown();
+                    try {
+                        release.await();
+                    } catch (InterruptedException ignored) {
+                    }
+                    return null;
+                }
+            });
+        config.accept(builder);
+        GekUdpServer server = builder.build();
+        server.start(false);
+        InetSocketAddress address = new InetSocketAddress("localhost", server.getPort());
+        GekUdpClient client = GekUdpClient.newBuilder().build();
+        ByteBuffer data = ByteBuffer.wrap(new byte[]{1});
+        client.send(GekUdpPacket.wrap(data, address));
+        Assert.assertTrue(blocked.await(5, TimeUnit.SECONDS));
+        //Packets are dropped while the first one is being handled
+        for (int i = 0; i < 3; i++) {
+            client.send(GekUdpPacket.wrap(data, address));
+        }
+        Assert.assertTrue(overloaded.await(5, TimeUnit.SECONDS));
+        release.countDown();
+        GekThread.sleep(100);
+        Assert.assertEquals(handled.get(), 1);
+        ((DatagramSocket) client.getSource()).close();
+        server.close();
     }
 
     @Test
@@ -61,6 +1408,22 @@ public class NetTest {
     }
 
     private void testTcpLengthBased(int bufferSize, int serverThreads, int clientThreads) {
+        testTcpLengthBased(bufferSize, serverThreads, clientThreads, b -> {
+        });
+    }
+
+    private void testTcpLengthBased(int bufferSize, int serverThreads, int clientThreads, Consumer<GekTcpServer.Builder> serverConfig) {
+        testTcpLengthBased(bufferSize, serverThreads, clientThreads, serverConfig, b -> {
+        });
+    }
+
+    private void testTcpLengthBased(
+        int bufferSize,
+        int serverThreads,
+        int clientThreads,
+        Consumer<GekTcpServer.Builder> serverConfig,
+        Consumer<GekTcpClient.Builder> clientConfig
+    ) {
         Map<String, AtomicInteger> data = new ConcurrentHashMap<>();
 
         //server: hlo
@@ -70,7 +1433,9 @@ public class NetTest {
         //client: bye
         //server bye
 
-        GekTcpServer server = GekTcpServer.newBuilder()
+        GekTcpServer.Builder serverBuilder = GekTcpServer.newBuilder();
+        serverConfig.accept(serverBuilder);
+        GekTcpServer server = serverBuilder
             .channelBufferSize(bufferSize)
             .executor(Executors.newFixedThreadPool(serverThreads))
             .serverHandler(new GekTcpServerHandler() {
@@ -127,7 +1492,9 @@ public class NetTest {
         server.closeNow();
         server = server.toBuilder().executor(Executors.newFixedThreadPool(serverThreads)).build();
         CountDownLatch latch = new CountDownLatch(clientThreads);
-        GekTcpClient client = GekTcpClient.newBuilder()
+        GekTcpClient.Builder clientBuilder = GekTcpClient.newBuilder();
+        clientConfig.accept(clientBuilder);
+        GekTcpClient client = clientBuilder
             .channelBufferSize(bufferSize)
             .clientHandler(new GekTcpClientHandler() {
                 @Override
@@ -248,6 +1615,22 @@ public class NetTest {
     }
 
     private void testTcpDelimiterBased(int bufferSize, int serverThreads, int clientThreads) {
+        testTcpDelimiterBased(bufferSize, serverThreads, clientThreads, b -> {
+        });
+    }
+
+    private void testTcpDelimiterBased(int bufferSize, int serverThreads, int clientThreads, Consumer<GekTcpServer.Builder> serverConfig) {
+        testTcpDelimiterBased(bufferSize, serverThreads, clientThreads, serverConfig, b -> {
+        });
+    }
+
+    private void testTcpDelimiterBased(
+        int bufferSize,
+        int serverThreads,
+        int clientThreads,
+        Consumer<GekTcpServer.Builder> serverConfig,
+        Consumer<GekTcpClient.Builder> clientConfig
+    ) {
         Map<String, AtomicInteger> data = new ConcurrentHashMap<>();
 
         //server: hlo
@@ -257,7 +1640,9 @@ public class NetTest {
         //client: bye
         //server bye
 
-        GekTcpServer server = GekTcpServer.newBuilder()
+        GekTcpServer.Builder serverBuilder = GekTcpServer.newBuilder();
+        serverConfig.accept(serverBuilder);
+        GekTcpServer server = serverBuilder
             .channelBufferSize(bufferSize)
             .executor(Executors.newFixedThreadPool(serverThreads))
             .serverHandler(new GekTcpServerHandler() {
@@ -314,7 +1699,9 @@ public class NetTest {
         server.closeNow();
         server = server.toBuilder().executor(Executors.newFixedThreadPool(serverThreads)).build();
         CountDownLatch latch = new CountDownLatch(clientThreads);
-        GekTcpClient client = GekTcpClient.newBuilder()
+        GekTcpClient.Builder clientBuilder = GekTcpClient.newBuilder();
+        clientConfig.accept(clientBuilder);
+        GekTcpClient client = clientBuilder
             .channelBufferSize(bufferSize)
             .clientHandler(new GekTcpClientHandler() {
                 @Override
@@ -415,12 +1802,21 @@ public class NetTest {
     }
 
     private void testUdp0(int bufferSize, int serverThreads, int clientThreads) {
+        testUdp0(bufferSize, serverThreads, clientThreads, false);
+    }
+
+    private void testUdp0(int bufferSize, int serverThreads, int clientThreads, boolean virtualThreads) {
         Map<String, AtomicInteger> data = new ConcurrentHashMap<>();
 
         //client: udp-client * 10
 
-        GekUdpServer server = GekUdpServer.newBuilder()
-            .executor(Executors.newFixedThreadPool(serverThreads))
+        GekUdpServer.Builder builder = GekUdpServer.newBuilder();
+        if (virtualThreads) {
+            builder.virtualThreads(true);
+        } else {
+            builder.executor(Executors.newFixedThreadPool(serverThreads));
+        }
+        GekUdpServer server = builder
             .serverHandler(new GekUdpServerHandler() {
                 @Override
                 public void onException(GekNetServerException exception) {
@@ -445,7 +1841,8 @@ public class NetTest {
             .build();
         server.start(false);
         server.closeNow();
-        server = server.toBuilder().executor(Executors.newFixedThreadPool(serverThreads)).build();
+        server = virtualThreads ? server.toBuilder().build()
+            : server.toBuilder().executor(Executors.newFixedThreadPool(serverThreads)).build();
         CountDownLatch latch = new CountDownLatch(clientThreads);
         GekUdpClient client = GekUdpClient.newBuilder().build();
         List<GekUdpClient> clients = new LinkedList<>();
@@ -1,20 +1,29 @@
 package test;
 
 import com.google.protobuf.ByteString;
+import com.google.protobuf.Message;
 import lombok.EqualsAndHashCode;
 import org.testng.Assert;
 import org.testng.annotations.Test;
 import test.protobuf.Data;
 import test.protobuf.Enum;
 import test.protobuf.Request;
+import xyz.fsgek.annotations.Nullable;
 import xyz.fsgek.common.bean.GekBean;
 import xyz.fsgek.common.bean.GekProperty;
 import xyz.fsgek.common.bean.GekBeanResolver;
 import xyz.fsgek.common.collect.GekColl;
 import xyz.fsgek.common.convert.GekConverter;
 import xyz.fsgek.common.data.protobuf.GekProtobuf;
+import xyz.fsgek.common.data.protobuf.ProtobufTcpChannelHandler;
+import xyz.fsgek.common.io.GekBufferPool;
+import xyz.fsgek.common.net.tcp.GekTcpChannel;
+import xyz.fsgek.common.net.tcp.GekTcpChannelHandler;
+import xyz.fsgek.common.net.tcp.GekTcpServer;
+import xyz.fsgek.common.net.tcp.handlers.LengthFieldTcpChannelHandler;
 import xyz.fsgek.common.reflect.TypeRef;
 
+import java.net.Socket;
 import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
@@ -223,6 +232,50 @@ public class ProtobufTest {
         E1, E2;
     }
 
+    @Test
+    public void testTcpCodec() throws Exception {
+        Assert.assertSame(GekProtobuf.getParser(Request.class), Request.parser());
+        Assert.expectThrows(IllegalArgumentException.class, () -> GekProtobuf.getParser(Message.class));
+        ProtobufTcpChannelHandler<Request> codec = new ProtobufTcpChannelHandler<>(Request.class);
+        GekTcpServer server = GekTcpServer.newBuilder()
+            .nio(true)
+            .bufferPool(GekBufferPool.newPool(true))
+            .addChannelHandler(LengthFieldTcpChannelHandler.newBuilder()
+                .lengthSize(LengthFieldTcpChannelHandler.VARINT)
+                .build())
+            .addChannelHandler(codec)
+            .addChannelHandler(new GekTcpChannelHandler<List<Request>>() {
+                @Override
+                public @Nullable Object onMessage(GekTcpChannel channel, List<Request> message) {
+                    for (Request request : message) {
+                        codec.send(channel, request.toBuilder().setCode(request.getCode() + 1).build());
+                    }
+                    channel.flush();
+                    return null;
+                }
+            })
+            .build();
+        server.start(false);
+        int count = 100;
+        try (Socket socket = new Socket("localhost", server.getPort())) {
+            for (int i = 0; i < count; i++) {
+                Request.newBuilder()
+                    .setCode(i)
+                    .setMessage(ByteString.copyFromUtf8("hello" + i))
+                    .setData(Data.newBuilder().setStr("data" + i))
+                    .build()
+                    .writeDelimitedTo(socket.getOutputStream());
+            }
+            for (int i = 0; i < count; i++) {
+                Request response = Request.parseDelimitedFrom(socket.getInputStream());
+                Assert.assertEquals(response.getCode(), i + 1);
+                Assert.assertEquals(response.getMessage().toStringUtf8(), "hello" + i);
+                Assert.assertEquals(response.getData().getStr(), "data" + i);
+            }
+        }
+        server.close();
+    }
+
     @lombok.Data
     @EqualsAndHashCode
     public static class DataDto {
@@ -1,5 +1,10 @@
 package test;
 
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.InputStream;
+import java.security.KeyStore;
 import java.util.Map;
 import java.util.Random;
 import java.util.concurrent.atomic.AtomicInteger;
@@ -35,4 +40,21 @@ public class TestUtil {
         AtomicInteger c = map.computeIfAbsent(key, k -> new AtomicInteger(0));
         c.incrementAndGet();
     }
+
+    //Self-signed certificate of localhost, for both server and client
+    public static SSLContext newSslContext() throws Exception {
+        char[] password = "123456".toCharArray();
+        KeyStore keyStore = KeyStore.getInstance("PKCS12");
+        try (InputStream in = TestUtil.class.getResourceAsStream("/tls/test.p12")) {
+            keyStore.load(in, password);
+        }
+        KeyManagerFactory keyManagerFactory = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+        keyManagerFactory.init(keyStore, password);
+        TrustManagerFactory trustManagerFactory =
+            TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trustManagerFactory.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(keyManagerFactory.getKeyManagers(), trustManagerFactory.getTrustManagers(), null);
+        return context;
+    }
 }